@@ -62,7 +62,7 @@ public abstract class AbstractDeltaStep extends AbstractBufferingStep {
 		try {
 			try {
 				result = File.createTempFile(PREDECESSOR_ROOT, JAR_SUFFIX);
-				resultStream = new BufferedOutputStream(new FileOutputStream(result));
+				resultStream = createTempFileStream(result);
 				setStatus(repository.getArtifact(descriptor, resultStream, getProgressMonitor()));
 				return result;
 			} finally {
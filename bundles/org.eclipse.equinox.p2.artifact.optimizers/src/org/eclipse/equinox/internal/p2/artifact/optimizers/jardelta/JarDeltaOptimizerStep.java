@@ -16,7 +16,6 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.artifact.optimizers.AbstractDeltaStep;
 import org.eclipse.equinox.internal.p2.artifact.optimizers.Activator;
-import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 
@@ -33,7 +32,7 @@ public class JarDeltaOptimizerStep extends AbstractDeltaStep {
 
 	protected OutputStream createIncomingStream() throws IOException {
 		incoming = File.createTempFile(INCOMING_ROOT, JAR_SUFFIX);
-		return new BufferedOutputStream(new FileOutputStream(incoming));
+		return createTempFileStream(incoming);
 	}
 
 	protected void cleanupTempFiles() {
@@ -48,8 +47,7 @@ public class JarDeltaOptimizerStep extends AbstractDeltaStep {
 			resultFile = optimize();
 			// now write the optimized content to the destination
 			if (resultFile.length() > 0) {
-				InputStream resultStream = new BufferedInputStream(new FileInputStream(resultFile));
-				FileUtils.copyStream(resultStream, true, getDestination(), false);
+				copyToDestination(resultFile);
 			} else {
 				setStatus(new Status(IStatus.ERROR, Activator.ID, "Empty optimized file: " + resultFile)); //$NON-NLS-1$
 			}
@@ -15,7 +15,7 @@ import ie.wombat.jbdiff.JBDiff;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
-import org.eclipse.equinox.internal.p2.sar.DirectByteArrayOutputStream;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
 import org.eclipse.equinox.internal.p2.sar.SarUtil;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
@@ -33,30 +33,45 @@ public class JBDiffZipStep extends JBDiffStep {
 	}
 
 	protected void performProcessing() throws IOException {
-		DirectByteArrayOutputStream sarredCurrent = new DirectByteArrayOutputStream();
-		SarUtil.zipToSar(((DirectByteArrayOutputStream) incomingStream).getInputStream(), sarredCurrent);
-		incomingStream = null;
-		DirectByteArrayOutputStream predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
-		byte[] diff = JBDiff.bsdiff(predecessor.getBuffer(), predecessor.getBufferLength(), sarredCurrent.getBuffer(), sarredCurrent.getBufferLength());
-		// free up the memory as soon as possible.
-		predecessor = null;
-		incomingStream = null;
-		sarredCurrent = null;
+		BufferPool.Buffer sarredCurrent = getBufferPool().createBuffer(false);
+		byte[] diff;
+		try {
+			SarUtil.zipToSar(((BufferPool.Buffer) incomingStream).getInputStream(), sarredCurrent);
+			((BufferPool.Buffer) incomingStream).release();
+			BufferPool.Buffer predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
+			try {
+				diff = JBDiff.bsdiff(predecessor.getBuffer(), predecessor.size(), sarredCurrent.getBuffer(), sarredCurrent.size());
+			} finally {
+				// give the memory back as soon as possible.
+				predecessor.release();
+			}
+		} finally {
+			sarredCurrent.release();
+		}
 
 		// copy the result of the optimization to the destination.
 		FileUtils.copyStream(new ByteArrayInputStream(diff), true, getDestination(), false);
 	}
 
-	private DirectByteArrayOutputStream fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
-		DirectByteArrayOutputStream zippedPredecessor = new DirectByteArrayOutputStream();
+	private BufferPool.Buffer fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
+		BufferPool.Buffer zippedPredecessor = getBufferPool().createBuffer(true);
+		try {
+			setStatus(repository.getArtifact(artifactDescriptor, zippedPredecessor, getProgressMonitor()));
+			if (!getStatus().isOK())
+				throw (IOException) new IOException(getStatus().getMessage()).initCause(getStatus().getException());
+			zippedPredecessor.close();
 
-		setStatus(repository.getArtifact(artifactDescriptor, zippedPredecessor, getProgressMonitor()));
-		if (!getStatus().isOK())
-			throw (IOException) new IOException(getStatus().getMessage()).initCause(getStatus().getException());
-
-		DirectByteArrayOutputStream result = new DirectByteArrayOutputStream();
-		SarUtil.zipToSar(zippedPredecessor.getInputStream(), result);
-		return result;
+			BufferPool.Buffer result = getBufferPool().createBuffer(false);
+			try {
+				SarUtil.zipToSar(zippedPredecessor.getInputStream(), result);
+			} catch (IOException e) {
+				result.release();
+				throw e;
+			}
+			return result;
+		} finally {
+			zippedPredecessor.release();
+		}
 	}
 
 }
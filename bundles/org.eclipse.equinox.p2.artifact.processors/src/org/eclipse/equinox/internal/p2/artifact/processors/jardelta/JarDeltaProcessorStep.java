@@ -15,7 +15,6 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.artifact.processors.AbstractDeltaProcessorStep;
 import org.eclipse.equinox.internal.p2.artifact.processors.Activator;
-import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 
 /**
@@ -31,7 +30,7 @@ public class JarDeltaProcessorStep extends AbstractDeltaProcessorStep {
 
 	protected OutputStream createIncomingStream() throws IOException {
 		incoming = File.createTempFile(INCOMING_ROOT, JAR_SUFFIX);
-		return new BufferedOutputStream(new FileOutputStream(incoming));
+		return createTempFileStream(incoming);
 	}
 
 	protected void cleanupTempFiles() {
@@ -46,8 +45,7 @@ public class JarDeltaProcessorStep extends AbstractDeltaProcessorStep {
 			resultFile = process();
 			// now write the optimized content to the destination
 			if (resultFile.length() > 0) {
-				InputStream resultStream = new BufferedInputStream(new FileInputStream(resultFile));
-				FileUtils.copyStream(resultStream, true, getDestination(), false);
+				copyToDestination(resultFile);
 			} else {
 				setStatus(new Status(IStatus.ERROR, Activator.ID, "Empty optimized file: " + resultFile)); //$NON-NLS-1$
 			}
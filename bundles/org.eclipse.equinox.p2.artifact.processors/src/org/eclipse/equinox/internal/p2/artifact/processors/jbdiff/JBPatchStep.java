@@ -13,9 +13,9 @@ package org.eclipse.equinox.internal.p2.artifact.processors.jbdiff;
 
 import ie.wombat.jbdiff.JBPatch;
 import java.io.*;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
 import org.eclipse.equinox.internal.p2.artifact.processors.AbstractDeltaProcessorStep;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
-import org.eclipse.equinox.internal.p2.sar.DirectByteArrayOutputStream;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 
 /**
@@ -28,27 +28,33 @@ public class JBPatchStep extends AbstractDeltaProcessorStep {
 	}
 
 	protected OutputStream createIncomingStream() throws IOException {
-		return new DirectByteArrayOutputStream();
+		// the whole artifact is needed in memory, so never spill it to disk
+		return getBufferPool().createBuffer(false);
 	}
 
 	protected void performProcessing() throws IOException {
-		DirectByteArrayOutputStream predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
-		DirectByteArrayOutputStream current = (DirectByteArrayOutputStream) incomingStream;
-		byte[] result = JBPatch.bspatch(predecessor.getBuffer(), predecessor.getBufferLength(), current.getBuffer(), current.getBufferLength());
-		// free up the memory as soon as possible.
-		predecessor = null;
-		current = null;
-		incomingStream = null;
+		BufferPool.Buffer predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
+		BufferPool.Buffer current = (BufferPool.Buffer) incomingStream;
+		byte[] result;
+		try {
+			result = JBPatch.bspatch(predecessor.getBuffer(), predecessor.size(), current.getBuffer(), current.size());
+		} finally {
+			// give the memory back as soon as possible.
+			predecessor.release();
+			current.release();
+		}
 
 		// copy the result of the optimization to the destination.
 		FileUtils.copyStream(new ByteArrayInputStream(result), true, getDestination(), false);
 	}
 
-	private DirectByteArrayOutputStream fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
-		DirectByteArrayOutputStream result = new DirectByteArrayOutputStream();
+	private BufferPool.Buffer fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
+		BufferPool.Buffer result = getBufferPool().createBuffer(false);
 		setStatus(repository.getArtifact(artifactDescriptor, result, getProgressMonitor()));
-		if (!getStatus().isOK())
+		if (!getStatus().isOK()) {
+			result.release();
 			throw (IOException) new IOException(getStatus().getMessage()).initCause(getStatus().getException());
+		}
 		return result;
 	}
 }
\ No newline at end of file
@@ -14,7 +14,7 @@ package org.eclipse.equinox.internal.p2.artifact.processors.jbdiff;
 import ie.wombat.jbdiff.JBPatch;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import org.eclipse.equinox.internal.p2.sar.DirectByteArrayOutputStream;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
 import org.eclipse.equinox.internal.p2.sar.SarUtil;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 
@@ -28,27 +28,40 @@ public class JBPatchZipStep extends JBPatchStep {
 	}
 
 	protected void performProcessing() throws IOException {
-		DirectByteArrayOutputStream predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
-		DirectByteArrayOutputStream current = (DirectByteArrayOutputStream) incomingStream;
-		byte[] result = JBPatch.bspatch(predecessor.getBuffer(), predecessor.getBufferLength(), current.getBuffer(), current.getBufferLength());
-		// free up the memory as soon as possible.
-		predecessor = null;
-		current = null;
-		incomingStream = null;
+		BufferPool.Buffer predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
+		BufferPool.Buffer current = (BufferPool.Buffer) incomingStream;
+		byte[] result;
+		try {
+			result = JBPatch.bspatch(predecessor.getBuffer(), predecessor.size(), current.getBuffer(), current.size());
+		} finally {
+			// give the memory back as soon as possible.
+			predecessor.release();
+			current.release();
+		}
 
 		// copy the result of the optimization to the destination.
 		SarUtil.sarToZip(new ByteArrayInputStream(result), true, getDestination(), false);
 	}
 
-	private DirectByteArrayOutputStream fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
-		DirectByteArrayOutputStream zippedPredecessor = new DirectByteArrayOutputStream();
-		setStatus(repository.getArtifact(artifactDescriptor, zippedPredecessor, getProgressMonitor()));
-		if (!getStatus().isOK())
-			throw (IOException) new IOException(getStatus().getMessage()).initCause(getStatus().getException());
+	private BufferPool.Buffer fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
+		BufferPool.Buffer zippedPredecessor = getBufferPool().createBuffer(true);
+		try {
+			setStatus(repository.getArtifact(artifactDescriptor, zippedPredecessor, getProgressMonitor()));
+			if (!getStatus().isOK())
+				throw (IOException) new IOException(getStatus().getMessage()).initCause(getStatus().getException());
+			zippedPredecessor.close();
 
-		DirectByteArrayOutputStream result = new DirectByteArrayOutputStream();
-		SarUtil.zipToSar(zippedPredecessor.getInputStream(), result);
-		return result;
+			BufferPool.Buffer result = getBufferPool().createBuffer(false);
+			try {
+				SarUtil.zipToSar(zippedPredecessor.getInputStream(), result);
+			} catch (IOException e) {
+				result.release();
+				throw e;
+			}
+			return result;
+		} finally {
+			zippedPredecessor.release();
+		}
 	}
 
 }
\ No newline at end of file
@@ -65,6 +65,8 @@ public abstract class AbstractBufferingStep extends ProcessingStep {
 				setStatus(new Status(IStatus.ERROR, Activator.ID, Messages.Empty_stream));
 			}
 		} finally {
+			if (incomingStream instanceof BufferPool.Buffer)
+				((BufferPool.Buffer) incomingStream).release();
 			incomingStream = null;
 			cleanupTempFiles();
 			cleanupWorkDir();
@@ -78,6 +80,20 @@ public abstract class AbstractBufferingStep extends ProcessingStep {
 
 	protected abstract void performProcessing() throws IOException;
 
+	/**
+	 * Returns a buffered stream writing to the given temporary file, using a pooled buffer.
+	 */
+	protected OutputStream createTempFileStream(File file) throws IOException {
+		return getBufferPool().createBufferedStream(new FileOutputStream(file));
+	}
+
+	/**
+	 * Copies the content of the given file to the destination of this step, using a pooled buffer.
+	 */
+	protected void copyToDestination(File file) throws IOException {
+		getBufferPool().copy(new FileInputStream(file), true, getDestination(), false);
+	}
+
 	protected void cleanupTempFiles() {
 	}
 
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.processing;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of the byte arrays used by processing steps to buffer and copy artifacts, so that
+ * processing many artifacts concurrently does not allocate new buffers for each of them.
+ * <p>
+ * Arrays are handed out in power of two sizes from {@link #MIN_SIZE} up to a maximum pooled
+ * size, and the pool retains at most a fixed number of bytes of released arrays. The pool
+ * also creates {@link Buffer}s, which hold small artifacts in memory and spill larger ones
+ * to a temporary file.
+ * </p>
+ * <p>
+ * The pool counts the requests served from released arrays (hits), the arrays it had to
+ * allocate (misses) and the buffers spilled to disk.
+ * </p>
+ */
+public class BufferPool {
+	public static final int MIN_SIZE = 16 * 1024;
+	private static final int MAX_POOLED_SIZE = 1024 * 1024;
+	private static final long DEFAULT_MAX_RETAINED = 16 * MAX_POOLED_SIZE;
+	private static final int DEFAULT_SPILL_THRESHOLD = 4 * MAX_POOLED_SIZE;
+	private static final String SPILL_PREFIX = "p2.buffer"; //$NON-NLS-1$
+	private static final String SPILL_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	private static final BufferPool DEFAULT = new BufferPool(DEFAULT_MAX_RETAINED, DEFAULT_SPILL_THRESHOLD);
+
+	// the released arrays of each size class, the arrays of class i have MIN_SIZE << i bytes
+	private final List<List<byte[]>> free = new ArrayList<List<byte[]>>();
+	private final long maxRetained;
+	private final int spillThreshold;
+	private long retained = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long spills = 0;
+
+	public static BufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param maxRetained the maximum number of bytes of released arrays kept by the pool
+	 * @param spillThreshold the size above which a {@link Buffer} is moved to a temporary file
+	 */
+	public BufferPool(long maxRetained, int spillThreshold) {
+		this.maxRetained = maxRetained;
+		this.spillThreshold = spillThreshold;
+		for (int size = MIN_SIZE; size <= MAX_POOLED_SIZE; size <<= 1)
+			free.add(new ArrayList<byte[]>());
+	}
+
+	/**
+	 * Returns an array of at least the given size. The array should be given back with
+	 * {@link #release(byte[])} once it is not used anymore.
+	 */
+	public byte[] acquire(int minSize) {
+		if (minSize > MAX_POOLED_SIZE) {
+			synchronized (this) {
+				misses++;
+			}
+			return new byte[minSize];
+		}
+		int sizeClass = 0;
+		int size = MIN_SIZE;
+		while (size < minSize) {
+			size <<= 1;
+			sizeClass++;
+		}
+		synchronized (this) {
+			List<byte[]> arrays = free.get(sizeClass);
+			if (!arrays.isEmpty()) {
+				hits++;
+				retained -= size;
+				return arrays.remove(arrays.size() - 1);
+			}
+			misses++;
+		}
+		return new byte[size];
+	}
+
+	/**
+	 * Gives an array obtained from {@link #acquire(int)} back to the pool. The caller must
+	 * not use the array anymore.
+	 */
+	public void release(byte[] array) {
+		if (array == null)
+			return;
+		int length = array.length;
+		if (length < MIN_SIZE || length > MAX_POOLED_SIZE || (length & (length - 1)) != 0)
+			return;
+		int sizeClass = Integer.numberOfTrailingZeros(length) - Integer.numberOfTrailingZeros(MIN_SIZE);
+		synchronized (this) {
+			if (retained + length > maxRetained)
+				return;
+			retained += length;
+			free.get(sizeClass).add(array);
+		}
+	}
+
+	/**
+	 * Returns a buffered stream writing to the given stream, whose buffer is given back to
+	 * the pool when the stream is closed.
+	 */
+	public OutputStream createBufferedStream(OutputStream destination) {
+		return new BufferedStream(destination);
+	}
+
+	/**
+	 * Creates a buffer holding its content in memory.
+	 *
+	 * @param spill whether the buffer may move its content to a temporary file once it exceeds
+	 * the spill threshold of the pool
+	 */
+	public Buffer createBuffer(boolean spill) {
+		return new Buffer(spill);
+	}
+
+	/**
+	 * Copies the given input stream to the given output stream using a pooled array.
+	 */
+	public void copy(InputStream in, boolean closeIn, OutputStream out, boolean closeOut) throws IOException {
+		byte[] buffer = acquire(MIN_SIZE);
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+		} finally {
+			release(buffer);
+			try {
+				if (closeIn)
+					in.close();
+			} finally {
+				if (closeOut)
+					out.close();
+			}
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getSpills() {
+		return spills;
+	}
+
+	synchronized void spilled() {
+		spills++;
+	}
+
+	private class BufferedStream extends OutputStream {
+		private final OutputStream destination;
+		private byte[] buffer = acquire(MIN_SIZE);
+		private int count = 0;
+
+		BufferedStream(OutputStream destination) {
+			this.destination = destination;
+		}
+
+		public void write(int b) throws IOException {
+			if (count == buffer.length)
+				flushBuffer();
+			buffer[count++] = (byte) b;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len >= buffer.length) {
+				flushBuffer();
+				destination.write(b, off, len);
+				return;
+			}
+			if (len > buffer.length - count)
+				flushBuffer();
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		}
+
+		private void flushBuffer() throws IOException {
+			if (count > 0) {
+				destination.write(buffer, 0, count);
+				count = 0;
+			}
+		}
+
+		public void flush() throws IOException {
+			flushBuffer();
+			destination.flush();
+		}
+
+		public void close() throws IOException {
+			if (buffer == null)
+				return;
+			try {
+				flushBuffer();
+			} finally {
+				release(buffer);
+				buffer = null;
+				destination.close();
+			}
+		}
+	}
+
+	/**
+	 * An output stream keeping what is written to it in a pooled array. A buffer that may
+	 * spill moves its content to a temporary file once it grows past the spill threshold.
+	 * The resources held by the buffer are freed with {@link #release()}.
+	 */
+	public class Buffer extends OutputStream {
+		private final boolean mayspill;
+		private byte[] bytes;
+		private int count = 0;
+		private File file;
+		private OutputStream fileStream;
+
+		Buffer(boolean spill) {
+			this.mayspill = spill;
+		}
+
+		public void write(int b) throws IOException {
+			if (ensureCapacity(1))
+				bytes[count++] = (byte) b;
+			else
+				fileStream.write(b);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (ensureCapacity(len)) {
+				System.arraycopy(b, off, bytes, count, len);
+				count += len;
+			} else
+				fileStream.write(b, off, len);
+		}
+
+		/*
+		 * Returns whether there is room in memory for the given number of bytes, otherwise
+		 * they go to the spill file.
+		 */
+		private boolean ensureCapacity(int length) throws IOException {
+			if (file != null)
+				return false;
+			int needed = count + length;
+			if (mayspill && needed > spillThreshold) {
+				spill();
+				return false;
+			}
+			if (bytes != null && needed <= bytes.length)
+				return true;
+			int newSize = bytes == null ? needed : Math.max(needed, bytes.length * 2);
+			byte[] newBytes = acquire(newSize);
+			if (bytes != null) {
+				System.arraycopy(bytes, 0, newBytes, 0, count);
+				BufferPool.this.release(bytes);
+			}
+			bytes = newBytes;
+			return true;
+		}
+
+		private void spill() throws IOException {
+			file = File.createTempFile(SPILL_PREFIX, SPILL_SUFFIX);
+			fileStream = createBufferedStream(new FileOutputStream(file));
+			if (bytes != null) {
+				fileStream.write(bytes, 0, count);
+				BufferPool.this.release(bytes);
+				bytes = null;
+			}
+			spilled();
+		}
+
+		public void flush() throws IOException {
+			if (fileStream != null)
+				fileStream.flush();
+		}
+
+		public void close() throws IOException {
+			if (fileStream != null) {
+				fileStream.close();
+				fileStream = null;
+			}
+		}
+
+		public boolean isInMemory() {
+			return file == null;
+		}
+
+		/**
+		 * Returns the array holding the content of this buffer. Only the first {@link #size()}
+		 * bytes of the array are meaningful.
+		 *
+		 * @throws IllegalStateException if the content was spilled to disk
+		 */
+		public byte[] getBuffer() {
+			if (file != null)
+				throw new IllegalStateException();
+			return bytes == null ? new byte[0] : bytes;
+		}
+
+		public int size() {
+			if (file != null)
+				throw new IllegalStateException();
+			return count;
+		}
+
+		/**
+		 * Returns a stream reading the content of this buffer. The buffer must have been closed
+		 * if it was spilled.
+		 */
+		public InputStream getInputStream() throws IOException {
+			if (file != null)
+				return new FileInputStream(file);
+			return new ByteArrayInputStream(getBuffer(), 0, count);
+		}
+
+		/**
+		 * Writes the content of this buffer to the given stream.
+		 */
+		public void writeTo(OutputStream out) throws IOException {
+			if (file == null) {
+				if (count > 0)
+					out.write(bytes, 0, count);
+				return;
+			}
+			close();
+			copy(new FileInputStream(file), true, out, false);
+		}
+
+		/**
+		 * Gives the memory of this buffer back to the pool and deletes its spill file. The
+		 * buffer cannot be used afterwards.
+		 */
+		public void release() {
+			BufferPool.this.release(bytes);
+			bytes = null;
+			count = 0;
+			if (fileStream != null) {
+				try {
+					fileStream.close();
+				} catch (IOException e) {
+					// the file is deleted anyway
+				}
+				fileStream = null;
+			}
+			if (file != null) {
+				file.delete();
+				file = null;
+			}
+		}
+	}
+}
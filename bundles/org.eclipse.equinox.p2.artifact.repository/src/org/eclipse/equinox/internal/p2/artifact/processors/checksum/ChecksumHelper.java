@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.processors.checksum;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+
+/**
+ * Computes several message digests of a stream of bytes in a single pass and maps
+ * them to and from artifact descriptor properties.
+ * <p>
+ * Checksums are identified by the lower case name of their algorithm ("md5", "sha-256",
+ * "sha-512"). The MD5 checksums are stored in the historical {@link IArtifactDescriptor#DOWNLOAD_MD5}
+ * and {@link IArtifactDescriptor#ARTIFACT_MD5} properties, the other ones in properties named
+ * after the {@link IArtifactDescriptor#DOWNLOAD_CHECKSUM} or {@link IArtifactDescriptor#ARTIFACT_CHECKSUM}
+ * prefix.
+ * </p>
+ */
+public class ChecksumHelper {
+	public static final String MD5 = "md5"; //$NON-NLS-1$
+	public static final String SHA_256 = "sha-256"; //$NON-NLS-1$
+	public static final String SHA_512 = "sha-512"; //$NON-NLS-1$
+
+	/**
+	 * The checksums computed for artifacts, in the order of increasing strength.
+	 */
+	public static final String[] ALGORITHMS = {MD5, SHA_256, SHA_512};
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>();
+
+	/**
+	 * Creates a helper computing all known checksums.
+	 */
+	public ChecksumHelper() {
+		this(ALGORITHMS);
+	}
+
+	/**
+	 * Creates a helper computing the given checksums. Algorithms that are not supported
+	 * by the runtime are silently ignored.
+	 */
+	public ChecksumHelper(String[] algorithms) {
+		for (int i = 0; i < algorithms.length; i++) {
+			try {
+				digests.put(algorithms[i], MessageDigest.getInstance(algorithms[i].toUpperCase()));
+			} catch (NoSuchAlgorithmException e) {
+				// not available in this runtime
+			}
+		}
+	}
+
+	/**
+	 * Returns whether no checksum is being computed.
+	 */
+	public boolean isEmpty() {
+		return digests.isEmpty();
+	}
+
+	public boolean isComputing(String algorithm) {
+		return digests.containsKey(algorithm);
+	}
+
+	public void update(int b) {
+		for (MessageDigest digest : digests.values())
+			digest.update((byte) b);
+	}
+
+	public void update(byte[] bytes, int offset, int length) {
+		for (MessageDigest digest : digests.values())
+			digest.update(bytes, offset, length);
+	}
+
+	/**
+	 * Completes the computation and returns the checksums as hex strings keyed by algorithm.
+	 * The helper is reset afterwards.
+	 */
+	public Map<String, String> getChecksums() {
+		Map<String, String> result = new LinkedHashMap<String, String>(digests.size());
+		for (Entry<String, MessageDigest> entry : digests.entrySet())
+			result.put(entry.getKey(), toHexString(entry.getValue().digest()));
+		return result;
+	}
+
+	/**
+	 * Reads the given file once and returns all known checksums of its content, or <code>null</code>
+	 * if the file is a directory, does not exist or cannot be read.
+	 */
+	public static Map<String, String> computeChecksums(File file) {
+		return computeChecksums(file, ALGORITHMS);
+	}
+
+	/**
+	 * Reads the given file once and returns the requested checksums of its content, or <code>null</code>
+	 * if the file is a directory, does not exist or cannot be read.
+	 */
+	public static Map<String, String> computeChecksums(File file, String[] algorithms) {
+		if (file == null || file.isDirectory() || !file.exists())
+			return null;
+		ChecksumHelper helper = new ChecksumHelper(algorithms);
+		InputStream input = null;
+		try {
+			input = new FileInputStream(file);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				helper.update(buffer, 0, read);
+			return helper.getChecksums();
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (input != null)
+				try {
+					input.close();
+				} catch (IOException e) {
+					// ignore
+				}
+		}
+	}
+
+	/**
+	 * Returns the name of the descriptor property holding the given checksum.
+	 * @param prefix either {@link IArtifactDescriptor#DOWNLOAD_CHECKSUM} or {@link IArtifactDescriptor#ARTIFACT_CHECKSUM}
+	 * @param algorithm the checksum algorithm
+	 */
+	public static String getPropertyName(String prefix, String algorithm) {
+		if (MD5.equals(algorithm)) {
+			if (IArtifactDescriptor.DOWNLOAD_CHECKSUM.equals(prefix))
+				return IArtifactDescriptor.DOWNLOAD_MD5;
+			if (IArtifactDescriptor.ARTIFACT_CHECKSUM.equals(prefix))
+				return IArtifactDescriptor.ARTIFACT_MD5;
+		}
+		return prefix + '.' + algorithm;
+	}
+
+	/**
+	 * Returns the checksums with the given prefix recorded in the given descriptor, keyed by algorithm.
+	 */
+	public static Map<String, String> getChecksums(IArtifactDescriptor descriptor, String prefix) {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		for (int i = 0; i < ALGORITHMS.length; i++) {
+			String value = descriptor.getProperty(getPropertyName(prefix, ALGORITHMS[i]));
+			if (value != null)
+				result.put(ALGORITHMS[i], value);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the known algorithms for which the given descriptor has no checksum with the given prefix.
+	 */
+	public static String[] getMissingAlgorithms(IArtifactDescriptor descriptor, String prefix) {
+		List<String> result = new ArrayList<String>(ALGORITHMS.length);
+		for (int i = 0; i < ALGORITHMS.length; i++) {
+			if (descriptor.getProperty(getPropertyName(prefix, ALGORITHMS[i])) == null)
+				result.add(ALGORITHMS[i]);
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Records the given checksums in the descriptor properties with the given prefix.
+	 */
+	public static void setChecksums(ArtifactDescriptor descriptor, String prefix, Map<String, String> checksums) {
+		if (checksums == null)
+			return;
+		for (Entry<String, String> entry : checksums.entrySet())
+			descriptor.setProperty(getPropertyName(prefix, entry.getKey()), entry.getValue());
+	}
+
+	public static String toHexString(byte[] digest) {
+		StringBuffer buf = new StringBuffer(digest.length * 2);
+		for (int i = 0; i < digest.length; i++) {
+			if ((digest[i] & 0xFF) < 0x10)
+				buf.append('0');
+			buf.append(Integer.toHexString(digest[i] & 0xFF));
+		}
+		return buf.toString();
+	}
+}
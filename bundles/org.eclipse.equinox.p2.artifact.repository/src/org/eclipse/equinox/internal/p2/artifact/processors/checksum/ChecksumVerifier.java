@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.processors.checksum;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
+import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStep;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IProcessingStepDescriptor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * A processing step verifying all expected checksums of the bytes streaming through it
+ * in a single pass. The checksums computed are available after the step is closed.
+ */
+public class ChecksumVerifier extends ProcessingStep {
+
+	private Map<String, String> expected;
+	private ChecksumHelper checksums;
+	private Map<String, String> computed;
+
+	public ChecksumVerifier() {
+		super();
+	}
+
+	/**
+	 * Creates a step verifying the given checksums, keyed by algorithm.
+	 */
+	public ChecksumVerifier(Map<String, String> expected) {
+		super();
+		this.expected = expected;
+		basicInitialize(null);
+	}
+
+	//This handles the case where the verification is initiated by a processing step. The
+	//data of the step is the property prefix of the checksums to verify.
+	public void initialize(IProvisioningAgent agent, IProcessingStepDescriptor descriptor, IArtifactDescriptor context) {
+		super.initialize(agent, descriptor, context);
+		String prefix = descriptor.getData();
+		if (!IArtifactDescriptor.ARTIFACT_CHECKSUM.equals(prefix))
+			prefix = IArtifactDescriptor.DOWNLOAD_CHECKSUM;
+		expected = ChecksumHelper.getChecksums(context, prefix);
+		basicInitialize(descriptor);
+	}
+
+	private void basicInitialize(IProcessingStepDescriptor descriptor) {
+		int code = (descriptor == null) ? IStatus.ERROR : descriptor.isRequired() ? IStatus.ERROR : IStatus.INFO;
+		if (expected == null || expected.isEmpty()) {
+			setStatus(new Status(code, Activator.ID, Messages.Error_invalid_checksum));
+			expected = Collections.emptyMap();
+		}
+		checksums = new ChecksumHelper(expected.keySet().toArray(new String[expected.size()]));
+		for (String algorithm : expected.keySet()) {
+			if (!checksums.isComputing(algorithm))
+				setStatus(new Status(code, Activator.ID, NLS.bind(Messages.Error_algorithm_unavailable, algorithm)));
+		}
+	}
+
+	public void write(int b) throws IOException {
+		checksums.update(b);
+		getDestination().write(b);
+	}
+
+	public void write(byte[] bytes, int off, int len) throws IOException {
+		checksums.update(bytes, off, len);
+		getDestination().write(bytes, off, len);
+	}
+
+	/**
+	 * Returns the checksums computed by this step keyed by algorithm, or <code>null</code>
+	 * if the step has not been closed yet.
+	 */
+	public Map<String, String> getComputedChecksums() {
+		return computed;
+	}
+
+	public void close() throws IOException {
+		if (computed == null) {
+			computed = checksums.getChecksums();
+			for (Entry<String, String> entry : computed.entrySet()) {
+				String value = expected.get(entry.getKey());
+				// if the hashes don't line up set the status to error.
+				if (!entry.getValue().equalsIgnoreCase(value)) {
+					int code = ChecksumHelper.MD5.equals(entry.getKey()) ? ProvisionException.ARTIFACT_MD5_NOT_MATCH : ProvisionException.ARTIFACT_CHECKSUM_NOT_MATCH;
+					setStatus(new Status(IStatus.ERROR, Activator.ID, code, NLS.bind(Messages.Error_unexpected_checksum, new Object[] {entry.getKey(), value, entry.getValue()}), null));
+				}
+			}
+		}
+		super.close();
+	}
+}
@@ -68,6 +68,11 @@ public class MD5Verifier extends ProcessingStep {
 		getDestination().write(b);
 	}
 
+	public void write(byte[] bytes, int off, int len) throws IOException {
+		md5.update(bytes, off, len);
+		getDestination().write(bytes, off, len);
+	}
+
 	public void close() throws IOException {
 		byte[] digest = md5.digest();
 		StringBuffer buf = new StringBuffer();
@@ -16,7 +16,6 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.artifact.processing.AbstractBufferingStep;
 import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
-import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.p2.jarprocessor.UnpackStep;
 import org.eclipse.equinox.internal.p2.jarprocessor.Utils;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
@@ -36,7 +35,7 @@ public class Pack200ProcessorStep extends AbstractBufferingStep {
 
 	protected OutputStream createIncomingStream() throws IOException {
 		incoming = File.createTempFile(INCOMING_ROOT, JAR_SUFFIX + PACKED_SUFFIX);
-		return new BufferedOutputStream(new FileOutputStream(incoming));
+		return createTempFileStream(incoming);
 	}
 
 	public void initialize(IProvisioningAgent agent, IProcessingStepDescriptor descriptor, IArtifactDescriptor context) {
@@ -70,8 +69,7 @@ public class Pack200ProcessorStep extends AbstractBufferingStep {
 			resultFile = process();
 			// now write the processed content to the destination
 			if (resultFile.length() > 0) {
-				InputStream resultStream = new BufferedInputStream(new FileInputStream(resultFile));
-				FileUtils.copyStream(resultStream, true, getDestination(), false);
+				copyToDestination(resultFile);
 			} else {
 				setStatus(new Status(IStatus.ERROR, Activator.ID, "Unpacking fails because intermediate file is empty: " + resultFile)); //$NON-NLS-1$
 			}
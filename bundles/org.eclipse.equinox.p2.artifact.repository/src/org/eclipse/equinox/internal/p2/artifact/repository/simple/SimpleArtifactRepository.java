@@ -23,7 +23,9 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
-import org.eclipse.equinox.internal.p2.artifact.processors.md5.MD5Verifier;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumHelper;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumVerifier;
 import org.eclipse.equinox.internal.p2.artifact.repository.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.Messages;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
@@ -71,6 +73,13 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 */
 	public static final String PROP_FORCE_THREADING = "eclipse.p2.force.threading"; //$NON-NLS-1$
 
+	/**
+	 * The key for a boolean repository property. When it is <code>true</code>, the checksums
+	 * that an artifact stored in the repository is missing are computed from the bytes as
+	 * they are stored.
+	 */
+	public static final String PROP_COMPUTE_CHECKSUMS = "p2.computeChecksums"; //$NON-NLS-1$
+
 	/**
 	 * Location of the repository lock
 	 */
@@ -101,6 +110,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		private File file;
 		private IStatus status = Status.OK_STATUS;
 		private OutputStream firstLink;
+		private ChecksumHelper checksums;
 
 		public ArtifactOutputStream(OutputStream os, IArtifactDescriptor descriptor) {
 			this(os, descriptor, null);
@@ -110,6 +120,13 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			this.destination = os;
 			this.descriptor = descriptor;
 			this.file = file;
+			// the missing checksums are computed from the bytes as they are stored, so that no
+			// second read of the artifact is needed
+			if (descriptor instanceof ArtifactDescriptor && Boolean.TRUE.toString().equals(getProperty(PROP_COMPUTE_CHECKSUMS))) {
+				String[] missing = ChecksumHelper.getMissingAlgorithms(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM);
+				if (missing.length > 0)
+					checksums = new ChecksumHelper(missing);
+			}
 		}
 
 		public void close() throws IOException {
@@ -135,6 +152,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			OutputStream testStream = firstLink == null ? this : firstLink;
 			if (ProcessingStepHandler.checkStatus(testStream).isOK() && count > 0) {
 				((ArtifactDescriptor) descriptor).setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, Long.toString(count));
+				if (checksums != null)
+					ChecksumHelper.setChecksums((ArtifactDescriptor) descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM, checksums.getChecksums());
 				addDescriptor(descriptor);
 			} else if (file != null)
 				// cleanup if possible
@@ -156,16 +175,22 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		public void write(byte[] b) throws IOException {
 			destination.write(b);
 			count += b.length;
+			if (checksums != null)
+				checksums.update(b, 0, b.length);
 		}
 
 		public void write(byte[] b, int off, int len) throws IOException {
 			destination.write(b, off, len);
 			count += len;
+			if (checksums != null)
+				checksums.update(b, off, len);
 		}
 
 		public void write(int b) throws IOException {
 			destination.write(b);
 			count++;
+			if (checksums != null)
+				checksums.update(b);
 		}
 
 		public void setFirstLink(OutputStream value) {
@@ -434,8 +459,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	private synchronized OutputStream addPostSteps(ProcessingStepHandler handler, IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		ArrayList<ProcessingStep> steps = new ArrayList<ProcessingStep>();
 		steps.add(new SignatureVerifier());
-		if (MD5_ARTIFACT_CHECK_ENABLED && descriptor.getProperty(IArtifactDescriptor.ARTIFACT_MD5) != null)
-			steps.add(new MD5Verifier(descriptor.getProperty(IArtifactDescriptor.ARTIFACT_MD5)));
+		ProcessingStep checksumVerifier = createChecksumVerifier(descriptor, IArtifactDescriptor.ARTIFACT_CHECKSUM);
+		if (checksumVerifier != null)
+			steps.add(checksumVerifier);
 		if (steps.isEmpty())
 			return destination;
 		ProcessingStep[] stepArray = steps.toArray(new ProcessingStep[steps.size()]);
@@ -447,8 +473,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		ArrayList<ProcessingStep> steps = new ArrayList<ProcessingStep>();
 		if (IArtifactDescriptor.TYPE_ZIP.equals(descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_CONTENTTYPE)))
 			steps.add(new ZipVerifierStep());
-		if (MD5_CHECK_ENABLED && descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5) != null)
-			steps.add(new MD5Verifier(descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5)));
+		ProcessingStep checksumVerifier = createChecksumVerifier(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM);
+		if (checksumVerifier != null)
+			steps.add(checksumVerifier);
 		// Add steps here if needed
 		if (steps.isEmpty())
 			return destination;
@@ -457,6 +484,22 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return handler.link(stepArray, destination, monitor);
 	}
 
+	/**
+	 * Returns a step verifying all checksums with the given prefix recorded in the descriptor
+	 * in a single pass, or <code>null</code> if there is nothing to verify. MD5 checksums are
+	 * only verified if the corresponding check is enabled.
+	 * @param prefix either {@link IArtifactDescriptor#DOWNLOAD_CHECKSUM} or {@link IArtifactDescriptor#ARTIFACT_CHECKSUM}
+	 */
+	public static ProcessingStep createChecksumVerifier(IArtifactDescriptor descriptor, String prefix) {
+		Map<String, String> expected = ChecksumHelper.getChecksums(descriptor, prefix);
+		boolean md5Enabled = IArtifactDescriptor.ARTIFACT_CHECKSUM.equals(prefix) ? MD5_ARTIFACT_CHECK_ENABLED : MD5_CHECK_ENABLED;
+		if (!md5Enabled)
+			expected.remove(ChecksumHelper.MD5);
+		if (expected.isEmpty())
+			return null;
+		return new ChecksumVerifier(expected);
+	}
+
 	private byte[] bytesFromHexString(String string) {
 		byte[] bytes = new byte[UniversalUniqueIdentifier.BYTES_SIZE];
 		for (int i = 0; i < string.length(); i += 2) {
@@ -629,8 +672,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 */
 	private IStatus copyFileToStream(File in, OutputStream out, IProgressMonitor monitor) {
 		// Buffer filled with contents from the stream at a time
-		int bufferSize = 16 * 1024;
-		byte[] buffer = new byte[bufferSize];
+		int bufferSize = BufferPool.MIN_SIZE;
+		byte[] buffer = BufferPool.getDefault().acquire(bufferSize);
 		// Number of passes in the below loop, convert to integer which is needed in monitor conversion below
 		int expected_loops = new Double(in.length() / bufferSize).intValue() + 1; // +1: also count the initial run
 		SubMonitor sub = SubMonitor.convert(monitor, Messages.downloading + in.getName(), expected_loops);
@@ -654,6 +697,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			((DownloadStatus) status).setTransferRate(in.length() / Math.max((end - start), 1) * 1000);
 		} catch (IOException ioe) {
 			status = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.error_copying_local_file, in.getAbsolutePath()), ioe);
+		} finally {
+			BufferPool.getDefault().release(buffer);
 		}
 		sub.done();
 		return status;
@@ -968,7 +1013,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 			// finally create and return an output stream suitably wrapped so that when it is 
 			// closed the repository is updated with the descriptor
-			return new ArtifactOutputStream(new BufferedOutputStream(target), newDescriptor, outputFile);
+			return new ArtifactOutputStream(BufferPool.getDefault().createBufferedStream(target), newDescriptor, outputFile);
 		} catch (IOException e) {
 			throw failedWrite(e);
 		}
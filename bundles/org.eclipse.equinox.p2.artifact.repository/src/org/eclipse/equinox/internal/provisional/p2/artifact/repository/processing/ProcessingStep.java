@@ -14,6 +14,7 @@ package org.eclipse.equinox.internal.provisional.p2.artifact.repository.processi
 import java.io.IOException;
 import java.io.OutputStream;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
 import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
@@ -29,6 +30,7 @@ public abstract class ProcessingStep extends OutputStream implements IStateful {
 	private OutputStream destination;
 	private IProgressMonitor monitor;
 	private IStatus status = Status.OK_STATUS;
+	private BufferPool bufferPool;
 
 	protected ProcessingStep() {
 		super();
@@ -106,6 +108,19 @@ public abstract class ProcessingStep extends OutputStream implements IStateful {
 		return monitor;
 	}
 
+	/**
+	 * Get the pool from which this step should take the buffers and temporary storage
+	 * it needs to process the data.
+	 * @return the buffer pool
+	 */
+	protected BufferPool getBufferPool() {
+		return bufferPool != null ? bufferPool : BufferPool.getDefault();
+	}
+
+	void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
 	/**
 	 * Get the stream to write the processed data into.
 	 * 
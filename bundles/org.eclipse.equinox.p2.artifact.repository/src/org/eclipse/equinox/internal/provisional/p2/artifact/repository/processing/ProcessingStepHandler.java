@@ -14,6 +14,7 @@ package org.eclipse.equinox.internal.provisional.p2.artifact.repository.processi
 import java.io.OutputStream;
 import java.util.ArrayList;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
 import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository.ArtifactOutputStream;
 import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
@@ -29,6 +30,24 @@ public class ProcessingStepHandler {
 
 	private static final String PROCESSING_STEPS_EXTENSION_ID = "org.eclipse.equinox.p2.artifact.repository.processingSteps"; //$NON-NLS-1$
 
+	private final BufferPool bufferPool;
+
+	public ProcessingStepHandler() {
+		this(BufferPool.getDefault());
+	}
+
+	/**
+	 * Creates a handler whose steps take their buffers from the given pool.
+	 * @param bufferPool the pool of the created steps
+	 */
+	public ProcessingStepHandler(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
 	//TODO This method can go
 	public static IStatus checkStatus(OutputStream output) {
 		return getStatus(output, true);
@@ -143,6 +162,7 @@ public class ProcessingStepHandler {
 			try {
 				Object object = config[0].createExecutableExtension("class"); //$NON-NLS-1$
 				ProcessingStep step = (ProcessingStep) object;
+				step.setBufferPool(bufferPool);
 				step.initialize(agent, descriptor, context);
 				return step;
 			} catch (Exception e) {
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.core;
+
+/**
+ * Delivery statistics of the {@link ProvisioningEventBus} for a single listener.
+ * The latency of an event is the time between its publication and the return of
+ * the listener's <code>notify</code> method. All times are in milliseconds.
+ */
+public class ListenerStatistics {
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private long delivered;
+	private long coalesced;
+	private long blocked;
+	private long totalLatency;
+	private long maxLatency;
+	private long totalNotifyTime;
+
+	synchronized void recordDelivery(long latencyNanos, long notifyNanos) {
+		delivered++;
+		totalLatency += latencyNanos;
+		totalNotifyTime += notifyNanos;
+		if (latencyNanos > maxLatency)
+			maxLatency = latencyNanos;
+	}
+
+	synchronized void recordCoalesced() {
+		coalesced++;
+	}
+
+	synchronized void recordBlocked() {
+		blocked++;
+	}
+
+	/**
+	 * Returns the number of events delivered to the listener.
+	 */
+	public synchronized long getDeliveredCount() {
+		return delivered;
+	}
+
+	/**
+	 * Returns the number of events that were not delivered because a later event superseded them.
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalesced;
+	}
+
+	/**
+	 * Returns the number of events whose publisher waited because the listener's queue was full.
+	 */
+	public synchronized long getBlockedCount() {
+		return blocked;
+	}
+
+	public synchronized long getAverageLatency() {
+		return delivered == 0 ? 0 : totalLatency / delivered / NANOS_PER_MILLI;
+	}
+
+	public synchronized long getMaxLatency() {
+		return maxLatency / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Returns the average time spent in the listener's <code>notify</code> method.
+	 */
+	public synchronized long getAverageNotifyTime() {
+		return delivered == 0 ? 0 : totalNotifyTime / delivered / NANOS_PER_MILLI;
+	}
+
+	public synchronized String toString() {
+		return "delivered=" + delivered + ", coalesced=" + coalesced + ", blocked=" + blocked + ", avgLatency=" + getAverageLatency() + "ms, maxLatency=" + getMaxLatency() + "ms, avgNotify=" + getAverageNotifyTime() + "ms"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+	}
+}
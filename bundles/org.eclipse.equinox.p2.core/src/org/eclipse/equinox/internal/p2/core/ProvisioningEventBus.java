@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,27 +10,199 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.core;
 
-import java.util.EventObject;
+import java.util.*;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
 import org.eclipse.equinox.p2.core.spi.IAgentService;
 import org.eclipse.osgi.framework.eventmgr.*;
 
 /**
  * Default implementation of the {@link IProvisioningEventBus} service.
+ * <p>
+ * Synchronous listeners are notified on the publishing thread. Every asynchronous listener
+ * has its own bounded queue of pending events, which is drained in publication order by one
+ * dispatch thread at a time, so that a slow listener only delays its own events. Dispatch
+ * threads are created as needed up to a maximum, and end when they are idle.
+ * A newly published {@link ICoalescableEvent} takes the place of the pending coalescable
+ * event with the same key, if any. No event is ever dropped: when the queue of a listener is
+ * full, the publisher waits until the listener has caught up. Listeners publishing events on a
+ * dispatch thread do not wait, so that listeners never wait for one another.
+ * </p>
  */
 public class ProvisioningEventBus implements EventDispatcher<ProvisioningListener, ProvisioningListener, EventObject>, IProvisioningEventBus, IAgentService {
+	/**
+	 * Framework property holding the maximum number of pending events per asynchronous listener.
+	 */
+	public static final String PROP_QUEUE_SIZE = "eclipse.p2.eventbus.queueSize"; //$NON-NLS-1$
+	/**
+	 * Framework property holding the maximum number of dispatch threads.
+	 */
+	public static final String PROP_THREADS = "eclipse.p2.eventbus.threads"; //$NON-NLS-1$
+
+	private static final int DEFAULT_QUEUE_SIZE = 10000;
+	private static final int DEFAULT_THREADS = 8;
+	// the time in milliseconds an idle dispatch thread is kept
+	private static final long KEEP_ALIVE = 5000;
+	// listeners taking longer than this many milliseconds to handle an event are traced
+	private static final long SLOW_NOTIFY = 100;
+
 	private final CopyOnWriteIdentityMap<ProvisioningListener, ProvisioningListener> syncListeners = new CopyOnWriteIdentityMap<ProvisioningListener, ProvisioningListener>();
-	private final CopyOnWriteIdentityMap<ProvisioningListener, ProvisioningListener> asyncListeners = new CopyOnWriteIdentityMap<ProvisioningListener, ProvisioningListener>();
+	private final CopyOnWriteIdentityMap<ProvisioningListener, ListenerDispatcher> asyncListeners = new CopyOnWriteIdentityMap<ProvisioningListener, ListenerDispatcher>();
+	private final CopyOnWriteIdentityMap<ProvisioningListener, ListenerStatistics> statistics = new CopyOnWriteIdentityMap<ProvisioningListener, ListenerStatistics>();
 	private EventManager eventManager = new EventManager("Provisioning Event Dispatcher"); //$NON-NLS-1$
+	private final int queueSize = Math.max(1, getIntProperty(PROP_QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+	private final int maxThreads = Math.max(1, getIntProperty(PROP_THREADS, DEFAULT_THREADS));
 
 	private Object dispatchEventLock = new Object();
 	/* @GuardedBy("dispatchEventLock") */
 	private boolean closed = false;
 	/* @GuardedBy("dispatchEventLock") */
 	private int dispatchingEvents = 0;
+	/* @GuardedBy("dispatchEventLock") */
+	private final LinkedList<ListenerDispatcher> readyDispatchers = new LinkedList<ListenerDispatcher>();
+	/* @GuardedBy("dispatchEventLock") */
+	private int threads = 0;
+	/* @GuardedBy("dispatchEventLock") */
+	private int idleThreads = 0;
+	/* @GuardedBy("dispatchEventLock") */
+	private int threadCount = 0;
+
+	private static class PendingEvent {
+		EventObject event;
+		long published = System.nanoTime();
+
+		PendingEvent(EventObject event) {
+			this.event = event;
+		}
+	}
+
+	/**
+	 * The queue of events waiting to be delivered to one asynchronous listener.
+	 */
+	private class ListenerDispatcher implements Runnable {
+		final ProvisioningListener listener;
+		final ListenerStatistics stats;
+		private final LinkedList<PendingEvent> queue = new LinkedList<PendingEvent>();
+		// the pending coalescable events by coalescing key
+		private final Map<Object, PendingEvent> coalescable = new HashMap<Object, PendingEvent>();
+		/* @GuardedBy("this") */
+		private boolean scheduled = false;
+		/* @GuardedBy("this") */
+		private boolean removed = false;
+
+		ListenerDispatcher(ProvisioningListener listener, ListenerStatistics stats) {
+			this.listener = listener;
+			this.stats = stats;
+		}
+
+		void enqueue(EventObject event) {
+			synchronized (this) {
+				if (removed)
+					return;
+				Object key = event instanceof ICoalescableEvent ? ((ICoalescableEvent) event).getCoalescingKey() : null;
+				PendingEvent pending = key == null ? null : coalescable.get(key);
+				if (pending != null) {
+					pending.event = event;
+					pending.published = System.nanoTime();
+					stats.recordCoalesced();
+					return;
+				}
+				if (queue.size() >= queueSize && !(Thread.currentThread() instanceof DispatchThread)) {
+					stats.recordBlocked();
+					while (queue.size() >= queueSize && !removed) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							// deliver the event anyway
+							Thread.currentThread().interrupt();
+							break;
+						}
+					}
+					if (removed)
+						return;
+				}
+				pending = new PendingEvent(event);
+				queue.add(pending);
+				if (key != null)
+					coalescable.put(key, pending);
+				if (scheduled)
+					return;
+				scheduled = true;
+			}
+			schedule(this);
+		}
+
+		synchronized void remove() {
+			removed = true;
+			queue.clear();
+			coalescable.clear();
+			// release the publishers waiting for room
+			notifyAll();
+		}
+
+		public void run() {
+			while (true) {
+				EventObject event;
+				long published;
+				synchronized (this) {
+					PendingEvent next = queue.poll();
+					if (next == null) {
+						scheduled = false;
+						return;
+					}
+					if (queue.size() == queueSize - 1)
+						notifyAll();
+					event = next.event;
+					published = next.published;
+					if (event instanceof ICoalescableEvent)
+						coalescable.remove(((ICoalescableEvent) event).getCoalescingKey());
+				}
+				deliver(listener, event, published, stats);
+			}
+		}
+	}
+
+	/**
+	 * A thread running the dispatchers that have pending events, one after the other, and
+	 * ending once it has been idle for a while.
+	 */
+	private class DispatchThread extends Thread {
+		DispatchThread(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		public void run() {
+			while (true) {
+				ListenerDispatcher next;
+				synchronized (dispatchEventLock) {
+					long idleEnd = System.currentTimeMillis() + KEEP_ALIVE;
+					long idleTime = KEEP_ALIVE;
+					while ((next = readyDispatchers.poll()) == null && !closed && idleTime > 0) {
+						idleThreads++;
+						try {
+							dispatchEventLock.wait(idleTime);
+						} catch (InterruptedException e) {
+							// end the thread
+							idleTime = 0;
+						} finally {
+							idleThreads--;
+						}
+						if (idleTime > 0)
+							idleTime = idleEnd - System.currentTimeMillis();
+					}
+					if (next == null) {
+						threads--;
+						return;
+					}
+				}
+				next.run();
+			}
+		}
+	}
 
 	public ProvisioningEventBus() {
 		super();
@@ -42,11 +214,16 @@ public class ProvisioningEventBus implements EventDispatcher<ProvisioningListene
 	public void addListener(ProvisioningListener toAdd) {
 		if (toAdd instanceof SynchronousProvisioningListener) {
 			synchronized (syncListeners) {
-				syncListeners.put(toAdd, toAdd);
+				if (syncListeners.put(toAdd, toAdd) == null)
+					statistics.put(toAdd, new ListenerStatistics());
 			}
 		} else {
 			synchronized (asyncListeners) {
-				asyncListeners.put(toAdd, toAdd);
+				if (!asyncListeners.containsKey(toAdd)) {
+					ListenerStatistics stats = new ListenerStatistics();
+					statistics.put(toAdd, stats);
+					asyncListeners.put(toAdd, new ListenerDispatcher(toAdd, stats));
+				}
 			}
 		}
 	}
@@ -60,10 +237,22 @@ public class ProvisioningEventBus implements EventDispatcher<ProvisioningListene
 				syncListeners.remove(toRemove);
 			}
 		} else {
+			ListenerDispatcher dispatcher;
 			synchronized (asyncListeners) {
-				asyncListeners.remove(toRemove);
+				dispatcher = asyncListeners.remove(toRemove);
 			}
+			if (dispatcher != null)
+				dispatcher.remove();
 		}
+		statistics.remove(toRemove);
+	}
+
+	/**
+	 * Returns the delivery statistics of the given listener, or <code>null</code> if the
+	 * listener is not registered with this bus.
+	 */
+	public ListenerStatistics getStatistics(ProvisioningListener listener) {
+		return statistics.get(listener);
 	}
 
 	/* (non-Javadoc)
@@ -85,30 +274,35 @@ public class ProvisioningEventBus implements EventDispatcher<ProvisioningListene
 			listeners.dispatchEventSynchronous(0, event);
 		}
 
-		listeners = new ListenerQueue<ProvisioningListener, ProvisioningListener, EventObject>(eventManager);
-		synchronized (asyncListeners) {
-			listeners.queueListeners(asyncListeners.entrySet(), this);
-			synchronized (dispatchEventLock) {
-				if (!closed)
-					listeners.dispatchEventAsynchronous(0, event);
-			}
-		}
+		// the map is copy on write so the values can be iterated without holding the lock
+		for (ListenerDispatcher dispatcher : asyncListeners.values())
+			dispatcher.enqueue(event);
 	}
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus#dispatchEvent(java.lang.Object, java.lang.Object, int, java.lang.Object)
 	 */
 	public void dispatchEvent(ProvisioningListener eventListener, ProvisioningListener listenerObject, int eventAction, EventObject eventObject) {
+		deliver(eventListener, eventObject, System.nanoTime(), statistics.get(eventListener));
+	}
+
+	private void deliver(ProvisioningListener listener, EventObject event, long published, ListenerStatistics stats) {
 		synchronized (dispatchEventLock) {
 			if (closed)
 				return;
 			dispatchingEvents++;
 		}
+		long start = System.nanoTime();
 		try {
-			eventListener.notify(eventObject);
+			listener.notify(event);
 		} catch (Exception e) {
 			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, "Exception during event notification", e)); //$NON-NLS-1$
 		} finally {
+			long end = System.nanoTime();
+			if (stats != null)
+				stats.recordDelivery(end - published, end - start);
+			if (Tracing.DEBUG_EVENTS_BUS && (end - start) / 1000000L > SLOW_NOTIFY)
+				Tracing.debug("Slow provisioning listener " + listener + " took " + (end - start) / 1000000L + "ms to handle " + event); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			synchronized (dispatchEventLock) {
 				dispatchingEvents--;
 				if (dispatchingEvents == 0)
@@ -117,6 +311,37 @@ public class ProvisioningEventBus implements EventDispatcher<ProvisioningListene
 		}
 	}
 
+	/**
+	 * Runs the given dispatcher on a dispatch thread. Returns <code>false</code> if the bus is closed.
+	 */
+	boolean schedule(ListenerDispatcher dispatcher) {
+		synchronized (dispatchEventLock) {
+			if (closed)
+				return false;
+			readyDispatchers.add(dispatcher);
+			// a listener is drained by one thread at a time, so there are never more threads
+			// than listeners with pending events
+			if (idleThreads > 0)
+				dispatchEventLock.notifyAll();
+			else if (threads < maxThreads) {
+				threads++;
+				new DispatchThread("Provisioning Event Dispatcher " + (++threadCount)).start(); //$NON-NLS-1$
+			}
+			return true;
+		}
+	}
+
+	private static int getIntProperty(String property, int defaultValue) {
+		String value = Activator.context == null ? null : Activator.context.getProperty(property);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus#close()
 	 */
@@ -125,6 +350,9 @@ public class ProvisioningEventBus implements EventDispatcher<ProvisioningListene
 		synchronized (dispatchEventLock) {
 			eventManager.close();
 			closed = true;
+			// dispatch threads that are still running deliver nothing more
+			readyDispatchers.clear();
+			dispatchEventLock.notifyAll();
 			while (dispatchingEvents != 0) {
 				try {
 					dispatchEventLock.wait(30000); // we're going to cap waiting time at 30s
@@ -135,6 +363,9 @@ public class ProvisioningEventBus implements EventDispatcher<ProvisioningListene
 				}
 			}
 		}
+		// discard the pending events
+		for (ListenerDispatcher dispatcher : asyncListeners.values())
+			dispatcher.remove();
 		if (interrupted)
 			Thread.currentThread().interrupt();
 	}
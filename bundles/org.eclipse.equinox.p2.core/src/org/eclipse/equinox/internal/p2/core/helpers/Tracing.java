@@ -36,6 +36,7 @@ public class Tracing {
 	public static boolean DEBUG_RECONCILER = false;
 	public static boolean DEBUG_REMOVE_REPO = false;
 	public static boolean DEBUG_UPDATE_CHECK = false;
+	public static boolean DEBUG_EVENTS_BUS = false;
 	public static boolean DEBUG_EVENTS_CLIENT = false;
 	public static boolean DEBUG_DEFAULT_UI = false;
 
@@ -44,6 +45,7 @@ public class Tracing {
 		if (options != null) {
 			DEBUG = options.getBooleanOption(Activator.ID + "/debug", false); //$NON-NLS-1$
 			if (DEBUG) {
+				DEBUG_EVENTS_BUS = options.getBooleanOption(Activator.ID + "/events/bus", false); //$NON-NLS-1$
 				DEBUG_EVENTS_CLIENT = options.getBooleanOption(Activator.ID + "/events/client", false); //$NON-NLS-1$
 				DEBUG_GENERATOR_PARSING = options.getBooleanOption(Activator.ID + "/generator/parsing", false); //$NON-NLS-1$
 				DEBUG_INSTALL_REGISTRY = options.getBooleanOption(Activator.ID + "/engine/installregistry", false); //$NON-NLS-1$
@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.provisional.p2.core.eventbus;
+
+/**
+ * Implemented by events that only report the latest state of something, such as
+ * progress events. When such an event is published while an earlier event with an equal
+ * coalescing key is still waiting to be delivered to an asynchronous listener, the later
+ * event takes the place of the earlier one, and the listener only receives the latest one.
+ */
+public interface ICoalescableEvent {
+	/**
+	 * Returns the key of what this event reports the state of. Coalescable events with equal
+	 * keys must report the state of the same thing, whatever their class.
+	 * @return the coalescing key, never <code>null</code>
+	 */
+	public Object getCoalescingKey();
+}
@@ -107,6 +107,13 @@ public class ProvisionException extends CoreException {
 	 */
 	public static final int ARTIFACT_MD5_NOT_MATCH = 1203;
 
+	/**
+	 * Status code constant (value 1204) indicating an artifact's checksum
+	 * other than md5 does not match the expected value.
+	 * @since 2.3
+	 */
+	public static final int ARTIFACT_CHECKSUM_NOT_MATCH = 1204;
+
 	/**
 	 * Creates a new exception with the given status object.  The message
 	 * of the given status is used as the exception message.
@@ -270,6 +270,30 @@ public abstract class Explanation implements Comparable<Explanation> {
 		}
 	};
 
+	/**
+	 * Added to an explanation that could not be completed in the time allotted to it. The
+	 * other parts of such an explanation are the requested units found to be conflicting.
+	 */
+	public static final Explanation INCOMPLETE_EXPLANATION = new Explanation() {
+
+		public int orderValue() {
+			return 7;
+		}
+
+		public String toString() {
+			return Messages.Explanation_incomplete;
+		}
+
+		public IStatus toStatus() {
+			return new Status(IStatus.INFO, DirectorActivator.PI_DIRECTOR, toString());
+		}
+
+		@Override
+		public int shortAnswer() {
+			return INCOMPLETE;
+		}
+	};
+
 	public static final int MISSING_REQUIREMENT = 1;
 	public static final int VIOLATED_SINGLETON_CONSTRAINT = 2;
 	public static final int IU_INSTALLED = 3;
@@ -277,6 +301,7 @@ public abstract class Explanation implements Comparable<Explanation> {
 	public static final int VIOLATED_HARD_REQUIREMENT = 5;
 	public static final int VIOLATED_PATCHED_HARD_REQUIREMENT = 6;
 	public static final int NON_INSTALLABLE_ROOT = 7;
+	public static final int INCOMPLETE = 8;
 	public static final int OTHER_REASON = 100;
 
 	protected Explanation() {
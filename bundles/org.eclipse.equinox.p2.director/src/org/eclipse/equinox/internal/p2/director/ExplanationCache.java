@@ -0,0 +1,142 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *      IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.lang.ref.SoftReference;
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+
+/**
+ * Remembers the explanations of the last problems found to have no solution, so that
+ * a failed request planned again, for instance when the user goes back and forth in
+ * the install wizard, is explained without running the solver again.
+ * <p>
+ * A problem is identified by everything its encoding depends on: the units of the slice,
+ * the requirements of the entry point, the units already installed, the non greedy
+ * units and the selection context. Only complete explanations are remembered, and they
+ * are softly referenced so that they never keep the units of a slice from being collected.
+ * </p>
+ */
+public class ExplanationCache {
+	private static final int SIZE = 4;
+
+	private static final LinkedList<SoftReference<Entry>> entries = new LinkedList<SoftReference<Entry>>();
+
+	/**
+	 * The description of a problem, used to look up its explanation.
+	 */
+	public static final class Key {
+		private final Set<IInstallableUnit> slice;
+		private final Set<IRequirement> requirements;
+		private final Set<IInstallableUnit> installed;
+		private final Set<IInstallableUnit> nonGreedyIUs;
+		private final Map<String, String> context;
+		private final boolean considerMetaRequirements;
+		private final int hashCode;
+
+		public Key(Collection<IInstallableUnit> slice, IInstallableUnit entryPoint, Collection<IInstallableUnit> installed, Collection<IInstallableUnit> nonGreedyIUs, Map<String, String> context, boolean considerMetaRequirements) {
+			this.slice = identitySet(slice);
+			this.requirements = new HashSet<IRequirement>(entryPoint.getRequirements());
+			this.requirements.addAll(entryPoint.getMetaRequirements());
+			this.installed = identitySet(installed);
+			this.nonGreedyIUs = identitySet(nonGreedyIUs == null ? Collections.<IInstallableUnit> emptySet() : nonGreedyIUs);
+			this.context = new HashMap<String, String>(context);
+			this.considerMetaRequirements = considerMetaRequirements;
+			int hash = this.slice.hashCode();
+			hash = 31 * hash + requirements.hashCode();
+			hash = 31 * hash + this.installed.hashCode();
+			hash = 31 * hash + this.nonGreedyIUs.hashCode();
+			hash = 31 * hash + this.context.hashCode();
+			this.hashCode = 31 * hash + (considerMetaRequirements ? 1 : 0);
+		}
+
+		// Units are compared by identity, since units with the same id and version may still
+		// have different requirements when they come from different repositories
+		private static Set<IInstallableUnit> identitySet(Collection<IInstallableUnit> units) {
+			Map<IInstallableUnit, Boolean> map = new IdentityHashMap<IInstallableUnit, Boolean>(units.size());
+			for (IInstallableUnit unit : units)
+				map.put(unit, Boolean.TRUE);
+			return map.keySet();
+		}
+
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hashCode == other.hashCode && considerMetaRequirements == other.considerMetaRequirements && requirements.equals(other.requirements) && installed.equals(other.installed) && nonGreedyIUs.equals(other.nonGreedyIUs) && context.equals(other.context) && slice.equals(other.slice);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	private static final class Entry {
+		final Key key;
+		final Set<Explanation> explanation;
+
+		Entry(Key key, Set<Explanation> explanation) {
+			this.key = key;
+			this.explanation = explanation;
+		}
+	}
+
+	private ExplanationCache() {
+		// static helpers only
+	}
+
+	/**
+	 * Returns the explanation remembered for the given problem, or <code>null</code> if
+	 * there is none.
+	 */
+	public static synchronized Set<Explanation> get(Key key) {
+		for (Iterator<SoftReference<Entry>> iterator = entries.iterator(); iterator.hasNext();) {
+			SoftReference<Entry> reference = iterator.next();
+			Entry entry = reference.get();
+			if (entry == null) {
+				iterator.remove();
+			} else if (entry.key.equals(key)) {
+				// keep the most recently used entries first
+				iterator.remove();
+				entries.addFirst(reference);
+				return entry.explanation;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remembers the complete explanation of the given problem, and returns the explanation
+	 * as it is now shared with later requests.
+	 */
+	public static synchronized Set<Explanation> put(Key key, Set<Explanation> explanation) {
+		for (Iterator<SoftReference<Entry>> iterator = entries.iterator(); iterator.hasNext();) {
+			Entry entry = iterator.next().get();
+			if (entry == null || entry.key.equals(key))
+				iterator.remove();
+		}
+		Entry entry = new Entry(key, Collections.unmodifiableSet(explanation));
+		entries.addFirst(new SoftReference<Entry>(entry));
+		while (entries.size() > SIZE)
+			entries.removeLast();
+		return entry.explanation;
+	}
+
+	/**
+	 * Forgets all the remembered explanations.
+	 */
+	public static synchronized void clear() {
+		entries.clear();
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *      IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.*;
+
+/**
+ * Remembers the units of a queryable that match each requirement, so that a requirement
+ * shared by many units is only evaluated once while planning. Requirements are keyed by
+ * their match expression, since that is all that decides which units match them.
+ * <p>
+ * The slicer, the projector and the optimization function each query a different
+ * queryable, but the queryables used by the later phases only hold units that the
+ * earlier phases already had. A cache for such a queryable is obtained with
+ * {@link #restrict(IQueryable)}: it answers from the matches remembered by this cache,
+ * keeping only the units of the smaller queryable, and only evaluates requirements
+ * itself against the units this cache does not know about.
+ * </p>
+ */
+public class MatchCache {
+	private final IQueryable<IInstallableUnit> queryable;
+	private final MatchCache parent;
+	private final Map<IMatchExpression<IInstallableUnit>, Collection<IInstallableUnit>> matches = new HashMap<IMatchExpression<IInstallableUnit>, Collection<IInstallableUnit>>();
+
+	// The units of the queryable, computed when first needed
+	private Map<IInstallableUnit, IInstallableUnit> units;
+
+	// The units of the queryable that the parent does not know about
+	private List<IInstallableUnit> extraUnits;
+
+	public MatchCache(IQueryable<IInstallableUnit> queryable) {
+		this(queryable, null);
+	}
+
+	private MatchCache(IQueryable<IInstallableUnit> queryable, MatchCache parent) {
+		this.queryable = queryable;
+		this.parent = parent;
+	}
+
+	public IQueryable<IInstallableUnit> getQueryable() {
+		return queryable;
+	}
+
+	/**
+	 * Returns a cache for the given queryable, which is expected to hold mostly units
+	 * of the queryable of this cache.
+	 */
+	public MatchCache restrict(IQueryable<IInstallableUnit> subset) {
+		if (subset == queryable)
+			return this;
+		return new MatchCache(subset, this);
+	}
+
+	/**
+	 * Returns the units of the queryable that match the given requirement.
+	 */
+	public synchronized Collection<IInstallableUnit> getMatches(IRequirement requirement) {
+		IMatchExpression<IInstallableUnit> match = requirement.getMatches();
+		Collection<IInstallableUnit> result = matches.get(match);
+		if (result == null) {
+			result = parent == null ? query(match) : restrictParentMatches(requirement);
+			matches.put(match, result);
+		}
+		return result;
+	}
+
+	private Collection<IInstallableUnit> query(IMatchExpression<IInstallableUnit> match) {
+		Set<IInstallableUnit> result = queryable.query(QueryUtil.createMatchQuery(match), null).toUnmodifiableSet();
+		if (result.isEmpty())
+			return Collections.<IInstallableUnit> emptySet();
+		return result;
+	}
+
+	private Collection<IInstallableUnit> restrictParentMatches(IRequirement requirement) {
+		Map<IInstallableUnit, IInstallableUnit> members = getUnits();
+		if (extraUnits == null) {
+			extraUnits = new ArrayList<IInstallableUnit>();
+			Map<IInstallableUnit, IInstallableUnit> known = parent.getUnits();
+			for (IInstallableUnit iu : members.keySet())
+				if (!known.containsKey(iu))
+					extraUnits.add(iu);
+		}
+
+		// a unit may be held by the queryable both as the instance known to the parent and
+		// as an equal instance that the parent does not know, but is only matched once, as
+		// when the queryable is queried
+		Set<IInstallableUnit> result = null;
+		for (IInstallableUnit iu : parent.getMatches(requirement)) {
+			if (members.containsKey(iu)) {
+				if (result == null)
+					result = new LinkedHashSet<IInstallableUnit>();
+				result.add(iu);
+			}
+		}
+		IMatchExpression<IInstallableUnit> match = requirement.getMatches();
+		for (IInstallableUnit iu : extraUnits) {
+			if (match.isMatch(iu)) {
+				if (result == null)
+					result = new LinkedHashSet<IInstallableUnit>();
+				result.add(iu);
+			}
+		}
+		if (result == null)
+			return Collections.<IInstallableUnit> emptySet();
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Returns the units of the queryable. Units are compared by identity since the
+	 * same unit may be represented by instances holding different content.
+	 */
+	private synchronized Map<IInstallableUnit, IInstallableUnit> getUnits() {
+		if (units == null) {
+			units = new IdentityHashMap<IInstallableUnit, IInstallableUnit>();
+			for (Iterator<IInstallableUnit> iterator = queryable.query(QueryUtil.ALL_UNITS, null).iterator(); iterator.hasNext();) {
+				IInstallableUnit iu = iterator.next();
+				units.put(iu, iu);
+			}
+		}
+		return units;
+	}
+}
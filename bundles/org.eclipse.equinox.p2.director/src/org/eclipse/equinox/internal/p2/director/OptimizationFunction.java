@@ -20,14 +20,14 @@ import org.sat4j.pb.tools.WeightedObject;
 
 public class OptimizationFunction {
 
-	private IQueryable<IInstallableUnit> picker;
+	private MatchCache picker;
 	private IInstallableUnit selectionContext;
 	protected Map<String, Map<Version, IInstallableUnit>> slice; //The IUs that have been considered to be part of the problem
 	private int numberOfInstalledIUs; //TODO this should be renamed to consideredIUs or sliceSize
 	private IQueryable<IInstallableUnit> lastState;
 	private List<AbstractVariable> optionalRequirementVariable;
 
-	public OptimizationFunction(IQueryable<IInstallableUnit> lastState, List<AbstractVariable> abstractVariables, List<AbstractVariable> optionalRequirementVariable, IQueryable<IInstallableUnit> picker, IInstallableUnit selectionContext, Map<String, Map<Version, IInstallableUnit>> slice) {
+	public OptimizationFunction(IQueryable<IInstallableUnit> lastState, List<AbstractVariable> abstractVariables, List<AbstractVariable> optionalRequirementVariable, MatchCache picker, IInstallableUnit selectionContext, Map<String, Map<Version, IInstallableUnit>> slice) {
 		this.lastState = lastState;
 		this.optionalRequirementVariable = optionalRequirementVariable;
 		this.picker = picker;
@@ -109,9 +109,7 @@ public class OptimizationFunction {
 		for (IRequirement req : reqs) {
 			if (req.getMin() > 0 || !req.isGreedy())
 				continue;
-			IQueryResult<IInstallableUnit> matches = picker.query(QueryUtil.createMatchQuery(req.getMatches()), null);
-			for (Iterator<IInstallableUnit> iterator = matches.iterator(); iterator.hasNext();) {
-				IInstallableUnit match = iterator.next();
+			for (IInstallableUnit match : picker.getMatches(req)) {
 				if (match instanceof IInstallableUnitPatch) {
 					requestedPatches.add(match);
 					countOptional = countOptional + 1;
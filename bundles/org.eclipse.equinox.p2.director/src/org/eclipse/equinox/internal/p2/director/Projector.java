@@ -49,9 +49,21 @@ public class Projector {
 	 * The default SAT solver timeout (in number of conflicts). See bug 372529 for discussion.
 	 */
 	private static final int DEFAULT_SOLVER_TIMEOUT = 10000;
+	/**
+	 * The name of a Java system property that, when set to <code>true</code>, leaves the
+	 * units that cannot be part of any solution out of the problem given to the SAT solver.
+	 */
+	private static final String PROP_PROJECTOR_REDUCE = "eclipse.p2.projector.reduce"; //$NON-NLS-1$
+	/**
+	 * The name of a Java system property specifying the time, in milliseconds, after which the
+	 * explanation of a problem without solution is given up. The requested units found to be
+	 * in conflict by then are returned as a partial explanation. There is no limit by default.
+	 */
+	private static final String PROP_PROJECTOR_EXPLANATION_TIMEOUT = "eclipse.p2.projector.explanation.timeout"; //$NON-NLS-1$
 	static boolean DEBUG = Tracing.DEBUG_PLANNER_PROJECTOR;
 	private static boolean DEBUG_ENCODING = Tracing.DEBUG_PLANNER_PROJECTOR_ENCODING;
 	private IQueryable<IInstallableUnit> picker;
+	private MatchCache matchCache;
 	private QueryableArray patches;
 
 	private List<AbstractVariable> allOptionalAbstractRequirements;
@@ -82,6 +94,26 @@ public class Projector {
 	private boolean emptyBecauseFiltered;
 	private boolean userDefinedFunction;
 
+	private boolean reduce = isReduceEnabled();
+	private Set<IInstallableUnit> impossibleIUs = Collections.<IInstallableUnit> emptySet(); //The IUs that have been left out of the problem
+	private long explanationTimeout = getExplanationTimeout();
+	private Map<AbstractVariable, Explanation> rootSelectors; //Guards of the requirements of the entry point, when explanations have a time limit
+	private IPBSolver solver; //The solver behind the dependency helper, whose search can be stopped
+
+	/**
+	 * A greedy mandatory requirement of an IU and the number of its matches that may
+	 * still be part of a solution.
+	 */
+	static final class PossibleMatches {
+		final IInstallableUnit iu;
+		int count;
+
+		PossibleMatches(IInstallableUnit iu, int count) {
+			this.iu = iu;
+			this.count = count;
+		}
+	}
+
 	static class AbstractVariable {
 		//		private String name;
 
@@ -104,6 +136,8 @@ public class Projector {
 	 */
 	class ExplanationJob extends Job {
 		private Set<Explanation> explanation;
+		private volatile Set<Explanation> partialExplanation;
+		private volatile boolean complete;
 
 		public ExplanationJob() {
 			super(Messages.Planner_NoSolution);
@@ -118,12 +152,32 @@ public class Projector {
 		protected void canceling() {
 			super.canceling();
 			dependencyHelper.stopExplanation();
+			// stop the search in progress, which the explanation only checks for between searches
+			solver.expireTimeout();
 		}
 
 		public Set<Explanation> getExplanationResult() {
 			return explanation;
 		}
 
+		/**
+		 * Returns the best explanation found so far, made of the requested units known to be
+		 * in conflict.
+		 */
+		public Set<Explanation> getPartialExplanation() {
+			Set<Explanation> partial = partialExplanation;
+			if (partial == null)
+				partial = createPartialExplanation(rootSelectors == null ? Collections.<AbstractVariable> emptySet() : rootSelectors.keySet());
+			return partial;
+		}
+
+		/**
+		 * Returns whether the explanation has been computed in full.
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+
 		protected IStatus run(IProgressMonitor monitor) {
 			long start = 0;
 			if (DEBUG) {
@@ -131,7 +185,12 @@ public class Projector {
 				Tracing.debug("Determining cause of failure: " + start); //$NON-NLS-1$
 			}
 			try {
+				if (rootSelectors != null && rootSelectors.size() > 1)
+					findConflictingRoots(monitor);
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
 				explanation = dependencyHelper.why();
+				complete = true;
 				if (DEBUG) {
 					long stop = System.currentTimeMillis();
 					Tracing.debug("Explanation found: " + (stop - start)); //$NON-NLS-1$
@@ -147,17 +206,90 @@ public class Projector {
 				//must never have a null result, because caller is waiting on result to be non-null
 				if (explanation == null)
 					explanation = Collections.<Explanation> emptySet();
-			}
-			synchronized (this) {
-				ExplanationJob.this.notify();
+				synchronized (this) {
+					ExplanationJob.this.notify();
+				}
 			}
 			return Status.OK_STATUS;
 		}
 
+		/**
+		 * Looks for a minimal set of requested units that cannot be installed together, by
+		 * leaving the requirements of the entry point out of the problem one at a time. This
+		 * only solves the problem again under different assumptions, so what the solver
+		 * learned is kept from one attempt to the next. The partial explanation is updated
+		 * after each attempt.
+		 */
+		private void findConflictingRoots(IProgressMonitor monitor) {
+			List<AbstractVariable> conflicting = new ArrayList<AbstractVariable>(rootSelectors.keySet());
+			partialExplanation = createPartialExplanation(conflicting);
+			for (int i = conflicting.size() - 1; i >= 0; i--) {
+				if (monitor.isCanceled())
+					return;
+				AbstractVariable candidate = conflicting.remove(i);
+				List<Object> subset = new ArrayList<Object>(assumptions);
+				subset.removeAll(rootSelectors.keySet());
+				subset.addAll(conflicting);
+				boolean solvable;
+				try {
+					solvable = dependencyHelper.hasASolution(subset);
+				} catch (TimeoutException e) {
+					// the requirement may be part of the conflict
+					solvable = true;
+				}
+				if (solvable)
+					conflicting.add(i, candidate);
+				else
+					partialExplanation = createPartialExplanation(conflicting);
+			}
+			if (DEBUG)
+				Tracing.debug("Conflicting requests: " + partialExplanation); //$NON-NLS-1$
+			try {
+				// the explanation is computed for the last problem solved
+				dependencyHelper.hasASolution(assumptions);
+			} catch (TimeoutException e) {
+				// the explanation will time out as well
+			}
+		}
+	}
+
+	private Set<Explanation> createPartialExplanation(Collection<AbstractVariable> selectors) {
+		Set<Explanation> partial = new TreeSet<Explanation>();
+		for (AbstractVariable selector : selectors)
+			partial.add(rootSelectors.get(selector));
+		partial.add(Explanation.INCOMPLETE_EXPLANATION);
+		return partial;
+	}
+
+	private static long getExplanationTimeout() {
+		if (DirectorActivator.context == null)
+			return 0;
+		String timeoutString = DirectorActivator.context.getProperty(PROP_PROJECTOR_EXPLANATION_TIMEOUT);
+		if (timeoutString == null)
+			return 0;
+		try {
+			return Math.max(0, Long.parseLong(timeoutString));
+		} catch (NumberFormatException e) {
+			System.err.println("Ignoring user-specified 'eclipse.p2.projector.explanation.timeout' value of: " + timeoutString); //$NON-NLS-1$
+			return 0;
+		}
+	}
+
+	private static boolean isReduceEnabled() {
+		return DirectorActivator.context != null && Boolean.valueOf(DirectorActivator.context.getProperty(PROP_PROJECTOR_REDUCE)).booleanValue();
 	}
 
 	public Projector(IQueryable<IInstallableUnit> q, Map<String, String> context, Set<IInstallableUnit> nonGreedyIUs, boolean considerMetaRequirements) {
-		picker = q;
+		this(new MatchCache(q), context, nonGreedyIUs, considerMetaRequirements);
+	}
+
+	/**
+	 * Creates a projector that looks up the units matching a requirement in the given cache,
+	 * typically obtained by restricting the cache of the slicer to the slice.
+	 */
+	public Projector(MatchCache matches, Map<String, String> context, Set<IInstallableUnit> nonGreedyIUs, boolean considerMetaRequirements) {
+		picker = matches.getQueryable();
+		matchCache = matches;
 		slice = new HashMap<String, Map<Version, IInstallableUnit>>();
 		selectionContext = InstallableUnit.contextIU(context);
 		abstractVariables = new ArrayList<AbstractVariable>();
@@ -173,13 +305,14 @@ public class Projector {
 		alreadyInstalledIUs = Arrays.asList(alreadyExistingRoots);
 		lastState = installedIUs;
 		this.entryPoint = entryPointIU;
+		if (explanationTimeout > 0)
+			rootSelectors = new LinkedHashMap<AbstractVariable, Explanation>();
 		try {
 			long start = 0;
 			if (DEBUG) {
 				start = System.currentTimeMillis();
 				Tracing.debug("Start projection: " + start); //$NON-NLS-1$
 			}
-			IPBSolver solver;
 			if (DEBUG_ENCODING) {
 				solver = new UserFriendlyPBStringSolver<Object>();
 			} else {
@@ -224,6 +357,11 @@ public class Projector {
 			}
 			List<IInstallableUnit> iusToOrder = new ArrayList<IInstallableUnit>(queryResult.toSet());
 			Collections.sort(iusToOrder);
+			if (reduce && !userDefinedFunction) {
+				impossibleIUs = findImpossibleIUs(iusToOrder, entryPointIU);
+				if (DEBUG)
+					Tracing.debug("IUs left out of the problem: " + impossibleIUs.size()); //$NON-NLS-1$
+			}
 			for (Iterator<IInstallableUnit> iusToEncode = iusToOrder.iterator(); iusToEncode.hasNext();) {
 				if (monitor.isCanceled()) {
 					result.merge(Status.CANCEL_STATUS);
@@ -231,7 +369,10 @@ public class Projector {
 				}
 				IInstallableUnit iuToEncode = iusToEncode.next();
 				if (iuToEncode != entryPointIU) {
-					processIU(iuToEncode, false);
+					if (impossibleIUs.contains(iuToEncode))
+						addToSlice(iuToEncode.unresolved());
+					else
+						processIU(iuToEncode, false);
 				}
 			}
 			createMustHave(entryPointIU, alreadyExistingRoots);
@@ -278,12 +419,12 @@ public class Projector {
 
 	//Create an optimization function favoring the highest version of each IU
 	private void createStandardOptimizationFunction(IInstallableUnit entryPointIU, Collection<IInstallableUnit> newRoots) {
-		List<WeightedObject<? extends Object>> weights = new OptimizationFunction(lastState, abstractVariables, allOptionalAbstractRequirements, picker, selectionContext, slice).createOptimizationFunction(entryPointIU, newRoots);
+		List<WeightedObject<? extends Object>> weights = new OptimizationFunction(lastState, abstractVariables, allOptionalAbstractRequirements, matchCache, selectionContext, slice).createOptimizationFunction(entryPointIU, newRoots);
 		createObjectiveFunction(weights);
 	}
 
 	private void createUserDefinedOptimizationFunction(IInstallableUnit entryPointIU, Collection<IInstallableUnit> newRoots) {
-		List<WeightedObject<? extends Object>> weights = new UserDefinedOptimizationFunction(lastState, abstractVariables, allOptionalAbstractRequirements, picker, selectionContext, slice, dependencyHelper, alreadyInstalledIUs).createOptimizationFunction(entryPointIU, newRoots);
+		List<WeightedObject<? extends Object>> weights = new UserDefinedOptimizationFunction(lastState, abstractVariables, allOptionalAbstractRequirements, matchCache, selectionContext, slice, dependencyHelper, alreadyInstalledIUs).createOptimizationFunction(entryPointIU, newRoots);
 		createObjectiveFunction(weights);
 	}
 
@@ -301,6 +442,15 @@ public class Projector {
 			}
 			Tracing.debug("objective function: " + b); //$NON-NLS-1$
 		}
+		if (!impossibleIUs.isEmpty()) {
+			// the IUs left out of the problem are not installed in any solution
+			List<WeightedObject<? extends Object>> possibleObjects = new ArrayList<WeightedObject<? extends Object>>(weightedObjects.size());
+			for (WeightedObject<? extends Object> object : weightedObjects) {
+				if (!impossibleIUs.contains(object.thing))
+					possibleObjects.add(object);
+			}
+			weightedObjects = possibleObjects;
+		}
 		@SuppressWarnings("unchecked")
 		WeightedObject<Object>[] array = (WeightedObject<Object>[]) weightedObjects.toArray(new WeightedObject<?>[weightedObjects.size()]);
 		dependencyHelper.setObjectiveFunction(array);
@@ -351,7 +501,29 @@ public class Projector {
 		} else {
 			explanation = new Explanation.HardRequirement(iu, req);
 		}
-		createNegationImplication(iu, matches, explanation);
+		createNegationImplication(getRequirementGuard(new Object[] {iu}, isRootIu, explanation), matches, explanation);
+	}
+
+	/**
+	 * Returns the left hand side of the constraint encoding a requirement of the given IU.
+	 * When explanations have a time limit, each requirement of the entry point is guarded
+	 * by a variable assumed to be true, so that it can be left out of the problem when
+	 * looking for the requests in conflict.
+	 */
+	private Object[] getRequirementGuard(Object[] left, boolean isRootIu, Explanation explanation) {
+		if (!isRootIu || rootSelectors == null)
+			return left;
+		Object[] guarded = new Object[left.length + 1];
+		System.arraycopy(left, 0, guarded, 0, left.length);
+		guarded[left.length] = createRootSelector(explanation);
+		return guarded;
+	}
+
+	private AbstractVariable createRootSelector(Explanation explanation) {
+		AbstractVariable selector = DEBUG_ENCODING ? new AbstractVariable("Root_" + explanation) : new AbstractVariable(); //$NON-NLS-1$
+		rootSelectors.put(selector, explanation);
+		assumptions.add(selector);
+		return selector;
 	}
 
 	private void determinePotentialHostsForFragment(IInstallableUnit iu) {
@@ -379,9 +551,13 @@ public class Projector {
 		if (req.getMin() > 0) {
 			if (matches.isEmpty()) {
 				if (iu == entryPoint && emptyBecauseFiltered) {
-					dependencyHelper.setFalse(iu, new NotInstallableRoot(req));
+					Explanation explanation = new NotInstallableRoot(req);
+					if (isRootIu && rootSelectors != null)
+						createRootNegation(iu, explanation);
+					else
+						dependencyHelper.setFalse(iu, explanation);
 				} else {
-					missingRequirement(iu, req);
+					missingRequirement(iu, req, isRootIu);
 				}
 			} else {
 				if (req.isGreedy()) {
@@ -396,7 +572,7 @@ public class Projector {
 					} else {
 						explanation = new Explanation.HardRequirement(iu, req);
 					}
-					createImplication(iu, matches, explanation);
+					createImplication(getRequirementGuard(new Object[] {iu}, isRootIu, explanation), matches, explanation);
 					IInstallableUnit current;
 					for (Iterator<IInstallableUnit> it = matches.iterator(); it.hasNext();) {
 						current = it.next();
@@ -411,7 +587,8 @@ public class Projector {
 						current = it.next();
 						newConstraint.add(getNonGreedyVariable(current));
 					}
-					createImplication(new Object[] {iu}, newConstraint, new Explanation.HardRequirement(iu, req)); // FIXME
+					Explanation explanation = new Explanation.HardRequirement(iu, req);
+					createImplication(getRequirementGuard(new Object[] {iu}, isRootIu, explanation), newConstraint, explanation); // FIXME
 				}
 			}
 		} else {
@@ -460,12 +637,7 @@ public class Projector {
 
 	public void processIU(IInstallableUnit iu, boolean isRootIU) throws ContradictionException {
 		iu = iu.unresolved();
-		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
-		if (iuSlice == null) {
-			iuSlice = new HashMap<Version, IInstallableUnit>();
-			slice.put(iu.getId(), iuSlice);
-		}
-		iuSlice.put(iu.getVersion(), iu);
+		addToSlice(iu);
 		if (!isApplicable(iu)) {
 			createNegation(iu, null);
 			return;
@@ -482,6 +654,86 @@ public class Projector {
 		}
 	}
 
+	private void addToSlice(IInstallableUnit iu) {
+		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
+		if (iuSlice == null) {
+			iuSlice = new HashMap<Version, IInstallableUnit>();
+			slice.put(iu.getId(), iuSlice);
+		}
+		iuSlice.put(iu.getVersion(), iu);
+	}
+
+	/**
+	 * Returns the IUs that the encoding would force to be uninstalled: IUs that are not
+	 * applicable, IUs with a mandatory requirement that no IU satisfies, and IUs with a
+	 * greedy mandatory requirement only satisfied by such IUs. Leaving them out does not
+	 * change the solutions of the problem. The entry point, patches, IUs that patches apply
+	 * to and IUs satisfying non greedy requirements are always kept.
+	 */
+	private Set<IInstallableUnit> findImpossibleIUs(List<IInstallableUnit> ius, IInstallableUnit entryPointIU) {
+		Set<IInstallableUnit> impossible = new HashSet<IInstallableUnit>();
+		Map<IInstallableUnit, List<PossibleMatches>> requiringIUs = new HashMap<IInstallableUnit, List<PossibleMatches>>();
+		LinkedList<IInstallableUnit> toPropagate = new LinkedList<IInstallableUnit>();
+		for (IInstallableUnit iu : ius) {
+			if (iu == entryPointIU || iu instanceof IInstallableUnitPatch || nonGreedyIUs.contains(iu))
+				continue;
+			if (!isApplicable(iu)) {
+				impossible.add(iu);
+				toPropagate.add(iu);
+				continue;
+			}
+			if (!getApplicablePatches(iu).isEmpty())
+				continue;
+			for (IRequirement req : getRequiredCapabilities(iu)) {
+				if (req.getMin() == 0 || req.getMax() == 0 || !isApplicable(req))
+					continue;
+				List<IInstallableUnit> matches = getApplicableMatches(req);
+				if (matches.isEmpty()) {
+					impossible.add(iu);
+					toPropagate.add(iu);
+					break;
+				}
+				if (!req.isGreedy())
+					continue;
+				PossibleMatches possibleMatches = new PossibleMatches(iu, matches.size());
+				for (IInstallableUnit match : matches) {
+					List<PossibleMatches> requiring = requiringIUs.get(match);
+					if (requiring == null) {
+						requiring = new ArrayList<PossibleMatches>(2);
+						requiringIUs.put(match, requiring);
+					}
+					requiring.add(possibleMatches);
+				}
+			}
+		}
+		while (!toPropagate.isEmpty()) {
+			List<PossibleMatches> requiring = requiringIUs.get(toPropagate.removeFirst());
+			if (requiring == null)
+				continue;
+			for (PossibleMatches possibleMatches : requiring) {
+				if (--possibleMatches.count == 0 && impossible.add(possibleMatches.iu))
+					toPropagate.add(possibleMatches.iu);
+			}
+		}
+		return impossible;
+	}
+
+	/**
+	 * Returns whether some IUs have been left out of the encoded problem. A problem encoded
+	 * that way may not be explained as well when it has no solution.
+	 */
+	public boolean isReduced() {
+		return !impossibleIUs.isEmpty();
+	}
+
+	/**
+	 * Sets whether the IUs that cannot be part of any solution are left out of the
+	 * encoded problem. This must be set before encoding the problem.
+	 */
+	public void setReduce(boolean reduce) {
+		this.reduce = reduce;
+	}
+
 	private Collection<IRequirement> getRequiredCapabilities(IInstallableUnit iu) {
 		boolean isFragment = iu instanceof IInstallableUnitFragment;
 		//Short-circuit for the case of an IInstallableUnit 
@@ -549,7 +801,7 @@ public class Projector {
 					determinePotentialHostsForFragment(iu);
 					if (req.getMin() > 0) {
 						if (matches.isEmpty()) {
-							missingRequirement(patch, req);
+							missingRequirement(patch, req, false);
 						} else {
 							IInstallableUnit current;
 							if (req.isGreedy()) {
@@ -564,7 +816,7 @@ public class Projector {
 								} else {
 									explanation = new Explanation.PatchedHardRequirement(iu, req, patch);
 								}
-								createImplication(new Object[] {patch, iu}, matches, explanation);
+								createImplication(getRequirementGuard(new Object[] {patch, iu}, isRootIu, explanation), matches, explanation);
 								for (Iterator<IInstallableUnit> it = matches.iterator(); it.hasNext();) {
 									current = it.next();
 									if (nonGreedyIUs.contains(current)) {
@@ -577,7 +829,8 @@ public class Projector {
 									current = it.next();
 									newConstraint.add(getNonGreedyVariable(current));
 								}
-								createImplication(new Object[] {iu}, newConstraint, new Explanation.HardRequirement(iu, req)); // FIXME
+								Explanation explanation = new Explanation.HardRequirement(iu, req);
+								createImplication(getRequirementGuard(new Object[] {iu}, isRootIu, explanation), newConstraint, explanation); // FIXME
 							}
 						}
 					} else {
@@ -712,7 +965,11 @@ public class Projector {
 
 		// Fix: now create the pending non-patch requirements based on the full set of patches
 		for (Pending pending : nonPatchedRequirements.values()) {
-			createImplication(pending.left, pending.matches, pending.explanation);
+			// the mandatory requirements are the ones whose left hand side is the unit alone
+			if (pending.left == iu)
+				createImplication(getRequirementGuard(new Object[] {iu}, isRootIu, pending.explanation), pending.matches, pending.explanation);
+			else
+				createImplication(pending.left, pending.matches, pending.explanation);
 		}
 
 		for (Entry<IRequirement, List<IInstallableUnitPatch>> entry : unchangedRequirements.entrySet()) {
@@ -730,9 +987,10 @@ public class Projector {
 			if (req.getMin() > 0) {
 				if (matches.isEmpty()) {
 					if (requiredPatches.isEmpty()) {
-						missingRequirement(iu, req);
+						missingRequirement(iu, req, isRootIu);
 					} else {
-						createImplication(iu, requiredPatches, new Explanation.HardRequirement(iu, req));
+						Explanation explanation = new Explanation.HardRequirement(iu, req);
+						createImplication(getRequirementGuard(new Object[] {iu}, isRootIu, explanation), requiredPatches, explanation);
 					}
 				} else {
 					// manage non greedy IUs
@@ -758,7 +1016,7 @@ public class Projector {
 						} else {
 							explanation = new Explanation.HardRequirement(iu, req);
 						}
-						createImplication(iu, matches, explanation);
+						createImplication(getRequirementGuard(new Object[] {iu}, isRootIu, explanation), matches, explanation);
 						for (Iterator<IInstallableUnit> it = matches.iterator(); it.hasNext();) {
 							current = it.next();
 							if (nonGreedyIUs.contains(current)) {
@@ -771,7 +1029,8 @@ public class Projector {
 							current = it.next();
 							newConstraint.add(getNonGreedyVariable(current));
 						}
-						createImplication(new Object[] {iu}, newConstraint, new Explanation.HardRequirement(iu, req)); // FIXME
+						Explanation explanation = new Explanation.HardRequirement(iu, req);
+						createImplication(getRequirementGuard(new Object[] {iu}, isRootIu, explanation), newConstraint, explanation); // FIXME
 					}
 				}
 			} else {
@@ -814,9 +1073,25 @@ public class Projector {
 		expandRequirement(req, iu, Collections.<AbstractVariable> emptyList(), isRootIu);
 	}
 
-	private void missingRequirement(IInstallableUnit iu, IRequirement req) throws ContradictionException {
+	private void missingRequirement(IInstallableUnit iu, IRequirement req, boolean isRootIu) throws ContradictionException {
 		result.add(new Status(IStatus.WARNING, DirectorActivator.PI_DIRECTOR, NLS.bind(Messages.Planner_Unsatisfied_dependency, iu, req)));
-		createNegation(iu, req);
+		if (isRootIu && rootSelectors != null)
+			createRootNegation(iu, new Explanation.MissingIU(iu, req, iu == this.entryPoint));
+		else
+			createNegation(iu, req);
+	}
+
+	/**
+	 * Encodes a requirement of the entry point that cannot be satisfied. Rather than the
+	 * entry point, it is the guard of the requirement that is set to false, so that the
+	 * requirement can be left out of the problem like the other requests.
+	 */
+	private void createRootNegation(IInstallableUnit iu, Explanation explanation) throws ContradictionException {
+		AbstractVariable selector = createRootSelector(explanation);
+		if (DEBUG) {
+			Tracing.debug(explanation + ": " + iu + "->!" + selector); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		dependencyHelper.implication(new Object[] {iu}).impliesNot(selector).named(explanation);
 	}
 
 	/**
@@ -825,14 +1100,16 @@ public class Projector {
 	 */
 	private List<IInstallableUnit> getApplicableMatches(IRequirement req) {
 		List<IInstallableUnit> target = new ArrayList<IInstallableUnit>();
-		IQueryResult<IInstallableUnit> matches = picker.query(QueryUtil.createMatchQuery(req.getMatches()), null);
-		for (Iterator<IInstallableUnit> iterator = matches.iterator(); iterator.hasNext();) {
-			IInstallableUnit match = iterator.next();
+		Collection<IInstallableUnit> matches = matchCache.getMatches(req);
+		boolean applicable = false;
+		for (IInstallableUnit match : matches) {
 			if (isApplicable(match)) {
-				target.add(match);
+				applicable = true;
+				if (!impossibleIUs.contains(match))
+					target.add(match);
 			}
 		}
-		emptyBecauseFiltered = !matches.isEmpty() && target.isEmpty();
+		emptyBecauseFiltered = !matches.isEmpty() && !applicable;
 		return target;
 	}
 
@@ -879,12 +1156,12 @@ public class Projector {
 	}
 
 	//This will create as many implication as there is element in the right argument
-	private void createNegationImplication(Object left, List<?> right, Explanation name) throws ContradictionException {
+	private void createNegationImplication(Object[] left, List<?> right, Explanation name) throws ContradictionException {
 		if (DEBUG) {
-			Tracing.debug(name + ": " + left + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
+			Tracing.debug(name + ": " + Arrays.asList(left) + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 		for (Object r : right)
-			dependencyHelper.implication(new Object[] {left}).impliesNot(r).named(name);
+			dependencyHelper.implication(left).impliesNot(r).named(name);
 	}
 
 	private void createImplication(Object left, List<?> right, Explanation name) throws ContradictionException {
@@ -922,6 +1199,8 @@ public class Projector {
 			List<IInstallableUnit> singletons = new ArrayList<IInstallableUnit>();
 			List<IInstallableUnit> nonSingletons = new ArrayList<IInstallableUnit>();
 			for (IInstallableUnit iu : conflictingVersions) {
+				if (impossibleIUs.contains(iu))
+					continue;
 				if (iu.isSingleton()) {
 					singletons.add(iu);
 				} else {
@@ -1045,7 +1324,36 @@ public class Projector {
 	}
 
 	public Set<Explanation> getExplanation(IProgressMonitor monitor) {
+		return getExplanation(monitor, explanationTimeout > 0 ? System.currentTimeMillis() + explanationTimeout : 0);
+	}
+
+	/**
+	 * Explains why the problem has no solution, giving up at the given time. The requested
+	 * units found to be in conflict by then are returned as a partial explanation. Unless the
+	 * problem was encoded with a time limit for explanations, the partial explanation only
+	 * tells that it is incomplete.
+	 *
+	 * @param deadline the time, in milliseconds, after which the explanation is given up,
+	 * or <code>0</code> to wait until the explanation is complete
+	 */
+	public Set<Explanation> getExplanation(IProgressMonitor monitor, long deadline) {
+		// the problem of a reduced projector is not the one the slice describes
+		ExplanationCache.Key key = impossibleIUs.isEmpty() ? new ExplanationCache.Key(getSliceIUs(), entryPoint, alreadyInstalledIUs, nonGreedyIUs, selectionContext.getProperties(), considerMetaRequirements) : null;
+		if (key != null) {
+			Set<Explanation> explanation = ExplanationCache.get(key);
+			if (explanation != null) {
+				if (DEBUG)
+					Tracing.debug("Explanation found in the cache"); //$NON-NLS-1$
+				monitor.done();
+				return explanation;
+			}
+		}
 		ExplanationJob job = new ExplanationJob();
+		if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+			// no time is left to look for the conflicting requests
+			monitor.done();
+			return job.getPartialExplanation();
+		}
 		job.schedule();
 		monitor.setTaskName(Messages.Planner_NoSolution);
 		IProgressMonitor pm = new InfiniteProgress(monitor);
@@ -1054,9 +1362,15 @@ public class Projector {
 			synchronized (job) {
 				while (job.getExplanationResult() == null && job.getState() != Job.NONE) {
 					if (monitor.isCanceled()) {
-						job.cancel();
+						stopExplanation(job);
 						throw new OperationCanceledException();
 					}
+					if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+						if (DEBUG)
+							Tracing.debug("Explanation timed out"); //$NON-NLS-1$
+						stopExplanation(job);
+						return job.getPartialExplanation();
+					}
 					pm.worked(1);
 					try {
 						job.wait(100);
@@ -1069,7 +1383,42 @@ public class Projector {
 		} finally {
 			monitor.done();
 		}
-		return job.getExplanationResult();
+		Set<Explanation> explanation = job.getExplanationResult();
+		if (key != null && job.isComplete())
+			explanation = ExplanationCache.put(key, explanation);
+		return explanation;
+	}
+
+	/**
+	 * Cancels the given job and waits for it to end, so that the solver is no longer used
+	 * once the explanation has been given up. Must be called while holding the lock of the job.
+	 */
+	private void stopExplanation(ExplanationJob job) {
+		if (job.cancel())
+			// the job had not started yet
+			return;
+		while (job.getExplanationResult() == null && job.getState() != Job.NONE) {
+			// a search may start after the cancellation, so stop the solver until the job ends
+			solver.expireTimeout();
+			try {
+				job.wait(100);
+			} catch (InterruptedException e) {
+				if (DEBUG)
+					Tracing.debug("Interrupted while stopping the explanation"); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private Collection<IInstallableUnit> getSliceIUs() {
+		List<IInstallableUnit> ius = new ArrayList<IInstallableUnit>();
+		for (Map<Version, IInstallableUnit> versions : slice.values()) {
+			for (IInstallableUnit iu : versions.values()) {
+				// the entry point is described by its requirements
+				if (iu != entryPoint)
+					ius.add(iu);
+			}
+		}
+		return ius;
 	}
 
 	public Map<IInstallableUnitFragment, List<IInstallableUnit>> getFragmentAssociation() {
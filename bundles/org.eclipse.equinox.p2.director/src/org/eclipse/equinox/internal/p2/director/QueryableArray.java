@@ -38,7 +38,7 @@ public class QueryableArray extends IndexProvider<IInstallableUnit> {
 	public synchronized IIndex<IInstallableUnit> getIndex(String memberName) {
 		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName)) {
 			if (capabilityIndex == null)
-				capabilityIndex = new CapabilityIndex(dataSet.iterator());
+				capabilityIndex = new VersionedCapabilityIndex(dataSet);
 			return capabilityIndex;
 		}
 		if (InstallableUnit.MEMBER_ID.equals(memberName)) {
@@ -337,10 +337,20 @@ public class SimplePlanner implements IPlanner {
 			@SuppressWarnings("unchecked")
 			final IQueryable<IInstallableUnit>[] queryables = new IQueryable[] {slice, new QueryableArray(profileChangeRequest.getAdditions().toArray(new IInstallableUnit[profileChangeRequest.getAdditions().size()]))};
 			slice = new CompoundQueryable<IInstallableUnit>(queryables);
-			Projector projector = new Projector(slice, newSelectionContext, slicer.getNonGreedyIUs(), satisfyMetaRequirements(profileChangeRequest.getProfileProperties()));
-			projector.setUserDefined(profileChangeRequest.getPropertiesToAdd().containsKey("_internal_user_defined_"));
+			MatchCache matches = slicer.getMatchCache().restrict(slice);
+			boolean userDefined = profileChangeRequest.getPropertiesToAdd().containsKey("_internal_user_defined_"); //$NON-NLS-1$
+			Projector projector = new Projector(matches, newSelectionContext, slicer.getNonGreedyIUs(), satisfyMetaRequirements(profileChangeRequest.getProfileProperties()));
+			projector.setUserDefined(userDefined);
 			projector.encode((IInstallableUnit) updatedPlan[0], (IInstallableUnit[]) updatedPlan[1], profile, profileChangeRequest.getAdditions(), sub.newChild(ExpandWork / 4));
 			IStatus s = projector.invokeSolver(sub.newChild(ExpandWork / 4));
+			if (s.getSeverity() == IStatus.ERROR && s.getCode() == UNSATISFIABLE && projector.isReduced()) {
+				// Solve the full problem again so that the failure is explained with all the IUs
+				projector = new Projector(matches, newSelectionContext, slicer.getNonGreedyIUs(), satisfyMetaRequirements(profileChangeRequest.getProfileProperties()));
+				projector.setUserDefined(userDefined);
+				projector.setReduce(false);
+				projector.encode((IInstallableUnit) updatedPlan[0], (IInstallableUnit[]) updatedPlan[1], profile, profileChangeRequest.getAdditions(), sub.newChild(ExpandWork / 4));
+				s = projector.invokeSolver(sub.newChild(ExpandWork / 4));
+			}
 			if (s.getSeverity() == IStatus.CANCEL) {
 				IProvisioningPlan plan = engine.createPlan(profile, context);
 				plan.setStatus(s);
@@ -24,7 +24,7 @@ import org.eclipse.osgi.util.NLS;
 
 public class Slicer {
 	private static boolean DEBUG = false;
-	private final IQueryable<IInstallableUnit> possibilites;
+	private final MatchCache possibilites;
 	private final boolean considerMetaRequirements;
 	protected final IInstallableUnit selectionContext;
 	private final Map<String, Map<Version, IInstallableUnit>> slice; //The IUs that have been considered to be part of the problem
@@ -39,6 +39,13 @@ public class Slicer {
 	}
 
 	public Slicer(IQueryable<IInstallableUnit> possibilites, IInstallableUnit selectionContext, boolean considerMetaRequirements) {
+		this(new MatchCache(possibilites), selectionContext, considerMetaRequirements);
+	}
+
+	/**
+	 * Creates a slicer that looks up the units matching a requirement in the given cache.
+	 */
+	public Slicer(MatchCache possibilites, IInstallableUnit selectionContext, boolean considerMetaRequirements) {
 		this.possibilites = possibilites;
 		this.selectionContext = selectionContext;
 		this.considerMetaRequirements = considerMetaRequirements;
@@ -81,6 +88,7 @@ public class Slicer {
 
 	private void computeNonGreedyIUs() {
 		IQueryable<IInstallableUnit> queryable = new QueryableArray(considered.toArray(new IInstallableUnit[considered.size()]));
+		MatchCache consideredMatches = possibilites.restrict(queryable);
 		Iterator<IInstallableUnit> it = queryable.query(QueryUtil.ALL_UNITS, new NullProgressMonitor()).iterator();
 		while (it.hasNext()) {
 			Collection<IRequirement> reqs = getRequirements(it.next().unresolved());
@@ -89,7 +97,7 @@ public class Slicer {
 					continue;
 
 				if (!isGreedy(req)) {
-					nonGreedyIUs.addAll(queryable.query(QueryUtil.createMatchQuery(req.getMatches()), null).toUnmodifiableSet());
+					nonGreedyIUs.addAll(consideredMatches.getMatches(req));
 				}
 			}
 		}
@@ -99,6 +107,13 @@ public class Slicer {
 		return result;
 	}
 
+	/**
+	 * Returns the cache holding the units matching the requirements expanded while slicing.
+	 */
+	public MatchCache getMatchCache() {
+		return possibilites;
+	}
+
 	//This is a shortcut to simplify the error reporting when the filter of the ius we are being asked to install does not pass
 	private void validateInput(IInstallableUnit[] ius) {
 		for (int i = 0; i < ius.length; i++) {
@@ -180,10 +195,8 @@ public class Slicer {
 	private void expandRequirement(IInstallableUnit iu, IRequirement req) {
 		if (req.getMax() == 0)
 			return;
-		IQueryResult<IInstallableUnit> matches = possibilites.query(QueryUtil.createMatchQuery(req.getMatches()), null);
 		int validMatches = 0;
-		for (Iterator<IInstallableUnit> iterator = matches.iterator(); iterator.hasNext();) {
-			IInstallableUnit match = iterator.next();
+		for (IInstallableUnit match : possibilites.getMatches(req)) {
 			if (!isApplicable(match))
 				continue;
 			validMatches++;
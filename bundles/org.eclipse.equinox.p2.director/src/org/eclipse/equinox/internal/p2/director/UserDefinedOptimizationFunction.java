@@ -21,9 +21,9 @@ import org.sat4j.specs.ContradictionException;
 public class UserDefinedOptimizationFunction extends OptimizationFunction {
 	private Collection<IInstallableUnit> alreadyExistingRoots;
 	private SteppedTimeoutLexicoHelper<Object, Explanation> dependencyHelper;
-	private IQueryable<IInstallableUnit> picker;
+	private MatchCache picker;
 
-	public UserDefinedOptimizationFunction(IQueryable<IInstallableUnit> lastState, List<AbstractVariable> abstractVariables, List<AbstractVariable> optionalVariables, IQueryable<IInstallableUnit> picker, IInstallableUnit selectionContext, Map<String, Map<Version, IInstallableUnit>> slice, DependencyHelper<Object, Explanation> dependencyHelper, Collection<IInstallableUnit> alreadyInstalledIUs) {
+	public UserDefinedOptimizationFunction(IQueryable<IInstallableUnit> lastState, List<AbstractVariable> abstractVariables, List<AbstractVariable> optionalVariables, MatchCache picker, IInstallableUnit selectionContext, Map<String, Map<Version, IInstallableUnit>> slice, DependencyHelper<Object, Explanation> dependencyHelper, Collection<IInstallableUnit> alreadyInstalledIUs) {
 		super(lastState, abstractVariables, optionalVariables, picker, selectionContext, slice);
 		this.picker = picker;
 		this.slice = slice;
@@ -75,9 +75,8 @@ public class UserDefinedOptimizationFunction extends OptimizationFunction {
 	protected void changedRoots(List<WeightedObject<?>> weightedObjects, BigInteger weight, IInstallableUnit entryPointIU) {
 		Collection<IRequirement> requirements = entryPointIU.getRequirements();
 		for (IRequirement req : requirements) {
-			IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery(req.getMatches());
-			IQueryResult<IInstallableUnit> matches = picker.query(query, null);
-			Object[] changed = new Object[matches.toUnmodifiableSet().size()];
+			Collection<IInstallableUnit> matches = picker.getMatches(req);
+			Object[] changed = new Object[matches.size()];
 			int i = 0;
 			for (IInstallableUnit match : matches) {
 				changed[i++] = isInstalledAsRoot(match) ? dependencyHelper.not(match) : match;
@@ -96,8 +95,7 @@ public class UserDefinedOptimizationFunction extends OptimizationFunction {
 	protected void newRoots(List<WeightedObject<?>> weightedObjects, BigInteger weight, IInstallableUnit entryPointIU) {
 		Collection<IRequirement> requirements = entryPointIU.getRequirements();
 		for (IRequirement req : requirements) {
-			IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery(req.getMatches());
-			IQueryResult<IInstallableUnit> matches = picker.query(query, null);
+			Collection<IInstallableUnit> matches = picker.getMatches(req);
 			boolean oneInstalled = false;
 			for (IInstallableUnit match : matches) {
 				oneInstalled = oneInstalled || isInstalledAsRoot(match);
@@ -105,7 +103,7 @@ public class UserDefinedOptimizationFunction extends OptimizationFunction {
 			if (!oneInstalled) {
 				try {
 					Projector.AbstractVariable abs = new Projector.AbstractVariable("NEW"); //$NON-NLS-1$
-					dependencyHelper.or(FakeExplanation.getInstance(), abs, (Object[]) matches.toArray(IInstallableUnit.class));
+					dependencyHelper.or(FakeExplanation.getInstance(), abs, matches.toArray());
 					weightedObjects.add(WeightedObject.newWO(abs, weight));
 				} catch (ContradictionException e) {
 					// should not happen
@@ -118,10 +116,9 @@ public class UserDefinedOptimizationFunction extends OptimizationFunction {
 	protected void removedRoots(List<WeightedObject<?>> weightedObjects, BigInteger weight, IInstallableUnit entryPointIU) {
 		Collection<IRequirement> requirements = entryPointIU.getRequirements();
 		for (IRequirement req : requirements) {
-			IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery(req.getMatches());
-			IQueryResult<IInstallableUnit> matches = picker.query(query, null);
+			Collection<IInstallableUnit> matches = picker.getMatches(req);
 			boolean installed = false;
-			Object[] literals = new Object[matches.toUnmodifiableSet().size()];
+			Object[] literals = new Object[matches.size()];
 			int i = 0;
 			for (IInstallableUnit match : matches) {
 				installed = installed || isInstalledAsRoot(match);
@@ -143,9 +140,8 @@ public class UserDefinedOptimizationFunction extends OptimizationFunction {
 	protected void notuptodate(List<WeightedObject<?>> weightedObjects, BigInteger weight, IInstallableUnit entryPointIU) {
 		Collection<IRequirement> requirements = entryPointIU.getRequirements();
 		for (IRequirement req : requirements) {
-			IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery(req.getMatches());
-			IQueryResult<IInstallableUnit> matches = picker.query(query, null);
-			List<IInstallableUnit> toSort = new ArrayList<IInstallableUnit>(matches.toUnmodifiableSet());
+			Collection<IInstallableUnit> matches = picker.getMatches(req);
+			List<IInstallableUnit> toSort = new ArrayList<IInstallableUnit>(matches);
 			Collections.sort(toSort, Collections.reverseOrder());
 			if (toSort.size() == 0)
 				continue;
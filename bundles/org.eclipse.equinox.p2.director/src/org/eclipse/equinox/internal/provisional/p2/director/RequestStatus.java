@@ -77,6 +77,12 @@ public class RequestStatus extends Status {
 		return explanation;
 	}
 
+	//Return whether the explanation gives all the reasons why the request cannot be satisfied.
+	//An incomplete explanation only lists the requested IUs found to be in conflict.
+	public boolean isExplanationComplete() {
+		return explanation != null && !explanation.contains(Explanation.INCOMPLETE_EXPLANATION);
+	}
+
 	public int getShortExplanation() {
 		return detailedExplanation.shortAnswer();
 	}
@@ -22,19 +22,50 @@ public class DirectoryWatcher {
 	public class WatcherThread extends Thread {
 
 		private final long pollFrequency;
+		private final long reconcileFrequency;
 		private boolean done = false;
 
 		public WatcherThread(long pollFrequency) {
+			this(pollFrequency, -1);
+		}
+
+		/**
+		 * Creates a thread that only scans the directories when one of them reports a change,
+		 * or when the last scan is older than the reconcile frequency.
+		 * 
+		 * @param checkFrequency the time in milliseconds between two checks of the directories time stamps
+		 * @param reconcileFrequency the maximum time in milliseconds between two full scans, 
+		 * or <code>-1</code> to scan the directories on each check
+		 */
+		public WatcherThread(long checkFrequency, long reconcileFrequency) {
 			super("Directory Watcher"); //$NON-NLS-1$
-			this.pollFrequency = pollFrequency;
+			this.pollFrequency = checkFrequency;
+			this.reconcileFrequency = reconcileFrequency;
 		}
 
 		public void run() {
+			long[] lastStamps = null;
+			long lastScan = 0;
 			do {
 				try {
-					poll();
+					if (reconcileFrequency < 0) {
+						poll();
+					} else {
+						long[] stamps = getDirectoryTimestamps();
+						boolean reconcile = System.currentTimeMillis() - lastScan >= reconcileFrequency;
+						if (reconcile || !Arrays.equals(stamps, lastStamps)) {
+							if (!reconcile && lastStamps != null)
+								stamps = waitForQuietDirectories(stamps);
+							if (done)
+								break;
+							lastStamps = isSettled(stamps, System.currentTimeMillis()) ? stamps : null;
+							lastScan = System.currentTimeMillis();
+							poll();
+						}
+					}
 					synchronized (this) {
-						wait(pollFrequency);
+						if (!done)
+							wait(pollFrequency);
 					}
 				} catch (InterruptedException e) {
 					// ignore
@@ -45,6 +76,36 @@ public class DirectoryWatcher {
 			} while (!done);
 		}
 
+		/*
+		 * A change made within the time stamp granularity of the file system after a scan may
+		 * not change the time stamp again, so directories modified that recently are scanned
+		 * again on the next check.
+		 */
+		private boolean isSettled(long[] stamps, long now) {
+			for (int i = 0; i < stamps.length; i++)
+				if (now - stamps[i] < TIMESTAMP_GRANULARITY)
+					return false;
+			return true;
+		}
+
+		/*
+		 * Debounce a burst of changes, such as a large copy into a watched directory, by waiting
+		 * until the directory time stamps stop changing. Returns the final time stamps.
+		 */
+		private long[] waitForQuietDirectories(long[] stamps) throws InterruptedException {
+			long[] previous;
+			do {
+				previous = stamps;
+				synchronized (this) {
+					if (done)
+						return stamps;
+					wait(QUIET_PERIOD);
+				}
+				stamps = getDirectoryTimestamps();
+			} while (!Arrays.equals(previous, stamps));
+			return stamps;
+		}
+
 		public synchronized void done() {
 			done = true;
 			notify();
@@ -54,6 +115,8 @@ public class DirectoryWatcher {
 	public final static String POLL = "eclipse.p2.directory.watcher.poll"; //$NON-NLS-1$
 	public final static String DIR = "eclipse.p2.directory.watcher.dir"; //$NON-NLS-1$
 	private static final long DEFAULT_POLL_FREQUENCY = 2000;
+	private static final long QUIET_PERIOD = 200;
+	private static final long TIMESTAMP_GRANULARITY = 2000;
 
 	public static void log(String string, Throwable e) {
 		System.err.println(string + ": " + e); //$NON-NLS-1$
@@ -117,6 +180,26 @@ public class DirectoryWatcher {
 		watcher.start();
 	}
 
+	/**
+	 * Starts watching the directories without listing them on every check. The directories are
+	 * scanned when the time stamp of one of them changes, which happens when files are added, removed
+	 * or renamed, once the changes have settled. Files modified in place do not change the time
+	 * stamp of their directory, so a full scan is also done when the last scan is older than
+	 * the reconcile frequency.
+	 * 
+	 * @param checkFrequency the time in milliseconds between two checks of the directories time stamps
+	 * @param reconcileFrequency the maximum time in milliseconds between two full scans
+	 */
+	public synchronized void start(long checkFrequency, long reconcileFrequency) {
+		if (watcher != null)
+			throw new IllegalStateException(Messages.thread_started);
+		if (reconcileFrequency < 0)
+			throw new IllegalArgumentException();
+
+		watcher = new WatcherThread(checkFrequency, reconcileFrequency);
+		watcher.start();
+	}
+
 	public synchronized void stop() {
 		if (watcher == null)
 			throw new IllegalStateException(Messages.thread_not_started);
@@ -129,6 +212,13 @@ public class DirectoryWatcher {
 		return directories;
 	}
 
+	long[] getDirectoryTimestamps() {
+		long[] result = new long[directories.length];
+		for (int i = 0; i < directories.length; i++)
+			result[i] = directories[i].lastModified();
+		return result;
+	}
+
 	private void startPoll() {
 		removals = scannedFiles;
 		scannedFiles = new HashSet<File>();
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *   IBM Corporation - initial implementation and ideas
+ *******************************************************************************/
+package org.eclipse.equinox.internal.provisional.p2.directorywatcher;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.eclipse.equinox.internal.p2.core.helpers.CollectionUtils;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+
+/**
+ * Remembers a fingerprint of the content of each file published by a {@link RepositoryListener}
+ * so that a file whose time stamp changed without its content changing, for instance because it
+ * was copied, does not need to be published again.
+ * <p>
+ * The fingerprint of a jar is computed from the names, sizes and CRCs in its central directory,
+ * so the entries themselves are not read. The fingerprint of a folder is computed from the paths
+ * and sizes of all the files in its tree, and from the content of the files from which metadata
+ * is generated, including the localization files named by the bundle manifest.
+ * </p>
+ */
+class FingerprintCache {
+	private static final String MANIFEST = "META-INF/MANIFEST.MF"; //$NON-NLS-1$
+	private static final String[] METADATA_FILES = {MANIFEST, "META-INF/p2.inf", "plugin.xml", "fragment.xml", "feature.xml", "p2.inf"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	// the base names of the properties files the names and descriptions are taken from
+	private static final String[] LOCALIZATIONS = {"plugin", "fragment", "feature"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	private static final String BUNDLE_LOCALIZATION = "Bundle-Localization"; //$NON-NLS-1$
+	private static final String DEFAULT_BUNDLE_LOCALIZATION = "OSGI-INF/l10n/bundle"; //$NON-NLS-1$
+	private static final String PROPERTIES_SUFFIX = ".properties"; //$NON-NLS-1$
+	private static final String SEPARATOR = ","; //$NON-NLS-1$
+
+	private static class Entry {
+		// the time stamp the file had when it was published
+		final long published;
+		final String fingerprint;
+		// the latest time stamp of the file for which the fingerprint was found unchanged
+		long validated;
+
+		Entry(long published, long validated, String fingerprint) {
+			this.published = published;
+			this.validated = validated;
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	private final File storage;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private boolean dirty = false;
+
+	FingerprintCache(File storage) {
+		this.storage = storage;
+		load();
+	}
+
+	/**
+	 * Returns the time stamp the watcher should consider as seen for the given file, which is
+	 * either the time stamp the file was published with or a later one for which the content
+	 * was found to be unchanged.
+	 */
+	long getLastModified(File file, long published) {
+		Entry entry = entries.get(file.getAbsolutePath());
+		if (entry == null)
+			return published;
+		if (entry.published != published) {
+			// the repository was modified without us
+			entries.remove(file.getAbsolutePath());
+			dirty = true;
+			return published;
+		}
+		return entry.validated;
+	}
+
+	/**
+	 * Returns whether the content of the given file is the same as when it was published. If so,
+	 * the current time stamp of the file is remembered.
+	 */
+	boolean isUnchanged(File file) {
+		Entry entry = entries.get(file.getAbsolutePath());
+		if (entry == null)
+			return false;
+		long lastModified = file.lastModified();
+		String fingerprint = computeFingerprint(file);
+		if (fingerprint == null || !fingerprint.equals(entry.fingerprint))
+			return false;
+		if (Tracing.DEBUG)
+			Tracing.debug("[directorywatcher] Content of " + file + " is unchanged."); //$NON-NLS-1$ //$NON-NLS-2$
+		entry.validated = lastModified;
+		dirty = true;
+		return true;
+	}
+
+	void published(File file, long lastModified) {
+		String fingerprint = computeFingerprint(file);
+		if (fingerprint == null)
+			removed(file);
+		else
+			entries.put(file.getAbsolutePath(), new Entry(lastModified, lastModified, fingerprint));
+		dirty = true;
+	}
+
+	void removed(File file) {
+		if (entries.remove(file.getAbsolutePath()) != null)
+			dirty = true;
+	}
+
+	private void load() {
+		if (!storage.isFile())
+			return;
+		try {
+			InputStream input = new BufferedInputStream(new FileInputStream(storage));
+			try {
+				Map<String, String> properties = CollectionUtils.loadProperties(input);
+				for (Map.Entry<String, String> property : properties.entrySet()) {
+					StringTokenizer tokenizer = new StringTokenizer(property.getValue(), SEPARATOR);
+					if (tokenizer.countTokens() != 3)
+						continue;
+					long published = Long.parseLong(tokenizer.nextToken());
+					long validated = Long.parseLong(tokenizer.nextToken());
+					entries.put(property.getKey(), new Entry(published, validated, tokenizer.nextToken()));
+				}
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			entries.clear();
+		} catch (NumberFormatException e) {
+			entries.clear();
+		}
+	}
+
+	void save() {
+		if (!dirty)
+			return;
+		Map<String, String> properties = new HashMap<String, String>(entries.size());
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			Entry value = entry.getValue();
+			properties.put(entry.getKey(), value.published + SEPARATOR + value.validated + SEPARATOR + value.fingerprint);
+		}
+		try {
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(storage));
+			try {
+				CollectionUtils.storeProperties(properties, output, null);
+			} finally {
+				output.close();
+			}
+			dirty = false;
+		} catch (IOException e) {
+			// a stale cache would let changed files go unnoticed
+			storage.delete();
+		}
+	}
+
+	static String computeFingerprint(File file) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		try {
+			if (file.isDirectory())
+				updateFolderFingerprint(digest, file);
+			else if (!updateJarFingerprint(digest, file))
+				return null;
+		} catch (IOException e) {
+			return null;
+		}
+		StringBuffer result = new StringBuffer();
+		byte[] bytes = digest.digest();
+		for (int i = 0; i < bytes.length; i++) {
+			result.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+			result.append(Character.forDigit(bytes[i] & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	private static boolean updateJarFingerprint(MessageDigest digest, File file) throws IOException {
+		if (!file.isFile())
+			return false;
+		ZipFile zip = new ZipFile(file);
+		try {
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				digest.update(entry.getName().getBytes("UTF-8")); //$NON-NLS-1$
+				update(digest, entry.getSize());
+				update(digest, entry.getCrc());
+			}
+		} finally {
+			zip.close();
+		}
+		return true;
+	}
+
+	private static void updateFolderFingerprint(MessageDigest digest, File folder) throws IOException {
+		List<String> localizations = new ArrayList<String>(Arrays.asList(LOCALIZATIONS));
+		localizations.add(getBundleLocalization(folder));
+		updateTreeFingerprint(digest, folder, "", localizations, new byte[8192]); //$NON-NLS-1$
+	}
+
+	private static void updateTreeFingerprint(MessageDigest digest, File folder, String prefix, List<String> localizations, byte[] buffer) throws IOException {
+		String[] names = folder.list();
+		if (names == null)
+			throw new IOException(folder.toString());
+		Arrays.sort(names);
+		for (int i = 0; i < names.length; i++) {
+			File file = new File(folder, names[i]);
+			String path = prefix + names[i];
+			digest.update(path.getBytes("UTF-8")); //$NON-NLS-1$
+			if (file.isDirectory()) {
+				digest.update((byte) '/');
+				updateTreeFingerprint(digest, file, path + '/', localizations, buffer);
+				continue;
+			}
+			update(digest, file.length());
+			if (isMetadataFile(path, localizations)) {
+				InputStream input = new FileInputStream(file);
+				try {
+					int read;
+					while ((read = input.read(buffer)) != -1)
+						digest.update(buffer, 0, read);
+				} finally {
+					input.close();
+				}
+			}
+		}
+	}
+
+	private static boolean isMetadataFile(String path, List<String> localizations) {
+		for (int i = 0; i < METADATA_FILES.length; i++) {
+			if (METADATA_FILES[i].equals(path))
+				return true;
+		}
+		if (!path.endsWith(PROPERTIES_SUFFIX))
+			return false;
+		// the default localization and the ones of each locale, as in bundle_fr.properties
+		for (String localization : localizations) {
+			if (path.startsWith(localization))
+				return true;
+		}
+		return false;
+	}
+
+	private static String getBundleLocalization(File folder) {
+		File manifestFile = new File(folder, MANIFEST);
+		if (manifestFile.isFile()) {
+			try {
+				InputStream input = new BufferedInputStream(new FileInputStream(manifestFile));
+				try {
+					String localization = new Manifest(input).getMainAttributes().getValue(BUNDLE_LOCALIZATION);
+					if (localization != null)
+						return localization.trim();
+				} finally {
+					input.close();
+				}
+			} catch (IOException e) {
+				// the content of the manifest is part of the fingerprint anyway
+			}
+		}
+		return DEFAULT_BUNDLE_LOCALIZATION;
+	}
+
+	private static void update(MessageDigest digest, long value) {
+		for (int i = 0; i < 8; i++)
+			digest.update((byte) (value >>> (i * 8)));
+	}
+}
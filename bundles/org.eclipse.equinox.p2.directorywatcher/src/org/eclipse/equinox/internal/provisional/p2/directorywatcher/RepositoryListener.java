@@ -36,12 +36,15 @@ public class RepositoryListener extends DirectoryChangeListener {
 	public static final String ARTIFACT_REFERENCE = "artifact.reference"; //$NON-NLS-1$
 	public static final String FILE_LAST_MODIFIED = "file.lastModified"; //$NON-NLS-1$
 	public static final String FILE_NAME = "file.name"; //$NON-NLS-1$
+	private static final String FINGERPRINTS_FILE = "fingerprints.properties"; //$NON-NLS-1$
 	private final IMetadataRepository metadataRepository;
 	private final CachingArtifactRepository artifactRepository;
 	// at any point in time currentFiles is the list of files/dirs that the watcher has seen and 
 	// believes to be on disk.
 	private final Map<File, Long> currentFiles = new HashMap<File, Long>();
 	private final Collection<File> polledSeenFiles = new HashSet<File>();
+	// only available when the listener owns the generated repositories
+	private FingerprintCache fingerprints;
 
 	private EntryAdvice advice = new EntryAdvice();
 	private PublisherInfo info;
@@ -58,6 +61,8 @@ public class RepositoryListener extends DirectoryChangeListener {
 		URI location = Activator.getDefaultRepositoryLocation(this, repositoryName);
 		metadataRepository = initializeMetadataRepository(repositoryName, location, properties);
 		artifactRepository = initializeArtifactRepository(repositoryName, location, properties);
+		if ("file".equals(location.getScheme())) //$NON-NLS-1$
+			fingerprints = new FingerprintCache(new File(new File(location), FINGERPRINTS_FILE));
 		initializePublisher();
 	}
 
@@ -118,6 +123,9 @@ public class RepositoryListener extends DirectoryChangeListener {
 	}
 
 	public boolean changed(File file) {
+		// the time stamp may have changed without the content changing, for instance if the file was copied
+		if (fingerprints != null && fingerprints.isUnchanged(file))
+			return false;
 		return process(file, false);
 	}
 
@@ -142,8 +150,9 @@ public class RepositoryListener extends DirectoryChangeListener {
 		if (bundleDescription == null)
 			return false;
 
-		advice.setProperties(file, file.lastModified(), file.toURI());
-		return publish(new BundlesAction(new BundleDescription[] {bundleDescription}), isAddition);
+		long lastModified = file.lastModified();
+		advice.setProperties(file, lastModified, file.toURI());
+		return publish(new BundlesAction(new BundleDescription[] {bundleDescription}), file, lastModified, isAddition);
 		// TODO see bug 222370
 		// we only want to return the bundle IU so must exclude all fragment IUs
 		// not sure if this is still relevant but we should investigate.
@@ -151,13 +160,17 @@ public class RepositoryListener extends DirectoryChangeListener {
 
 	private boolean processFeature(File file, boolean isAddition) {
 		String link = metadataRepository.getProperties().get(Site.PROP_LINK_FILE);
-		advice.setProperties(file, file.lastModified(), file.toURI(), link);
-		return publish(new FeaturesAction(new File[] {file}), isAddition);
+		long lastModified = file.lastModified();
+		advice.setProperties(file, lastModified, file.toURI(), link);
+		return publish(new FeaturesAction(new File[] {file}), file, lastModified, isAddition);
 	}
 
-	private boolean publish(IPublisherAction action, boolean isAddition) {
+	private boolean publish(IPublisherAction action, File file, long lastModified, boolean isAddition) {
 		IPublisherResult result = isAddition ? iusToAdd : iusToChange;
-		return action.perform(info, result, new NullProgressMonitor()).isOK();
+		boolean published = action.perform(info, result, new NullProgressMonitor()).isOK();
+		if (published && fingerprints != null)
+			fingerprints.published(file, lastModified);
+		return published;
 	}
 
 	public boolean isInterested(File file) {
@@ -184,6 +197,11 @@ public class RepositoryListener extends DirectoryChangeListener {
 
 		synchronizeMetadataRepository(filesToRemove);
 		synchronizeArtifactRepository(filesToRemove);
+		if (fingerprints != null) {
+			for (File file : filesToRemove)
+				fingerprints.removed(file);
+			fingerprints.save();
+		}
 		iusToAdd = null;
 		iusToChange = null;
 	}
@@ -265,6 +283,8 @@ public class RepositoryListener extends DirectoryChangeListener {
 				} else {
 					File iuFile = new File(filename);
 					Long iuLastModified = new Long(iu.getProperty(FILE_LAST_MODIFIED));
+					if (fingerprints != null)
+						iuLastModified = new Long(fingerprints.getLastModified(iuFile, iuLastModified.longValue()));
 					currentFiles.put(iuFile, iuLastModified);
 				}
 			}
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.util.Map;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Lets the phases following the collect phase run while the collected artifacts are
+ * still being downloaded. The collect phase hands its {@link DownloadManager} over with
+ * {@link #start(DownloadManager, Map, IProgressMonitor, IDownloadListener)} instead of
+ * running it, and the phases that need the artifacts of an installable unit, that is the
+ * install and check trust phases, call {@link #waitFor(IInstallableUnit, IProgressMonitor)}
+ * before processing it.
+ * <p>
+ * The phases process the operands in the order of the plan, so a phase only waits for the
+ * artifacts of the unit it is about to process. Since trust must be checked before the
+ * units are installed, the phase set runs the check trust and install phases in turn over
+ * batches of units whose artifacts are downloaded, see {@link #isDownloaded(IInstallableUnit)}.
+ * A failed download or a rejected artifact fails the phase set and rolls the session back.
+ * </p>
+ * <p>
+ * A waiting phase is woken up whenever the downloads report progress, which the artifact
+ * repositories do as each request completes, and when the downloads end. The progress of
+ * the downloads is forwarded to the monitor given to {@link #setProgressMonitor(IProgressMonitor)}
+ * by the thread running the phases, which is the only thread using that monitor.
+ * </p>
+ * <p>
+ * Pipelining is enabled by setting the {@link #PROP_PIPELINED} property of the
+ * provisioning context to <code>true</code>.
+ * </p>
+ */
+public class DownloadPipeline {
+	public static final String PROP_PIPELINED = "org.eclipse.equinox.p2.engine.pipelined"; //$NON-NLS-1$
+
+	// the work of the downloads as reported to the progress monitor of the phase set
+	private static final int PROGRESS_WORK = 1000;
+
+	/**
+	 * Notified on the download thread once the downloads ended, successfully or not.
+	 */
+	public interface IDownloadListener {
+		public void downloadsDone(IStatus status);
+	}
+
+	/**
+	 * The monitor of the downloads. It records their progress for the thread running the
+	 * phases, wakes up the phases waiting for artifacts, and reports the downloads as
+	 * cancelled once the phase set is cancelled or the pipeline is closed.
+	 */
+	private class DownloadProgress implements IProgressMonitor {
+		private final IProgressMonitor phaseMonitor;
+		private volatile boolean canceled = false;
+
+		DownloadProgress(IProgressMonitor phaseMonitor) {
+			this.phaseMonitor = phaseMonitor;
+		}
+
+		public void beginTask(String name, int totalWork) {
+			synchronized (DownloadPipeline.this) {
+				if (totalDownloadWork == 0 && totalWork > 0)
+					totalDownloadWork = totalWork;
+			}
+		}
+
+		public void done() {
+			// the end of the downloads is signalled by the job
+		}
+
+		public void internalWorked(double work) {
+			synchronized (DownloadPipeline.this) {
+				downloadWorked += work;
+				// the repositories report progress once a request has its result
+				DownloadPipeline.this.notifyAll();
+			}
+		}
+
+		public boolean isCanceled() {
+			return canceled || phaseMonitor.isCanceled();
+		}
+
+		public void setCanceled(boolean value) {
+			canceled = value;
+		}
+
+		public void setTaskName(String name) {
+			// not shown
+		}
+
+		public void subTask(String name) {
+			// not shown
+		}
+
+		public void worked(int work) {
+			internalWorked(work);
+		}
+	}
+
+	private Map<IInstallableUnit, IArtifactRequest[]> requestsByUnit;
+	private Job job;
+	private DownloadProgress downloadProgress;
+	private IStatus result;
+	private boolean closed = false;
+	private IProgressMonitor progressMonitor;
+	private int totalDownloadWork = 0;
+	private double downloadWorked = 0;
+	private int reportedWork = 0;
+
+	public static boolean isEnabled(ProvisioningContext context) {
+		return context != null && Boolean.valueOf(context.getProperty(PROP_PIPELINED)).booleanValue();
+	}
+
+	/**
+	 * Starts the downloads of the given manager in the background.
+	 *
+	 * @param manager the download manager holding all the collected requests
+	 * @param requests the requests of each installable unit
+	 * @param monitor the monitor of the phase starting the downloads, which are cancelled
+	 * when it is
+	 * @param listener notified once the downloads ended, may be <code>null</code>
+	 */
+	public synchronized void start(final DownloadManager manager, Map<IInstallableUnit, IArtifactRequest[]> requests, IProgressMonitor monitor, final IDownloadListener listener) {
+		if (job != null)
+			throw new IllegalStateException();
+		this.requestsByUnit = requests;
+		final DownloadProgress progress = new DownloadProgress(monitor);
+		downloadProgress = progress;
+		job = new Job(Messages.download_artifact) {
+			protected IStatus run(IProgressMonitor jobMonitor) {
+				IStatus status = Status.CANCEL_STATUS;
+				try {
+					status = manager.start(progress);
+				} catch (RuntimeException e) {
+					status = new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e);
+				} finally {
+					try {
+						if (listener != null)
+							listener.downloadsDone(status);
+					} finally {
+						// never leave a phase waiting for a download that will not complete
+						done(status);
+					}
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	synchronized void done(IStatus status) {
+		result = status;
+		notifyAll();
+	}
+
+	/**
+	 * Sets the monitor to which the progress of the downloads is reported.
+	 */
+	public void setProgressMonitor(IProgressMonitor monitor) {
+		monitor.beginTask(Messages.download_artifact, PROGRESS_WORK);
+		synchronized (this) {
+			progressMonitor = monitor;
+		}
+	}
+
+	/**
+	 * Reports the progress the downloads made since the last call. Must be called by
+	 * the thread running the phases.
+	 */
+	public void reportProgress() {
+		IProgressMonitor monitor;
+		int work;
+		synchronized (this) {
+			if (progressMonitor == null || totalDownloadWork == 0)
+				return;
+			int worked = (int) Math.min(PROGRESS_WORK, downloadWorked * PROGRESS_WORK / totalDownloadWork);
+			work = worked - reportedWork;
+			if (work <= 0)
+				return;
+			reportedWork = worked;
+			monitor = progressMonitor;
+		}
+		monitor.worked(work);
+	}
+
+	/**
+	 * Waits until the artifacts of the given installable unit are downloaded.
+	 *
+	 * @return <code>OK</code> if the artifacts are available, or the status of the failed download
+	 */
+	public IStatus waitFor(IInstallableUnit iu, IProgressMonitor monitor) {
+		IArtifactRequest[] requests;
+		synchronized (this) {
+			if (job == null || closed)
+				return Status.OK_STATUS;
+			requests = requestsByUnit.get(iu);
+		}
+		if (requests == null || requests.length == 0)
+			return Status.OK_STATUS;
+		while (true) {
+			reportProgress();
+			synchronized (this) {
+				if (closed || isAvailable(requests))
+					return Status.OK_STATUS;
+				if (result != null)
+					// a request failing on one repository may still be fetched from the next one,
+					// so only the final result tells whether the artifacts are missing
+					return result;
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					return new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.download_interrupted, iu.getId()), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the artifacts of the given installable unit are downloaded, without waiting.
+	 *
+	 * @param iu the installable unit, may be <code>null</code>
+	 * @return <code>true</code> if the unit has no artifacts left to download
+	 */
+	public synchronized boolean isDownloaded(IInstallableUnit iu) {
+		if (iu == null || job == null || closed)
+			return true;
+		IArtifactRequest[] requests = requestsByUnit.get(iu);
+		return requests == null || isAvailable(requests);
+	}
+
+	/**
+	 * Waits until all the downloads are done.
+	 *
+	 * @return the status of the downloads
+	 */
+	public IStatus join() {
+		synchronized (this) {
+			if (job == null || closed)
+				return Status.OK_STATUS;
+		}
+		while (true) {
+			reportProgress();
+			synchronized (this) {
+				if (result != null)
+					return result;
+				if (closed)
+					return Status.CANCEL_STATUS;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					return new Status(IStatus.ERROR, EngineActivator.ID, Messages.download_artifact, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cancels the downloads still running and waits for them to stop, so that the session
+	 * can be rolled back without artifacts being written in the meantime.
+	 */
+	public void close() {
+		Job toCancel;
+		DownloadProgress progress;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			toCancel = job;
+			progress = downloadProgress;
+			notifyAll();
+		}
+		if (toCancel == null)
+			return;
+		progress.setCanceled(true);
+		toCancel.cancel();
+		try {
+			toCancel.join();
+		} catch (InterruptedException e) {
+			// the downloads have been cancelled
+		}
+	}
+
+	private static boolean isAvailable(IArtifactRequest[] requests) {
+		for (int i = 0; i < requests.length; i++) {
+			IStatus requestResult = requests[i].getResult();
+			if (requestResult == null || !requestResult.isOK())
+				return false;
+		}
+		return true;
+	}
+}
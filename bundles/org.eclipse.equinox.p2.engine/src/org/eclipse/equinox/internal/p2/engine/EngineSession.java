@@ -54,11 +54,14 @@ public class EngineSession {
 
 	private final IProvisioningAgent agent;
 
+	private final DownloadPipeline downloadPipeline;
+
 	public EngineSession(IProvisioningAgent agent, IProfile profile, ProvisioningContext context) {
 		super();
 		this.agent = agent;
 		this.profile = profile;
 		this.context = context;
+		this.downloadPipeline = DownloadPipeline.isEnabled(context) ? new DownloadPipeline() : null;
 	}
 
 	public IProfile getProfile() {
@@ -73,6 +76,14 @@ public class EngineSession {
 		return context;
 	}
 
+	/**
+	 * Returns the pipeline through which the artifacts are downloaded while the
+	 * following phases run, or <code>null</code> if the downloads are not pipelined.
+	 */
+	public DownloadPipeline getDownloadPipeline() {
+		return downloadPipeline;
+	}
+
 	public File getProfileDataDirectory() {
 		SimpleProfileRegistry profileRegistry = (SimpleProfileRegistry) agent.getService(IProfileRegistry.SERVICE_NAME);
 		return profileRegistry.getProfileDataDirectory(profile.getProfileId());
@@ -35,6 +35,7 @@ public class Messages extends NLS {
 	public static String committing;
 	public static String download_artifact;
 	public static String download_no_repository;
+	public static String download_interrupted;
 	public static String Engine_Operation_Canceled_By_User;
 
 	public static String EngineActivator_0;
@@ -32,6 +32,10 @@ public abstract class Phase {
 	 */
 	protected static final String PARM_AGENT = "agent"; //$NON-NLS-1$
 	protected static final String PARM_FORCED = "forced"; //$NON-NLS-1$
+	/**
+	 * Internal property.
+	 */
+	protected static final String PARM_DOWNLOAD_PIPELINE = "downloadPipeline"; //$NON-NLS-1$
 	protected static final String PARM_TOUCHPOINT = "touchpoint"; //$NON-NLS-1$
 	protected static final String LAST_RESULT_INTERNAL_NAME = "_p2_internal_last_result_variable_"; //$NON-NLS-1$ //
 	protected static final String LAST_RESULT_PUBLIC_NAME = "lastResult"; //$NON-NLS-1$
@@ -115,6 +119,8 @@ public abstract class Phase {
 		phaseParameters.put(PARM_PHASE_ID, phaseId);
 		phaseParameters.put(PARM_FORCED, Boolean.toString(forced));
 		phaseParameters.put(PARM_AGENT, session.getAgent());
+		if (session.getDownloadPipeline() != null)
+			phaseParameters.put(PARM_DOWNLOAD_PIPELINE, session.getDownloadPipeline());
 		mergeStatus(status, initializePhase(monitor, profile, phaseParameters));
 	}
 
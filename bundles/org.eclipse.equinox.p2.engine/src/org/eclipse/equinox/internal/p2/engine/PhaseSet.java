@@ -14,6 +14,7 @@ import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.p2.engine.*;
 import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.osgi.util.NLS;
 
 public class PhaseSet implements IPhaseSet {
@@ -31,9 +32,17 @@ public class PhaseSet implements IPhaseSet {
 
 	public final MultiStatus perform(EngineSession session, Operand[] operands, IProgressMonitor monitor) {
 		MultiStatus status = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
+		DownloadPipeline pipeline = session.getDownloadPipeline();
 		int[] weights = getProgressWeights(operands);
 		int totalWork = getTotalWork(weights);
-		SubMonitor pm = SubMonitor.convert(monitor, totalWork);
+		int downloadWork = pipeline == null ? 0 : getDownloadWork(weights);
+		SubMonitor pm = SubMonitor.convert(monitor, totalWork + downloadWork);
+		IProgressMonitor downloadMonitor = null;
+		if (pipeline != null) {
+			// the downloads progress while the phases run, so neither may end the monitor of the other
+			downloadMonitor = new SubProgressMonitor(pm, downloadWork);
+			pipeline.setProgressMonitor(downloadMonitor);
+		}
 		try {
 			isRunning = true;
 			for (int i = 0; i < phases.length; i++) {
@@ -42,21 +51,12 @@ public class PhaseSet implements IPhaseSet {
 					return status;
 				}
 				Phase phase = phases[i];
-				phase.actionManager = (ActionManager) session.getAgent().getService(ActionManager.SERVICE_NAME);
-				try {
-					phase.perform(status, session, operands, pm.newChild(weights[i]));
-				} catch (OperationCanceledException e) {
-					// propagate operation cancellation
-					status.add(new Status(IStatus.CANCEL, EngineActivator.ID, e.getMessage(), e));
-				} catch (RuntimeException e) {
-					// "perform" calls user code and might throw an unchecked exception
-					// we catch the error here to gather information on where the problem occurred.
-					status.add(new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e));
-				} catch (LinkageError e) {
-					// Catch linkage errors as these are generally recoverable but let other Errors propagate (see bug 222001)
-					status.add(new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e));
-				} finally {
-					phase.actionManager = null;
+				if (pipeline != null && isTrustCheckedInstall(i)) {
+					phase = performTrustedInstall(status, session, operands, phase, phases[i + 1], new SubProgressMonitor(pm, weights[i]), new SubProgressMonitor(pm, weights[i + 1]));
+					i++;
+				} else {
+					IProgressMonitor phaseMonitor = pipeline == null ? pm.newChild(weights[i]) : new SubProgressMonitor(pm, weights[i]);
+					performPhase(status, session, phase, operands, phaseMonitor);
 				}
 				if (status.matches(IStatus.CANCEL)) {
 					MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.CANCEL, Messages.Engine_Operation_Canceled_By_User, null);
@@ -69,13 +69,101 @@ public class PhaseSet implements IPhaseSet {
 					return result;
 				}
 			}
+			if (pipeline != null) {
+				// downloads nobody waited for, for instance when the phase set has no install phase
+				status.merge(pipeline.join());
+				if (status.matches(IStatus.CANCEL)) {
+					MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.CANCEL, Messages.Engine_Operation_Canceled_By_User, null);
+					result.merge(status);
+					return result;
+				} else if (status.matches(IStatus.ERROR)) {
+					MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, Messages.Phase_Collect_Error, null);
+					result.add(new Status(IStatus.ERROR, EngineActivator.ID, session.getContextString(), null));
+					result.merge(status);
+					return result;
+				}
+			}
 		} finally {
+			// stop the downloads still running before the session gets rolled back
+			if (pipeline != null) {
+				pipeline.close();
+				downloadMonitor.done();
+			}
 			pm.done();
 			isRunning = false;
 		}
 		return status;
 	}
 
+	private void performPhase(MultiStatus status, EngineSession session, Phase phase, Operand[] operands, IProgressMonitor phaseMonitor) {
+		DownloadPipeline pipeline = session.getDownloadPipeline();
+		phase.actionManager = (ActionManager) session.getAgent().getService(ActionManager.SERVICE_NAME);
+		try {
+			phase.perform(status, session, operands, phaseMonitor);
+		} catch (OperationCanceledException e) {
+			// propagate operation cancellation
+			status.add(new Status(IStatus.CANCEL, EngineActivator.ID, e.getMessage(), e));
+		} catch (RuntimeException e) {
+			// "perform" calls user code and might throw an unchecked exception
+			// we catch the error here to gather information on where the problem occurred.
+			status.add(new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e));
+		} catch (LinkageError e) {
+			// Catch linkage errors as these are generally recoverable but let other Errors propagate (see bug 222001)
+			status.add(new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e));
+		} finally {
+			phase.actionManager = null;
+			if (pipeline != null) {
+				phaseMonitor.done();
+				pipeline.reportProgress();
+			}
+		}
+	}
+
+	/*
+	 * Checking trust needs the artifacts, so when the downloads are pipelined the check trust
+	 * and install phases run in turn over successive batches of operands, each batch being
+	 * checked before it is installed. A batch is made of the next operand and of the operands
+	 * following it whose artifacts are already downloaded. Returns the phase performed last.
+	 */
+	private Phase performTrustedInstall(MultiStatus status, EngineSession session, Operand[] operands, Phase checkTrust, Phase install, IProgressMonitor trustMonitor, IProgressMonitor installMonitor) {
+		DownloadPipeline pipeline = session.getDownloadPipeline();
+		SubMonitor trustProgress = SubMonitor.convert(trustMonitor, operands.length);
+		SubMonitor installProgress = SubMonitor.convert(installMonitor, operands.length);
+		try {
+			int start = 0;
+			while (start < operands.length) {
+				IInstallableUnit next = getInstalledUnit(operands[start]);
+				// a failed download is reported by the check trust phase
+				if (next != null)
+					pipeline.waitFor(next, trustProgress);
+				int end = start + 1;
+				while (end < operands.length && pipeline.isDownloaded(getInstalledUnit(operands[end])))
+					end++;
+				Operand[] batch = new Operand[end - start];
+				System.arraycopy(operands, start, batch, 0, batch.length);
+				performPhase(status, session, checkTrust, batch, trustProgress.newChild(batch.length));
+				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+					return checkTrust;
+				performPhase(status, session, install, batch, installProgress.newChild(batch.length));
+				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+					return install;
+				start = end;
+			}
+			return install;
+		} finally {
+			trustMonitor.done();
+			installMonitor.done();
+		}
+	}
+
+	private boolean isTrustCheckedInstall(int index) {
+		return index + 1 < phases.length && PhaseSetFactory.PHASE_CHECK_TRUST.equals(phases[index].phaseId) && PhaseSetFactory.PHASE_INSTALL.equals(phases[index + 1].phaseId);
+	}
+
+	private static IInstallableUnit getInstalledUnit(Operand operand) {
+		return operand instanceof InstallableUnitOperand ? ((InstallableUnitOperand) operand).second() : null;
+	}
+
 	public synchronized boolean pause() {
 		if (isRunning && !isPaused) {
 			isPaused = true;
@@ -162,6 +250,15 @@ public class PhaseSet implements IPhaseSet {
 		return weights;
 	}
 
+	// pipelined downloads are weighted like the collect phase that would otherwise run them
+	private int getDownloadWork(int[] weights) {
+		for (int i = 0; i < phases.length; i++) {
+			if (PhaseSetFactory.PHASE_COLLECT.equals(phases[i].phaseId))
+				return weights[i];
+		}
+		return 0;
+	}
+
 	private int countApplicable(Phase phase, Operand[] operands) {
 		int count = 0;
 		for (int i = 0; i < operands.length; i++) {
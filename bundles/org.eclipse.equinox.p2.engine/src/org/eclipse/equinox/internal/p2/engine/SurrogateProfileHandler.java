@@ -21,6 +21,7 @@ import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
 import org.eclipse.equinox.internal.p2.engine.ProfileParser.ProfileHandler;
 import org.eclipse.equinox.internal.p2.engine.SimpleProfileRegistry.Parser;
+import org.eclipse.equinox.internal.p2.metadata.expression.*;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.metadata.*;
@@ -280,15 +281,33 @@ public class SurrogateProfileHandler implements ISurrogateProfileHandler {
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.internal.p2.engine.ISurrogateProfileHandler#queryProfile(org.eclipse.equinox.internal.provisional.p2.engine.IProfile, org.eclipse.equinox.internal.provisional.p2.query.Query, org.eclipse.equinox.internal.provisional.p2.query.Collector, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public IQueryResult<IInstallableUnit> queryProfile(IProfile profile, IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
-		IProfile sharedProfile = getSharedProfile(profile.getProfileId());
+	public IQueryResult<IInstallableUnit> queryProfile(final IProfile profile, final IQuery<IInstallableUnit> query, final IProgressMonitor monitor) {
+		final IProfile sharedProfile = getSharedProfile(profile.getProfileId());
 		if (sharedProfile == null)
 			return profile.query(query, monitor);
 
-		// TODO: Should consider using a sequenced iterator here instead of collecting
-		Collector<IInstallableUnit> result = new Collector<IInstallableUnit>();
-		result.addAll(sharedProfile.query(query, monitor));
-		result.addAll(profile.query(query, monitor));
-		return result;
+		// The units of the shared profile are returned before those of the user profile, which
+		// is only queried once they have all been read. A streaming query is thus never performed
+		// on both profiles at the same time, and a caller stopping at the first unit found in the
+		// shared profile does not query the user profile at all.
+		Iterator<Iterator<IInstallableUnit>> results = new Iterator<Iterator<IInstallableUnit>>() {
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < 2;
+			}
+
+			public Iterator<IInstallableUnit> next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				IProfile queried = next++ == 0 ? sharedProfile : profile;
+				return queried.query(query, monitor).iterator();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		return new QueryResult<IInstallableUnit>(new LazyRepeatableIterator<IInstallableUnit>(new CompoundIterator<IInstallableUnit>(results)));
 	}
 }
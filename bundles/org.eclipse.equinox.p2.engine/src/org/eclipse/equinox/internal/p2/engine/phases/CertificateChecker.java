@@ -10,11 +10,12 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.engine.phases;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.cert.Certificate;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.engine.*;
@@ -34,6 +35,19 @@ import org.osgi.util.tracker.ServiceTracker;
 public class CertificateChecker {
 	private static final String DEBUG_PREFIX = "certificate checker"; //$NON-NLS-1$
 
+	private static final Certificate[][] NOT_SIGNED = new Certificate[0][];
+	private static final int MAX_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static final int CACHE_SIZE = 10000;
+	// the certificate chains of the signers of the artifacts already verified, by content
+	// digest. Whether a chain is trusted is asked to the trust engines on every check.
+	static final Map<String, Certificate[][]> CACHE = new LinkedHashMap<String, Certificate[][]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Certificate[][]> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
 	private ArrayList<File> artifacts;
 	private final IProvisioningAgent agent;
 
@@ -59,8 +73,6 @@ public class CertificateChecker {
 
 	private IStatus checkCertificates(SignedContentFactory verifierFactory) {
 		UIServices serviceUI = (UIServices) agent.getService(UIServices.SERVICE_NAME);
-		SignedContent content = null;
-		SignerInfo[] signerInfo = null;
 		ArrayList<Certificate> untrusted = new ArrayList<Certificate>();
 		ArrayList<File> unsigned = new ArrayList<File>();
 		ArrayList<Certificate[]> untrustedChain = new ArrayList<Certificate[]>();
@@ -68,57 +80,59 @@ public class CertificateChecker {
 		IStatus status = Status.OK_STATUS;
 		if (artifacts.size() == 0 || serviceUI == null)
 			return status;
-		for (File artifact : artifacts) {
-			try {
-				content = verifierFactory.getSignedContent(artifact);
-				if (!content.isSigned()) {
-					unsigned.add(artifact);
+		Certificate[][][] signers;
+		try {
+			signers = getSigners(verifierFactory);
+		} catch (GeneralSecurityException e) {
+			return new Status(IStatus.ERROR, EngineActivator.ID, Messages.CertificateChecker_SignedContentError, e);
+		} catch (IOException e) {
+			return new Status(IStatus.ERROR, EngineActivator.ID, Messages.CertificateChecker_SignedContentIOError, e);
+		}
+		TrustEngine[] trustEngines = getTrustEngines();
+		for (int a = 0; a < signers.length; a++) {
+			File artifact = artifacts.get(a);
+			if (signers[a].length == 0) {
+				unsigned.add(artifact);
+				continue;
+			}
+			for (int i = 0; i < signers[a].length; i++) {
+				Certificate[] certificateChain = signers[a][i];
+				if (isTrusted(certificateChain, trustEngines))
 					continue;
+				if (!untrusted.contains(certificateChain[0])) {
+					untrusted.add(certificateChain[0]);
+					untrustedChain.add(certificateChain);
 				}
-				signerInfo = content.getSignerInfos();
-			} catch (GeneralSecurityException e) {
-				return new Status(IStatus.ERROR, EngineActivator.ID, Messages.CertificateChecker_SignedContentError, e);
-			} catch (IOException e) {
-				return new Status(IStatus.ERROR, EngineActivator.ID, Messages.CertificateChecker_SignedContentIOError, e);
-			}
-			for (int i = 0; i < signerInfo.length; i++) {
-				if (!signerInfo[i].isTrusted()) {
-					Certificate[] certificateChain = signerInfo[i].getCertificateChain();
-					if (!untrusted.contains(certificateChain[0])) {
-						untrusted.add(certificateChain[0]);
-						untrustedChain.add(certificateChain);
-					}
-					if (DebugHelper.DEBUG_CERTIFICATE_CHECKER_UNTRUSTED) {
-						if (untrustedArtifacts.containsKey(certificateChain[0])) {
-							untrustedArtifacts.get(certificateChain[0]).add(artifact);
-						} else {
-							untrustedArtifacts.put(certificateChain[0], new ArrayList<File>(Arrays.asList(artifact)));
-						}
+				if (DebugHelper.DEBUG_CERTIFICATE_CHECKER_UNTRUSTED) {
+					if (untrustedArtifacts.containsKey(certificateChain[0])) {
+						untrustedArtifacts.get(certificateChain[0]).add(artifact);
+					} else {
+						untrustedArtifacts.put(certificateChain[0], new ArrayList<File>(Arrays.asList(artifact)));
 					}
 				}
+			}
+		}
 
-				// log the unsigned artifacts if requested
-				if (DebugHelper.DEBUG_CERTIFICATE_CHECKER_UNSIGNED && !unsigned.isEmpty()) {
-					StringBuffer message = new StringBuffer("The following artifacts are unsigned:\n"); //$NON-NLS-1$
-					for (File file : unsigned) {
-						message.append(NLS.bind("  {0}\n", file.getPath())); //$NON-NLS-1$
-					}
-					DebugHelper.debug(DEBUG_PREFIX, message.toString());
-				}
+		// log the unsigned artifacts if requested
+		if (DebugHelper.DEBUG_CERTIFICATE_CHECKER_UNSIGNED && !unsigned.isEmpty()) {
+			StringBuffer message = new StringBuffer("The following artifacts are unsigned:\n"); //$NON-NLS-1$
+			for (File file : unsigned) {
+				message.append(NLS.bind("  {0}\n", file.getPath())); //$NON-NLS-1$
+			}
+			DebugHelper.debug(DEBUG_PREFIX, message.toString());
+		}
 
-				// log the untrusted certificates if requested
-				if (DebugHelper.DEBUG_CERTIFICATE_CHECKER_UNTRUSTED && !untrusted.isEmpty()) {
-					StringBuffer message = new StringBuffer("The following certificates are untrusted:\n"); //$NON-NLS-1$
-					for (Certificate cert : untrustedArtifacts.keySet()) {
-						message.append(cert.toString() + "\n"); //$NON-NLS-1$
-						message.append("  used by the following artifacts:\n"); //$NON-NLS-1$
-						for (File file : untrustedArtifacts.get(cert)) {
-							message.append(NLS.bind("    {0}\n", file.getPath())); //$NON-NLS-1$
-						}
-					}
-					DebugHelper.debug(DEBUG_PREFIX, message.toString());
+		// log the untrusted certificates if requested
+		if (DebugHelper.DEBUG_CERTIFICATE_CHECKER_UNTRUSTED && !untrusted.isEmpty()) {
+			StringBuffer message = new StringBuffer("The following certificates are untrusted:\n"); //$NON-NLS-1$
+			for (Certificate cert : untrustedArtifacts.keySet()) {
+				message.append(cert.toString() + "\n"); //$NON-NLS-1$
+				message.append("  used by the following artifacts:\n"); //$NON-NLS-1$
+				for (File file : untrustedArtifacts.get(cert)) {
+					message.append(NLS.bind("    {0}\n", file.getPath())); //$NON-NLS-1$
 				}
 			}
+			DebugHelper.debug(DEBUG_PREFIX, message.toString());
 		}
 		String policy = getUnsignedContentPolicy();
 		//if there is unsigned content and we should never allow it, then fail without further checking certificates
@@ -210,6 +224,130 @@ public class CertificateChecker {
 		return Status.OK_STATUS;
 	}
 
+	private static TrustEngine[] getTrustEngines() {
+		ServiceTracker<TrustEngine, TrustEngine> trustEngineTracker = new ServiceTracker<TrustEngine, TrustEngine>(EngineActivator.getContext(), TrustEngine.class, null);
+		trustEngineTracker.open();
+		try {
+			Object[] services = trustEngineTracker.getServices();
+			if (services == null)
+				return new TrustEngine[0];
+			TrustEngine[] trustEngines = new TrustEngine[services.length];
+			System.arraycopy(services, 0, trustEngines, 0, services.length);
+			return trustEngines;
+		} finally {
+			trustEngineTracker.close();
+		}
+	}
+
+	/*
+	 * Asks the trust engines for an anchor of the chain, as the framework does when it verifies
+	 * content, so that the anchors added or removed since an artifact was verified are honoured.
+	 */
+	private static boolean isTrusted(Certificate[] certificateChain, TrustEngine[] trustEngines) {
+		for (int i = 0; i < trustEngines.length; i++) {
+			try {
+				if (trustEngines[i].findTrustAnchor(certificateChain) != null)
+					return true;
+			} catch (IOException e) {
+				// the framework also goes on with the next trust engine
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the certificate chains of the signers of each artifact, in the order of the
+	 * artifacts, with an empty array for unsigned artifacts. Several artifacts are verified
+	 * concurrently.
+	 */
+	private Certificate[][][] getSigners(final SignedContentFactory verifierFactory) throws GeneralSecurityException, IOException {
+		Certificate[][][] result = new Certificate[artifacts.size()][][];
+		if (result.length == 1) {
+			result[0] = getSigners(verifierFactory, artifacts.get(0));
+			return result;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(result.length, MAX_THREADS));
+		try {
+			List<Future<Certificate[][]>> futures = new ArrayList<Future<Certificate[][]>>(result.length);
+			for (final File artifact : artifacts) {
+				futures.add(executor.submit(new Callable<Certificate[][]>() {
+					public Certificate[][] call() throws Exception {
+						return getSigners(verifierFactory, artifact);
+					}
+				}));
+			}
+			for (int i = 0; i < result.length; i++) {
+				try {
+					result[i] = futures.get(i).get();
+				} catch (InterruptedException e) {
+					throw (IOException) new InterruptedIOException().initCause(e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof GeneralSecurityException)
+						throw (GeneralSecurityException) cause;
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/*
+	 * The same content is signed by the same signers wherever it is, so an artifact that
+	 * was already verified is recognised by its digest and is not verified again.
+	 */
+	static Certificate[][] getSigners(SignedContentFactory verifierFactory, File artifact) throws GeneralSecurityException, IOException {
+		String key = artifact.isFile() ? getDigest(artifact) : null;
+		if (key != null) {
+			synchronized (CACHE) {
+				Certificate[][] signers = CACHE.get(key);
+				if (signers != null)
+					return signers;
+			}
+		}
+		SignedContent content = verifierFactory.getSignedContent(artifact);
+		Certificate[][] signers = NOT_SIGNED;
+		if (content.isSigned()) {
+			SignerInfo[] signerInfos = content.getSignerInfos();
+			signers = new Certificate[signerInfos.length][];
+			for (int i = 0; i < signerInfos.length; i++)
+				signers[i] = signerInfos[i].getCertificateChain();
+		}
+		if (key != null) {
+			synchronized (CACHE) {
+				CACHE.put(key, signers);
+			}
+		}
+		return signers;
+	}
+
+	private static String getDigest(File artifact) throws GeneralSecurityException, IOException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		InputStream in = new BufferedInputStream(new FileInputStream(artifact));
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				digest.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		byte[] bytes = digest.digest();
+		StringBuffer result = new StringBuffer(bytes.length * 2);
+		for (int i = 0; i < bytes.length; i++) {
+			result.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+			result.append(Character.forDigit(bytes[i] & 0xf, 16));
+		}
+		return result.toString();
+	}
+
 	/**
 	 * Return the policy on unsigned content.
 	 */
@@ -14,8 +14,7 @@ import java.io.File;
 import java.util.*;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.equinox.internal.p2.engine.InstallableUnitOperand;
-import org.eclipse.equinox.internal.p2.engine.InstallableUnitPhase;
+import org.eclipse.equinox.internal.p2.engine.*;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.engine.PhaseSetFactory;
 import org.eclipse.equinox.p2.engine.IProfile;
@@ -72,6 +71,13 @@ public class CheckTrust extends InstallableUnitPhase {
 
 	protected IStatus initializeOperand(IProfile profile, InstallableUnitOperand operand, Map<String, Object> parameters, IProgressMonitor monitor) {
 		IInstallableUnit iu = operand.second();
+		// the artifacts must be there before their signatures can be checked
+		DownloadPipeline pipeline = (DownloadPipeline) parameters.get(PARM_DOWNLOAD_PIPELINE);
+		if (pipeline != null) {
+			IStatus downloadStatus = pipeline.waitFor(iu, monitor);
+			if (!downloadStatus.isOK())
+				return downloadStatus;
+		}
 		parameters.put(PARM_IU, iu);
 
 		return super.initializeOperand(profile, operand, parameters, monitor);
@@ -31,6 +31,8 @@ public class Collect extends InstallableUnitPhase {
 	public static final String PARM_ARTIFACT_REQUESTS = "artifactRequests"; //$NON-NLS-1$
 	public static final String NO_ARTIFACT_REPOSITORIES_AVAILABLE = "noArtifactRepositoriesAvailable"; //$NON-NLS-1$
 	private IProvisioningAgent agent = null;
+	private Map<IInstallableUnit, IArtifactRequest[]> requestsByUnit = null;
+	private int firstOperandRequest;
 
 	public Collect(int weight) {
 		super(PhaseSetFactory.PHASE_COLLECT, weight);
@@ -75,7 +77,7 @@ public class Collect extends InstallableUnitPhase {
 		// it happens when rollbacking
 		if (artifactRequests.size() == 0)
 			return Status.OK_STATUS;
-		ProvisioningContext context = (ProvisioningContext) parameters.get(PARM_CONTEXT);
+		final ProvisioningContext context = (ProvisioningContext) parameters.get(PARM_CONTEXT);
 		synchronized (this) {
 			agent = (IProvisioningAgent) parameters.get(PARM_AGENT);
 		}
@@ -98,9 +100,25 @@ public class Collect extends InstallableUnitPhase {
 				totalArtifactRequests.add(requests[i]);
 			}
 		}
-		IProvisioningEventBus bus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
+		final IProvisioningEventBus bus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
 		if (bus != null)
 			bus.publishEvent(new CollectEvent(CollectEvent.TYPE_OVERALL_START, null, context, totalArtifactRequests.toArray(new IArtifactRequest[totalArtifactRequests.size()])));
+		DownloadPipeline pipeline = (DownloadPipeline) parameters.get(PARM_DOWNLOAD_PIPELINE);
+		if (pipeline != null) {
+			// the agent is kept until the downloads end so that they can still be paused
+			final IArtifactRequest[] allRequests = totalArtifactRequests.toArray(new IArtifactRequest[totalArtifactRequests.size()]);
+			pipeline.start(dm, requestsByUnit, monitor, new DownloadPipeline.IDownloadListener() {
+				public void downloadsDone(IStatus status) {
+					if (status.isOK() && bus != null)
+						bus.publishEvent(new CollectEvent(CollectEvent.TYPE_OVERALL_END, null, context, allRequests));
+					synchronized (Collect.this) {
+						agent = null;
+					}
+				}
+			});
+			requestsByUnit = null;
+			return Status.OK_STATUS;
+		}
 		IStatus downloadStatus = dm.start(monitor);
 		try {
 			return downloadStatus;
@@ -115,6 +133,7 @@ public class Collect extends InstallableUnitPhase {
 
 	protected IStatus initializePhase(IProgressMonitor monitor, IProfile profile, Map<String, Object> parameters) {
 		parameters.put(PARM_ARTIFACT_REQUESTS, new ArrayList<IArtifactRequest[]>());
+		requestsByUnit = new HashMap<IInstallableUnit, IArtifactRequest[]>();
 		return null;
 	}
 
@@ -139,7 +158,23 @@ public class Collect extends InstallableUnitPhase {
 		// defer setting the IU until after the super method to avoid triggering touchpoint initialization
 		IInstallableUnit iu = operand.second();
 		parameters.put(PARM_IU, iu);
+		@SuppressWarnings("unchecked")
+		List<IArtifactRequest[]> artifactRequests = (List<IArtifactRequest[]>) parameters.get(PARM_ARTIFACT_REQUESTS);
+		firstOperandRequest = artifactRequests.size();
 		return status;
 	}
 
+	protected IStatus completeOperand(IProfile profile, InstallableUnitOperand operand, Map<String, Object> parameters, IProgressMonitor monitor) {
+		// remember which requests were added by the actions of the operand
+		@SuppressWarnings("unchecked")
+		List<IArtifactRequest[]> artifactRequests = (List<IArtifactRequest[]>) parameters.get(PARM_ARTIFACT_REQUESTS);
+		if (requestsByUnit != null && artifactRequests != null && artifactRequests.size() > firstOperandRequest) {
+			List<IArtifactRequest> operandRequests = new ArrayList<IArtifactRequest>();
+			for (IArtifactRequest[] requests : artifactRequests.subList(firstOperandRequest, artifactRequests.size()))
+				operandRequests.addAll(Arrays.asList(requests));
+			requestsByUnit.put(operand.second(), operandRequests.toArray(new IArtifactRequest[operandRequests.size()]));
+		}
+		return super.completeOperand(profile, operand, parameters, monitor);
+	}
+
 }
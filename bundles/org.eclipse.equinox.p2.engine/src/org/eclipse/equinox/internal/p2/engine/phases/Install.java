@@ -113,6 +113,12 @@ public class Install extends InstallableUnitPhase {
 	protected IStatus initializeOperand(IProfile profile, InstallableUnitOperand operand, Map<String, Object> parameters, IProgressMonitor monitor) {
 		IInstallableUnit iu = operand.second();
 		monitor.subTask(NLS.bind(Messages.Phase_Install_Task, iu.getId()));
+		DownloadPipeline pipeline = (DownloadPipeline) parameters.get(PARM_DOWNLOAD_PIPELINE);
+		if (pipeline != null) {
+			IStatus downloadStatus = pipeline.waitFor(iu, monitor);
+			if (!downloadStatus.isOK())
+				return downloadStatus;
+		}
 		parameters.put(PARM_IU, iu);
 
 		Collection<IArtifactKey> artifacts = iu.getArtifacts();
@@ -13,6 +13,8 @@ package org.eclipse.equinox.internal.p2.metadata.repository;
 
 import java.io.*;
 import java.net.URI;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -20,6 +22,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.*;
 import org.eclipse.equinox.internal.p2.metadata.index.*;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataIndex;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.*;
@@ -46,10 +49,17 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 	static final private String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
 	static final private String XML_EXTENSION = ".xml"; //$NON-NLS-1$
 
+	/**
+	 * Repository property that, when set to <code>true</code>, causes an index of the
+	 * provided capabilities to be saved next to the content file.
+	 */
+	public static final String PROP_INDEX = "p2.index"; //$NON-NLS-1$
+
 	protected IUMap units = new IUMap();
 	protected HashSet<IRepositoryReference> repositories = new HashSet<IRepositoryReference>();
 	private IIndex<IInstallableUnit> idIndex;
 	private IIndex<IInstallableUnit> capabilityIndex;
+	private boolean capabilityIndexRestored = false;
 	private TranslationSupport translationSupport;
 	private boolean snapshotNeeded = false;
 	private boolean disableSave = false;
@@ -107,6 +117,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		}
 		units.addAll(installableUnits);
 		capabilityIndex = null; // Generated, not backed by units
+		capabilityIndexRestored = false;
 		save();
 	}
 
@@ -148,6 +159,23 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		return null;
 	}
 
+	/**
+	 * Sets the index of the provided capabilities of the units, as restored from an
+	 * index file.
+	 */
+	synchronized void setCapabilityIndex(IIndex<IInstallableUnit> index) {
+		capabilityIndex = index;
+		capabilityIndexRestored = true;
+	}
+
+	/**
+	 * Returns whether the index of the provided capabilities is the one restored from the
+	 * index file, rather than one computed from the units. This method is intended for testing.
+	 */
+	public synchronized boolean isCapabilityIndexRestored() {
+		return capabilityIndexRestored;
+	}
+
 	public synchronized Object getManagedProperty(Object client, String memberName, Object key) {
 		if (!(client instanceof IInstallableUnit))
 			return null;
@@ -240,6 +268,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		} else
 			units.clear();
 		capabilityIndex = null; // Generated, not backed by units.
+		capabilityIndexRestored = false;
 		save();
 	}
 
@@ -258,6 +287,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 			}
 			units.removeAll(installableUnits);
 			capabilityIndex = null; // Generated, not backed by units.
+			capabilityIndexRestored = false;
 		}
 		if (changed)
 			save();
@@ -276,6 +306,8 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		File file = getActualLocation(getLocation());
 		File jarFile = getActualLocation(getLocation(), JAR_EXTENSION);
 		boolean compress = "true".equalsIgnoreCase(getProperty(PROP_COMPRESSED)); //$NON-NLS-1$
+		// the index records the checksum of the content file it was saved with
+		MessageDigest digest = "true".equalsIgnoreCase(getProperty(PROP_INDEX)) ? MetadataIndex.createDigest() : null; //$NON-NLS-1$
 		try {
 			OutputStream output = null;
 			if (!compress) {
@@ -287,7 +319,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 						file.getParentFile().mkdirs();
 					file.createNewFile();
 				}
-				output = new FileOutputStream(file);
+				output = createOutputStream(file, digest);
 			} else {
 				if (file.exists()) {
 					file.delete();
@@ -298,16 +330,39 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 					jarFile.createNewFile();
 				}
 				JarEntry jarEntry = new JarEntry(file.getName());
-				output = new JarOutputStream(new FileOutputStream(jarFile));
+				output = new JarOutputStream(createOutputStream(jarFile, digest));
 				((JarOutputStream) output).putNextEntry(jarEntry);
 			}
 			super.setProperty(IRepository.PROP_TIMESTAMP, Long.toString(System.currentTimeMillis()), new NullProgressMonitor());
-			new MetadataRepositoryIO(getProvisioningAgent()).write(this, output);
+			MetadataRepositoryIO io = new MetadataRepositoryIO(getProvisioningAgent());
+			io.write(this, output);
+			saveIndex(file, digest, io.getUnits());
 		} catch (IOException e) {
 			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, "Error saving metadata repository: " + getLocation(), e)); //$NON-NLS-1$
 		}
 	}
 
+	private static OutputStream createOutputStream(File file, MessageDigest digest) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		return digest == null ? output : new DigestOutputStream(output, digest);
+	}
+
+	private void saveIndex(File contentFile, MessageDigest digest, IInstallableUnit[] written) {
+		File indexFile = MetadataIndex.getIndexFile(contentFile);
+		if (digest == null) {
+			// an index saved with earlier content no longer applies
+			if (indexFile.exists())
+				indexFile.delete();
+			return;
+		}
+		try {
+			MetadataIndex.write(indexFile, digest.digest(), written);
+		} catch (IOException e) {
+			indexFile.delete();
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, "Error saving metadata repository index: " + getLocation(), e)); //$NON-NLS-1$
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.p2.repository.spi.AbstractRepository#setProperty(java.lang.String, java.lang.String)
 	 */
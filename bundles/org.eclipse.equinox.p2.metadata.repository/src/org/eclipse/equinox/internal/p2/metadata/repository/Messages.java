@@ -31,7 +31,9 @@ public class Messages extends NLS {
 
 	public static String no_provisioning_agent;
 
+	public static String repo_invalid_snapshot;
 	public static String repo_loading;
+	public static String repo_saving_snapshots;
 
 	public static String repoMan_internalError;
 	public static String repoMan_invalidLocation;
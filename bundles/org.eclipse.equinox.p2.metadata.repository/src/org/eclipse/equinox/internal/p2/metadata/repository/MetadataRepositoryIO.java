@@ -15,8 +15,7 @@ import java.io.*;
 import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.*;
 import javax.xml.parsers.ParserConfigurationException;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
@@ -42,11 +41,21 @@ import org.xml.sax.*;
 public class MetadataRepositoryIO {
 
 	protected final IProvisioningAgent agent;
+	private IInstallableUnit[] units;
 
 	public MetadataRepositoryIO(IProvisioningAgent agent) {
 		this.agent = agent;
 	}
 
+	/**
+	 * Returns the installable units of the repository last read or written, in the
+	 * order in which they appear in the stream, or <code>null</code> if there is no
+	 * such repository.
+	 */
+	public IInstallableUnit[] getUnits() {
+		return units;
+	}
+
 	/**
 	 * Reads metadata from the given stream, and returns the contained array
 	 * of abstract metadata repositories.
@@ -144,8 +153,9 @@ public class MetadataRepositoryIO {
 				writeRepositoryReferences(references.iterator(), references.size());
 			}
 			// The size attribute is a problematic since it forces the use of a collection.
-			Set<IInstallableUnit> units = repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
-			writeInstallableUnits(units.iterator(), units.size());
+			Set<IInstallableUnit> unitSet = repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+			units = unitSet.toArray(new IInstallableUnit[unitSet.size()]);
+			writeInstallableUnits(Arrays.asList(units).iterator(), units.length);
 
 			end(REPOSITORY_ELEMENT);
 			flush();
@@ -310,6 +320,7 @@ public class MetadataRepositoryIO {
 					state.Units = (unitsHandler == null ? new IInstallableUnit[0] //
 							: unitsHandler.getUnits());
 					state.Repositories = repositoryReferencesHandler == null ? new IRepositoryReference[0] : repositoryReferencesHandler.getReferences();
+					units = state.Units;
 					Object repositoryObject = null;
 					//can't create repository if missing type - this is already logged when parsing attributes
 					if (state.Type == null)
@@ -11,11 +11,13 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.metadata.repository;
 
+import java.io.File;
 import java.net.URI;
 import java.util.Map;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
 import org.eclipse.equinox.internal.p2.repository.helpers.LocationProperties;
+import org.eclipse.equinox.p2.core.IAgentLocation;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
@@ -28,9 +30,18 @@ import org.eclipse.equinox.p2.repository.metadata.spi.MetadataRepositoryFactory;
  * Default implementation of {@link IMetadataRepositoryManager}.
  */
 public class MetadataRepositoryManager extends AbstractRepositoryManager<IInstallableUnit> implements IMetadataRepositoryManager {
+	private static final String SNAPSHOTS_AREA = Activator.ID + "/snapshots/"; //$NON-NLS-1$
+
+	private volatile RepositorySnapshots snapshots;
 
 	public MetadataRepositoryManager(IProvisioningAgent agent) {
 		super(agent);
+		if (RepositorySnapshots.isEnabled()) {
+			IAgentLocation location = (IAgentLocation) agent.getService(IAgentLocation.SERVICE_NAME);
+			File directory = location == null ? null : URIUtil.toFile(location.getDataArea(SNAPSHOTS_AREA));
+			if (directory != null)
+				snapshots = new RepositorySnapshots(agent, directory);
+		}
 	}
 
 	public void addRepository(IMetadataRepository repository) {
@@ -57,6 +68,21 @@ public class MetadataRepositoryManager extends AbstractRepositoryManager<IInstal
 		return factory.load(location, flags, monitor);
 	}
 
+	/**
+	 * Returns the snapshots of the repositories loaded by this manager, or <code>null</code>
+	 * if snapshots are not enabled.
+	 */
+	public RepositorySnapshots getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Sets the snapshots of the repositories loaded by this manager. This method is intended for testing.
+	 */
+	public void setSnapshots(RepositorySnapshots snapshots) {
+		this.snapshots = snapshots;
+	}
+
 	protected String getBundleId() {
 		return Activator.ID;
 	}
@@ -100,4 +126,11 @@ public class MetadataRepositoryManager extends AbstractRepositoryManager<IInstal
 		return (IMetadataRepository) basicRefreshRepository(location, monitor);
 	}
 
+	public void stop() {
+		RepositorySnapshots toSave = getSnapshots();
+		if (toSave != null)
+			toSave.stop();
+		super.stop();
+	}
+
 }
@@ -0,0 +1,293 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.SnapshotContent.IContentFile;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.SnapshotContent.SnapshotFile;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.SnapshotReader;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.SnapshotWriter;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository.RepositoryState;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Keeps a binary snapshot of the metadata repositories loaded by an agent, so that the
+ * next agent loading a repository does not need to parse its content file again.
+ * <p>
+ * A snapshot is remembered when a repository has been parsed and is written once the
+ * agent has been idle for a while, or when the repository manager is stopped. A snapshot
+ * is only restored if the content file it was taken from still has the same time stamp
+ * and length. The cache manager gives the cached content file of a remote repository the
+ * time stamp of the remote file, so a snapshot of a remote repository becomes stale as
+ * soon as the cache is refreshed.
+ * </p>
+ * <p>
+ * The touchpoint data, licenses and copyright of the restored units are left in the
+ * snapshot until they are first accessed, which planning never does. A snapshot that
+ * is replaced or deleted while a repository restored from it is in use is read into
+ * memory first. If another process changes or deletes it anyway, the content file the
+ * snapshot was taken from is parsed again for the units that still need their content.
+ * </p>
+ * <p>
+ * Snapshots are enabled by setting the {@link #PROP_SNAPSHOTS} system property to
+ * <code>true</code>.
+ * </p>
+ */
+public class RepositorySnapshots {
+	public static final String PROP_SNAPSHOTS = "org.eclipse.equinox.p2.metadata.repository.snapshots"; //$NON-NLS-1$
+
+	private static final String SNAPSHOT_PREFIX = "content"; //$NON-NLS-1$
+	private static final String SNAPSHOT_EXTENSION = ".snapshot"; //$NON-NLS-1$
+	private static final String TEMP_EXTENSION = ".tmp"; //$NON-NLS-1$
+	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
+	// how long the agent must be idle before the remembered snapshots are written
+	private static final long SAVE_DELAY = 10000;
+
+	private static class Snapshot {
+		final URI location;
+		final File source;
+		final long lastModified;
+		final long length;
+		final IMetadataRepository repository;
+
+		Snapshot(URI location, File source, long lastModified, long length, IMetadataRepository repository) {
+			this.location = location;
+			this.source = source;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.repository = repository;
+		}
+
+		boolean isCurrent() {
+			return source.lastModified() == lastModified && source.length() == length;
+		}
+	}
+
+	/**
+	 * Parses a content file the way the repository factory does, for the units whose
+	 * content can no longer be read from their snapshot.
+	 */
+	private class ContentFile implements IContentFile {
+		private final URI location;
+		private final File source;
+
+		ContentFile(URI location, File source) {
+			this.location = location;
+			this.source = source;
+		}
+
+		public IInstallableUnit[] parse() throws IOException {
+			InputStream inStream = new BufferedInputStream(new FileInputStream(source));
+			JarInputStream jarStream = null;
+			try {
+				if (source.getName().endsWith(JAR_EXTENSION)) {
+					jarStream = new JarInputStream(inStream);
+					String entryName = URLMetadataRepository.CONTENT_FILENAME + URLMetadataRepository.XML_EXTENSION;
+					JarEntry jarEntry = jarStream.getNextJarEntry();
+					while (jarEntry != null && !entryName.equals(jarEntry.getName()))
+						jarEntry = jarStream.getNextJarEntry();
+					if (jarEntry == null)
+						throw new IOException(NLS.bind(Messages.repoMan_invalidLocation, location));
+				}
+				MetadataRepositoryIO io = new MetadataRepositoryIO(agent);
+				io.read(source.toURL(), jarStream != null ? jarStream : inStream, null);
+				IInstallableUnit[] units = io.getUnits();
+				return units == null ? new IInstallableUnit[0] : units;
+			} catch (ProvisionException e) {
+				IOException ioException = new IOException(e.getMessage());
+				ioException.initCause(e);
+				throw ioException;
+			} finally {
+				if (jarStream != null)
+					jarStream.close();
+				inStream.close();
+			}
+		}
+	}
+
+	private final IProvisioningAgent agent;
+	private final File directory;
+	private final Map<URI, Snapshot> unsaved = new LinkedHashMap<URI, Snapshot>();
+	private final Job saveJob;
+
+	public static boolean isEnabled() {
+		BundleContext context = Activator.getContext();
+		return context != null && Boolean.valueOf(context.getProperty(PROP_SNAPSHOTS)).booleanValue();
+	}
+
+	/**
+	 * @param agent the agent the restored repositories belong to
+	 * @param directory the directory holding the snapshots
+	 */
+	public RepositorySnapshots(IProvisioningAgent agent, File directory) {
+		this.agent = agent;
+		this.directory = directory;
+		saveJob = new Job(Messages.repo_saving_snapshots) {
+			protected IStatus run(IProgressMonitor monitor) {
+				save();
+				return Status.OK_STATUS;
+			}
+		};
+		saveJob.setSystem(true);
+		saveJob.setPriority(Job.DECORATE);
+	}
+
+	/**
+	 * Returns the repository restored from the snapshot taken from the given content file,
+	 * or <code>null</code> if there is no current snapshot of that file.
+	 */
+	public IMetadataRepository restore(URI location, File source) {
+		File file = getSnapshotFile(location);
+		if (!file.isFile())
+			return null;
+		long time = 0;
+		if (Tracing.DEBUG_METADATA_PARSING)
+			time = -System.currentTimeMillis();
+		RepositoryState state = null;
+		// the restored units load their touchpoint data, licenses and copyright from the snapshot
+		try {
+			SnapshotFile snapshotFile = new SnapshotFile(file, new ContentFile(location, source));
+			InputStream input = new BufferedInputStream(new FileInputStream(file));
+			try {
+				SnapshotReader reader = new SnapshotReader(input, snapshotFile);
+				if (location.toString().equals(reader.readString()) && source.getAbsolutePath().equals(reader.readString()))
+					if (reader.readLong() == source.lastModified() && reader.readLong() == source.length())
+						state = reader.readRepository();
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			delete(file);
+			return null;
+		} catch (RuntimeException e) {
+			// a snapshot that cannot be read back is not worth keeping
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.repo_invalid_snapshot, location), e));
+			delete(file);
+			return null;
+		}
+		AbstractMetadataRepository repository = state == null ? null : createRepository(state.Type);
+		if (repository == null)
+			return null;
+		state.Location = location;
+		repository.initialize(state);
+		if (Tracing.DEBUG_METADATA_PARSING) {
+			time += System.currentTimeMillis();
+			Tracing.debug("Restored snapshot of metadata repository " + location + " time (ms): " + time); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return repository;
+	}
+
+	/**
+	 * Remembers that the given repository was just parsed from the given content file, whose
+	 * time stamp and length were read before parsing it. The snapshot is written later.
+	 */
+	public void remember(URI location, File source, long lastModified, long length, IMetadataRepository repository) {
+		// only the repositories of this bundle are known to be fully described by their state
+		Class<?> type = repository.getClass();
+		if ((type != LocalMetadataRepository.class && type != URLMetadataRepository.class) || !type.getName().equals(repository.getType()))
+			return;
+		synchronized (unsaved) {
+			unsaved.put(location, new Snapshot(location, source, lastModified, length, repository));
+		}
+		saveJob.schedule(SAVE_DELAY);
+	}
+
+	/**
+	 * Writes the remembered snapshots.
+	 */
+	public void save() {
+		List<Snapshot> toSave;
+		synchronized (unsaved) {
+			toSave = new ArrayList<Snapshot>(unsaved.values());
+			unsaved.clear();
+		}
+		if (toSave.isEmpty())
+			return;
+		directory.mkdirs();
+		for (Snapshot snapshot : toSave) {
+			// a repository saved since it was parsed may not match its snapshot
+			if (snapshot.isCurrent())
+				write(snapshot);
+		}
+	}
+
+	/**
+	 * Cancels the writing of the remembered snapshots and writes them now.
+	 */
+	public void stop() {
+		saveJob.cancel();
+		save();
+	}
+
+	private void write(Snapshot snapshot) {
+		File file = getSnapshotFile(snapshot.location);
+		File temp = new File(file.getPath() + TEMP_EXTENSION);
+		IMetadataRepository repository = snapshot.repository;
+		try {
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(temp));
+			try {
+				SnapshotWriter writer = new SnapshotWriter(output);
+				writer.writeString(snapshot.location.toString());
+				writer.writeString(snapshot.source.getAbsolutePath());
+				writer.writeLong(snapshot.lastModified);
+				writer.writeLong(snapshot.length);
+				Set<IInstallableUnit> units = repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+				writer.writeRepository(repository.getName(), repository.getType(), repository.getVersion(), repository.getProvider(), repository.getDescription(), repository.getProperties(), repository.getReferences(), units);
+				writer.flush();
+			} finally {
+				output.close();
+			}
+			delete(file);
+			if (!temp.renameTo(file))
+				temp.delete();
+		} catch (IOException e) {
+			temp.delete();
+		} catch (RuntimeException e) {
+			// some content cannot be represented in a snapshot, the repository is parsed each time
+			temp.delete();
+			if (Tracing.DEBUG_METADATA_PARSING)
+				Tracing.debug("Cannot write snapshot of metadata repository " + snapshot.location + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private AbstractMetadataRepository createRepository(String type) {
+		if (LocalMetadataRepository.class.getName().equals(type))
+			return new LocalMetadataRepository(agent);
+		if (URLMetadataRepository.class.getName().equals(type))
+			return new URLMetadataRepository(agent);
+		return null;
+	}
+
+	private static void delete(File file) {
+		// repositories restored from the snapshot may still load content from it
+		SnapshotFile.release(file);
+		file.delete();
+	}
+
+	private File getSnapshotFile(URI location) {
+		return new File(directory, SNAPSHOT_PREFIX + location.toString().hashCode() + SNAPSHOT_EXTENSION);
+	}
+}
@@ -15,14 +15,18 @@ import org.eclipse.equinox.internal.p2.repository.CacheManager;
 
 import java.io.*;
 import java.net.URI;
+import java.security.MessageDigest;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataIndex;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataIndex.ChecksumInputStream;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.spi.MetadataRepositoryFactory;
 import org.eclipse.osgi.util.NLS;
 
@@ -86,7 +90,19 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 		SubMonitor sub = SubMonitor.convert(monitor, 400);
 		try {
 			File localFile = getLocalFile(location, sub.newChild(300));
-			InputStream inStream = new BufferedInputStream(new FileInputStream(localFile));
+			long lastModified = localFile.lastModified();
+			long length = localFile.length();
+			RepositorySnapshots snapshots = getSnapshots();
+			if (snapshots != null) {
+				IMetadataRepository restored = snapshots.restore(location, localFile);
+				if (restored != null)
+					return initializeAfterLoad(location, flags, restored);
+			}
+			MetadataIndex index = readIndex(location, localFile);
+			MessageDigest digest = index == null ? null : MetadataIndex.createDigest();
+			// the checksum of the content file is computed while it is parsed
+			ChecksumInputStream checksumStream = digest == null ? null : new ChecksumInputStream(new FileInputStream(localFile), digest);
+			InputStream inStream = new BufferedInputStream(checksumStream != null ? checksumStream : new FileInputStream(localFile));
 			JarInputStream jarStream = null;
 			try {
 				//if reading from a jar, obtain a stream on the entry with the actual contents
@@ -104,13 +120,13 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 				//parse the repository descriptor file
 				sub.setWorkRemaining(100);
 				InputStream descriptorStream = jarStream != null ? jarStream : inStream;
-				IMetadataRepository result = new MetadataRepositoryIO(getAgent()).read(localFile.toURL(), descriptorStream, sub.newChild(100));
-				if (result != null && (flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) > 0 && !result.isModifiable())
-					return null;
-				if (result instanceof LocalMetadataRepository)
-					((LocalMetadataRepository) result).initializeAfterLoad(location);
-				if (result instanceof URLMetadataRepository)
-					((URLMetadataRepository) result).initializeAfterLoad(location);
+				MetadataRepositoryIO io = new MetadataRepositoryIO(getAgent());
+				IMetadataRepository result = io.read(localFile.toURL(), descriptorStream, sub.newChild(100));
+				if (checksumStream != null && result instanceof LocalMetadataRepository && index.isIndexOf(checksumStream.getChecksum(), io.getUnits()))
+					((LocalMetadataRepository) result).setCapabilityIndex(index.createCapabilityIndex(io.getUnits()));
+				if (result != null && snapshots != null)
+					snapshots.remember(location, localFile, lastModified, length, result);
+				result = initializeAfterLoad(location, flags, result);
 				if (Tracing.DEBUG_METADATA_PARSING) {
 					time += System.currentTimeMillis();
 					Tracing.debug(debugMsg + "time (ms): " + time); //$NON-NLS-1$ 
@@ -132,6 +148,45 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 		}
 	}
 
+	private IMetadataRepository initializeAfterLoad(URI location, int flags, IMetadataRepository result) {
+		if (result != null && (flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) > 0 && !result.isModifiable())
+			return null;
+		if (result instanceof LocalMetadataRepository)
+			((LocalMetadataRepository) result).initializeAfterLoad(location);
+		if (result instanceof URLMetadataRepository)
+			((URLMetadataRepository) result).initializeAfterLoad(location);
+		return result;
+	}
+
+	/**
+	 * Returns the index saved next to the content file of a local repository, or
+	 * <code>null</code> if there is no index that can be read.
+	 */
+	private MetadataIndex readIndex(URI location, File localFile) {
+		if (!PROTOCOL_FILE.equals(location.getScheme()))
+			return null;
+		File indexFile = MetadataIndex.getIndexFile(localFile);
+		if (!indexFile.isFile())
+			return null;
+		try {
+			return MetadataIndex.read(indexFile);
+		} catch (IOException e) {
+			// the capability index is computed from the units instead
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the snapshots kept by the metadata repository manager of the agent, or
+	 * <code>null</code> if there are none.
+	 */
+	private RepositorySnapshots getSnapshots() {
+		Object manager = getAgent().getService(IMetadataRepositoryManager.SERVICE_NAME);
+		if (manager instanceof MetadataRepositoryManager)
+			return ((MetadataRepositoryManager) manager).getSnapshots();
+		return null;
+	}
+
 	/**
 	 * Closes a stream, ignoring any secondary exceptions
 	 */
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.index.CapabilityIndex;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+
+/**
+ * The capability index of a metadata repository, kept in a file next to the content
+ * file of the repository. For each capability name the index holds the positions of the
+ * units providing it in the content file, so the index of a repository can be restored
+ * without going through the capabilities of all its units.
+ * <p>
+ * The index also holds the checksum of the content file it was written for. It is only
+ * used for a content file with the same checksum, which is computed while the content
+ * file is read.
+ * </p>
+ */
+public class MetadataIndex {
+	public static final String INDEX_FILENAME = "content.index"; //$NON-NLS-1$
+
+	// Constants identifying an index file and the version of its format
+	private static final int MAGIC = 0x70326978;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String CHECKSUM_ALGORITHM = "MD5"; //$NON-NLS-1$
+	// The longest checksum accepted when reading an index
+	private static final int MAX_CHECKSUM_LENGTH = 64;
+	// The smallest number of bytes written for a capability name and its providers
+	private static final int MIN_ENTRY_LENGTH = 10;
+
+	/**
+	 * An input stream computing the checksum of everything read from it. The part of the
+	 * stream that has not been read when it is closed is read then, so that the checksum
+	 * covers the whole stream even if its reader stops early.
+	 */
+	public static class ChecksumInputStream extends DigestInputStream {
+		private byte[] checksum;
+
+		public ChecksumInputStream(InputStream input, MessageDigest digest) {
+			super(input, digest);
+		}
+
+		public void close() throws IOException {
+			if (checksum != null)
+				return;
+			try {
+				byte[] buffer = new byte[8192];
+				while (read(buffer) != -1) {
+					// digest the rest of the stream
+				}
+				checksum = getMessageDigest().digest();
+			} finally {
+				super.close();
+			}
+		}
+
+		/**
+		 * Reads the rest of the stream and returns its checksum.
+		 */
+		public byte[] getChecksum() throws IOException {
+			close();
+			return checksum;
+		}
+	}
+
+	private final byte[] checksum;
+	private final int unitCount;
+	private final String[] names;
+	private final int[][] providers;
+
+	private MetadataIndex(byte[] checksum, int unitCount, String[] names, int[][] providers) {
+		this.checksum = checksum;
+		this.unitCount = unitCount;
+		this.names = names;
+		this.providers = providers;
+	}
+
+	/**
+	 * Returns a new digest for the checksum of a content file, or <code>null</code> if
+	 * the digest algorithm is not available.
+	 */
+	public static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the index file kept next to the given content file.
+	 */
+	public static File getIndexFile(File contentFile) {
+		return new File(contentFile.getParentFile(), INDEX_FILENAME);
+	}
+
+	/**
+	 * Writes the index of the given units, in the order in which they appear in the content
+	 * file with the given checksum.
+	 */
+	public static void write(File file, byte[] checksum, IInstallableUnit[] units) throws IOException {
+		Map<String, List<Integer>> index = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < units.length; i++) {
+			for (IProvidedCapability capability : units[i].getProvidedCapabilities()) {
+				List<Integer> positions = index.get(capability.getName());
+				if (positions == null) {
+					positions = new ArrayList<Integer>(1);
+					index.put(capability.getName(), positions);
+				} else if (positions.get(positions.size() - 1).intValue() == i)
+					continue;
+				positions.add(new Integer(i));
+			}
+		}
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeInt(checksum.length);
+			output.write(checksum);
+			output.writeInt(units.length);
+			output.writeInt(index.size());
+			for (Map.Entry<String, List<Integer>> entry : index.entrySet()) {
+				output.writeUTF(entry.getKey());
+				List<Integer> positions = entry.getValue();
+				output.writeInt(positions.size());
+				for (Integer position : positions)
+					output.writeInt(position.intValue());
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Reads an index file, and returns <code>null</code> if it was written in another
+	 * format or is corrupt.
+	 */
+	public static MetadataIndex read(File file) throws IOException {
+		long length = file.length();
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION)
+				return null;
+			// the lengths are checked before anything is allocated for them
+			int checksumLength = input.readInt();
+			if (checksumLength < 0 || checksumLength > MAX_CHECKSUM_LENGTH)
+				return null;
+			byte[] checksum = new byte[checksumLength];
+			input.readFully(checksum);
+			int unitCount = input.readInt();
+			int nameCount = input.readInt();
+			if (unitCount < 0 || nameCount < 0 || nameCount > length / MIN_ENTRY_LENGTH)
+				return null;
+			String[] names = new String[nameCount];
+			int[][] providers = new int[nameCount][];
+			for (int i = 0; i < nameCount; i++) {
+				names[i] = input.readUTF();
+				int providerCount = input.readInt();
+				if (providerCount <= 0 || providerCount > unitCount)
+					return null;
+				providers[i] = new int[providerCount];
+				for (int j = 0; j < providerCount; j++) {
+					int position = input.readInt();
+					if (position < 0 || position >= unitCount)
+						return null;
+					providers[i][j] = position;
+				}
+			}
+			return new MetadataIndex(checksum, unitCount, names, providers);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Returns whether this is the index of the given units, read from a content file with
+	 * the given checksum.
+	 */
+	public boolean isIndexOf(byte[] contentChecksum, IInstallableUnit[] units) {
+		return units != null && units.length == unitCount && Arrays.equals(checksum, contentChecksum);
+	}
+
+	/**
+	 * Returns the capability index of the given units, which must be the units this is
+	 * the {@link #isIndexOf(byte[], IInstallableUnit[]) index of}.
+	 */
+	public CapabilityIndex createCapabilityIndex(IInstallableUnit[] units) {
+		HashMap<String, Object> index = new HashMap<String, Object>(names.length * 4 / 3 + 1);
+		for (int i = 0; i < names.length; i++) {
+			int[] positions = providers[i];
+			if (positions.length == 1) {
+				index.put(names[i], units[positions[0]]);
+				continue;
+			}
+			ArrayList<IInstallableUnit> list = new ArrayList<IInstallableUnit>(positions.length);
+			for (int j = 0; j < positions.length; j++)
+				list.add(units[positions[j]]);
+			index.put(names[i], list);
+		}
+		return new CapabilityIndex(index);
+	}
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+public interface SnapshotConstants {
+
+	// Constants identifying a snapshot file and the version of its format
+	public static final int MAGIC = 0x70326d73;
+	public static final int FORMAT_VERSION = 2;
+
+	// Constants for the encoding of strings
+	public static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+	public static final int NULL_STRING = -1;
+	public static final int NEW_STRING = -2;
+
+	// Constants for the kinds of installable units
+	public static final byte KIND_UNIT = 0;
+	public static final byte KIND_FRAGMENT = 1;
+	public static final byte KIND_PATCH = 2;
+}
@@ -0,0 +1,294 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.metadata.IDeferredContent;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.repository.Activator;
+import org.eclipse.equinox.p2.metadata.*;
+
+/**
+ * The touchpoint data, licenses and copyright of an installable unit in a snapshot.
+ * They are written as a block of their own that does not refer to the strings of the
+ * snapshot, so that the block can be read long after the rest of the snapshot.
+ */
+public class SnapshotContent implements IDeferredContent, SnapshotConstants {
+
+	/**
+	 * The content file a snapshot was taken from.
+	 */
+	public interface IContentFile {
+		/**
+		 * Parses the content file and returns its units.
+		 */
+		public IInstallableUnit[] parse() throws IOException;
+	}
+
+	/**
+	 * A snapshot file from which the units restored from it load their content. The file
+	 * is only open while a block is read, so that it can be deleted or replaced. Before
+	 * a snapshot is replaced or deleted, {@link #release(File)} reads it into memory for
+	 * the units that may still need it. If another process changed or deleted the file
+	 * anyway, the units get their content from the content file the snapshot was taken from.
+	 */
+	public static class SnapshotFile {
+		// the snapshot files units were restored from, by file
+		private static final Map<File, List<WeakReference<SnapshotFile>>> restored = new HashMap<File, List<WeakReference<SnapshotFile>>>();
+
+		private final File file;
+		private final long lastModified;
+		private final long length;
+		private final IContentFile source;
+		private byte[] content;
+		// the units parsed from the source once the snapshot could no longer be read
+		private Map<IInstallableUnit, IInstallableUnit> parsedUnits;
+
+		public SnapshotFile(File file, IContentFile source) {
+			this.file = file.getAbsoluteFile();
+			this.source = source;
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+			synchronized (restored) {
+				List<WeakReference<SnapshotFile>> files = restored.get(this.file);
+				if (files == null) {
+					files = new ArrayList<WeakReference<SnapshotFile>>(1);
+					restored.put(this.file, files);
+				}
+				for (Iterator<WeakReference<SnapshotFile>> i = files.iterator(); i.hasNext();)
+					if (i.next().get() == null)
+						i.remove();
+				files.add(new WeakReference<SnapshotFile>(this));
+			}
+		}
+
+		/**
+		 * Reads the given snapshot file into memory for the units restored from it, before
+		 * the file is replaced or deleted.
+		 */
+		public static void release(File file) {
+			List<WeakReference<SnapshotFile>> files;
+			synchronized (restored) {
+				files = restored.remove(file.getAbsoluteFile());
+			}
+			if (files == null)
+				return;
+			for (WeakReference<SnapshotFile> reference : files) {
+				SnapshotFile snapshotFile = reference.get();
+				if (snapshotFile != null)
+					snapshotFile.readContent();
+			}
+		}
+
+		synchronized byte[] read(long offset, int blockLength) throws IOException {
+			if (offset < 0 || blockLength < 0 || offset + blockLength > length)
+				throw new IOException("Invalid block in snapshot " + file); //$NON-NLS-1$
+			byte[] bytes = new byte[blockLength];
+			if (content != null) {
+				System.arraycopy(content, (int) offset, bytes, 0, blockLength);
+				return bytes;
+			}
+			checkUnchanged();
+			RandomAccessFile access = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			try {
+				access.seek(offset);
+				access.readFully(bytes);
+			} finally {
+				access.close();
+			}
+			return bytes;
+		}
+
+		/**
+		 * Returns the unit with the id and version of the given unit as parsed from the
+		 * content file the snapshot was taken from, or <code>null</code> if there is none.
+		 */
+		synchronized IInstallableUnit getParsedUnit(IInstallableUnit unit) {
+			if (parsedUnits == null) {
+				parsedUnits = new HashMap<IInstallableUnit, IInstallableUnit>();
+				try {
+					for (IInstallableUnit parsed : source.parse())
+						parsedUnits.put(parsed, parsed);
+				} catch (IOException e) {
+					LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to parse the content file snapshot " + file + " was taken from", e)); //$NON-NLS-1$ //$NON-NLS-2$
+				} catch (RuntimeException e) {
+					// the getters of the units must not fail because of a malformed content file
+					LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to parse the content file snapshot " + file + " was taken from", e)); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+			return parsedUnits.get(unit);
+		}
+
+		private synchronized void readContent() {
+			if (content != null)
+				return;
+			try {
+				checkUnchanged();
+				byte[] bytes = new byte[(int) length];
+				InputStream input = new FileInputStream(file);
+				try {
+					new DataInputStream(input).readFully(bytes);
+				} finally {
+					input.close();
+				}
+				content = bytes;
+			} catch (IOException e) {
+				// the units that still need the content will parse the content file again
+			}
+		}
+
+		/*
+		 * The snapshot is not the one the units were restored from if it was changed
+		 * without being released first.
+		 */
+		private void checkUnchanged() throws IOException {
+			if (file.lastModified() != lastModified || file.length() != length)
+				throw new IOException("Snapshot was changed or deleted: " + file); //$NON-NLS-1$
+		}
+	}
+
+	private final SnapshotFile file;
+	private final long offset;
+	private final int length;
+
+	public SnapshotContent(SnapshotFile file, long offset, int length) {
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public void load(InstallableUnit unit) {
+		// a block that cannot be read completely must not leave part of its content in the unit
+		InstallableUnit loaded = new InstallableUnit();
+		try {
+			read(file.read(offset, length), loaded);
+		} catch (IOException e) {
+			IInstallableUnit parsed = file.getParsedUnit(unit);
+			if (parsed == null) {
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to read the content of " + unit + " from snapshot " + file.file, e)); //$NON-NLS-1$ //$NON-NLS-2$
+				return;
+			}
+			copy(parsed, unit);
+			return;
+		}
+		copy(loaded, unit);
+	}
+
+	private static void copy(IInstallableUnit from, InstallableUnit to) {
+		for (ITouchpointData data : from.getTouchpointData())
+			to.addTouchpointData(data);
+		Collection<ILicense> licenses = from.getLicenses();
+		to.setLicenses(licenses.toArray(new ILicense[licenses.size()]));
+		to.setCopyright(from.getCopyright());
+	}
+
+	/**
+	 * Returns the content of the given unit as written in a snapshot.
+	 */
+	static byte[] write(IInstallableUnit iu) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		Collection<ITouchpointData> touchpointData = iu.getTouchpointData();
+		output.writeInt(touchpointData.size());
+		for (ITouchpointData data : touchpointData) {
+			Map<String, ITouchpointInstruction> instructions = data.getInstructions();
+			output.writeInt(instructions.size());
+			for (Map.Entry<String, ITouchpointInstruction> entry : instructions.entrySet()) {
+				writeString(output, entry.getKey());
+				writeString(output, entry.getValue().getBody());
+				writeString(output, entry.getValue().getImportAttribute());
+			}
+		}
+		Collection<ILicense> licenses = iu.getLicenses();
+		output.writeInt(licenses.size());
+		for (ILicense license : licenses) {
+			writeURI(output, license.getLocation());
+			writeString(output, license.getBody());
+		}
+		ICopyright copyright = iu.getCopyright();
+		output.writeBoolean(copyright != null);
+		if (copyright != null) {
+			writeURI(output, copyright.getLocation());
+			writeString(output, copyright.getBody());
+		}
+		output.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Adds the content written by {@link #write(IInstallableUnit)} to the given unit.
+	 */
+	static void read(byte[] bytes, InstallableUnit unit) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+		int touchpointDataCount = input.readInt();
+		for (int i = 0; i < touchpointDataCount; i++) {
+			int instructionCount = input.readInt();
+			Map<String, ITouchpointInstruction> instructions = new LinkedHashMap<String, ITouchpointInstruction>(instructionCount);
+			for (int j = 0; j < instructionCount; j++) {
+				String key = readString(input);
+				String body = readString(input);
+				instructions.put(key, MetadataFactory.createTouchpointInstruction(body, readString(input)));
+			}
+			unit.addTouchpointData(MetadataFactory.createTouchpointData(instructions));
+		}
+		ILicense[] licenses = new ILicense[input.readInt()];
+		for (int i = 0; i < licenses.length; i++) {
+			URI location = readURI(input);
+			licenses[i] = MetadataFactory.createLicense(location, readString(input));
+		}
+		unit.setLicenses(licenses);
+		if (input.readBoolean()) {
+			URI location = readURI(input);
+			unit.setCopyright(MetadataFactory.createCopyright(location, readString(input)));
+		}
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(NULL_STRING);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static void writeURI(DataOutputStream output, URI location) throws IOException {
+		writeString(output, location == null ? null : location.toString());
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length == NULL_STRING)
+			return null;
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static URI readURI(DataInputStream input) throws IOException {
+		String value = readString(input);
+		if (value == null)
+			return null;
+		try {
+			return new URI(value);
+		} catch (URISyntaxException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.SnapshotContent.SnapshotFile;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitFragmentDescription;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitPatchDescription;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.repository.IRepositoryReference;
+import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository.RepositoryState;
+import org.eclipse.equinox.p2.repository.spi.RepositoryReference;
+
+/**
+ * Reads the binary snapshot format written by {@link SnapshotWriter}.
+ */
+public class SnapshotReader implements SnapshotConstants {
+
+	/**
+	 * Counts the bytes read so that the offset of the content of a unit is known.
+	 */
+	private static class PositionInputStream extends FilterInputStream {
+		long position;
+
+		PositionInputStream(InputStream input) {
+			super(input);
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				position++;
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = super.read(b, off, len);
+			if (count > 0)
+				position += count;
+			return count;
+		}
+
+		public long skip(long n) throws IOException {
+			long count = super.skip(n);
+			position += count;
+			return count;
+		}
+
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	private final PositionInputStream position;
+	private final DataInputStream input;
+	private final SnapshotFile file;
+	private final List<String> strings = new ArrayList<String>();
+	private final Map<String, Version> versions = new HashMap<String, Version>();
+
+	/**
+	 * @throws IOException if the stream does not start with a snapshot of the current format
+	 */
+	public SnapshotReader(InputStream input) throws IOException {
+		this(input, null);
+	}
+
+	/**
+	 * Creates a reader for a stream that is read from the start of the given snapshot file.
+	 * The touchpoint data, licenses and copyright of the units read are only loaded from
+	 * the file when they are first accessed.
+	 *
+	 * @throws IOException if the stream does not start with a snapshot of the current format
+	 */
+	public SnapshotReader(InputStream input, SnapshotFile file) throws IOException {
+		this.position = new PositionInputStream(input);
+		this.input = new DataInputStream(position);
+		this.file = file;
+		if (this.input.readInt() != MAGIC || this.input.readInt() != FORMAT_VERSION)
+			throw new IOException("Unsupported snapshot format"); //$NON-NLS-1$
+	}
+
+	public String readString() throws IOException {
+		int index = input.readInt();
+		if (index == NULL_STRING)
+			return null;
+		if (index == NEW_STRING) {
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			String value = new String(bytes, UTF_8);
+			strings.add(value);
+			return value;
+		}
+		if (index < 0 || index >= strings.size())
+			throw new IOException("Invalid string reference: " + index); //$NON-NLS-1$
+		return strings.get(index);
+	}
+
+	public long readLong() throws IOException {
+		return input.readLong();
+	}
+
+	/**
+	 * Reads the repository state written by {@link SnapshotWriter#writeRepository}. The
+	 * location of the returned state is not set.
+	 */
+	public RepositoryState readRepository() throws IOException {
+		RepositoryState state = new RepositoryState();
+		state.Name = readString();
+		state.Type = readString();
+		state.Version = readVersion();
+		state.Provider = readString();
+		state.Description = readString();
+		state.Properties = readProperties();
+		IRepositoryReference[] references = new IRepositoryReference[input.readInt()];
+		for (int i = 0; i < references.length; i++) {
+			URI location = readURI();
+			String nickname = readString();
+			references[i] = new RepositoryReference(location, nickname, input.readInt(), input.readInt());
+		}
+		state.Repositories = references;
+		IInstallableUnit[] units = new IInstallableUnit[input.readInt()];
+		for (int i = 0; i < units.length; i++)
+			units[i] = readInstallableUnit();
+		state.Units = units;
+		return state;
+	}
+
+	private IInstallableUnit readInstallableUnit() throws IOException {
+		byte kind = input.readByte();
+		InstallableUnitDescription unit;
+		if (kind == KIND_PATCH)
+			unit = new InstallableUnitPatchDescription();
+		else if (kind == KIND_FRAGMENT)
+			unit = new InstallableUnitFragmentDescription();
+		else if (kind == KIND_UNIT)
+			unit = new InstallableUnitDescription();
+		else
+			throw new IOException("Invalid unit kind: " + kind); //$NON-NLS-1$
+		unit.setId(readString());
+		unit.setVersion(readVersion());
+		unit.setSingleton(input.readBoolean());
+
+		if (kind == KIND_PATCH) {
+			InstallableUnitPatchDescription patch = (InstallableUnitPatchDescription) unit;
+			IRequirement[][] scope = new IRequirement[input.readInt()][];
+			for (int i = 0; i < scope.length; i++)
+				scope[i] = readRequirements();
+			IRequirementChange[] changes = new IRequirementChange[input.readInt()];
+			for (int i = 0; i < changes.length; i++) {
+				IRequirement applyOn = readOptionalRequirement();
+				changes[i] = MetadataFactory.createRequirementChange(applyOn, readOptionalRequirement());
+			}
+			patch.setRequirementChanges(changes);
+			patch.setApplicabilityScope(scope);
+			patch.setLifeCycle(readOptionalRequirement());
+		} else if (kind == KIND_FRAGMENT)
+			((InstallableUnitFragmentDescription) unit).setHost(readRequirements());
+
+		unit.setUpdateDescriptor(readUpdateDescriptor());
+		int propertyCount = input.readInt();
+		for (int i = 0; i < propertyCount; i++)
+			unit.setProperty(readString(), readString());
+		unit.setMetaRequirements(readRequirements());
+		IProvidedCapability[] capabilities = new IProvidedCapability[input.readInt()];
+		for (int i = 0; i < capabilities.length; i++) {
+			String namespace = readString();
+			String name = readString();
+			capabilities[i] = MetadataFactory.createProvidedCapability(namespace, name, readVersion());
+		}
+		unit.setCapabilities(capabilities);
+		unit.setRequirements(readRequirements());
+		String filter = readString();
+		if (filter != null)
+			unit.setFilter(filter);
+
+		IArtifactKey[] artifacts = new IArtifactKey[input.readInt()];
+		for (int i = 0; i < artifacts.length; i++) {
+			String classifier = readString();
+			String id = readString();
+			artifacts[i] = new ArtifactKey(classifier, id, readVersion());
+		}
+		unit.setArtifacts(artifacts);
+		String touchpointId = readString();
+		unit.setTouchpointType(MetadataFactory.createTouchpointType(touchpointId, readVersion()));
+		InstallableUnit iu = (InstallableUnit) MetadataFactory.createInstallableUnit(unit);
+		int length = input.readInt();
+		if (file != null) {
+			iu.setDeferredContent(new SnapshotContent(file, position.position, length));
+			for (int skipped = 0; skipped < length;) {
+				int count = input.skipBytes(length - skipped);
+				if (count <= 0)
+					throw new EOFException();
+				skipped += count;
+			}
+		} else {
+			byte[] content = new byte[length];
+			input.readFully(content);
+			SnapshotContent.read(content, iu);
+		}
+		return iu;
+	}
+
+	private IUpdateDescriptor readUpdateDescriptor() throws IOException {
+		if (!input.readBoolean())
+			return null;
+		int count = input.readInt();
+		Collection<IMatchExpression<IInstallableUnit>> matches = new ArrayList<IMatchExpression<IInstallableUnit>>(count);
+		for (int i = 0; i < count; i++)
+			matches.add(readMatchExpression());
+		int severity = input.readInt();
+		String description = readString();
+		return MetadataFactory.createUpdateDescriptor(matches, severity, description, readURI());
+	}
+
+	private IRequirement[] readRequirements() throws IOException {
+		IRequirement[] requirements = new IRequirement[input.readInt()];
+		for (int i = 0; i < requirements.length; i++)
+			requirements[i] = readRequirement();
+		return requirements;
+	}
+
+	private IRequirement readOptionalRequirement() throws IOException {
+		return input.readBoolean() ? readRequirement() : null;
+	}
+
+	private IRequirement readRequirement() throws IOException {
+		boolean simple = input.readBoolean();
+		String namespace = null;
+		String name = null;
+		VersionRange range = null;
+		IMatchExpression<IInstallableUnit> match = null;
+		if (simple) {
+			namespace = readString();
+			name = readString();
+			range = new VersionRange(readString());
+		} else
+			match = readMatchExpression();
+		int min = input.readInt();
+		int max = input.readInt();
+		boolean greedy = input.readBoolean();
+		String filterText = readString();
+		IMatchExpression<IInstallableUnit> filter = filterText == null ? null : InstallableUnit.parseFilter(filterText);
+		String description = readString();
+		if (simple)
+			return MetadataFactory.createRequirement(namespace, name, range, filter, min, max, greedy, description);
+		return MetadataFactory.createRequirement(match, filter, min, max, greedy, description);
+	}
+
+	private IMatchExpression<IInstallableUnit> readMatchExpression() throws IOException {
+		String match = readString();
+		return MetadataParser.createMatchExpression(match, readString());
+	}
+
+	private Map<String, String> readProperties() throws IOException {
+		int size = input.readInt();
+		OrderedProperties properties = new OrderedProperties(size);
+		for (int i = 0; i < size; i++)
+			properties.put(readString(), readString());
+		return properties;
+	}
+
+	private Version readVersion() throws IOException {
+		String value = readString();
+		if (value == null)
+			return null;
+		Version version = versions.get(value);
+		if (version == null) {
+			version = Version.parseVersion(value);
+			versions.put(value, version);
+		}
+		return version;
+	}
+
+	private URI readURI() throws IOException {
+		String value = readString();
+		if (value == null)
+			return null;
+		try {
+			return new URI(value);
+		} catch (URISyntaxException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.RequiredCapability;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.repository.IRepositoryReference;
+
+/**
+ * Writes the installable units and the state of a metadata repository in the binary
+ * snapshot format read by {@link SnapshotReader}. The format holds the same information
+ * as the XML written by {@link MetadataWriter}, but every string is written only once and
+ * then referred to by its index, and no element needs to be parsed when reading it back.
+ */
+public class SnapshotWriter implements SnapshotConstants {
+	private final DataOutputStream output;
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+	public SnapshotWriter(OutputStream output) throws IOException {
+		this.output = new DataOutputStream(output);
+		this.output.writeInt(MAGIC);
+		this.output.writeInt(FORMAT_VERSION);
+	}
+
+	public void writeString(String value) throws IOException {
+		if (value == null) {
+			output.writeInt(NULL_STRING);
+			return;
+		}
+		Integer index = strings.get(value);
+		if (index != null) {
+			output.writeInt(index.intValue());
+			return;
+		}
+		strings.put(value, new Integer(strings.size()));
+		output.writeInt(NEW_STRING);
+		byte[] bytes = value.getBytes(UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	public void writeLong(long value) throws IOException {
+		output.writeLong(value);
+	}
+
+	/**
+	 * Writes the given repository state.
+	 */
+	public void writeRepository(String name, String type, String version, String provider, String description, Map<String, String> properties, Collection<IRepositoryReference> references, Collection<IInstallableUnit> units) throws IOException {
+		writeString(name);
+		writeString(type);
+		writeString(version);
+		writeString(provider);
+		writeString(description);
+		writeProperties(properties);
+		output.writeInt(references.size());
+		for (IRepositoryReference reference : references) {
+			writeURI(reference.getLocation());
+			writeString(reference.getNickname());
+			output.writeInt(reference.getType());
+			output.writeInt(reference.getOptions());
+		}
+		output.writeInt(units.size());
+		for (IInstallableUnit unit : units)
+			writeInstallableUnit(unit);
+	}
+
+	private void writeInstallableUnit(IInstallableUnit resolvedIU) throws IOException {
+		IInstallableUnit iu = resolvedIU.unresolved();
+		if (iu instanceof IInstallableUnitPatch)
+			output.writeByte(KIND_PATCH);
+		else if (iu instanceof IInstallableUnitFragment)
+			output.writeByte(KIND_FRAGMENT);
+		else
+			output.writeByte(KIND_UNIT);
+		writeString(iu.getId());
+		writeVersion(iu.getVersion());
+		output.writeBoolean(iu.isSingleton());
+
+		if (iu instanceof IInstallableUnitPatch) {
+			IInstallableUnitPatch patch = (IInstallableUnitPatch) iu;
+			IRequirement[][] scope = patch.getApplicabilityScope();
+			output.writeInt(scope.length);
+			for (int i = 0; i < scope.length; i++)
+				writeRequirements(Arrays.asList(scope[i]));
+			List<IRequirementChange> changes = patch.getRequirementsChange();
+			output.writeInt(changes.size());
+			for (IRequirementChange change : changes) {
+				writeOptionalRequirement(change.applyOn());
+				writeOptionalRequirement(change.newValue());
+			}
+			writeOptionalRequirement(patch.getLifeCycle());
+		} else if (iu instanceof IInstallableUnitFragment)
+			writeRequirements(((IInstallableUnitFragment) iu).getHost());
+
+		writeUpdateDescriptor(resolvedIU.getUpdateDescriptor());
+		writeProperties(iu.getProperties());
+		writeRequirements(iu.getMetaRequirements());
+		Collection<IProvidedCapability> capabilities = iu.getProvidedCapabilities();
+		output.writeInt(capabilities.size());
+		for (IProvidedCapability capability : capabilities) {
+			writeString(capability.getNamespace());
+			writeString(capability.getName());
+			writeVersion(capability.getVersion());
+		}
+		writeRequirements(iu.getRequirements());
+		writeFilter(iu.getFilter());
+
+		Collection<IArtifactKey> artifacts = iu.getArtifacts();
+		output.writeInt(artifacts.size());
+		for (IArtifactKey artifact : artifacts) {
+			writeString(artifact.getClassifier());
+			writeString(artifact.getId());
+			writeVersion(artifact.getVersion());
+		}
+		ITouchpointType touchpointType = iu.getTouchpointType();
+		writeString(touchpointType.getId());
+		writeVersion(touchpointType.getVersion());
+		byte[] content = SnapshotContent.write(iu);
+		output.writeInt(content.length);
+		output.write(content);
+	}
+
+	private void writeUpdateDescriptor(IUpdateDescriptor descriptor) throws IOException {
+		output.writeBoolean(descriptor != null);
+		if (descriptor == null)
+			return;
+		Collection<IMatchExpression<IInstallableUnit>> matches = descriptor.getIUsBeingUpdated();
+		output.writeInt(matches.size());
+		for (IMatchExpression<IInstallableUnit> match : matches)
+			writeMatchExpression(match);
+		output.writeInt(descriptor.getSeverity());
+		writeString(descriptor.getDescription());
+		writeURI(descriptor.getLocation());
+	}
+
+	private void writeRequirements(Collection<IRequirement> requirements) throws IOException {
+		output.writeInt(requirements.size());
+		for (IRequirement requirement : requirements)
+			writeRequirement(requirement);
+	}
+
+	private void writeOptionalRequirement(IRequirement requirement) throws IOException {
+		output.writeBoolean(requirement != null);
+		if (requirement != null)
+			writeRequirement(requirement);
+	}
+
+	private void writeRequirement(IRequirement requirement) throws IOException {
+		IMatchExpression<IInstallableUnit> match = requirement.getMatches();
+		if (requirement.getMax() > 0 && RequiredCapability.isSimpleRequirement(match)) {
+			output.writeBoolean(true);
+			writeString(RequiredCapability.extractNamespace(match));
+			writeString(RequiredCapability.extractName(match));
+			writeString(RequiredCapability.extractRange(match).toString());
+		} else {
+			output.writeBoolean(false);
+			writeMatchExpression(match);
+		}
+		output.writeInt(requirement.getMin());
+		output.writeInt(requirement.getMax());
+		output.writeBoolean(requirement.isGreedy());
+		writeFilter(requirement.getFilter());
+		writeString(requirement.getDescription());
+	}
+
+	private void writeMatchExpression(IMatchExpression<IInstallableUnit> match) throws IOException {
+		writeString(ExpressionUtil.getOperand(match).toString());
+		Object[] params = match.getParameters();
+		if (params.length == 0) {
+			writeString(null);
+			return;
+		}
+		IExpressionFactory factory = ExpressionUtil.getFactory();
+		IExpression[] constantArray = new IExpression[params.length];
+		for (int idx = 0; idx < params.length; ++idx)
+			constantArray[idx] = factory.constant(params[idx]);
+		writeString(factory.array(constantArray).toString());
+	}
+
+	private void writeFilter(IMatchExpression<IInstallableUnit> filter) throws IOException {
+		writeString(filter == null ? null : filter.getParameters()[0].toString());
+	}
+
+	private void writeProperties(Map<String, String> properties) throws IOException {
+		output.writeInt(properties.size());
+		for (Map.Entry<String, String> entry : properties.entrySet()) {
+			writeString(entry.getKey());
+			writeString(entry.getValue());
+		}
+	}
+
+	private void writeVersion(Version version) throws IOException {
+		writeString(version == null ? null : version.toString());
+	}
+
+	private void writeURI(URI location) throws IOException {
+		writeString(location == null ? null : location.toString());
+	}
+
+	public void flush() throws IOException {
+		output.flush();
+	}
+}
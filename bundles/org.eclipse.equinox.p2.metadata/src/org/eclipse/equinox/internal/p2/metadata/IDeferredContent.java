@@ -0,0 +1,30 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata;
+
+/**
+ * The touchpoint data, licenses and copyright of an {@link InstallableUnit} that are
+ * kept in a backing store until one of them is first accessed. Planning does not look
+ * at them, so a unit read from a store that supports random access does not need to
+ * hold them in memory.
+ *
+ * @see InstallableUnit#setDeferredContent(IDeferredContent)
+ */
+public interface IDeferredContent {
+	/**
+	 * Reads the deferred content and adds it to the given unit using
+	 * {@link InstallableUnit#addTouchpointData}, {@link InstallableUnit#setLicenses}
+	 * and {@link InstallableUnit#setCopyright}. This method is called from the getters
+	 * of the unit and must not throw. If the backing store can no longer be read, the
+	 * content has to be obtained some other way.
+	 */
+	public void load(InstallableUnit unit);
+}
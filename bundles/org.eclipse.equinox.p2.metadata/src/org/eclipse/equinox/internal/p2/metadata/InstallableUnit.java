@@ -75,6 +75,7 @@ public class InstallableUnit implements IInstallableUnit, IMemberProvider {
 	private IUpdateDescriptor updateInfo;
 	private ILicense[] licenses = NO_LICENSE;
 	private ICopyright copyright;
+	private volatile IDeferredContent deferredContent;
 	public static final String MEMBER_TRANSLATED_PROPERTIES = "translatedProperties"; //$NON-NLS-1$
 	public static final String MEMBER_PROFILE_PROPERTIES = "profileProperties"; //$NON-NLS-1$
 
@@ -176,6 +177,7 @@ public class InstallableUnit implements IInstallableUnit, IMemberProvider {
 	}
 
 	public Collection<ITouchpointData> getTouchpointData() {
+		loadDeferredContent();
 		return CollectionUtils.unmodifiableList(touchpointData);
 	}
 
@@ -308,6 +310,7 @@ public class InstallableUnit implements IInstallableUnit, IMemberProvider {
 	}
 
 	public Collection<ILicense> getLicenses() {
+		loadDeferredContent();
 		return CollectionUtils.unmodifiableList(licenses);
 	}
 
@@ -320,6 +323,7 @@ public class InstallableUnit implements IInstallableUnit, IMemberProvider {
 	}
 
 	public ICopyright getCopyright() {
+		loadDeferredContent();
 		return copyright;
 	}
 
@@ -327,6 +331,26 @@ public class InstallableUnit implements IInstallableUnit, IMemberProvider {
 		return TranslationSupport.getInstance().getCopyright(this, locale);
 	}
 
+	/**
+	 * Sets the content that is loaded the first time the touchpoint data, the licenses
+	 * or the copyright of this unit are accessed.
+	 */
+	public void setDeferredContent(IDeferredContent content) {
+		this.deferredContent = content;
+	}
+
+	private void loadDeferredContent() {
+		if (deferredContent == null)
+			return;
+		synchronized (this) {
+			IDeferredContent content = deferredContent;
+			if (content != null) {
+				content.load(this);
+				deferredContent = null;
+			}
+		}
+	}
+
 	public boolean satisfies(IRequirement candidate) {
 		return candidate.isMatch(this);
 	}
@@ -363,12 +387,18 @@ public class InstallableUnit implements IInstallableUnit, IMemberProvider {
 			return artifacts;
 		if (MEMBER_REQUIREMENTS == memberName)
 			return requires;
-		if (MEMBER_LICENSES == memberName)
+		if (MEMBER_LICENSES == memberName) {
+			loadDeferredContent();
 			return licenses;
-		if (MEMBER_COPYRIGHT == memberName)
+		}
+		if (MEMBER_COPYRIGHT == memberName) {
+			loadDeferredContent();
 			return copyright;
-		if (MEMBER_TOUCHPOINT_DATA == memberName)
+		}
+		if (MEMBER_TOUCHPOINT_DATA == memberName) {
+			loadDeferredContent();
 			return touchpointData;
+		}
 		if (MEMBER_TOUCHPOINT_TYPE == memberName)
 			return touchpointType;
 		if (MEMBER_UPDATE_DESCRIPTOR == memberName)
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.metadata;
 
+import org.eclipse.equinox.internal.p2.metadata.index.ParallelQueryEvaluator;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
@@ -32,5 +33,6 @@ public class MetadataActivator implements BundleActivator {
 
 	public void stop(BundleContext aContext) throws Exception {
 		instance = null;
+		ParallelQueryEvaluator.shutdown();
 	}
 }
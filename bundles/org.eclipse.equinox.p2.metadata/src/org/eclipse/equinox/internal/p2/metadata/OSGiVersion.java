@@ -25,6 +25,14 @@ public class OSGiVersion extends BasicVersion {
 
 	private static final boolean[] allowedOSGiChars;
 
+	// the number of bits of each of the major, minor and micro components in the packed form
+	private static final int PACKED_BITS = 21;
+
+	private static final int PACKED_LIMIT = 1 << PACKED_BITS;
+
+	// the longest number parsed by parseOSGi, longer numbers might overflow an int
+	private static final int MAX_FAST_DIGITS = 9;
+
 	private final int major;
 
 	private final int minor;
@@ -33,6 +41,14 @@ public class OSGiVersion extends BasicVersion {
 
 	private final Comparable<?> qualifier;
 
+	/**
+	 * The major, minor and micro components packed in one word so that they are compared at
+	 * once, or -1 if one of them does not fit in {@link #PACKED_BITS} bits.
+	 */
+	private transient final long packed;
+
+	private transient final int hash;
+
 	static {
 		allowedOSGiChars = new boolean[128];
 		for (int c = '0'; c <= '9'; ++c)
@@ -82,6 +98,52 @@ public class OSGiVersion extends BasicVersion {
 		return (major == 0 && minor == 0 && micro == 0 && qualifier == VersionVector.MINS_VALUE) ? (BasicVersion) emptyVersion : new OSGiVersion(major, minor, micro, qualifier);
 	}
 
+	/**
+	 * Parses a version made of one to three numbers and an optional qualifier, which is how
+	 * almost all the versions found in repositories are written, without going through the
+	 * OSGi version format.
+	 *
+	 * @return the version, or <code>null</code> if the string must be parsed using the OSGi
+	 * version format
+	 */
+	static BasicVersion parseOSGi(String version, int start, int maxPos) {
+		int[] numbers = new int[3];
+		int pos = start;
+		int count = 0;
+		while (count < 3) {
+			int digits = 0;
+			int value = 0;
+			while (pos < maxPos) {
+				char c = version.charAt(pos);
+				if (c < '0' || c > '9')
+					break;
+				value = value * 10 + (c - '0');
+				++pos;
+				++digits;
+			}
+			if (digits == 0 || digits > MAX_FAST_DIGITS)
+				return null;
+			numbers[count++] = value;
+			if (pos == maxPos)
+				break;
+			if (version.charAt(pos) != '.' || count == 3)
+				break;
+			++pos;
+		}
+		String qualifier = VersionVector.MINS_VALUE;
+		if (pos < maxPos) {
+			// only a qualifier may follow the micro component
+			if (count < 3 || version.charAt(pos) != '.' || ++pos == maxPos)
+				return null;
+			qualifier = version.substring(pos, maxPos);
+			if (!isValidOSGiQualifier(qualifier) || qualifier.equals(IVersionFormat.DEFAULT_MAX_STRING_TRANSLATION))
+				return null;
+		}
+		if (numbers[0] == 0 && numbers[1] == 0 && numbers[2] == 0 && qualifier == VersionVector.MINS_VALUE)
+			return (BasicVersion) emptyVersion;
+		return new OSGiVersion(numbers[0], numbers[1], numbers[2], qualifier);
+	}
+
 	public OSGiVersion(int major, int minor, int micro, Comparable<? extends Object> qualifier) {
 		this.major = major;
 		this.minor = minor;
@@ -92,6 +154,11 @@ public class OSGiVersion extends BasicVersion {
 		if (qualifier instanceof String)
 			qualifier = ((String) qualifier).intern();
 		this.qualifier = qualifier;
+		if (major >= 0 && major < PACKED_LIMIT && minor >= 0 && minor < PACKED_LIMIT && micro >= 0 && micro < PACKED_LIMIT)
+			packed = ((long) major << (2 * PACKED_BITS)) | ((long) minor << PACKED_BITS) | micro;
+		else
+			packed = -1;
+		hash = (major << 24) + (minor << 16) + (micro << 8) + qualifier.hashCode();
 	}
 
 	public int compareTo(Version v) {
@@ -101,15 +168,21 @@ public class OSGiVersion extends BasicVersion {
 			result = VersionVector.compare(getVector(), null, ov.getVector(), ov.getPad());
 		} else {
 			OSGiVersion ov = (OSGiVersion) v;
-			result = major - ov.major;
-			if (result == 0) {
-				result = minor - ov.minor;
+			if (packed >= 0 && ov.packed >= 0) {
+				if (packed != ov.packed)
+					return packed > ov.packed ? 1 : -1;
+				result = 0;
+			} else {
+				result = major - ov.major;
 				if (result == 0) {
-					result = micro - ov.micro;
+					result = minor - ov.minor;
 					if (result == 0)
-						result = VersionVector.compareSegments(qualifier, ov.qualifier);
+						result = micro - ov.micro;
 				}
 			}
+			// qualifiers are interned so equal qualifiers are usually identical
+			if (result == 0 && qualifier != ov.qualifier)
+				result = VersionVector.compareSegments(qualifier, ov.qualifier);
 		}
 		return result;
 	}
@@ -127,7 +200,9 @@ public class OSGiVersion extends BasicVersion {
 		}
 
 		OSGiVersion other = (OSGiVersion) object;
-		return micro == other.micro && minor == other.minor && major == other.major && qualifier.equals(other.qualifier);
+		if (hash != other.hash)
+			return false;
+		return micro == other.micro && minor == other.minor && major == other.major && (qualifier == other.qualifier || qualifier.equals(other.qualifier));
 	}
 
 	public IVersionFormat getFormat() {
@@ -155,7 +230,7 @@ public class OSGiVersion extends BasicVersion {
 	}
 
 	public int hashCode() {
-		return (major << 24) + (minor << 16) + (micro << 8) + qualifier.hashCode();
+		return hash;
 	}
 
 	public boolean isOSGiCompatible() {
@@ -217,10 +292,7 @@ public class OSGiVersion extends BasicVersion {
 	}
 
 	private Object readResolve() {
-		OSGiVersion v = this;
-		// Preserve the empty string singleton.
-		if (qualifier.equals(VersionVector.MINS_VALUE))
-			v = new OSGiVersion(major, minor, micro, VersionVector.MINS_VALUE);
-		return v;
+		// Preserve the empty string singleton and compute the transient fields.
+		return new OSGiVersion(major, minor, micro, qualifier.equals(VersionVector.MINS_VALUE) ? VersionVector.MINS_VALUE : qualifier);
 	}
 }
@@ -30,6 +30,26 @@ public abstract class VersionParser {
 
 	private static final Integer cache[] = new Integer[100];
 
+	// the number of entries of the cache of parsed versions, must be a power of two
+	private static final int VERSION_CACHE_SIZE = 4096;
+
+	private static final class CachedVersion {
+		final String string;
+		final Version version;
+
+		CachedVersion(String string, Version version) {
+			this.string = string;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * A direct mapped cache of recently parsed versions. An entry is replaced by the next
+	 * version whose string maps to the same slot. The entries are immutable so reading and
+	 * replacing them without synchronization is safe.
+	 */
+	private static final CachedVersion[] versionCache = new CachedVersion[VERSION_CACHE_SIZE];
+
 	static {
 		cache[0] = ZERO_INT;
 		for (int i = 1; i < cache.length; i++)
@@ -64,6 +84,26 @@ public abstract class VersionParser {
 		// Prevent class from being instantiated
 	}
 
+	/**
+	 * Parse the <code>version</code> string. Versions are immutable so the same instance is
+	 * returned when the same string is parsed repeatedly, as long as it is still cached.
+	 *
+	 * @param version The string to be parsed
+	 * @returns a version if one indeed was parsed or <code>null</code> if the string
+	 * contained only whitespace.
+	 * @throws IllegalArgumentException if the version is malformed
+	 */
+	public static Version parse(String version) throws IllegalArgumentException {
+		int slot = version.hashCode() & (VERSION_CACHE_SIZE - 1);
+		CachedVersion cached = versionCache[slot];
+		if (cached != null && cached.string.equals(version))
+			return cached.version;
+		Version result = parse(version, 0, version.length());
+		if (result != null)
+			versionCache[slot] = new CachedVersion(version, result);
+		return result;
+	}
+
 	/**
 	 * Parse the <code>version</code> string and assing the parsed portions to the <code>receiver</code>.
 	 * This method is called from the version string constructor.
@@ -86,6 +126,9 @@ public abstract class VersionParser {
 		VersionFormat fmt = null;
 		char c = version.charAt(pos);
 		if (isDigit(c)) {
+			BasicVersion osgiVersion = OSGiVersion.parseOSGi(version, pos, maxPos);
+			if (osgiVersion != null)
+				return osgiVersion;
 			return OSGiVersion.fromVector(VersionFormat.OSGI_FORMAT.parse(version, pos, maxPos));
 		}
 
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.expression;
+
+import java.util.*;
+
+/**
+ * A repeatable iterator that reads its source iterator only as far as the
+ * copies made of it have been advanced. The elements read are remembered so that
+ * every copy sees them, and duplicates are skipped just as when the source is
+ * copied into a set up front.
+ */
+public class LazyRepeatableIterator<T> implements IRepeatableIterator<T> {
+
+	/**
+	 * The elements read so far, shared by an iterator and all its copies.
+	 */
+	static final class Buffer<T> {
+		private Iterator<? extends T> source;
+		private final ArrayList<T> elements = new ArrayList<T>();
+		private final HashSet<T> seen = new HashSet<T>();
+
+		Buffer(Iterator<? extends T> source) {
+			this.source = source;
+		}
+
+		/**
+		 * Reads the source until the element at the given index is known and returns
+		 * <code>false</code> if the source has fewer elements.
+		 */
+		synchronized boolean fill(int index) {
+			while (index >= elements.size()) {
+				if (source == null)
+					return false;
+				if (!source.hasNext()) {
+					source = null;
+					return false;
+				}
+				T next = source.next();
+				if (seen.add(next))
+					elements.add(next);
+			}
+			return true;
+		}
+
+		synchronized T get(int index) {
+			return elements.get(index);
+		}
+
+		/**
+		 * Reads the rest of the source and returns all its elements.
+		 */
+		synchronized Set<T> getAll() {
+			fill(Integer.MAX_VALUE);
+			return seen;
+		}
+	}
+
+	private final Buffer<T> buffer;
+	private int position;
+
+	public LazyRepeatableIterator(Iterator<? extends T> source) {
+		this(new Buffer<T>(source));
+	}
+
+	private LazyRepeatableIterator(Buffer<T> buffer) {
+		this.buffer = buffer;
+	}
+
+	public IRepeatableIterator<T> getCopy() {
+		return new LazyRepeatableIterator<T>(buffer);
+	}
+
+	/**
+	 * Returns the buffer holding the elements read so far. Use {@link #getAll(Object)}
+	 * to obtain all elements from it.
+	 */
+	public Object getIteratorProvider() {
+		return buffer;
+	}
+
+	public boolean hasNext() {
+		return buffer.fill(position);
+	}
+
+	public T next() {
+		if (!buffer.fill(position))
+			throw new NoSuchElementException();
+		return buffer.get(position++);
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns all elements of the given iterator provider if it is the buffer of a
+	 * lazy iterator, or <code>null</code> if it is not. The returned set must not be
+	 * modified.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Set<T> getAll(Object provider) {
+		return provider instanceof Buffer<?> ? ((Buffer<T>) provider).getAll() : null;
+	}
+}
@@ -81,6 +81,9 @@ public class QueryResult<T> implements IQueryResult<T> {
 		}
 		if (provider instanceof Map<?, ?>)
 			return new HashSet<T>((Set<T>) ((Map<?, ?>) provider).entrySet());
+		Set<T> all = LazyRepeatableIterator.getAll(provider);
+		if (all != null)
+			return new HashSet<T>(all);
 		return iteratorToSet(iterator());
 	}
 
@@ -95,6 +98,9 @@ public class QueryResult<T> implements IQueryResult<T> {
 			return Collections.unmodifiableSet((Set<T>) provider);
 		if (provider instanceof Map<?, ?>)
 			return Collections.unmodifiableSet((Set<T>) ((Map<?, ?>) provider).entrySet());
+		Set<T> all = LazyRepeatableIterator.getAll(provider);
+		if (all != null)
+			return Collections.unmodifiableSet(all);
 		return toSet();
 	}
 
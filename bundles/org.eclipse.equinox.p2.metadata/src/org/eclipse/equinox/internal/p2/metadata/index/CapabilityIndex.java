@@ -48,6 +48,15 @@ public class CapabilityIndex extends Index<IInstallableUnit> {
 		this.capabilityMap = index;
 	}
 
+	/**
+	 * Creates an index from a map of capability names to the units providing them. The
+	 * value of a name is either the only unit providing it or an <code>ArrayList</code>
+	 * of the units providing it, as built by {@link #CapabilityIndex(Iterator)}.
+	 */
+	public CapabilityIndex(Map<String, Object> capabilityMap) {
+		this.capabilityMap = capabilityMap;
+	}
+
 	private Object getRequirementIDs(IEvaluationContext ctx, IExpression requirement, Object queriedKeys) {
 		switch (requirement.getExpressionType()) {
 			case IExpression.TYPE_AND :
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.index;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.MetadataActivator;
+import org.eclipse.equinox.internal.p2.metadata.expression.Member;
+import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.metadata.index.IIndexProvider;
+import org.eclipse.equinox.p2.query.*;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Evaluates a match query against the queryables of a {@link CompoundQueryable} in
+ * parallel and merges their matches. A match query decides on each element by itself,
+ * so its matches in the compound are the union of its matches in each queryable. Queries
+ * that need the combined view, such as <code>latest</code> or <code>limit</code>, and
+ * match queries that look at translated or profile properties, which the compound
+ * collects from all its queryables, are left to the compound.
+ * <p>
+ * Parallel evaluation is enabled by setting the {@link #PROP_THREADS} framework or system
+ * property to a number of threads greater than one.
+ * </p>
+ */
+public class ParallelQueryEvaluator {
+	/**
+	 * Framework or system property holding the number of threads used to query the
+	 * queryables of a compound queryable.
+	 */
+	public static final String PROP_THREADS = "eclipse.p2.query.threads"; //$NON-NLS-1$
+
+	private static final long KEEP_ALIVE = 30;
+	private static final long POLL_INTERVAL = 500;
+
+	private static ThreadPoolExecutor executor;
+
+	private static class QueryThreadFactory implements ThreadFactory {
+		private int count;
+
+		public synchronized Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "p2 query " + ++count); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Looks for members whose values are managed by the queryable holding the unit.
+	 */
+	private static class ManagedPropertyFinder implements IExpressionVisitor {
+		boolean found;
+
+		public boolean visit(IExpression expression) {
+			if (expression.getExpressionType() == IExpression.TYPE_MEMBER) {
+				String name = ((Member) expression).getName();
+				if (InstallableUnit.MEMBER_TRANSLATED_PROPERTIES.equals(name) || InstallableUnit.MEMBER_PROFILE_PROPERTIES.equals(name))
+					found = true;
+			}
+			return !found;
+		}
+	}
+
+	private ParallelQueryEvaluator() {
+		// static helpers only
+	}
+
+	/**
+	 * Returns the number of threads to use, or 1 if queryables are queried in turn.
+	 */
+	public static int getThreads() {
+		String value = null;
+		BundleContext context = MetadataActivator.getContext();
+		if (context != null)
+			value = context.getProperty(PROP_THREADS);
+		if (value == null)
+			value = System.getProperty(PROP_THREADS);
+		if (value == null)
+			return 1;
+		try {
+			return Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns whether the matches of the given query in a compound queryable are the
+	 * union of its matches in each queryable of the compound.
+	 */
+	public static boolean isSeparable(IQuery<?> query) {
+		if (!(query instanceof ExpressionMatchQuery<?>))
+			return false;
+		// a subclass deciding on matches by itself cannot be copied
+		Class<?> queryClass = query.getClass();
+		if (queryClass != ExpressionMatchQuery.class) {
+			try {
+				if (queryClass.getMethod("isMatch", Object.class).getDeclaringClass() != ExpressionMatchQuery.class //$NON-NLS-1$
+						|| queryClass.getMethod("perform", IIndexProvider.class).getDeclaringClass() != ExpressionMatchQuery.class //$NON-NLS-1$
+						|| queryClass.getMethod("perform", Iterator.class).getDeclaringClass() != ExpressionMatchQuery.class) //$NON-NLS-1$
+					return false;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+		IMatchExpression<?> expression = ((ExpressionMatchQuery<?>) query).getExpression();
+		IExpression operand = ExpressionUtil.getOperand(expression);
+		// there is nothing to evaluate when all elements match
+		if (operand == ExpressionUtil.TRUE_EXPRESSION)
+			return false;
+		ManagedPropertyFinder finder = new ManagedPropertyFinder();
+		operand.accept(finder);
+		return !finder.found;
+	}
+
+	/**
+	 * Performs the given query against each of the given queryables in parallel and
+	 * returns all their matches. The query must be {@link #isSeparable(IQuery) separable}.
+	 */
+	public static <T> IQueryResult<T> query(IQueryable<T>[] queryables, ExpressionMatchQuery<T> query, IProgressMonitor monitor) {
+		if (monitor != null)
+			monitor.beginTask(null, IProgressMonitor.UNKNOWN);
+		try {
+			IMatchExpression<T> expression = query.getExpression();
+			IExpression operand = ExpressionUtil.getOperand(expression);
+			Object[] parameters = expression.getParameters();
+			List<Future<IQueryResult<T>>> futures = new ArrayList<Future<IQueryResult<T>>>(queryables.length);
+			ExecutorService service = getExecutor();
+			for (final IQueryable<T> queryable : queryables) {
+				// the evaluation context of a query cannot be shared between threads
+				final ExpressionMatchQuery<T> copy = new ExpressionMatchQuery<T>(query.getMatchingClass(), operand, parameters);
+				futures.add(service.submit(new Callable<IQueryResult<T>>() {
+					public IQueryResult<T> call() {
+						return queryable.query(copy, new NullProgressMonitor());
+					}
+				}));
+			}
+
+			HashSet<T> result = null;
+			for (Future<IQueryResult<T>> future : futures) {
+				IQueryResult<T> matches = get(future, futures, monitor);
+				if (matches.isEmpty())
+					continue;
+				if (result == null)
+					result = new HashSet<T>();
+				for (Iterator<T> iterator = matches.iterator(); iterator.hasNext();)
+					result.add(iterator.next());
+			}
+			if (monitor != null)
+				monitor.worked(1);
+			return result == null ? Collector.<T> emptyCollector() : new CollectionResult<T>(result);
+		} finally {
+			if (monitor != null)
+				monitor.done();
+		}
+	}
+
+	private static <T> IQueryResult<T> get(Future<IQueryResult<T>> future, List<Future<IQueryResult<T>>> futures, IProgressMonitor monitor) {
+		try {
+			while (true) {
+				if (monitor != null && monitor.isCanceled()) {
+					for (Future<IQueryResult<T>> other : futures)
+						other.cancel(false);
+					throw new OperationCanceledException();
+				}
+				try {
+					return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// check the monitor again
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the executor running the queries. It never queues a query: when all its
+	 * threads are busy, the query runs on the calling thread, which also keeps compound
+	 * queryables nested in one another from waiting on each other.
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(0, getThreads(), KEEP_ALIVE, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new QueryThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+		} else {
+			int threads = getThreads();
+			if (threads != executor.getMaximumPoolSize())
+				executor.setMaximumPoolSize(threads);
+		}
+		return executor;
+	}
+
+	/**
+	 * Stops the threads running the queries. Called when the bundle stops, a later query
+	 * starts new threads.
+	 */
+	public static synchronized void shutdown() {
+		if (executor == null)
+			return;
+		executor.shutdown();
+		executor = null;
+	}
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.index;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.RequiredCapability;
+import org.eclipse.equinox.internal.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.*;
+
+/**
+ * An index of provided capabilities keyed by namespace and name, where the
+ * capabilities with the same namespace and name are sorted by version. The
+ * candidates for a simple requirement, i.e. a requirement on a namespace, a name
+ * and a version range, are found using a binary search for the lower bound of the
+ * range followed by a scan up to its upper bound. Other expressions are handed to
+ * a {@link CapabilityIndex} that is created when first needed.
+ */
+public class VersionedCapabilityIndex extends Index<IInstallableUnit> {
+
+	/**
+	 * The units providing a capability with a given namespace and name, sorted by
+	 * the version of that capability.
+	 */
+	private static final class VersionedUnits {
+		final Version[] versions;
+		final IInstallableUnit[] units;
+
+		VersionedUnits(Version[] versions, IInstallableUnit[] units) {
+			this.versions = versions;
+			this.units = units;
+		}
+
+		/**
+		 * Returns the index of the first version that is greater than, or if
+		 * <code>include</code> is set equal to, the given version.
+		 */
+		int lowerBound(Version version, boolean include) {
+			int low = 0;
+			int high = versions.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				int cmp = versions[mid].compareTo(version);
+				if (cmp < 0 || (cmp == 0 && !include))
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		Iterator<IInstallableUnit> getUnits(VersionRange range) {
+			if (range == null || range.equals(VersionRange.emptyRange))
+				return uniqueUnits(0, units.length);
+
+			int from = lowerBound(range.getMinimum(), range.getIncludeMinimum());
+			return uniqueUnits(from, lowerBound(range.getMaximum(), !range.getIncludeMaximum()));
+		}
+
+		private Iterator<IInstallableUnit> uniqueUnits(int from, int to) {
+			if (from >= to)
+				return Collections.<IInstallableUnit> emptySet().iterator();
+			if (to - from == 1)
+				return Collections.singleton(units[from]).iterator();
+			// a unit may provide the same capability in more than one version
+			Set<IInstallableUnit> result = new LinkedHashSet<IInstallableUnit>(to - from);
+			for (int i = from; i < to; i++)
+				result.add(units[i]);
+			return result.iterator();
+		}
+	}
+
+	private static final class ProvidedBy {
+		final Version version;
+		final IInstallableUnit unit;
+
+		ProvidedBy(Version version, IInstallableUnit unit) {
+			this.version = version;
+			this.unit = unit;
+		}
+	}
+
+	private static final Comparator<ProvidedBy> VERSION_ORDER = new Comparator<ProvidedBy>() {
+		public int compare(ProvidedBy o1, ProvidedBy o2) {
+			return o1.version.compareTo(o2.version);
+		}
+	};
+
+	private final Collection<IInstallableUnit> allUnits;
+	private final Map<String, Map<String, VersionedUnits>> namespaceMap;
+	private CapabilityIndex capabilityIndex;
+
+	public VersionedCapabilityIndex(Collection<IInstallableUnit> units) {
+		allUnits = units;
+		Map<String, Map<String, List<ProvidedBy>>> index = new HashMap<String, Map<String, List<ProvidedBy>>>();
+		for (IInstallableUnit iu : units) {
+			for (IProvidedCapability pc : iu.getProvidedCapabilities()) {
+				Map<String, List<ProvidedBy>> nameMap = index.get(pc.getNamespace());
+				if (nameMap == null) {
+					nameMap = new HashMap<String, List<ProvidedBy>>();
+					index.put(pc.getNamespace(), nameMap);
+				}
+				List<ProvidedBy> providers = nameMap.get(pc.getName());
+				if (providers == null) {
+					providers = new ArrayList<ProvidedBy>(1);
+					nameMap.put(pc.getName(), providers);
+				}
+				providers.add(new ProvidedBy(pc.getVersion(), iu));
+			}
+		}
+
+		namespaceMap = new HashMap<String, Map<String, VersionedUnits>>(index.size());
+		for (Map.Entry<String, Map<String, List<ProvidedBy>>> namespaceEntry : index.entrySet()) {
+			Map<String, List<ProvidedBy>> nameMap = namespaceEntry.getValue();
+			Map<String, VersionedUnits> sortedMap = new HashMap<String, VersionedUnits>(nameMap.size());
+			for (Map.Entry<String, List<ProvidedBy>> nameEntry : nameMap.entrySet()) {
+				List<ProvidedBy> providers = nameEntry.getValue();
+				Collections.sort(providers, VERSION_ORDER);
+				int top = providers.size();
+				Version[] versions = new Version[top];
+				IInstallableUnit[] ius = new IInstallableUnit[top];
+				for (int i = 0; i < top; i++) {
+					ProvidedBy provider = providers.get(i);
+					versions[i] = provider.version;
+					ius[i] = provider.unit;
+				}
+				sortedMap.put(nameEntry.getKey(), new VersionedUnits(versions, ius));
+			}
+			namespaceMap.put(namespaceEntry.getKey(), sortedMap);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public Iterator<IInstallableUnit> getCandidates(IEvaluationContext ctx, IExpression variable, IExpression booleanExpr) {
+		IMatchExpression<IInstallableUnit> requirement = null;
+		if (booleanExpr instanceof IMatchExpression<?>) {
+			// A query created from the match expression of a requirement
+			if (variable == ExpressionFactory.THIS)
+				requirement = (IMatchExpression<IInstallableUnit>) booleanExpr;
+		} else if (booleanExpr.getExpressionType() == IExpression.TYPE_MATCHES) {
+			// A query using the requirement as a parameter, i.e. x ~= $0
+			Matches matches = (Matches) booleanExpr;
+			if (matches.lhs == variable) {
+				Object rhsObj = matches.rhs.evaluate(ctx);
+				if (rhsObj instanceof IRequirement)
+					requirement = ((IRequirement) rhsObj).getMatches();
+			}
+		}
+
+		if (requirement != null && RequiredCapability.isSimpleRequirement(requirement))
+			return getCandidates(RequiredCapability.extractNamespace(requirement), RequiredCapability.extractName(requirement), RequiredCapability.extractRange(requirement));
+		return getCapabilityIndex().getCandidates(ctx, variable, booleanExpr);
+	}
+
+	/**
+	 * Returns the units that provide a capability with the given namespace and name
+	 * and a version within the given range.
+	 */
+	public Iterator<IInstallableUnit> getCandidates(String namespace, String name, VersionRange range) {
+		Map<String, VersionedUnits> nameMap = namespaceMap.get(namespace);
+		VersionedUnits providers = nameMap == null ? null : nameMap.get(name);
+		if (providers == null)
+			return Collections.<IInstallableUnit> emptySet().iterator();
+		return providers.getUnits(range);
+	}
+
+	private synchronized CapabilityIndex getCapabilityIndex() {
+		if (capabilityIndex == null)
+			capabilityIndex = new CapabilityIndex(allUnits.iterator());
+		return capabilityIndex;
+	}
+}
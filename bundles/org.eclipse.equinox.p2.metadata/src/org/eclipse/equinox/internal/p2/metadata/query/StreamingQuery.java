@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.query;
+
+import java.util.Iterator;
+import java.util.List;
+import org.eclipse.equinox.internal.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.metadata.index.*;
+import org.eclipse.equinox.p2.query.*;
+
+/**
+ * A query that performs an expression query lazily. The matches of the wrapped query
+ * are only evaluated as the result is iterated, so asking whether the result is empty
+ * or reading its first element stops after the first match instead of collecting all
+ * of them. Performed on a {@link CompoundQueryable}, the candidates of each queryable
+ * are read in turn without collecting them first.
+ * <p>
+ * The result reads the queryable while it is iterated. It must not be used once the
+ * queryable has been modified, and the wrapped query must not be performed again
+ * before the result has been read.
+ * </p>
+ * <p>
+ * Queries that are not based on an expression are performed as usual.
+ * </p>
+ */
+public class StreamingQuery<T> implements IQueryWithIndex<T> {
+	private final IQuery<T> query;
+
+	public StreamingQuery(IQuery<T> query) {
+		this.query = query;
+	}
+
+	public IQueryResult<T> perform(IIndexProvider<T> indexProvider) {
+		if (query instanceof ExpressionMatchQuery<?>) {
+			ExpressionMatchQuery<T> matchQuery = (ExpressionMatchQuery<T>) query;
+			if (!isMatchAll(matchQuery)) {
+				Iterator<T> iterator = getCandidates(matchQuery, indexProvider);
+				matchQuery.setIndexProvider(indexProvider);
+				return createResult(matchQuery, iterator);
+			}
+		} else if (query instanceof ExpressionQuery<?>) {
+			IContextExpression<T> expression = ((ExpressionQuery<T>) query).getExpression();
+			Class<? extends T> elementClass = ((ExpressionQuery<T>) query).getElementClass();
+			return new QueryResult<T>(new LazyRepeatableIterator<T>(expression.iterator(expression.createContext(elementClass, indexProvider))));
+		}
+		return query instanceof IQueryWithIndex<?> ? ((IQueryWithIndex<T>) query).perform(indexProvider) : query.perform(indexProvider.everything());
+	}
+
+	public IQueryResult<T> perform(Iterator<T> iterator) {
+		if (query instanceof ExpressionMatchQuery<?>)
+			return createResult((ExpressionMatchQuery<T>) query, iterator);
+		if (query instanceof ExpressionQuery<?>) {
+			IContextExpression<T> expression = ((ExpressionQuery<T>) query).getExpression();
+			Class<? extends T> elementClass = ((ExpressionQuery<T>) query).getElementClass();
+			return new QueryResult<T>(new LazyRepeatableIterator<T>(expression.iterator(expression.createContext(elementClass, iterator))));
+		}
+		return query.perform(iterator);
+	}
+
+	public IExpression getExpression() {
+		return query.getExpression();
+	}
+
+	private static <T> boolean isMatchAll(ExpressionMatchQuery<T> query) {
+		return ((MatchExpression<T>) query.getExpression()).operand == ExpressionUtil.TRUE_EXPRESSION;
+	}
+
+	private static <T> Iterator<T> getCandidates(ExpressionMatchQuery<T> query, IIndexProvider<T> indexProvider) {
+		MatchExpression<T> expression = (MatchExpression<T>) query.getExpression();
+		List<String> members = Expression.getIndexCandidateMembers(query.getMatchingClass(), ExpressionFactory.THIS, expression.operand);
+		for (String member : members) {
+			IIndex<T> index = indexProvider.getIndex(member);
+			if (index != null) {
+				Iterator<T> iterator = index.getCandidates(query.getContext(), ExpressionFactory.THIS, expression);
+				if (iterator != null)
+					return iterator;
+			}
+		}
+		return indexProvider.everything();
+	}
+
+	private static <T> IQueryResult<T> createResult(final ExpressionMatchQuery<T> query, Iterator<T> iterator) {
+		if (isMatchAll(query))
+			return new QueryResult<T>(new LazyRepeatableIterator<T>(iterator));
+		return new QueryResult<T>(new LazyRepeatableIterator<T>(new MatchIteratorFilter<T>(iterator) {
+			protected boolean isMatch(T candidate) {
+				return query.isMatch(candidate);
+			}
+		}));
+	}
+}
@@ -76,7 +76,7 @@ public abstract class Version implements Comparable<Version>, Serializable {
 	 *         formatted.
 	 */
 	public static Version create(String version) {
-		return version == null ? null : VersionParser.parse(version, 0, version.length());
+		return version == null ? null : VersionParser.parse(version);
 	}
 
 	/**
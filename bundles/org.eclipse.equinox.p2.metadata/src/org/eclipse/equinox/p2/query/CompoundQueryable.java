@@ -10,11 +10,13 @@
 package org.eclipse.equinox.p2.query;
 
 import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.metadata.expression.CompoundIterator;
 import org.eclipse.equinox.internal.p2.metadata.index.CompoundIndex;
 import org.eclipse.equinox.internal.p2.metadata.index.IndexProvider;
+import org.eclipse.equinox.internal.p2.metadata.index.ParallelQueryEvaluator;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.KeyWithLocale;
 import org.eclipse.equinox.p2.metadata.expression.IEvaluationContext;
@@ -69,6 +71,14 @@ public final class CompoundQueryable<T> extends IndexProvider<T> {
 		this(new IQueryable[] {query1, query2});
 	}
 
+	public IQueryResult<T> query(IQuery<T> query, IProgressMonitor monitor) {
+		// Match queries can be performed against each queryable separately, which is
+		// worth doing in parallel when there are many large queryables
+		if (queryables.length > 1 && ParallelQueryEvaluator.getThreads() > 1 && ParallelQueryEvaluator.isSeparable(query))
+			return ParallelQueryEvaluator.query(queryables, (ExpressionMatchQuery<T>) query, monitor);
+		return super.query(query, monitor);
+	}
+
 	public IIndex<T> getIndex(String memberName) {
 		// Check that at least one of the queryable can present an index
 		// for the given member.
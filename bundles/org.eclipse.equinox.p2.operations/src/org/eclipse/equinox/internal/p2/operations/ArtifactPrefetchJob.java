@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.operations;
+
+import java.io.File;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.engine.DownloadManager;
+import org.eclipse.equinox.p2.core.IAgentLocation;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
+import org.eclipse.equinox.p2.operations.ProvisioningSession;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.*;
+
+/**
+ * Downloads the artifacts of a resolved provisioning plan in the background, so that
+ * performing the plan later does not have to wait for them. The artifacts of the bundles
+ * added by the plan are mirrored into the bundle pool of the profile, where the collect
+ * phase finds them when the plan is performed. Neither the engine nor the profile is
+ * involved, so the profile stays free for anyone else to change.
+ * <p>
+ * Prefetching is opt-in. It is enabled by setting the {@link #PROP_PREFETCH} property
+ * of the provisioning context used to resolve the plan to <code>true</code>. The
+ * {@link #PROP_PREFETCH_RATE} property caps the average download speed of the prefetched
+ * artifacts in bytes per second. The job runs at the lowest priority and is cancelled as
+ * soon as a plan is performed for the same profile.
+ * </p>
+ */
+public class ArtifactPrefetchJob extends Job {
+	public static final String PROP_PREFETCH = "org.eclipse.equinox.p2.operations.prefetch"; //$NON-NLS-1$
+	public static final String PROP_PREFETCH_RATE = "org.eclipse.equinox.p2.operations.prefetchRate"; //$NON-NLS-1$
+	public static final Object FAMILY = ArtifactPrefetchJob.class;
+
+	// The touchpoint whose collect phase downloads artifacts into the bundle pool
+	private static final String TOUCHPOINT_OSGI = "org.eclipse.equinox.p2.osgi"; //$NON-NLS-1$
+	private static final String TOUCHPOINT_ECLIPSE_ID = "org.eclipse.equinox.p2.touchpoint.eclipse"; //$NON-NLS-1$
+	private static final String ARTIFACT_FOLDER = "artifact.folder"; //$NON-NLS-1$
+	private static final String ZIPPED = "zipped"; //$NON-NLS-1$
+
+	private final ProvisioningSession session;
+	private final IProvisioningPlan plan;
+	private final long bytesPerSecond;
+	private final ProvisioningContext downloadContext;
+
+	public static boolean isEnabled(ProvisioningContext context) {
+		return context != null && Boolean.valueOf(context.getProperty(PROP_PREFETCH)).booleanValue();
+	}
+
+	/**
+	 * Schedules the prefetching of the artifacts of the given plan if the provisioning
+	 * context of the plan asks for it.
+	 *
+	 * @return the scheduled job, or <code>null</code> if nothing is prefetched
+	 */
+	public static ArtifactPrefetchJob schedule(ProvisioningSession session, IProvisioningPlan plan) {
+		if (plan == null || plan.getStatus().getSeverity() == IStatus.ERROR || !isEnabled(plan.getContext()))
+			return null;
+		cancel(plan.getProfile().getProfileId());
+		ArtifactPrefetchJob job = new ArtifactPrefetchJob(session, plan);
+		job.schedule();
+		return job;
+	}
+
+	/**
+	 * Cancels the prefetching for the given profile and waits for it to stop, so that
+	 * the prefetching does not compete with the downloads of the engine.
+	 */
+	public static void cancel(String profileId) {
+		Job[] jobs = Job.getJobManager().find(FAMILY);
+		for (int i = 0; i < jobs.length; i++) {
+			ArtifactPrefetchJob job = (ArtifactPrefetchJob) jobs[i];
+			if (!job.getProfileId().equals(profileId) || job == Job.getJobManager().currentJob())
+				continue;
+			job.cancel();
+			try {
+				job.join();
+			} catch (InterruptedException e) {
+				// the job has been cancelled, it stops after its current download
+			}
+		}
+	}
+
+	ArtifactPrefetchJob(ProvisioningSession session, IProvisioningPlan plan) {
+		super(Messages.ArtifactPrefetchJob_JobName);
+		this.session = session;
+		this.plan = plan;
+		this.bytesPerSecond = getRate(plan.getContext());
+		this.downloadContext = createDownloadContext(session, plan.getContext());
+		setSystem(true);
+		setPriority(Job.DECORATE);
+	}
+
+	private static long getRate(ProvisioningContext context) {
+		String rate = context.getProperty(PROP_PREFETCH_RATE);
+		if (rate == null)
+			return 0;
+		try {
+			return Long.parseLong(rate);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/*
+	 * The context of the plan keeps being used by the thread that resolved it, for instance to
+	 * compute the size of the plan. The artifact repositories of the plan are therefore found
+	 * before the job is scheduled, and the job downloads from a context of its own.
+	 */
+	private static ProvisioningContext createDownloadContext(ProvisioningSession session, ProvisioningContext context) {
+		IArtifactRepository[] repositories = context.getArtifactRepositories(null).query(QueryUtil.<IArtifactRepository> createMatchQuery(IArtifactRepository.class, ExpressionUtil.TRUE_EXPRESSION), null).toArray(IArtifactRepository.class);
+		URI[] locations = new URI[repositories.length];
+		for (int i = 0; i < repositories.length; i++)
+			locations[i] = repositories[i].getLocation();
+		ProvisioningContext downloadContext = new ProvisioningContext(session.getProvisioningAgent());
+		downloadContext.setMetadataRepositories(new URI[0]);
+		downloadContext.setArtifactRepositories(locations);
+		return downloadContext;
+	}
+
+	public String getProfileId() {
+		return plan.getProfile().getProfileId();
+	}
+
+	public boolean belongsTo(Object family) {
+		return family == FAMILY;
+	}
+
+	protected IStatus run(IProgressMonitor monitor) {
+		IArtifactRepository bundlePool = getBundlePool();
+		if (bundlePool == null)
+			return Status.OK_STATUS;
+		List<IArtifactRequest> requests = createRequests(bundlePool);
+		SubMonitor sub = SubMonitor.convert(monitor, requests.size());
+		DownloadThrottle throttle = bytesPerSecond > 0 ? new DownloadThrottle(bytesPerSecond) : null;
+		// the artifacts are downloaded one at a time, so that the throttle can wait in between
+		for (IArtifactRequest request : requests) {
+			if (sub.isCanceled())
+				return Status.CANCEL_STATUS;
+			DownloadManager downloads = new DownloadManager(downloadContext, session.getProvisioningAgent());
+			downloads.add(request);
+			IStatus status = downloads.start(sub.newChild(1));
+			if (status.getSeverity() == IStatus.CANCEL)
+				return Status.CANCEL_STATUS;
+			// a failed prefetch only means the artifact is downloaded when the plan is performed
+			if (!status.isOK()) {
+				if (Tracing.DEBUG)
+					Tracing.debug("Prefetching " + request.getArtifactKey() + " for " + getProfileId() + " failed: " + status); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				continue;
+			}
+			if (throttle != null) {
+				throttle.received(getDownloadSize(bundlePool, request.getArtifactKey()));
+				if (!throttle.await(sub))
+					return Status.CANCEL_STATUS;
+			}
+		}
+		return Status.OK_STATUS;
+	}
+
+	/*
+	 * Creates the requests mirroring the missing artifacts of the bundles added by the plan
+	 * into the bundle pool, as the collect phase of the plan does.
+	 */
+	private List<IArtifactRequest> createRequests(IArtifactRepository bundlePool) {
+		IArtifactRepositoryManager manager = (IArtifactRepositoryManager) session.getProvisioningAgent().getService(IArtifactRepositoryManager.SERVICE_NAME);
+		String statsParameters = plan.getProfile().getProperty(IProfile.PROP_STATS_PARAMETERS);
+		List<IArtifactRequest> requests = new ArrayList<IArtifactRequest>();
+		Set<IArtifactKey> requested = new HashSet<IArtifactKey>();
+		for (IInstallableUnit iu : plan.getAdditions().query(QueryUtil.createIUAnyQuery(), null)) {
+			ITouchpointType type = iu.getTouchpointType();
+			if (type == null || !TOUCHPOINT_OSGI.equals(type.getId()))
+				continue;
+			Map<String, String> properties = isZipped(iu) ? Collections.singletonMap(ARTIFACT_FOLDER, Boolean.TRUE.toString()) : null;
+			for (IArtifactKey key : iu.getArtifacts()) {
+				if (requested.add(key) && !bundlePool.contains(key))
+					requests.add(manager.createMirrorRequest(key, bundlePool, null, properties, statsParameters));
+			}
+		}
+		return requests;
+	}
+
+	private static boolean isZipped(IInstallableUnit iu) {
+		for (ITouchpointData data : iu.getTouchpointData()) {
+			if (data.getInstruction(ZIPPED) != null)
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Returns the existing bundle pool of the profile, or null if the profile has none yet,
+	 * in which case the engine creates it when the plan is performed.
+	 */
+	private IArtifactRepository getBundlePool() {
+		URI location;
+		String cache = plan.getProfile().getProperty(IProfile.PROP_CACHE);
+		if (cache != null) {
+			location = new File(cache).toURI();
+		} else {
+			IAgentLocation agentLocation = (IAgentLocation) session.getProvisioningAgent().getService(IAgentLocation.SERVICE_NAME);
+			if (agentLocation == null)
+				return null;
+			location = agentLocation.getDataArea(TOUCHPOINT_ECLIPSE_ID);
+		}
+		IArtifactRepositoryManager manager = (IArtifactRepositoryManager) session.getProvisioningAgent().getService(IArtifactRepositoryManager.SERVICE_NAME);
+		try {
+			return manager.loadRepository(location, null);
+		} catch (ProvisionException e) {
+			return null;
+		}
+	}
+
+	private static long getDownloadSize(IArtifactRepository repository, IArtifactKey key) {
+		IArtifactDescriptor[] descriptors = repository.getArtifactDescriptors(key);
+		for (int i = 0; i < descriptors.length; i++) {
+			String size = descriptors[i].getProperty(IArtifactDescriptor.DOWNLOAD_SIZE);
+			if (size == null)
+				size = descriptors[i].getProperty(IArtifactDescriptor.ARTIFACT_SIZE);
+			if (size != null) {
+				try {
+					return Long.parseLong(size);
+				} catch (NumberFormatException e) {
+					// try the file
+				}
+			}
+		}
+		if (repository instanceof IFileArtifactRepository) {
+			File file = ((IFileArtifactRepository) repository).getArtifactFile(key);
+			if (file != null)
+				return file.length();
+		}
+		return 0;
+	}
+}
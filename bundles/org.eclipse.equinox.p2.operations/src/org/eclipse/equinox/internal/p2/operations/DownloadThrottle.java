@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.operations;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Keeps the average speed of a series of downloads under a given number of bytes per
+ * second. The downloader reports the size of each download it completes, and waits
+ * before the next one for as long as it is ahead of the allowed speed. Only the downloads
+ * of the downloader are slowed down, other downloads of the agent are left alone.
+ */
+public class DownloadThrottle {
+	// The longest time waited before checking for cancellation
+	private static final long POLL_INTERVAL = 100;
+
+	private final long bytesPerSecond;
+	private final long start = System.currentTimeMillis();
+	private long total = 0;
+
+	public DownloadThrottle(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * Records that a download of the given number of bytes has completed.
+	 */
+	public synchronized void received(long bytes) {
+		total += bytes;
+	}
+
+	/**
+	 * Returns how many milliseconds the downloads have to wait at the given time to get back
+	 * to the allowed speed.
+	 */
+	public synchronized long getDelay(long now) {
+		return total * 1000 / bytesPerSecond - (now - start);
+	}
+
+	/**
+	 * Waits until the downloads are back to the allowed speed.
+	 *
+	 * @return <code>false</code> if the wait was cancelled through the given monitor
+	 */
+	public boolean await(IProgressMonitor monitor) {
+		long delay;
+		while ((delay = getDelay(System.currentTimeMillis())) > 0) {
+			if (monitor != null && monitor.isCanceled())
+				return false;
+			try {
+				Thread.sleep(Math.min(delay, POLL_INTERVAL));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return monitor == null || !monitor.isCanceled();
+	}
+}
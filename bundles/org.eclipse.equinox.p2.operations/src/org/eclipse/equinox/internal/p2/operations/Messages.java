@@ -20,6 +20,8 @@ import org.eclipse.osgi.util.NLS;
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.equinox.internal.p2.operations.messages"; //$NON-NLS-1$
 
+	public static String ArtifactPrefetchJob_JobName;
+
 	public static String InstallOperation_ComputeProfileChangeProgress;
 
 	public static String InstallOperation_InstallJobName;
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.operations;
+
+import java.util.ArrayList;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryable;
+
+/**
+ * A copy of a provisioning context whose metadata has already been loaded. Planning
+ * with a copy never loads repositories, so the copies of one context can be used on
+ * several threads without writing to the context they were made from.
+ * <p>
+ * Only the metadata, the extra units and the properties of the original context are
+ * copied. A copy is meant for the planner and must not be given to the engine.
+ * </p>
+ */
+public class PreloadedProvisioningContext extends ProvisioningContext {
+	private final IQueryable<IInstallableUnit> metadata;
+
+	/**
+	 * Creates a copy of the given context, whose metadata is the given queryable, as
+	 * obtained from the context beforehand.
+	 */
+	public PreloadedProvisioningContext(IProvisioningAgent agent, ProvisioningContext context, IQueryable<IInstallableUnit> metadata) {
+		super(agent);
+		this.metadata = metadata;
+		getProperties().putAll(context.getProperties());
+		setExtraInstallableUnits(new ArrayList<IInstallableUnit>(context.getExtraInstallableUnits()));
+	}
+
+	public IQueryable<IInstallableUnit> getMetadata(IProgressMonitor monitor) {
+		return metadata;
+	}
+}
@@ -222,15 +222,18 @@ public class RequestFlexer {
 
 	private IProvisioningPlan resolve(IProfileChangeRequest temporaryRequest, IProgressMonitor monitor) {
 		String explainPropertyBackup = null;
+		// The context is left alone when explanations are already disabled, since it may then
+		// be shared with request flexers running on other threads
+		boolean disableExplanation = provisioningContext != null && !Boolean.FALSE.toString().equals(provisioningContext.getProperty(EXPLANATION_ENABLEMENT));
 		try {
 			temporaryRequest.setProfileProperty("_internal_user_defined_", "true"); //$NON-NLS-1$//$NON-NLS-2$
-			if (provisioningContext != null) {
+			if (disableExplanation) {
 				explainPropertyBackup = provisioningContext.getProperty(EXPLANATION_ENABLEMENT);
 				provisioningContext.setProperty(EXPLANATION_ENABLEMENT, Boolean.FALSE.toString());
 			}
 			return planner.getProvisioningPlan(temporaryRequest, provisioningContext, SubMonitor.convert(monitor));
 		} finally {
-			if (provisioningContext != null) {
+			if (disableExplanation) {
 				if (explainPropertyBackup == null)
 					provisioningContext.getProperties().remove(EXPLANATION_ENABLEMENT);
 				else
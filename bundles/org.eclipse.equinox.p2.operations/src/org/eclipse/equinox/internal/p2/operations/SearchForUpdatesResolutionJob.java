@@ -42,8 +42,11 @@ public class SearchForUpdatesResolutionJob extends PlannerResolutionJob {
 		} catch (InvocationTargetException e) {
 			// ignore, we don't actually throw this in the supplied runnable
 		}
-		if (request != null)
-			return super.runModal(sub.newChild(500));
+		if (request != null) {
+			IStatus status = super.runModal(sub.newChild(500));
+			ArtifactPrefetchJob.schedule(getSession(), plan);
+			return status;
+		}
 		return operation.getResolutionResult();
 	}
 
@@ -17,8 +17,7 @@ import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
-import org.eclipse.equinox.internal.p2.operations.Activator;
-import org.eclipse.equinox.internal.p2.operations.Messages;
+import org.eclipse.equinox.internal.p2.operations.*;
 import org.eclipse.equinox.internal.provisional.configurator.Configurator;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.p2.core.IAgentLocation;
@@ -137,6 +136,9 @@ public class ProvisioningSession {
 		// of these operations, otherwise we can get profile out of synch errors.	
 		IProfile profile = plan.getProfile();
 
+		// artifacts prefetched so far stay in the bundle pool, the engine downloads the rest
+		ArtifactPrefetchJob.cancel(profile.getProfileId());
+
 		if (plan.getInstallerPlan() != null) {
 			if (doesPhaseSetIncludeDownload(set)) {
 				// If the phase set calls for download, then we want to download the install plan artifacts
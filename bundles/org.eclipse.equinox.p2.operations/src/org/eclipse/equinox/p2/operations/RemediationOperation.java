@@ -11,17 +11,32 @@
 package org.eclipse.equinox.p2.operations;
 
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
 import org.eclipse.equinox.internal.p2.operations.*;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.planner.IPlanner;
 import org.eclipse.equinox.p2.planner.IProfileChangeRequest;
+import org.eclipse.equinox.p2.query.IQueryable;
 import org.eclipse.equinox.p2.repository.IRunnableWithProgress;
 
 /**
+ * Computes the remedies of a profile change request that cannot be satisfied, one for
+ * each {@link RemedyConfig}.
+ * <p>
+ * The remedies are computed one after the other, unless the
+ * <code>org.eclipse.equinox.p2.operations.remediationThreads</code> property of the
+ * provisioning context, or the framework property of the same name, is set to a number of
+ * threads greater than one. The remedies are then computed concurrently. When the
+ * <code>org.eclipse.equinox.p2.operations.bestRemediesOnly</code> property is set to
+ * <code>true</code>, only the remedies that can be returned by
+ * {@link #bestSolutionChangingTheRequest()} and {@link #bestSolutionChangingWhatIsInstalled()}
+ * are computed, and the search stops as soon as these are known.
+ * </p>
  * <p>
  * <strong>EXPERIMENTAL</strong>. This class or interface has been added as
  * part of a work in progress. There is no guarantee that this API will
@@ -37,6 +52,10 @@ public class RemediationOperation extends ProfileChangeOperation {
 	private static int LOW_WEIGHT = 1;
 	private static int MEDIUM_WEIGHT = 2;
 	private static int HIGH_WEIGHT = 3;
+	private static final String PROP_THREADS = "org.eclipse.equinox.p2.operations.remediationThreads"; //$NON-NLS-1$
+	private static final String PROP_BEST_REMEDIES_ONLY = "org.eclipse.equinox.p2.operations.bestRemediesOnly"; //$NON-NLS-1$
+	private static final String EXPLANATION_ENABLEMENT = "org.eclipse.equinox.p2.director.explain"; //$NON-NLS-1$
+	private static final long POLL_INTERVAL = 500;
 	private List<Remedy> remedies;
 	private Remedy bestSolutionChangingTheRequest;
 	private Remedy bestSolutionChangingWhatIsInstalled;
@@ -99,24 +118,212 @@ public class RemediationOperation extends ProfileChangeOperation {
 	}
 
 	private IStatus computeAllRemediations(IProgressMonitor monitor) {
+		boolean bestOnly = Boolean.valueOf(getProperty(PROP_BEST_REMEDIES_ONLY)).booleanValue();
+		// the configurations that are most likely to give the best remedies are tried first
+		Integer[] order = new Integer[remedyConfigs.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = new Integer(i);
+		if (bestOnly) {
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer i1, Integer i2) {
+					return getRank(remedyConfigs[i2.intValue()]) - getRank(remedyConfigs[i1.intValue()]);
+				}
+			});
+		}
+		Remedy[] results = new Remedy[remedyConfigs.length];
+		boolean[] done = new boolean[remedyConfigs.length];
+		int threads = getThreads();
 		SubMonitor sub = SubMonitor.convert(monitor, remedyConfigs.length);
 		sub.setTaskName(Messages.RemediationOperation_ProfileChangeRequestProgress);
+		try {
+			IStatus status;
+			if (threads > 1 && remedyConfigs.length > 1)
+				status = computeRemediesConcurrently(order, results, done, bestOnly, threads, sub);
+			else
+				status = computeRemediesInTurn(order, results, done, bestOnly, sub);
+			if (status.getSeverity() == IStatus.CANCEL)
+				return status;
+		} finally {
+			sub.done();
+		}
 		List<Remedy> tmpRemedies = new ArrayList<Remedy>(remedyConfigs.length);
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null)
+				tmpRemedies.add(results[i]);
+		}
+		remedies = tmpRemedies;
+		return getResolutionResult();
+	}
+
+	private IStatus computeRemediesInTurn(Integer[] order, Remedy[] results, boolean[] done, boolean bestOnly, SubMonitor sub) {
+		for (int i = 0; i < order.length; i++) {
+			int index = order[i].intValue();
+			sub.subTask((i + 1) + " / " + remedyConfigs.length); //$NON-NLS-1$
+			if (sub.isCanceled())
+				return Status.CANCEL_STATUS;
+			if (bestOnly && !isNeeded(index, results, done)) {
+				sub.worked(1);
+				continue;
+			}
+			results[index] = computeRemedy(remedyConfigs[index], getProvisioningContext(), sub.newChild(1, SubMonitor.SUPPRESS_ALL_LABELS));
+			done[index] = true;
+		}
+		return Status.OK_STATUS;
+	}
+
+	/*
+	 * Computes the remedies on several threads. Each remedy has its own request flexer and
+	 * planner run, with its own copy of the provisioning context. The metadata of the
+	 * context is loaded once beforehand and shared by the copies, so the worker threads
+	 * never write to the context of this operation. The explanations of the failed
+	 * attempts are disabled in the copies.
+	 */
+	private IStatus computeRemediesConcurrently(Integer[] order, Remedy[] results, boolean[] done, boolean bestOnly, int threads, SubMonitor sub) {
+		ProvisioningContext provisioningContext = getProvisioningContext();
+		IQueryable<IInstallableUnit> metadata = provisioningContext.getMetadata(new NullProgressMonitor());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, order.length), new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "p2 remediation " + ++count); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		Map<Future<Remedy>, Integer> indexes = new HashMap<Future<Remedy>, Integer>(order.length);
+		Future<?>[] futures = new Future<?>[remedyConfigs.length];
+		final IProgressMonitor[] monitors = new IProgressMonitor[remedyConfigs.length];
 		try {
-			for (int i = 0; i < remedyConfigs.length; i++) {
-				sub.subTask((i + 1) + " / " + remedyConfigs.length); //$NON-NLS-1$
+			CompletionService<Remedy> completion = new ExecutorCompletionService<Remedy>(executor);
+			for (int i = 0; i < order.length; i++) {
+				final int index = order[i].intValue();
+				monitors[index] = new NullProgressMonitor();
+				final ProvisioningContext copy = new PreloadedProvisioningContext(session.getProvisioningAgent(), provisioningContext, metadata);
+				copy.setProperty(EXPLANATION_ENABLEMENT, Boolean.FALSE.toString());
+				Future<Remedy> future = completion.submit(new Callable<Remedy>() {
+					public Remedy call() {
+						return computeRemedy(remedyConfigs[index], copy, monitors[index]);
+					}
+				});
+				indexes.put(future, new Integer(index));
+				futures[index] = future;
+			}
+			int pending = order.length;
+			while (pending > 0) {
 				if (sub.isCanceled())
 					return Status.CANCEL_STATUS;
-				Remedy remedy = computeRemedy(remedyConfigs[i], sub.newChild(1, SubMonitor.SUPPRESS_ALL_LABELS));
-				if (remedy != null) {
-					tmpRemedies.add(remedy);
+				Future<Remedy> future;
+				try {
+					future = completion.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return Status.CANCEL_STATUS;
 				}
+				if (future == null)
+					continue;
+				pending--;
+				int index = indexes.get(future).intValue();
+				sub.subTask((order.length - pending) + " / " + remedyConfigs.length); //$NON-NLS-1$
+				sub.worked(1);
+				if (future.isCancelled() || monitors[index].isCanceled())
+					continue;
+				results[index] = get(future);
+				done[index] = true;
+				if (!bestOnly)
+					continue;
+				// stop computing the remedies that can no longer be the best ones
+				boolean needed = false;
+				for (int i = 0; i < remedyConfigs.length; i++) {
+					if (done[i] || monitors[i].isCanceled())
+						continue;
+					if (isNeeded(i, results, done)) {
+						needed = true;
+					} else {
+						monitors[i].setCanceled(true);
+						futures[i].cancel(false);
+					}
+				}
+				if (!needed)
+					break;
 			}
+			return Status.OK_STATUS;
 		} finally {
-			sub.done();
+			for (int i = 0; i < monitors.length; i++) {
+				if (monitors[i] != null)
+					monitors[i].setCanceled(true);
+			}
+			executor.shutdown();
+		}
+	}
+
+	private static Remedy get(Future<Remedy> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause.getMessage());
 		}
-		remedies = tmpRemedies;
-		return getResolutionResult();
+	}
+
+	/*
+	 * Returns whether the remedy of the configuration at the given index could still be
+	 * one of the best remedies, that is whether no remedy ranked higher in the same
+	 * category has been found.
+	 */
+	private boolean isNeeded(int index, Remedy[] results, boolean[] done) {
+		RemedyConfig config = remedyConfigs[index];
+		int category = getCategory(config);
+		if (category == 0)
+			return false;
+		for (int i = 0; i < remedyConfigs.length; i++) {
+			if (done[i] && results[i] != null && getCategory(remedyConfigs[i]) == category && getRank(remedyConfigs[i]) > getRank(config))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Returns 1 for the configurations that only change the request, 2 for the ones that
+	 * only change what is installed, and 0 for the others, whose remedies are never the
+	 * best ones.
+	 */
+	static int getCategory(RemedyConfig config) {
+		int installationWeight = getInstallationRelaxedWeight(config);
+		int beingInstalledWeight = getBeingInstalledRelaxedWeight(config);
+		if (beingInstalledWeight > 0 && installationWeight == 0)
+			return 1;
+		if (installationWeight > 0 && beingInstalledWeight == 0)
+			return 2;
+		return 0;
+	}
+
+	static int getRank(RemedyConfig config) {
+		return getCategory(config) == 0 ? 0 : getInstallationRelaxedWeight(config) + getBeingInstalledRelaxedWeight(config);
+	}
+
+	private int getThreads() {
+		String value = getProperty(PROP_THREADS);
+		if (value == null)
+			return 1;
+		try {
+			return Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	private String getProperty(String key) {
+		String value = getProvisioningContext().getProperty(key);
+		if (value == null && Activator.getContext() != null)
+			value = Activator.getContext().getProperty(key);
+		return value;
 	}
 
 	private void determineBestSolutions() {
@@ -139,7 +346,7 @@ public class RemediationOperation extends ProfileChangeOperation {
 		}
 	}
 
-	private Remedy computeRemedy(RemedyConfig configuration, IProgressMonitor monitor) {
+	private Remedy computeRemedy(RemedyConfig configuration, ProvisioningContext provisioningContext, IProgressMonitor monitor) {
 		Remedy remedy = new Remedy(originalRequest);
 		remedy.setConfig(configuration);
 		IPlanner planner = session.getPlanner();
@@ -148,33 +355,37 @@ public class RemediationOperation extends ProfileChangeOperation {
 		av.setAllowInstalledElementChange(configuration.allowInstalledUpdate);
 		av.setAllowInstalledElementRemoval(configuration.allowInstalledRemoval);
 		av.setAllowPartialInstall(configuration.allowPartialInstall);
-		av.setProvisioningContext(getProvisioningContext());
+		av.setProvisioningContext(provisioningContext);
 		remedy.setRequest((ProfileChangeRequest) av.getChangeRequest(originalRequest, ((ProfileChangeRequest) originalRequest).getProfile(), monitor));
 		if (remedy.getRequest() == null)
 			return null;
 
-		if (configuration.allowInstalledUpdate && !configuration.allowInstalledRemoval) {
-			remedy.setInstallationRelaxedWeight(HIGH_WEIGHT);
-		} else if (!configuration.allowInstalledUpdate && configuration.allowInstalledRemoval) {
-			remedy.setInstallationRelaxedWeight(MEDIUM_WEIGHT);
-		} else if (configuration.allowInstalledUpdate && configuration.allowInstalledRemoval) {
-			remedy.setInstallationRelaxedWeight(LOW_WEIGHT);
-		} else
-			remedy.setInstallationRelaxedWeight(ZERO_WEIGHT);
-
-		if (configuration.allowDifferentVersion && !configuration.allowPartialInstall) {
-			remedy.setBeingInstalledRelaxedWeight(HIGH_WEIGHT);
-		} else if (!configuration.allowDifferentVersion && configuration.allowPartialInstall) {
-			remedy.setBeingInstalledRelaxedWeight(MEDIUM_WEIGHT);
-		} else if (configuration.allowDifferentVersion && configuration.allowPartialInstall) {
-			remedy.setBeingInstalledRelaxedWeight(LOW_WEIGHT);
-		} else {
-			remedy.setBeingInstalledRelaxedWeight(ZERO_WEIGHT);
-		}
+		remedy.setInstallationRelaxedWeight(getInstallationRelaxedWeight(configuration));
+		remedy.setBeingInstalledRelaxedWeight(getBeingInstalledRelaxedWeight(configuration));
 		computeRemedyDetails(remedy);
 		return remedy;
 	}
 
+	private static int getInstallationRelaxedWeight(RemedyConfig configuration) {
+		if (configuration.allowInstalledUpdate && !configuration.allowInstalledRemoval)
+			return HIGH_WEIGHT;
+		if (!configuration.allowInstalledUpdate && configuration.allowInstalledRemoval)
+			return MEDIUM_WEIGHT;
+		if (configuration.allowInstalledUpdate && configuration.allowInstalledRemoval)
+			return LOW_WEIGHT;
+		return ZERO_WEIGHT;
+	}
+
+	private static int getBeingInstalledRelaxedWeight(RemedyConfig configuration) {
+		if (configuration.allowDifferentVersion && !configuration.allowPartialInstall)
+			return HIGH_WEIGHT;
+		if (!configuration.allowDifferentVersion && configuration.allowPartialInstall)
+			return MEDIUM_WEIGHT;
+		if (configuration.allowDifferentVersion && configuration.allowPartialInstall)
+			return LOW_WEIGHT;
+		return ZERO_WEIGHT;
+	}
+
 	@Override
 	protected String getResolveJobName() {
 		return Messages.RemediationOperation_ResolveJobName;
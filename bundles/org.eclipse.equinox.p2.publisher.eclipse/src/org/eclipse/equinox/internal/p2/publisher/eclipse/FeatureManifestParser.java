@@ -51,8 +51,11 @@ public class FeatureManifestParser extends DefaultHandler {
 		if (!createParser)
 			return;
 		try {
-			parserFactory.setNamespaceAware(true);
-			this.parser = parserFactory.newSAXParser();
+			// the factory is shared, and features may be parsed concurrently when publishing
+			synchronized (parserFactory) {
+				parserFactory.setNamespaceAware(true);
+				this.parser = parserFactory.newSAXParser();
+			}
 		} catch (ParserConfigurationException e) {
 			System.out.println(e);
 		} catch (SAXException e) {
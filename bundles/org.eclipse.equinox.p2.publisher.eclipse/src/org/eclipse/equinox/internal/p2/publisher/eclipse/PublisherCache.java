@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.publisher.eclipse;
+
+import java.io.*;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
+import org.eclipse.osgi.framework.util.Headers;
+import org.eclipse.pde.internal.publishing.Activator;
+
+/**
+ * An on-disk cache of the information the publisher reads from bundle jars: the manifest
+ * headers, the manifest localizations and the download checksums of the jar. Entries are keyed
+ * by the absolute path of the jar and are considered valid as long as the size and modification
+ * time of the file are unchanged, or, if only the modification time changed, as long as the
+ * checksums of the content are unchanged.
+ * <p>
+ * The generated IUs are not cached since they also depend on publisher advice which is not
+ * part of the input file; they are cheaply re-created from the cached manifest data.
+ * </p><p>
+ * This class is thread safe.
+ * </p>
+ */
+@SuppressWarnings("restriction")
+public class PublisherCache {
+	private static final int FORMAT_VERSION = 2;
+
+	private final File cacheFile;
+	private final Map<String, CacheEntry> entries = new HashMap<String, CacheEntry>();
+	private boolean loaded = false;
+	private boolean dirty = false;
+
+	static class CacheEntry {
+		long size;
+		long lastModified;
+		Map<String, String> checksums;
+		Map<String, String> manifest;
+		Map<Locale, Map<String, String>> localizations;
+		boolean hasLocalizations;
+	}
+
+	/**
+	 * Creates a cache persisted in the given file. The file is read lazily.
+	 */
+	public PublisherCache(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Returns a modifiable copy of the cached manifest of the given jar, or <code>null</code>
+	 * if the jar is unknown or has changed since it was cached.
+	 */
+	public Dictionary<String, String> getManifest(File jar) {
+		CacheEntry entry = getValidEntry(jar);
+		synchronized (this) {
+			if (entry == null || entry.manifest == null)
+				return null;
+			Headers<String, String> result = new Headers<String, String>(entry.manifest.size());
+			for (Entry<String, String> header : entry.manifest.entrySet())
+				result.put(header.getKey(), header.getValue());
+			return result;
+		}
+	}
+
+	/**
+	 * Remembers the manifest headers read from the given jar. Any other information cached
+	 * for the jar is discarded.
+	 */
+	public synchronized void putManifest(File jar, Dictionary<String, String> manifest) {
+		if (manifest == null || !jar.isFile())
+			return;
+		CacheEntry entry = new CacheEntry();
+		entry.size = jar.length();
+		entry.lastModified = jar.lastModified();
+		entry.manifest = new LinkedHashMap<String, String>();
+		for (Enumeration<String> keys = manifest.keys(); keys.hasMoreElements();) {
+			String key = keys.nextElement();
+			entry.manifest.put(key, manifest.get(key));
+		}
+		entries.put(jar.getAbsolutePath(), entry);
+		dirty = true;
+	}
+
+	/**
+	 * Returns whether localizations are cached for the given jar.
+	 */
+	public boolean hasLocalizations(File jar) {
+		CacheEntry entry = getValidEntry(jar);
+		synchronized (this) {
+			return entry != null && entry.hasLocalizations;
+		}
+	}
+
+	/**
+	 * Returns the cached manifest localizations for the given jar. The result may be
+	 * <code>null</code> even if {@link #hasLocalizations(File)} returned <code>true</code>,
+	 * when the jar has no localizations.
+	 */
+	public Map<Locale, Map<String, String>> getLocalizations(File jar) {
+		CacheEntry entry = getValidEntry(jar);
+		synchronized (this) {
+			return entry == null ? null : entry.localizations;
+		}
+	}
+
+	public void putLocalizations(File jar, Map<Locale, Map<String, String>> localizations) {
+		CacheEntry entry = getValidEntry(jar);
+		synchronized (this) {
+			if (entry == null)
+				return;
+			entry.localizations = localizations;
+			entry.hasLocalizations = true;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns a copy of the cached download checksums of the given jar keyed by algorithm,
+	 * or <code>null</code> if none are known.
+	 */
+	public Map<String, String> getChecksums(File jar) {
+		CacheEntry entry = getValidEntry(jar);
+		synchronized (this) {
+			return entry == null || entry.checksums == null ? null : new HashMap<String, String>(entry.checksums);
+		}
+	}
+
+	/**
+	 * Remembers the download checksums of the given jar, keyed by algorithm.
+	 */
+	public void putChecksums(File jar, Map<String, String> checksums) {
+		CacheEntry entry = getValidEntry(jar);
+		synchronized (this) {
+			if (entry == null || checksums == null || checksums.isEmpty() || checksums.equals(entry.checksums))
+				return;
+			entry.checksums = new HashMap<String, String>(checksums);
+			dirty = true;
+		}
+	}
+
+	private CacheEntry getValidEntry(File jar) {
+		String path = jar.getAbsolutePath();
+		long size = jar.length();
+		long lastModified = jar.lastModified();
+		Map<String, String> checksums;
+		synchronized (this) {
+			load();
+			CacheEntry entry = entries.get(path);
+			if (entry == null)
+				return null;
+			if (entry.size == size && entry.lastModified == lastModified)
+				return entry;
+			checksums = entry.size == size ? entry.checksums : null;
+			if (checksums == null || checksums.isEmpty()) {
+				entries.remove(path);
+				dirty = true;
+				return null;
+			}
+		}
+		// the time stamp changes when the file is copied or touched, so check the content,
+		// without holding the lock while the jar is read
+		boolean unchanged = contains(PublisherHelper.computeChecksums(jar), checksums);
+		synchronized (this) {
+			CacheEntry entry = entries.get(path);
+			if (entry == null || entry.checksums != checksums)
+				// the entry was replaced or validated meanwhile
+				return entry != null && entry.size == size && entry.lastModified == lastModified ? entry : null;
+			if (unchanged) {
+				entry.lastModified = lastModified;
+				dirty = true;
+				return entry;
+			}
+			entries.remove(path);
+			dirty = true;
+			return null;
+		}
+	}
+
+	private static boolean contains(Map<String, String> computed, Map<String, String> expected) {
+		if (computed == null)
+			return false;
+		for (Entry<String, String> checksum : expected.entrySet()) {
+			if (!checksum.getValue().equals(computed.get(checksum.getKey())))
+				return false;
+		}
+		return true;
+	}
+
+	private void load() {
+		if (loaded)
+			return;
+		loaded = true;
+		if (cacheFile == null || !cacheFile.isFile())
+			return;
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			if (input.readInt() != FORMAT_VERSION)
+				return;
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = readString(input);
+				CacheEntry entry = new CacheEntry();
+				entry.size = input.readLong();
+				entry.lastModified = input.readLong();
+				entry.checksums = readMap(input);
+				entry.manifest = readMap(input);
+				entry.hasLocalizations = input.readBoolean();
+				if (entry.hasLocalizations) {
+					int locales = input.readInt();
+					if (locales >= 0) {
+						entry.localizations = new HashMap<Locale, Map<String, String>>();
+						for (int j = 0; j < locales; j++) {
+							Locale locale = toLocale(readString(input));
+							entry.localizations.put(locale, readMap(input));
+						}
+					}
+				}
+				entries.put(path, entry);
+			}
+		} catch (IOException e) {
+			entries.clear();
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to read publisher cache " + cacheFile, e)); //$NON-NLS-1$
+		} finally {
+			if (input != null)
+				try {
+					input.close();
+				} catch (IOException e) {
+					// ignore
+				}
+		}
+	}
+
+	/**
+	 * Writes the cache to disk if it was modified. Entries for files that no longer exist
+	 * are discarded.
+	 */
+	public synchronized void save() {
+		if (!dirty || cacheFile == null)
+			return;
+		for (Iterator<String> iter = entries.keySet().iterator(); iter.hasNext();) {
+			if (!new File(iter.next()).isFile())
+				iter.remove();
+		}
+		File parent = cacheFile.getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+			output.writeInt(FORMAT_VERSION);
+			output.writeInt(entries.size());
+			for (Entry<String, CacheEntry> mapEntry : entries.entrySet()) {
+				CacheEntry entry = mapEntry.getValue();
+				writeString(output, mapEntry.getKey());
+				output.writeLong(entry.size);
+				output.writeLong(entry.lastModified);
+				writeMap(output, entry.checksums);
+				writeMap(output, entry.manifest);
+				output.writeBoolean(entry.hasLocalizations);
+				if (entry.hasLocalizations) {
+					if (entry.localizations == null) {
+						output.writeInt(-1);
+					} else {
+						output.writeInt(entry.localizations.size());
+						for (Entry<Locale, Map<String, String>> localization : entry.localizations.entrySet()) {
+							writeString(output, localization.getKey().toString());
+							writeMap(output, localization.getValue());
+						}
+					}
+				}
+			}
+			dirty = false;
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to write publisher cache " + cacheFile, e)); //$NON-NLS-1$
+		} finally {
+			if (output != null)
+				try {
+					output.close();
+				} catch (IOException e) {
+					// ignore
+				}
+		}
+	}
+
+	private static Locale toLocale(String value) {
+		String[] segments = value.split("_", 3); //$NON-NLS-1$
+		if (segments.length == 1)
+			return new Locale(segments[0]);
+		if (segments.length == 2)
+			return new Locale(segments[0], segments[1]);
+		return new Locale(segments[0], segments[1], segments[2]);
+	}
+
+	private static Map<String, String> readMap(DataInputStream input) throws IOException {
+		int size = input.readInt();
+		if (size < 0)
+			return null;
+		Map<String, String> result = new LinkedHashMap<String, String>(size);
+		for (int i = 0; i < size; i++)
+			result.put(readString(input), readString(input));
+		return result;
+	}
+
+	private static void writeMap(DataOutputStream output, Map<String, String> map) throws IOException {
+		if (map == null) {
+			output.writeInt(-1);
+			return;
+		}
+		output.writeInt(map.size());
+		for (Entry<String, String> entry : map.entrySet()) {
+			writeString(output, entry.getKey());
+			writeString(output, entry.getValue());
+		}
+	}
+
+	// manifest headers can exceed the 64k limit of DataOutput.writeUTF
+	private static String readString(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8"); //$NON-NLS-1$
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+}
@@ -14,6 +14,7 @@ package org.eclipse.equinox.p2.publisher.eclipse;
 import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -23,7 +24,9 @@ import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
+import org.eclipse.equinox.internal.p2.publisher.PublisherExecutor;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.GeneratorBundleInfo;
+import org.eclipse.equinox.internal.p2.publisher.eclipse.PublisherCache;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitFragmentDescription;
@@ -113,6 +116,7 @@ public class BundlesAction extends AbstractPublisherAction {
 
 	private File[] locations;
 	private BundleDescription[] bundles;
+	private PublisherCache cache;
 	protected MultiStatus finalStatus;
 
 	public static IArtifactKey createBundleArtifactKey(String bsn, String version) {
@@ -158,7 +162,7 @@ public class BundlesAction extends AbstractPublisherAction {
 		Map<String, String> manifest = (Map<String, String>) bd.getUserObject();
 		Map<Locale, Map<String, String>> manifestLocalizations = null;
 		if (manifest != null && bd.getLocation() != null)
-			manifestLocalizations = getManifestLocalizations(manifest, new File(bd.getLocation()));
+			manifestLocalizations = getManifestLocalizations(manifest, new File(bd.getLocation()), cache);
 		InstallableUnitDescription iu = new MetadataFactory.InstallableUnitDescription();
 		iu.setSingleton(bd.isSingleton());
 		iu.setId(bd.getSymbolicName());
@@ -439,6 +443,16 @@ public class BundlesAction extends AbstractPublisherAction {
 	// Return a map from locale to property set for the manifest localizations
 	// from the given bundle directory and given bundle localization path/name
 	// manifest property value.
+	private static Map<Locale, Map<String, String>> getManifestLocalizations(Map<String, String> manifest, File bundleLocation, PublisherCache cache) {
+		if (cache == null || !bundleLocation.isFile())
+			return getManifestLocalizations(manifest, bundleLocation);
+		if (cache.hasLocalizations(bundleLocation))
+			return cache.getLocalizations(bundleLocation);
+		Map<Locale, Map<String, String>> localizations = getManifestLocalizations(manifest, bundleLocation);
+		cache.putLocalizations(bundleLocation, localizations);
+		return localizations;
+	}
+
 	private static Map<Locale, Map<String, String>> getManifestLocalizations(Map<String, String> manifest, File bundleLocation) {
 		Map<Locale, Map<String, String>> localizations;
 		Locale defaultLocale = null; // = Locale.ENGLISH; // TODO: get this from GeneratorInfo
@@ -509,6 +523,9 @@ public class BundlesAction extends AbstractPublisherAction {
 		return localizations;
 	}
 
+	// the plug-in converter keeps per-conversion state so it must not be used concurrently
+	private static final Object CONVERTER_LOCK = new Object();
+
 	private static PluginConverter acquirePluginConverter() {
 		return (PluginConverter) ServiceHelper.getService(Activator.getContext(), PluginConverter.class.getName());
 	}
@@ -522,7 +539,9 @@ public class BundlesAction extends AbstractPublisherAction {
 				LogHelper.log(new Status(IStatus.ERROR, Activator.ID, message));
 				return null;
 			}
-			return converter.convertManifest(bundleLocation, false, null, true, null);
+			synchronized (CONVERTER_LOCK) {
+				return converter.convertManifest(bundleLocation, false, null, true, null);
+			}
 		} catch (PluginConversionException convertException) {
 			// only log the exception if we had a plugin.xml or fragment.xml and we failed conversion
 			if (bundleLocation.getName().equals(FEATURE_FILENAME_DESCRIPTOR))
@@ -700,6 +719,15 @@ public class BundlesAction extends AbstractPublisherAction {
 		this.bundles = bundles;
 	}
 
+	/**
+	 * Sets the cache used to avoid re-reading the manifests and re-computing the checksums of
+	 * bundle jars which have not changed since they were last published.
+	 * @param cache the cache to use, or <code>null</code> to not use a cache
+	 */
+	public void setCache(PublisherCache cache) {
+		this.cache = cache;
+	}
+
 	@Override
 	public IStatus perform(IPublisherInfo publisherInfo, IPublisherResult results, IProgressMonitor monitor) {
 		if (bundles == null && locations == null)
@@ -715,6 +743,9 @@ public class BundlesAction extends AbstractPublisherAction {
 			bundles = null;
 		} catch (OperationCanceledException e) {
 			return Status.CANCEL_STATUS;
+		} finally {
+			if (cache != null)
+				cache.save();
 		}
 		if (!finalStatus.isOK()) {
 			return finalStatus;
@@ -787,6 +818,11 @@ public class BundlesAction extends AbstractPublisherAction {
 	}
 
 	protected void generateBundleIUs(BundleDescription[] bundleDescriptions, IPublisherInfo info, IPublisherResult result, IProgressMonitor monitor) {
+		int parallelism = PublisherExecutor.getParallelism(info);
+		if (parallelism > 1) {
+			generateBundleIUs(bundleDescriptions, info, result, parallelism, monitor);
+			return;
+		}
 
 		// This assumes that hosts are processed before fragments because for each fragment the host
 		// is queried for the strings that should be translated.
@@ -794,56 +830,137 @@ public class BundlesAction extends AbstractPublisherAction {
 			if (monitor.isCanceled())
 				throw new OperationCanceledException();
 
+			BundlePublication publication = prepareBundlePublication(bundleDescriptions[i], info, result);
+			if (publication != null) {
+				publication.call();
+				addBundlePublication(publication, info, result);
+			}
+		}
+	}
+
+	/*
+	 * Publishes the given bundles using several threads. Only the creation of the bundle IUs
+	 * and artifact descriptors is done concurrently. Looking up existing IUs, gathering advice,
+	 * publishing the bundle artifacts and adding the generated IUs to the result is done on
+	 * the calling thread in the order of the given bundles, so the artifact repository is never
+	 * written to concurrently. Repeated occurrences of the same bundle are published after the
+	 * first one has been added to the result, as they would be in a sequential run.
+	 */
+	private void generateBundleIUs(BundleDescription[] bundleDescriptions, IPublisherInfo info, IPublisherResult result, int parallelism, IProgressMonitor monitor) {
+		List<BundleDescription> ordered = new ArrayList<BundleDescription>(bundleDescriptions.length);
+		Map<BundleDescription, BundlePublication> publications = new LinkedHashMap<BundleDescription, BundlePublication>();
+		Set<String> seen = new HashSet<String>();
+		for (int i = 0; i < bundleDescriptions.length; i++) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
 			BundleDescription bd = bundleDescriptions[i];
-			if (bd != null && bd.getSymbolicName() != null && bd.getVersion() != null) {
-				//First check to see if there is already an IU around for this
-				IInstallableUnit bundleIU = queryForIU(result, bundleDescriptions[i].getSymbolicName(), PublisherHelper.fromOSGiVersion(bd.getVersion()));
-				IArtifactKey key = createBundleArtifactKey(bd.getSymbolicName(), bd.getVersion().toString());
-				if (bundleIU == null) {
-					createAdviceFileAdvice(bundleDescriptions[i], info);
-					// Create the bundle IU according to any shape advice we have
-					bundleIU = doCreateBundleIU(bd, key, info);
-				}
+			if (bd == null || bd.getSymbolicName() == null || bd.getVersion() == null)
+				continue;
+			ordered.add(bd);
+			if (seen.add(bd.getSymbolicName() + '_' + bd.getVersion()))
+				publications.put(bd, prepareBundlePublication(bd, info, result));
+		}
 
-				File location = new File(bd.getLocation());
-				IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(info, key, location);
-				processArtifactPropertiesAdvice(bundleIU, ad, info);
+		PublisherExecutor.invokeAll(new ArrayList<BundlePublication>(publications.values()), parallelism, monitor);
 
-				// Publish according to the shape on disk
-				File bundleLocation = new File(bd.getLocation());
-				if (bundleLocation.isDirectory())
-					publishArtifact(ad, bundleLocation, bundleLocation.listFiles(), info);
-				else
-					publishArtifact(ad, bundleLocation, info);
-
-				IInstallableUnit fragment = null;
-				if (isFragment(bd)) {
-					// TODO: Need a test case for multiple hosts
-					String hostId = bd.getHost().getName();
-					VersionRange hostVersionRange = PublisherHelper.fromOSGiVersionRange(bd.getHost().getVersionRange());
-					IQueryResult<IInstallableUnit> hosts = queryForIUs(result, hostId, hostVersionRange);
-
-					for (Iterator<IInstallableUnit> itor = hosts.iterator(); itor.hasNext();) {
-						IInstallableUnit host = itor.next();
-						String fragmentId = makeHostLocalizationFragmentId(bd.getSymbolicName());
-						fragment = queryForIU(result, fragmentId, PublisherHelper.fromOSGiVersion(bd.getVersion()));
-						if (fragment == null) {
-							String[] externalizedStrings = getExternalizedStrings(host);
-							fragment = createHostLocalizationFragment(bundleIU, bd, hostId, externalizedStrings);
-						}
-					}
+		for (BundleDescription bd : ordered) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			BundlePublication publication = publications.get(bd);
+			if (publication == null) {
+				publication = prepareBundlePublication(bd, info, result);
+				publication.call();
+			}
+			addBundlePublication(publication, info, result);
+		}
+	}
+
+	private BundlePublication prepareBundlePublication(BundleDescription bd, IPublisherInfo info, IPublisherResult result) {
+		if (bd == null || bd.getSymbolicName() == null || bd.getVersion() == null)
+			return null;
+		//First check to see if there is already an IU around for this
+		IInstallableUnit bundleIU = queryForIU(result, bd.getSymbolicName(), PublisherHelper.fromOSGiVersion(bd.getVersion()));
+		if (bundleIU == null)
+			createAdviceFileAdvice(bd, info);
+		return new BundlePublication(bd, bundleIU, info);
+	}
 
+	private void addBundlePublication(BundlePublication publication, IPublisherInfo info, IPublisherResult result) {
+		publication.publishArtifact();
+		BundleDescription bd = publication.bundle;
+		IInstallableUnit bundleIU = publication.bundleIU;
+		IInstallableUnit fragment = null;
+		if (isFragment(bd)) {
+			// TODO: Need a test case for multiple hosts
+			String hostId = bd.getHost().getName();
+			VersionRange hostVersionRange = PublisherHelper.fromOSGiVersionRange(bd.getHost().getVersionRange());
+			IQueryResult<IInstallableUnit> hosts = queryForIUs(result, hostId, hostVersionRange);
+
+			for (Iterator<IInstallableUnit> itor = hosts.iterator(); itor.hasNext();) {
+				IInstallableUnit host = itor.next();
+				String fragmentId = makeHostLocalizationFragmentId(bd.getSymbolicName());
+				fragment = queryForIU(result, fragmentId, PublisherHelper.fromOSGiVersion(bd.getVersion()));
+				if (fragment == null) {
+					String[] externalizedStrings = getExternalizedStrings(host);
+					fragment = createHostLocalizationFragment(bundleIU, bd, hostId, externalizedStrings);
 				}
+			}
+
+		}
 
-				result.addIU(bundleIU, IPublisherResult.ROOT);
-				if (fragment != null)
-					result.addIU(fragment, IPublisherResult.NON_ROOT);
+		result.addIU(bundleIU, IPublisherResult.ROOT);
+		if (fragment != null)
+			result.addIU(fragment, IPublisherResult.NON_ROOT);
 
-				InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(bundleIU, info);
-				for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
-					result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
-				}
+		InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(bundleIU, info);
+		for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
+			result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
+		}
+	}
+
+	/*
+	 * The part of publishing a single bundle that touches neither the publisher result nor
+	 * the artifact repository and therefore may run concurrently with the publication of
+	 * other bundles. The artifact is published by publishArtifact().
+	 */
+	private class BundlePublication implements Callable<IInstallableUnit> {
+		final BundleDescription bundle;
+		final IPublisherInfo publisherInfo;
+		IInstallableUnit bundleIU;
+		IArtifactDescriptor descriptor;
+
+		BundlePublication(BundleDescription bundle, IInstallableUnit existingIU, IPublisherInfo publisherInfo) {
+			this.bundle = bundle;
+			this.bundleIU = existingIU;
+			this.publisherInfo = publisherInfo;
+		}
+
+		public IInstallableUnit call() {
+			IArtifactKey key = createBundleArtifactKey(bundle.getSymbolicName(), bundle.getVersion().toString());
+			// Create the bundle IU according to any shape advice we have
+			if (bundleIU == null)
+				bundleIU = doCreateBundleIU(bundle, key, publisherInfo);
+
+			File location = new File(bundle.getLocation());
+			IArtifactDescriptor ad;
+			if (cache != null && location.isFile()) {
+				ad = PublisherHelper.createArtifactDescriptor(publisherInfo, key, location, cache.getChecksums(location));
+				cache.putChecksums(location, PublisherHelper.getDownloadChecksums(ad));
+			} else {
+				ad = PublisherHelper.createArtifactDescriptor(publisherInfo, key, location);
 			}
+			processArtifactPropertiesAdvice(bundleIU, ad, publisherInfo);
+			descriptor = ad;
+			return bundleIU;
+		}
+
+		void publishArtifact() {
+			// Publish according to the shape on disk
+			File location = new File(bundle.getLocation());
+			if (location.isDirectory())
+				BundlesAction.this.publishArtifact(descriptor, location, location.listFiles(), publisherInfo);
+			else
+				BundlesAction.this.publishArtifact(descriptor, location, publisherInfo);
 		}
 	}
 
@@ -884,23 +1001,57 @@ public class BundlesAction extends AbstractPublisherAction {
 	protected BundleDescription[] getBundleDescriptions(File[] bundleLocations, IProgressMonitor monitor) {
 		if (bundleLocations == null)
 			return new BundleDescription[0];
+		List<BundleLoad> loads = new ArrayList<BundleLoad>(bundleLocations.length);
+		for (int i = 0; i < bundleLocations.length; i++)
+			loads.add(new BundleLoad(bundleLocations[i], cache));
+		PublisherExecutor.invokeAll(loads, PublisherExecutor.getParallelism(info), monitor);
+
 		List<BundleDescription> result = new ArrayList<BundleDescription>(bundleLocations.length);
-		for (int i = 0; i < bundleLocations.length; i++) {
-			if (monitor.isCanceled())
-				throw new OperationCanceledException();
-			BundleDescription description = null;
+		for (BundleLoad load : loads) {
+			if (load.error != null)
+				addPublishingErrorToFinalStatus(load.error, load.location);
+			if (load.description != null)
+				result.add(load.description);
+		}
+		return result.toArray(new BundleDescription[0]);
+	}
+
+	/*
+	 * Reads the manifest of a single bundle. Errors are remembered rather than added to the
+	 * final status directly so that they are reported in a deterministic order.
+	 */
+	private static class BundleLoad implements Callable<BundleDescription> {
+		final File location;
+		final PublisherCache cache;
+		BundleDescription description;
+		Exception error;
+
+		BundleLoad(File location, PublisherCache cache) {
+			this.location = location;
+			this.cache = cache;
+		}
+
+		public BundleDescription call() {
 			try {
-				description = createBundleDescription(bundleLocations[i]);
+				if (cache == null || !location.isFile()) {
+					description = createBundleDescription(location);
+					return description;
+				}
+				Dictionary<String, String> manifest = cache.getManifest(location);
+				if (manifest == null) {
+					manifest = loadManifest(location);
+					if (manifest == null)
+						return null;
+					cache.putManifest(location, manifest);
+				}
+				description = createBundleDescription(manifest, location);
 			} catch (IOException e) {
-				addPublishingErrorToFinalStatus(e, bundleLocations[i]);
+				error = e;
 			} catch (BundleException e) {
-				addPublishingErrorToFinalStatus(e, bundleLocations[i]);
-			}
-			if (description != null) {
-				result.add(description);
+				error = e;
 			}
+			return description;
 		}
-		return result.toArray(new BundleDescription[0]);
 	}
 
 	private void addPublishingErrorToFinalStatus(Throwable t, File bundleLocation) {
@@ -15,6 +15,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils.IPathComputer;
@@ -22,6 +23,7 @@ import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.publisher.FileSetDescriptor;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
+import org.eclipse.equinox.internal.p2.publisher.PublisherExecutor;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.FeatureParser;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
@@ -399,38 +401,103 @@ public class FeaturesAction extends AbstractPublisherAction {
 	}
 
 	protected void generateFeatureIUs(Feature[] featureList, IPublisherResult result) {
+		int parallelism = PublisherExecutor.getParallelism(info);
+		if (parallelism > 1) {
+			generateFeatureIUs(featureList, result, parallelism);
+			return;
+		}
+
 		// Build Feature IUs, and add them to any corresponding categories
 		for (int i = 0; i < featureList.length; i++) {
-			Feature feature = featureList[i];
-			//first gather any advice that might help us
-			createBundleShapeAdvice(feature, info);
-			createAdviceFileAdvice(feature, info);
+			FeaturePublication publication = prepareFeaturePublication(featureList[i], result);
+			publication.call();
+			addFeaturePublication(publication, result);
+		}
+	}
 
-			ArrayList<IInstallableUnit> childIUs = new ArrayList<IInstallableUnit>();
+	/*
+	 * Publishes the given features using several threads. Only the creation of the feature
+	 * jar IUs is done concurrently. Gathering advice, publishing the feature artifacts and
+	 * adding the generated IUs to the result is done on the calling thread in the order of
+	 * the given features, so the artifact repository is never written to concurrently and
+	 * receives the artifacts in the same order as in a sequential run. Repeated occurrences
+	 * of the same feature are published after the first one has been added to the result,
+	 * as they would be in a sequential run.
+	 */
+	private void generateFeatureIUs(Feature[] featureList, IPublisherResult result, int parallelism) {
+		Map<Feature, FeaturePublication> publications = new LinkedHashMap<Feature, FeaturePublication>();
+		Set<String> seen = new HashSet<String>();
+		for (int i = 0; i < featureList.length; i++) {
+			Feature feature = featureList[i];
+			if (seen.add(feature.getId() + '_' + feature.getVersion()))
+				publications.put(feature, prepareFeaturePublication(feature, result));
+		}
 
-			IInstallableUnit featureJarIU = queryForIU(result, getTransformedId(feature.getId(), false, false), Version.parseVersion(feature.getVersion()));
-			if (featureJarIU == null)
-				featureJarIU = generateFeatureJarIU(feature, info);
+		PublisherExecutor.invokeAll(new ArrayList<FeaturePublication>(publications.values()), parallelism, new NullProgressMonitor());
 
-			if (featureJarIU != null) {
-				publishFeatureArtifacts(feature, featureJarIU, info);
-				result.addIU(featureJarIU, IPublisherResult.NON_ROOT);
-				childIUs.add(featureJarIU);
+		for (int i = 0; i < featureList.length; i++) {
+			FeaturePublication publication = publications.get(featureList[i]);
+			if (publication == null) {
+				publication = prepareFeaturePublication(featureList[i], result);
+				publication.call();
 			}
+			addFeaturePublication(publication, result);
+		}
+	}
 
-			IInstallableUnit groupIU = queryForIU(result, getGroupId(feature.getId()), Version.parseVersion(feature.getVersion()));
-			if (groupIU == null) {
-				childIUs.addAll(generateRootFileIUs(feature, result, info));
-				groupIU = createGroupIU(feature, childIUs, info);
-			}
-			if (groupIU != null) {
-				result.addIU(groupIU, IPublisherResult.ROOT);
-				InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(groupIU, info);
-				for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
-					result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
-				}
+	private FeaturePublication prepareFeaturePublication(Feature feature, IPublisherResult result) {
+		//first gather any advice that might help us
+		createBundleShapeAdvice(feature, info);
+		createAdviceFileAdvice(feature, info);
+
+		IInstallableUnit featureJarIU = queryForIU(result, getTransformedId(feature.getId(), false, false), Version.parseVersion(feature.getVersion()));
+		return new FeaturePublication(feature, featureJarIU);
+	}
+
+	private void addFeaturePublication(FeaturePublication publication, IPublisherResult result) {
+		Feature feature = publication.feature;
+		IInstallableUnit featureJarIU = publication.featureJarIU;
+		ArrayList<IInstallableUnit> childIUs = new ArrayList<IInstallableUnit>();
+
+		if (featureJarIU != null) {
+			publishFeatureArtifacts(feature, featureJarIU, info);
+			result.addIU(featureJarIU, IPublisherResult.NON_ROOT);
+			childIUs.add(featureJarIU);
+		}
+
+		IInstallableUnit groupIU = queryForIU(result, getGroupId(feature.getId()), Version.parseVersion(feature.getVersion()));
+		if (groupIU == null) {
+			childIUs.addAll(generateRootFileIUs(feature, result, info));
+			groupIU = createGroupIU(feature, childIUs, info);
+		}
+		if (groupIU != null) {
+			result.addIU(groupIU, IPublisherResult.ROOT);
+			InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(groupIU, info);
+			for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
+				result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
 			}
-			generateSiteReferences(feature, result, info);
+		}
+		generateSiteReferences(feature, result, info);
+	}
+
+	/*
+	 * The part of publishing a single feature that touches neither the publisher result nor
+	 * the artifact repository and therefore may run concurrently with the publication of
+	 * other features.
+	 */
+	private class FeaturePublication implements Callable<IInstallableUnit> {
+		final Feature feature;
+		IInstallableUnit featureJarIU;
+
+		FeaturePublication(Feature feature, IInstallableUnit existingIU) {
+			this.feature = feature;
+			this.featureJarIU = existingIU;
+		}
+
+		public IInstallableUnit call() {
+			if (featureJarIU == null)
+				featureJarIU = generateFeatureJarIU(feature, info);
+			return featureJarIU;
 		}
 	}
 
@@ -513,13 +580,24 @@ public class FeaturesAction extends AbstractPublisherAction {
 	}
 
 	protected Feature[] getFeatures(File[] featureLocations) {
-		ArrayList<Feature> result = new ArrayList<Feature>(featureLocations.length);
+		List<Callable<Feature>> parsers = new ArrayList<Callable<Feature>>(featureLocations.length);
 		for (int i = 0; i < featureLocations.length; i++) {
-			Feature feature = new FeatureParser().parse(featureLocations[i]);
-			if (feature != null) {
-				feature.setLocation(featureLocations[i].getAbsolutePath());
+			final File location = featureLocations[i];
+			parsers.add(new Callable<Feature>() {
+				public Feature call() {
+					Feature feature = new FeatureParser().parse(location);
+					if (feature != null)
+						feature.setLocation(location.getAbsolutePath());
+					return feature;
+				}
+			});
+		}
+		List<Feature> parsed = PublisherExecutor.invokeAll(parsers, PublisherExecutor.getParallelism(info), new NullProgressMonitor());
+
+		ArrayList<Feature> result = new ArrayList<Feature>(featureLocations.length);
+		for (Feature feature : parsed) {
+			if (feature != null)
 				result.add(feature);
-			}
 		}
 		return result.toArray(new Feature[result.size()]);
 	}
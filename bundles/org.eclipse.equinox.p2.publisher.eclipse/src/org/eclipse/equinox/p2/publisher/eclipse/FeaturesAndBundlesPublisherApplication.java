@@ -12,6 +12,7 @@ package org.eclipse.equinox.p2.publisher.eclipse;
 import java.io.File;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import org.eclipse.equinox.internal.p2.publisher.eclipse.PublisherCache;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.publisher.*;
 import org.eclipse.equinox.p2.publisher.actions.RootIUAction;
@@ -23,6 +24,9 @@ import org.eclipse.equinox.p2.publisher.actions.RootIUResultFilterAdvice;
  * If -source <localdir> parameter is given, it specifies the directory under which to find the features 
  * and bundles (in the standard "features" and "plugins" sub-directories).
  * </p><p>
+ * The optional -cache <file> argument names a file in which information read from bundle jars is
+ * kept between runs, so that unchanged bundles do not have to be read and hashed again.
+ * </p><p>
  * Optionally, the -features <csv of file locations> and -bundles <csv of file locations> arguments can 
  * be specified.  If given, these override the defaults derived from a supplied -source parameter.
  * </p>
@@ -34,6 +38,7 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 
 	protected String rootIU = null;
 	protected String rootVersion = null;
+	protected File cache = null;
 
 	public FeaturesAndBundlesPublisherApplication() {
 		// nothing to do
@@ -53,6 +58,9 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 
 		if (arg.equalsIgnoreCase("-version")) //$NON-NLS-1$
 			rootVersion = parameter;
+
+		if (arg.equalsIgnoreCase("-cache")) //$NON-NLS-1$
+			cache = new File(parameter);
 	}
 
 	private File[] createFiles(String parameter) {
@@ -70,7 +78,10 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 		result.add(new FeaturesAction(features));
 		if (bundles == null)
 			bundles = new File[] {new File(source, "plugins")}; //$NON-NLS-1$
-		result.add(new BundlesAction(bundles));
+		BundlesAction bundlesAction = new BundlesAction(bundles);
+		if (cache != null)
+			bundlesAction.setCache(new PublisherCache(cache));
+		result.add(bundlesAction);
 
 		if (rootIU != null) {
 			result.add(new RootIUAction(rootIU, Version.parseVersion(rootVersion), rootIU));
@@ -88,6 +88,7 @@ public abstract class AbstractPublishTask extends Task {
 	protected boolean reusePackedFiles = false;
 	protected boolean append = true;
 	protected boolean publish = true;
+	protected boolean parallel = false;
 	protected String source = null;
 	protected URI metadataLocation;
 	protected String metadataRepoName;
@@ -154,6 +155,8 @@ public abstract class AbstractPublishTask extends Task {
 
 		if (publish)
 			provider.setArtifactOptions(provider.getArtifactOptions() | IPublisherInfo.A_PUBLISH);
+		if (parallel)
+			provider.setArtifactOptions(provider.getArtifactOptions() | IPublisherInfo.A_PARALLEL);
 		return provider;
 	}
 
@@ -173,6 +176,10 @@ public abstract class AbstractPublishTask extends Task {
 		publish = Boolean.valueOf(value).booleanValue();
 	}
 
+	public void setParallel(String value) {
+		parallel = Boolean.valueOf(value).booleanValue();
+	}
+
 	public void setArtifactRepository(String location) {
 		try {
 			artifactLocation = URIUtil.fromString(location);
@@ -15,6 +15,7 @@ import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.FileSet;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.publisher.eclipse.PublisherCache;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.publisher.IPublisherAction;
 import org.eclipse.equinox.p2.publisher.Publisher;
@@ -24,6 +25,7 @@ import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAction;
 public class FeaturesAndBundlesPublisherTask extends AbstractPublishTask {
 	private ArrayList<Object> features = new ArrayList<Object>();
 	private ArrayList<Object> bundles = new ArrayList<Object>();
+	private File cache = null;
 
 	public void execute() throws BuildException {
 		try {
@@ -38,8 +40,12 @@ public class FeaturesAndBundlesPublisherTask extends AbstractPublishTask {
 		ArrayList<IPublisherAction> actions = new ArrayList<IPublisherAction>();
 		if (f.length > 0)
 			actions.add(new FeaturesAction(f));
-		if (b.length > 0)
-			actions.add(new BundlesAction(b));
+		if (b.length > 0) {
+			BundlesAction bundlesAction = new BundlesAction(b);
+			if (cache != null)
+				bundlesAction.setCache(new PublisherCache(cache));
+			actions.add(bundlesAction);
+		}
 
 		if (actions.size() > 0)
 			new Publisher(getInfo()).publish(actions.toArray(new IPublisherAction[actions.size()]), new NullProgressMonitor());
@@ -82,4 +88,8 @@ public class FeaturesAndBundlesPublisherTask extends AbstractPublishTask {
 		features.add(new File(source, "features")); //$NON-NLS-1$
 		bundles.add(new File(source, "plugins")); //$NON-NLS-1$
 	}
+
+	public void setCache(String cache) {
+		this.cache = new File(cache);
+	}
 }
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.publisher;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.p2.publisher.IPublisherInfo;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Runs independent units of publishing work, either inline or on a bounded pool of
+ * worker threads when the publisher info enables {@link IPublisherInfo#A_PARALLEL}.
+ * Results are always returned in the order in which the tasks were given so that callers
+ * can aggregate them into an {@link org.eclipse.equinox.p2.publisher.IPublisherResult}
+ * deterministically from a single thread.
+ */
+public class PublisherExecutor {
+	/**
+	 * Framework or system property holding the maximum number of publishing threads.
+	 */
+	public static final String PROP_MAX_THREADS = "eclipse.p2.publisher.threads"; //$NON-NLS-1$
+
+	private static final long POLL_INTERVAL = 500;
+
+	private PublisherExecutor() {
+		// static helpers only
+	}
+
+	/**
+	 * Returns the number of threads the given publisher info allows publishing actions to use.
+	 * A value of 1 means that work must be done sequentially on the calling thread.
+	 */
+	public static int getParallelism(IPublisherInfo info) {
+		if (info == null || (info.getArtifactOptions() & IPublisherInfo.A_PARALLEL) == 0)
+			return 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String value = null;
+		BundleContext context = Activator.getContext();
+		if (context != null)
+			value = context.getProperty(PROP_MAX_THREADS);
+		if (value == null)
+			value = System.getProperty(PROP_MAX_THREADS);
+		if (value != null) {
+			try {
+				threads = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				// use the number of processors
+			}
+		}
+		return Math.max(1, threads);
+	}
+
+	/**
+	 * Executes the given tasks using at most <code>parallelism</code> threads and returns their
+	 * results in task order. Runtime exceptions thrown by a task are rethrown on the calling thread.
+	 * @throws OperationCanceledException if the monitor is canceled before all tasks completed
+	 */
+	public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int parallelism, IProgressMonitor monitor) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (parallelism <= 1 || tasks.size() <= 1) {
+			for (Callable<T> task : tasks) {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				results.add(call(task));
+			}
+			return results;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), new PublisherThreadFactory());
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+			for (Callable<T> task : tasks)
+				futures.add(executor.submit(task));
+			for (Future<T> future : futures)
+				results.add(waitFor(future, monitor));
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	private static <T> T waitFor(Future<T> future, IProgressMonitor monitor) {
+		while (true) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			try {
+				return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// check for cancelation and keep waiting
+			} catch (InterruptedException e) {
+				throw new OperationCanceledException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause == null ? null : cause.getMessage(), cause);
+			}
+		}
+	}
+
+	private static class PublisherThreadFactory implements ThreadFactory {
+		private int count = 0;
+
+		public synchronized Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "p2 publisher worker " + (++count)); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -21,6 +21,7 @@ import org.eclipse.equinox.app.IApplication;
 import org.eclipse.equinox.app.IApplicationContext;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
+import org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository;
 import org.eclipse.equinox.internal.p2.publisher.Activator;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
 import org.eclipse.equinox.p2.core.*;
@@ -29,6 +30,7 @@ import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.ServiceReference;
 
@@ -55,6 +57,8 @@ public abstract class AbstractPublisherApplication implements IApplication {
 	protected URI[] contextArtifactRepositories;
 	//whether repository xml files should be compressed
 	protected boolean compress = false;
+	//whether an index of the metadata repository should be saved with it
+	protected boolean index = false;
 	protected boolean inplace = false;
 	protected boolean append = false;
 	protected boolean reusePackedFiles = false;
@@ -112,7 +116,10 @@ public abstract class AbstractPublisherApplication implements IApplication {
 			throw new ProvisionException(createConfigurationEror(Messages.exception_noArtifactRepo));
 		if (metadataLocation == null)
 			throw new ProvisionException(createConfigurationEror(Messages.exception_noMetadataRepo));
-		publisherInfo.setMetadataRepository(Publisher.createMetadataRepository(agent, metadataLocation, metadataRepoName, append, compress));
+		IMetadataRepository metadataRepository = Publisher.createMetadataRepository(agent, metadataLocation, metadataRepoName, append, compress);
+		if (index)
+			metadataRepository.setProperty(LocalMetadataRepository.PROP_INDEX, "true"); //$NON-NLS-1$
+		publisherInfo.setMetadataRepository(metadataRepository);
 
 		if (contextMetadataRepositories != null && contextMetadataRepositories.length > 0) {
 			CompositeMetadataRepository contextMetadata = CompositeMetadataRepository.createMemoryComposite(agent);
@@ -218,12 +225,18 @@ public abstract class AbstractPublisherApplication implements IApplication {
 		if (arg.equalsIgnoreCase("-overwriteArtifacts")) //$NON-NLS-1$ 
 			publisherInfo.setArtifactOptions(publisherInfo.getArtifactOptions() | IPublisherInfo.A_OVERWRITE);
 
+		if (arg.equalsIgnoreCase("-parallel")) //$NON-NLS-1$
+			publisherInfo.setArtifactOptions(publisherInfo.getArtifactOptions() | IPublisherInfo.A_PARALLEL);
+
 		if (arg.equalsIgnoreCase("-append")) //$NON-NLS-1$
 			append = true;
 
 		if (arg.equalsIgnoreCase("-compress")) //$NON-NLS-1$
 			compress = true;
 
+		if (arg.equalsIgnoreCase("-index")) //$NON-NLS-1$
+			index = true;
+
 		if (arg.equalsIgnoreCase("-reusePack200Files")) //$NON-NLS-1$
 			reusePackedFiles = true;
 
@@ -347,6 +360,10 @@ public abstract class AbstractPublisherApplication implements IApplication {
 		compress = value;
 	}
 
+	public void setIndex(boolean value) {
+		index = value;
+	}
+
 	public void setContextRepositories(URI[] metadata, URI[] artifacts) {
 		this.contextMetadataRepositories = metadata;
 		this.contextArtifactRepositories = artifacts;
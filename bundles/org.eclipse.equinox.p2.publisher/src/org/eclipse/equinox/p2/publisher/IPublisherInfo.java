@@ -41,6 +41,13 @@ public interface IPublisherInfo {
 	 */
 	public static final int A_NO_MD5 = 8;
 
+	/**
+	 * A bitwise flag indicating that actions which support it may process their
+	 * inputs (e.g., bundles and features) concurrently. The published results are
+	 * the same as when publishing sequentially.
+	 */
+	public static final int A_PARALLEL = 16;
+
 	/**
 	 * Returns the artifact repository into which any publishable artifacts are published
 	 * or <code>null</code> if none.
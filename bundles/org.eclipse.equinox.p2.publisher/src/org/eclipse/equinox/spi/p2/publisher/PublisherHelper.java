@@ -13,10 +13,9 @@
  *******************************************************************************/
 package org.eclipse.equinox.spi.p2.publisher;
 
-import java.io.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.File;
 import java.util.*;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumHelper;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.BasicVersion;
 import org.eclipse.equinox.p2.metadata.*;
@@ -99,7 +98,26 @@ public class PublisherHelper {
 		return createArtifactDescriptor(info, info.getArtifactRepository(), key, pathOnDisk);
 	}
 
+	/**
+	 * Creates an artifact descriptor for the given key and path, using the given download
+	 * checksums instead of computing them from the file on disk.
+	 * @param info the publisher info
+	 * @param key the key of the artifact to publish
+	 * @param pathOnDisk the path of the artifact on disk
+	 * @param checksums the known checksums of the file at <code>pathOnDisk</code> keyed by
+	 * algorithm, as returned by {@link #getDownloadChecksums(IArtifactDescriptor)}, or
+	 * <code>null</code> if the checksums should be computed
+	 * @return a new artifact descriptor
+	 */
+	public static IArtifactDescriptor createArtifactDescriptor(IPublisherInfo info, IArtifactKey key, File pathOnDisk, Map<String, String> checksums) {
+		return createArtifactDescriptor(info, info.getArtifactRepository(), key, pathOnDisk, checksums);
+	}
+
 	private static IArtifactDescriptor createArtifactDescriptor(IPublisherInfo info, IArtifactRepository artifactRepo, IArtifactKey key, File pathOnDisk) {
+		return createArtifactDescriptor(info, artifactRepo, key, pathOnDisk, null);
+	}
+
+	private static IArtifactDescriptor createArtifactDescriptor(IPublisherInfo info, IArtifactRepository artifactRepo, IArtifactKey key, File pathOnDisk, Map<String, String> knownChecksums) {
 		IArtifactDescriptor result = artifactRepo != null ? artifactRepo.createArtifactDescriptor(key) : new ArtifactDescriptor(key);
 		if (result instanceof ArtifactDescriptor) {
 			ArtifactDescriptor descriptor = (ArtifactDescriptor) result;
@@ -108,52 +126,36 @@ public class PublisherHelper {
 				descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, Long.toString(pathOnDisk.length()));
 			}
 			if (info == null || (info.getArtifactOptions() & IPublisherInfo.A_NO_MD5) == 0) {
-				String md5 = computeMD5(pathOnDisk);
-				if (md5 != null)
-					descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_MD5, md5);
+				// compute all checksums in a single pass over the file, unless they are known
+				Map<String, String> checksums = knownChecksums != null ? knownChecksums : computeChecksums(pathOnDisk);
+				ChecksumHelper.setChecksums(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM, checksums);
 			}
 		}
 		return result;
 	}
 
-	private static String computeMD5(File file) {
-		if (file == null || file.isDirectory() || !file.exists())
-			return null;
-		MessageDigest md5Checker;
-		try {
-			md5Checker = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
-		} catch (NoSuchAlgorithmException e) {
-			return null;
-		}
-		InputStream fis = null;
-		try {
-			fis = new BufferedInputStream(new FileInputStream(file));
-			int read = -1;
-			final int bufferSize = 4 * 1024;
-			byte[] buffer = new byte[bufferSize];
-			while ((read = fis.read(buffer, 0, bufferSize)) != -1) {
-				md5Checker.update(buffer, 0, read);
-			}
-			byte[] digest = md5Checker.digest();
-			StringBuffer buf = new StringBuffer();
-			for (int i = 0; i < digest.length; i++) {
-				if ((digest[i] & 0xFF) < 0x10)
-					buf.append('0');
-				buf.append(Integer.toHexString(digest[i] & 0xFF));
-			}
-			return buf.toString();
-		} catch (FileNotFoundException e) {
-			return null;
-		} catch (IOException e) {
-			return null;
-		} finally {
-			if (fis != null)
-				try {
-					fis.close();
-				} catch (IOException e) {
-					// ignore
-				}
-		}
+	/**
+	 * Returns the download checksums recorded in the given descriptor, keyed by algorithm.
+	 */
+	public static Map<String, String> getDownloadChecksums(IArtifactDescriptor descriptor) {
+		return ChecksumHelper.getChecksums(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM);
+	}
+
+	/**
+	 * Returns all checksums of the given file keyed by algorithm, or <code>null</code> if
+	 * the file is a directory, does not exist or cannot be read.
+	 */
+	public static Map<String, String> computeChecksums(File file) {
+		return ChecksumHelper.computeChecksums(file);
+	}
+
+	/**
+	 * Returns the MD5 hash of the given file as a hex string, or <code>null</code> if
+	 * the file is a directory, does not exist or cannot be read.
+	 */
+	public static String computeMD5(File file) {
+		Map<String, String> checksums = ChecksumHelper.computeChecksums(file, new String[] {ChecksumHelper.MD5});
+		return checksums == null ? null : checksums.get(ChecksumHelper.MD5);
 	}
 
 	public static IProvidedCapability makeTranslationCapability(String hostId, Locale locale) {
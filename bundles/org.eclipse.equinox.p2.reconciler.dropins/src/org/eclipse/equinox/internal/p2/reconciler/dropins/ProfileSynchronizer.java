@@ -45,6 +45,7 @@ import org.osgi.framework.ServiceReference;
 public class ProfileSynchronizer {
 	private static final String RECONCILER_APPLICATION_ID = "org.eclipse.equinox.p2.reconciler.application"; //$NON-NLS-1$
 	private static final String TIMESTAMPS_FILE_PREFIX = "timestamps"; //$NON-NLS-1$
+	private static final String FINGERPRINTS_FILE_PREFIX = "fingerprints"; //$NON-NLS-1$
 	private static final String PROFILE_TIMESTAMP = "PROFILE"; //$NON-NLS-1$
 	private static final String NO_TIMESTAMP = "-1"; //$NON-NLS-1$
 	private static final String PROP_FROM_DROPINS = "org.eclipse.equinox.p2.reconciler.dropins"; //$NON-NLS-1$
@@ -57,11 +58,14 @@ public class ProfileSynchronizer {
 	private static final String EXPLANATION = "org.eclipse.equinox.p2.director.explain"; //$NON-NLS-1$
 
 	static final String PROP_IGNORE_USER_CONFIGURATION = "eclipse.ignoreUserConfiguration"; //$NON-NLS-1$
+	static final String PROP_INCREMENTAL = "org.eclipse.equinox.p2.reconciler.incremental"; //$NON-NLS-1$
 
 	final IProfile profile;
 
 	final Map<String, IMetadataRepository> repositoryMap;
 	private Map<String, String> timestamps;
+	// the installable units (as id/version keys) contributed by each repository, see #writeFingerprints()
+	private final Map<String, Set<String>> fingerprints = new HashMap<String, Set<String>>();
 	private final IProvisioningAgent agent;
 
 	/*
@@ -102,6 +106,7 @@ public class ProfileSynchronizer {
 	 */
 	public IStatus synchronize(IProgressMonitor monitor) {
 		readTimestamps();
+		Map<String, String> lastTimestamps = new HashMap<String, String>(timestamps);
 		if (isUpToDate())
 			return Status.OK_STATUS;
 
@@ -110,8 +115,11 @@ public class ProfileSynchronizer {
 
 		String updatedCacheExtensions = synchronizeCacheExtensions();
 
-		// figure out if we really have anything to install/uninstall.
-		ReconcilerProfileChangeRequest request = createProfileChangeRequest(context);
+		// figure out if we really have anything to install/uninstall. If we know what each repository
+		// contained the last time we reconciled, only look at the repositories which have changed.
+		fingerprints.clear();
+		Map<String, Set<String>> lastFingerprints = readFingerprints(lastTimestamps);
+		ReconcilerProfileChangeRequest request = lastFingerprints == null ? createProfileChangeRequest(context) : createIncrementalProfileChangeRequest(lastTimestamps, lastFingerprints);
 		if (request == null) {
 			if (updatedCacheExtensions == null)
 				return Status.OK_STATUS;
@@ -325,6 +333,83 @@ public class ProfileSynchronizer {
 		} catch (IOException e) {
 			//Ignore
 		}
+		writeFingerprints();
+	}
+
+	/*
+	 * Write out the installable units contributed by each repository so the next reconciliation 
+	 * only has to look at the repositories which have changed.
+	 */
+	private void writeFingerprints() {
+		Map<String, String> result = new HashMap<String, String>();
+		for (Entry<String, IMetadataRepository> entry : repositoryMap.entrySet()) {
+			Set<String> keys = fingerprints.get(entry.getKey());
+			if (keys == null)
+				keys = getKeys(entry.getValue().query(QueryUtil.createIUAnyQuery(), null));
+			StringBuffer buffer = new StringBuffer();
+			for (String key : keys)
+				appendLengthPrefixed(buffer, key);
+			result.put(entry.getKey(), buffer.toString());
+		}
+
+		File file = Activator.getContext().getDataFile(FINGERPRINTS_FILE_PREFIX + profile.getProfileId().hashCode());
+		try {
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+			try {
+				CollectionUtils.storeProperties(result, os, "Fingerprints for " + profile.getProfileId()); //$NON-NLS-1$
+			} finally {
+				os.close();
+			}
+		} catch (IOException e) {
+			// an incomplete file would produce a wrong incremental reconciliation
+			file.delete();
+		}
+	}
+
+	/*
+	 * Read the installable units contributed by each repository at the time of the last reconciliation. 
+	 * Return null if the last reconciliation cannot be trusted for an incremental reconciliation, in 
+	 * which case a full reconciliation must be performed.
+	 */
+	private Map<String, Set<String>> readFingerprints(Map<String, String> lastTimestamps) {
+		String incremental = Activator.getContext().getProperty(PROP_INCREMENTAL);
+		if (incremental != null && !Boolean.valueOf(incremental).booleanValue())
+			return null;
+		if ("true".equals(Activator.getContext().getProperty("osgi.checkConfiguration"))) //$NON-NLS-1$//$NON-NLS-2$
+			return null;
+		if (Boolean.valueOf(profile.getProperty("org.eclipse.equinox.p2.resolve")).booleanValue()) //$NON-NLS-1$
+			return null;
+		// the profile must not have been modified since the last reconciliation
+		if (!Long.toString(profile.getTimestamp()).equals(lastTimestamps.get(PROFILE_TIMESTAMP)))
+			return null;
+
+		File file = Activator.getContext().getDataFile(FINGERPRINTS_FILE_PREFIX + profile.getProfileId().hashCode());
+		Map<String, String> properties;
+		try {
+			InputStream is = new BufferedInputStream(new FileInputStream(file));
+			try {
+				properties = CollectionUtils.loadProperties(is);
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+
+		Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+		for (Entry<String, String> entry : properties.entrySet()) {
+			Set<String> keys = readLengthPrefixed(entry.getValue());
+			if (keys == null)
+				return null;
+			result.put(entry.getKey(), keys);
+		}
+		// both files are written together, they must describe the same repositories
+		for (String location : lastTimestamps.keySet()) {
+			if (!PROFILE_TIMESTAMP.equals(location) && !result.containsKey(location))
+				return null;
+		}
+		Activator.trace("Performing incremental reconciliation."); //$NON-NLS-1$
+		return result;
 	}
 
 	/*
@@ -644,6 +729,157 @@ public class ProfileSynchronizer {
 		return request;
 	}
 
+	/*
+	 * Return the profile change request for the repositories which have changed since the last reconciliation.
+	 * This is the same request as the one returned by createProfileChangeRequest, except that the IUs which are
+	 * already installed from the unchanged repositories are left alone. They keep their inclusion rules in the
+	 * profile, so the planner does not need them in the request.
+	 */
+	public ReconcilerProfileChangeRequest createIncrementalProfileChangeRequest(Map<String, String> lastTimestamps, Map<String, Set<String>> lastFingerprints) {
+		ReconcilerProfileChangeRequest request = new ReconcilerProfileChangeRequest(profile);
+
+		List<IInstallableUnit> toAdd = new ArrayList<IInstallableUnit>();
+		List<IInstallableUnit> toRemove = new ArrayList<IInstallableUnit>();
+		List<IInstallableUnit> toMove = new ArrayList<IInstallableUnit>();
+
+		boolean foundIUsToAdd = false;
+		Map<IInstallableUnit, IInstallableUnit> profileIUs = getProfileIUs();
+		Map<IInstallableUnit, IInstallableUnit> availableProfileIUs = getAvailableProfileIUs();
+		Set<String> availableKeys = getKeys(availableProfileIUs.keySet());
+
+		// keys of the IUs still available from a repository, and of the IUs which disappeared from one
+		Set<String> present = new HashSet<String>();
+		Set<String> removed = new HashSet<String>();
+		for (Entry<String, IMetadataRepository> entry : repositoryMap.entrySet()) {
+			String location = entry.getKey();
+			IMetadataRepository repository = entry.getValue();
+			Set<String> lastKeys = lastFingerprints.get(location);
+			// a repository which has not changed and whose IUs are all installed needs no work. If some of
+			// its IUs could not be installed, look at it again since the changes elsewhere may fix that.
+			if (lastKeys != null && getTimestamp(repository).equals(lastTimestamps.get(location)) && availableKeys.containsAll(lastKeys)) {
+				present.addAll(lastKeys);
+				fingerprints.put(location, lastKeys);
+				continue;
+			}
+			Activator.trace("Reconciling changed repository: " + location); //$NON-NLS-1$
+
+			IQueryResult<IInstallableUnit> ius = repository.query(QueryUtil.createIUAnyQuery(), null);
+			Set<String> keys = getKeys(ius);
+			for (IInstallableUnit iu : ius) {
+				IInstallableUnit existing = profileIUs.get(iu);
+				if (existing != null) {
+					// see createProfileChangeRequest
+					String one = iu.getProperty(RepositoryListener.FILE_NAME);
+					String two = existing.getProperty(RepositoryListener.FILE_NAME);
+					if (one != null && two != null && !one.equals(two))
+						toMove.add(iu);
+					continue;
+				}
+				if (QueryUtil.isGroup(iu))
+					request.setInstallableUnitProfileProperty(iu, IProfile.PROP_PROFILE_ROOT_IU, Boolean.TRUE.toString());
+				request.setInstallableUnitProfileProperty(iu, PROP_FROM_DROPINS, Boolean.TRUE.toString());
+				request.setInstallableUnitInclusionRules(iu, ProfileInclusionRules.createOptionalInclusionRule(iu));
+				request.setInstallableUnitProfileProperty(iu, IProfile.PROP_PROFILE_LOCKED_IU, Integer.toString(IProfile.LOCK_UNINSTALL));
+				toAdd.add(iu);
+				if (!foundIUsToAdd && availableProfileIUs.get(iu) == null)
+					foundIUsToAdd = true;
+			}
+			if (lastKeys != null) {
+				for (String key : lastKeys)
+					if (!keys.contains(key))
+						removed.add(key);
+			}
+			present.addAll(keys);
+			fingerprints.put(location, keys);
+		}
+		// the IUs of repositories which are gone
+		for (Entry<String, Set<String>> entry : lastFingerprints.entrySet()) {
+			if (!repositoryMap.containsKey(entry.getKey()))
+				removed.addAll(entry.getValue());
+		}
+		removed.removeAll(present);
+
+		IQueryResult<IInstallableUnit> dropinIUs = profile.query(new IUProfilePropertyQuery(PROP_FROM_DROPINS, Boolean.TRUE.toString()), null);
+		for (IInstallableUnit iu : dropinIUs) {
+			// see createProfileChangeRequest
+			if (INCLUSION_STRICT.equals(profile.getInstallableUnitProperty(iu, INCLUSION_RULES))) {
+				request.removeInstallableUnitProfileProperty(iu, PROP_FROM_DROPINS);
+				request.removeInstallableUnitProfileProperty(iu, IProfile.PROP_PROFILE_LOCKED_IU);
+				continue;
+			}
+			if (removed.contains(getKey(iu)))
+				toRemove.add(iu);
+		}
+
+		if (!foundIUsToAdd && toRemove.isEmpty() && toMove.isEmpty()) {
+			if (Tracing.DEBUG_RECONCILER)
+				Tracing.debug("[reconciler] Nothing to do."); //$NON-NLS-1$
+			return null;
+		}
+
+		request.addAll(toAdd);
+		request.removeAll(toRemove);
+		request.moveAll(toMove);
+
+		debug(request);
+		return request;
+	}
+
+	private static String getTimestamp(IMetadataRepository repository) {
+		Map<String, String> props = repository.getProperties();
+		String timestamp = props == null ? null : props.get(IRepository.PROP_TIMESTAMP);
+		return timestamp == null ? NO_TIMESTAMP : timestamp;
+	}
+
+	/**
+	 * Return a key identifying the id and version of the given IU. The id is length prefixed 
+	 * since neither the id nor the version are restricted in the characters they may contain.
+	 * This method is intended for testing.
+	 */
+	public static String getKey(IInstallableUnit iu) {
+		StringBuffer buffer = new StringBuffer();
+		appendLengthPrefixed(buffer, iu.getId());
+		buffer.append(iu.getVersion());
+		return buffer.toString();
+	}
+
+	private static void appendLengthPrefixed(StringBuffer buffer, String value) {
+		buffer.append(value.length()).append(':').append(value);
+	}
+
+	/*
+	 * Read the strings written by #appendLengthPrefixed(StringBuffer, String). Return null if 
+	 * the value is not made of such strings.
+	 */
+	private static Set<String> readLengthPrefixed(String value) {
+		Set<String> result = new HashSet<String>();
+		int index = 0;
+		while (index < value.length()) {
+			int separator = value.indexOf(':', index);
+			if (separator <= index)
+				return null;
+			int length;
+			try {
+				length = Integer.parseInt(value.substring(index, separator));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			int end = separator + 1 + length;
+			if (length < 0 || end > value.length())
+				return null;
+			result.add(value.substring(separator + 1, end));
+			index = end;
+		}
+		return result;
+	}
+
+	private static Set<String> getKeys(Iterable<IInstallableUnit> ius) {
+		Set<String> result = new HashSet<String>();
+		for (IInstallableUnit iu : ius)
+			result.add(getKey(iu));
+		return result;
+	}
+
 	/*
 	 * Create and return a negated requirement saying that the given IU must not exist in the profile.
 	 */
@@ -12,8 +12,9 @@ package org.eclipse.equinox.internal.p2.repository;
 
 import java.net.URI;
 import java.util.EventObject;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ICoalescableEvent;
 
-public class DownloadProgressEvent extends EventObject {
+public class DownloadProgressEvent extends EventObject implements ICoalescableEvent {
 
 	private static final long serialVersionUID = -7880532297074721824L;
 	private ProgressStatistics stat;
@@ -46,4 +47,12 @@ public class DownloadProgressEvent extends EventObject {
 	public double getPercentage() {
 		return stat.getPercentage();
 	}
+
+	/**
+	 * The progress events of a download share the same statistics and report the same
+	 * state anyway, so only the latest one needs to be delivered.
+	 */
+	public Object getCoalescingKey() {
+		return stat;
+	}
 }
@@ -18,6 +18,7 @@ import java.io.*;
 import java.lang.ref.SoftReference;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
@@ -41,14 +42,15 @@ import org.osgi.service.prefs.Preferences;
  */
 public abstract class AbstractRepositoryManager<T> implements IRepositoryManager<T>, IAgentService, ProvisioningListener {
 	protected static class RepositoryInfo<R> {
-		public String description;
-		public boolean isEnabled = true;
-		public boolean isSystem = false;
-		public URI location;
-		public String name;
-		public String nickname;
-		public SoftReference<IRepository<R>> repository;
-		public String suffix;
+		// the fields are read without holding the repository lock
+		public volatile String description;
+		public volatile boolean isEnabled = true;
+		public volatile boolean isSystem = false;
+		public volatile URI location;
+		public volatile String name;
+		public volatile String nickname;
+		public volatile SoftReference<IRepository<R>> repository;
+		public volatile String suffix;
 
 		public RepositoryInfo() {
 			super();
@@ -73,15 +75,31 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	public static final String NODE_REPOSITORIES = "repositories"; //$NON-NLS-1$
 	private static final String INDEX_FILE = "p2.index"; //$NON-NLS-1$
 
+	/**
+	 * The number of recently used repositories a manager keeps strongly reachable, so that
+	 * they are not reloaded when the memory gets low. By default none are, and the
+	 * repositories are only kept through soft references.
+	 */
+	public static final String PROP_CACHE_SIZE = "org.eclipse.equinox.p2.repository.cacheSize"; //$NON-NLS-1$
+	private static final int DEFAULT_CACHE_SIZE = 0;
+
 	/**
 	 * Map of String->RepositoryInfo, where String is the repository key
-	 * obtained via getKey(URI).
+	 * obtained via getKey(URI). The map is concurrent so that it can be read
+	 * without holding the repository lock.
 	 */
-	protected Map<String, RepositoryInfo<T>> repositories = null;
+	protected volatile Map<String, RepositoryInfo<T>> repositories = null;
+	private volatile boolean restored = false;
 
-	//lock object to be held when referring to the repositories field
+	//lock object to be held when modifying the repositories field or its content
 	protected final Object repositoryLock = new Object();
 
+	/**
+	 * The most recently used repositories, by key, in access order.
+	 */
+	private final Map<String, IRepository<T>> recentlyUsed;
+	private final int cacheSize;
+
 	/**
 	 * Cache List of repositories that are not reachable. Maintain cache
 	 * for short duration because repository may become available at any time.
@@ -89,9 +107,16 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	protected SoftReference<List<URI>> unavailableRepositories;
 
 	/**
-	 * Set used to manage exclusive load locks on repository locations.
+	 * The loads in progress, by location. A thread loading a location waits for the load
+	 * already in progress at that location and then uses its result.
 	 */
-	private final Map<URI, Thread> loadLocks = new HashMap<URI, Thread>();
+	private final ConcurrentMap<URI, PendingLoad> pendingLoads = new ConcurrentHashMap<URI, PendingLoad>();
+
+	private static class PendingLoad {
+		final Thread owner = Thread.currentThread();
+		final CountDownLatch done = new CountDownLatch(1);
+	}
+
 	private final IAgentLocation agentLocation;
 	protected final IProvisioningEventBus eventBus;
 	protected final IProvisioningAgent agent;
@@ -102,6 +127,57 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		agentLocation = (IAgentLocation) agent.getService(IAgentLocation.SERVICE_NAME);
 		eventBus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
 		eventBus.addListener(this);
+		cacheSize = getCacheSize();
+		recentlyUsed = new LinkedHashMap<String, IRepository<T>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, IRepository<T>> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	private static int getCacheSize() {
+		String value = Activator.getContext() == null ? null : Activator.getContext().getProperty(PROP_CACHE_SIZE);
+		if (value != null) {
+			try {
+				return Math.max(0, Integer.parseInt(value));
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return DEFAULT_CACHE_SIZE;
+	}
+
+	/**
+	 * Returns the known repositories, restoring them first if needed.
+	 */
+	private Map<String, RepositoryInfo<T>> getRepositories() {
+		Map<String, RepositoryInfo<T>> result = repositories;
+		if (restored && result != null)
+			return result;
+		synchronized (repositoryLock) {
+			if (repositories == null)
+				restoreRepositories();
+			return repositories;
+		}
+	}
+
+	/*
+	 * Keeps the given repository strongly reachable as one of the most recently used.
+	 */
+	private void used(String key, IRepository<T> repository) {
+		if (cacheSize == 0)
+			return;
+		synchronized (recentlyUsed) {
+			recentlyUsed.put(key, repository);
+		}
+	}
+
+	private void forget(String key) {
+		synchronized (recentlyUsed) {
+			recentlyUsed.remove(key);
+		}
 	}
 
 	/**
@@ -130,6 +206,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 			if (value != null)
 				info.isSystem = Boolean.valueOf(value).booleanValue();
 			info.suffix = suffix;
+			used(key, repository);
 		}
 		// save the given repository in the preferences.
 		remember(repository, suffix);
@@ -176,18 +253,31 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 
 	protected IRepository<T> basicGetRepository(URI location) {
 		checkValidLocation(location);
-		synchronized (repositoryLock) {
-			if (repositories == null)
-				restoreRepositories();
-			RepositoryInfo<T> info = repositories.get(getKey(location));
-			if (info == null || info.repository == null)
-				return null;
-			IRepository<T> repo = info.repository.get();
-			//update our repository info because the repository may have changed
-			if (repo != null)
-				addRepository(repo, false, info.suffix);
-			return repo;
-		}
+		String key = getKey(location);
+		RepositoryInfo<T> info = getRepositories().get(key);
+		if (info == null)
+			return null;
+		SoftReference<IRepository<T>> reference = info.repository;
+		IRepository<T> repo = reference == null ? null : reference.get();
+		if (repo == null)
+			return null;
+		//update our repository info because the repository may have changed
+		if (hasChanged(info, repo))
+			addRepository(repo, false, info.suffix);
+		else
+			used(key, repo);
+		return repo;
+	}
+
+	private boolean hasChanged(RepositoryInfo<T> info, IRepository<T> repository) {
+		if (!equals(info.name, repository.getName()) || !equals(info.description, repository.getDescription()) || !equals(info.location, repository.getLocation()))
+			return true;
+		String value = repository.getProperties().get(IRepository.PROP_SYSTEM);
+		return value != null && Boolean.valueOf(value).booleanValue() != info.isSystem;
+	}
+
+	private static boolean equals(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
 	public IRepository<T> basicRefreshRepository(URI location, IProgressMonitor monitor) throws ProvisionException {
@@ -251,11 +341,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 */
 	public boolean contains(URI location) {
 		checkValidLocation(location);
-		synchronized (repositoryLock) {
-			if (repositories == null)
-				restoreRepositories();
-			return repositories.containsKey(getKey(location));
-		}
+		return getRepositories().containsKey(getKey(location));
 	}
 
 	/* (non-Javadoc)
@@ -266,8 +352,8 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		Assert.isNotNull(name);
 		Assert.isNotNull(type);
 		IRepository<T> result = null;
+		PendingLoad load = enterLoad(location, new NullProgressMonitor());
 		try {
-			enterLoad(location, new NullProgressMonitor());
 			boolean loaded = false;
 			try {
 				//repository should not already exist
@@ -291,7 +377,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 			clearNotFound(location);
 			addRepository(result, false, null);
 		} finally {
-			exitLoad(location);
+			exitLoad(location, load);
 		}
 		//fire event after releasing load lock
 		broadcastChangeEvent(location, getRepositoryType(), RepositoryEvent.ADDED, true);
@@ -320,30 +406,34 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 
 	/**
 	 * Obtains an exclusive right to load a repository at the given location. Blocks
-	 * if another thread is currently loading at that location. Invocation of this
-	 * method must be followed by a subsequent call to {@link #exitLoad(URI)}.
+	 * if another thread is currently loading at that location, so that the repository
+	 * it loads is found by the caller instead of being loaded again. Invocation of this
+	 * method must be followed by a subsequent call to {@link #exitLoad(URI, PendingLoad)}.
+	 * Loads of different locations do not wait for each other.
 	 * 
-	 * To avoid deadlock between the loadLock and repositoryLock, this method
+	 * To avoid deadlock between the load and repositoryLock, this method
 	 * must not be called when repositoryLock is held.
 	 * 
 	 * @param location The location to lock
+	 * @return the load registered for the location, or <code>null</code> if the current
+	 * thread is already loading the location
 	 */
-	private void enterLoad(URI location, IProgressMonitor monitor) {
-		Thread current = Thread.currentThread();
-		synchronized (loadLocks) {
-			while (true) {
-				Thread owner = loadLocks.get(location);
-				if (owner == null || current.equals(owner))
-					break;
-				if (monitor.isCanceled())
-					throw new OperationCanceledException();
-				try {
-					loadLocks.wait(1000);
-				} catch (InterruptedException e) {
-					//keep trying
+	private PendingLoad enterLoad(URI location, IProgressMonitor monitor) {
+		PendingLoad load = new PendingLoad();
+		while (true) {
+			PendingLoad current = pendingLoads.putIfAbsent(location, load);
+			if (current == null)
+				return load;
+			if (current.owner == load.owner)
+				return null;
+			try {
+				while (!current.done.await(1, TimeUnit.SECONDS)) {
+					if (monitor.isCanceled())
+						throw new OperationCanceledException();
 				}
+			} catch (InterruptedException e) {
+				//keep trying
 			}
-			loadLocks.put(location, current);
 		}
 	}
 
@@ -351,12 +441,13 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 * Relinquishes the exclusive right to load a repository at the given location. Unblocks
 	 * other threads waiting to load at that location.
 	 * @param location The location to unlock
+	 * @param load the load returned by {@link #enterLoad(URI, IProgressMonitor)}
 	 */
-	private void exitLoad(URI location) {
-		synchronized (loadLocks) {
-			loadLocks.remove(location);
-			loadLocks.notifyAll();
-		}
+	private void exitLoad(URI location, PendingLoad load) {
+		if (load == null)
+			return;
+		pendingLoads.remove(location, load);
+		load.done.countDown();
 	}
 
 	/**
@@ -475,16 +566,12 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 * @see org.eclipse.equinox.internal.provisional.p2.core.repository.IRepositoryManager#getKnownRepositories(int)
 	 */
 	public URI[] getKnownRepositories(int flags) {
-		synchronized (repositoryLock) {
-			if (repositories == null)
-				restoreRepositories();
-			ArrayList<URI> result = new ArrayList<URI>();
-			for (RepositoryInfo<T> info : repositories.values()) {
-				if (matchesFlags(info, flags))
-					result.add(info.location);
-			}
-			return result.toArray(new URI[result.size()]);
+		ArrayList<URI> result = new ArrayList<URI>();
+		for (RepositoryInfo<T> info : getRepositories().values()) {
+			if (matchesFlags(info, flags))
+				result.add(info.location);
 		}
+		return result.toArray(new URI[result.size()]);
 	}
 
 	/**
@@ -559,23 +646,19 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 */
 	public String getRepositoryProperty(URI location, String key) {
 		checkValidLocation(location);
-		synchronized (repositoryLock) {
-			if (repositories == null)
-				restoreRepositories();
-			RepositoryInfo<T> info = repositories.get(getKey(location));
-			if (info == null)
-				return null;// Repository not found
-			if (IRepository.PROP_DESCRIPTION.equals(key))
-				return info.description;
-			else if (IRepository.PROP_NAME.equals(key))
-				return info.name;
-			else if (IRepository.PROP_SYSTEM.equals(key))
-				return Boolean.toString(info.isSystem);
-			else if (IRepository.PROP_NICKNAME.equals(key))
-				return info.nickname;
-			// Key not known, return null
-			return null;
-		}
+		RepositoryInfo<T> info = getRepositories().get(getKey(location));
+		if (info == null)
+			return null;// Repository not found
+		if (IRepository.PROP_DESCRIPTION.equals(key))
+			return info.description;
+		else if (IRepository.PROP_NAME.equals(key))
+			return info.name;
+		else if (IRepository.PROP_SYSTEM.equals(key))
+			return Boolean.toString(info.isSystem);
+		else if (IRepository.PROP_NICKNAME.equals(key))
+			return info.nickname;
+		// Key not known, return null
+		return null;
 	}
 
 	/*(non-Javadoc)
@@ -627,15 +710,11 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 * @see org.eclipse.equinox.internal.provisional.p2.core.repository.IRepositoryManager#isEnabled(java.net.URI)
 	 */
 	public boolean isEnabled(URI location) {
-		synchronized (repositoryLock) {
-			if (repositories == null)
-				restoreRepositories();
-			RepositoryInfo<T> info = repositories.get(getKey(location));
-			if (info != null)
-				return info.isEnabled;
-			// Repository not found, return false
-			return false;
-		}
+		RepositoryInfo<T> info = getRepositories().get(getKey(location));
+		if (info != null)
+			return info.isEnabled;
+		// Repository not found, return false
+		return false;
 	}
 
 	protected IRepository<T> loadRepository(URI location, IProgressMonitor monitor, String type, int flags) throws ProvisionException {
@@ -644,8 +723,8 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		boolean added = false;
 		IRepository<T> result = null;
 
+		PendingLoad load = enterLoad(location, sub.newChild(5));
 		try {
-			enterLoad(location, sub.newChild(5));
 			result = basicGetRepository(location);
 			if (result != null)
 				return result;
@@ -692,7 +771,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				fail(location, ProvisionException.REPOSITORY_NOT_FOUND);
 			}
 		} finally {
-			exitLoad(location);
+			exitLoad(location, load);
 		}
 		//broadcast the add event after releasing lock
 		if (added)
@@ -911,7 +990,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				return;
 			}
 		}
-		badRepos = new ArrayList<URI>();
+		badRepos = Collections.synchronizedList(new ArrayList<URI>());
 		badRepos.add(location);
 		unavailableRepositories = new SoftReference<List<URI>>(badRepos);
 	}
@@ -929,6 +1008,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 			if (repositories.remove(repoKey) == null)
 				return false;
 		}
+		forget(repoKey);
 		// remove the repository from the preference store
 		try {
 			if (Tracing.DEBUG_REMOVE_REPO) {
@@ -1010,11 +1090,13 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 */
 	private void restoreRepositories() {
 		synchronized (repositoryLock) {
-			repositories = new HashMap<String, RepositoryInfo<T>>();
+			repositories = new ConcurrentHashMap<String, RepositoryInfo<T>>();
 			restoreSpecialRepositories();
 			restoreFromSystemProperty();
 			basicRestoreFromPreferences(getSharedPreferences(), false);
 			basicRestoreFromPreferences(getPreferences(), true);
+			// readers only use the map without locking once it is complete
+			restored = true;
 		}
 	}
 
@@ -1081,7 +1163,13 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				Tracing.debug("Unsaved preferences when shutting down " + getClass().getName()); //$NON-NLS-1$
 			saveToPreferences();
 		}
-		repositories = null;
+		synchronized (repositoryLock) {
+			restored = false;
+			repositories = null;
+		}
+		synchronized (recentlyUsed) {
+			recentlyUsed.clear();
+		}
 		unavailableRepositories = null;
 	}
 
@@ -1095,40 +1183,36 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		String[] result = new String[suffixes.length];
 		System.arraycopy(suffixes, 0, result, 0, suffixes.length);
 
-		synchronized (repositoryLock) {
-			if (repositories == null)
-				restoreRepositories();
-			RepositoryInfo<T> info = repositories.get(getKey(location));
-			if (info != null && info.suffix != null) {
-				//move lastSuffix to the front of the list but preserve order of remaining entries
-				String lastSuffix = info.suffix;
-				for (int i = 0; i < result.length; i++) {
-					if (lastSuffix.equals(result[i])) {
-						System.arraycopy(result, 0, result, 1, i);
-						result[0] = lastSuffix;
-						break;
-					}
+		RepositoryInfo<T> info = getRepositories().get(getKey(location));
+		if (info != null && info.suffix != null) {
+			//move lastSuffix to the front of the list but preserve order of remaining entries
+			String lastSuffix = info.suffix;
+			for (int i = 0; i < result.length; i++) {
+				if (lastSuffix.equals(result[i])) {
+					System.arraycopy(result, 0, result, 1, i);
+					result[0] = lastSuffix;
+					break;
 				}
 			}
-			// Now make sure that anything in the "preferredOrder" is at the top
-			if (preferredOrder != null) {
-				int priority = 0;
-				for (int i = 0; i < preferredOrder.length; i++) {
-					String currentSuffix = preferredOrder[i];
-					if (LocationProperties.END.equals(currentSuffix.trim())) {
-						// All suffixes from here on should be ignored
-						String[] tmp = new String[priority];
-						System.arraycopy(result, 0, tmp, 0, priority);
-						return tmp;
-					}
-					for (int j = priority; j < result.length; j++) {
-						if (result[j].equalsIgnoreCase(currentSuffix.trim())) {
-							String tmp = result[j];
-							System.arraycopy(result, priority, result, priority + 1, j - priority);
-							result[priority] = tmp;
-							priority++;
-							break;
-						}
+		}
+		// Now make sure that anything in the "preferredOrder" is at the top
+		if (preferredOrder != null) {
+			int priority = 0;
+			for (int i = 0; i < preferredOrder.length; i++) {
+				String currentSuffix = preferredOrder[i];
+				if (LocationProperties.END.equals(currentSuffix.trim())) {
+					// All suffixes from here on should be ignored
+					String[] tmp = new String[priority];
+					System.arraycopy(result, 0, tmp, 0, priority);
+					return tmp;
+				}
+				for (int j = priority; j < result.length; j++) {
+					if (result[j].equalsIgnoreCase(currentSuffix.trim())) {
+						String tmp = result[j];
+						System.arraycopy(result, priority, result, priority + 1, j - priority);
+						result[priority] = tmp;
+						priority++;
+						break;
 					}
 				}
 			}
@@ -1190,12 +1274,15 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	}
 
 	public void flushCache() {
-		synchronized (repositories) {
-			Collection<RepositoryInfo<T>> repos = repositories.values();
+		synchronized (repositoryLock) {
+			Collection<RepositoryInfo<T>> repos = getRepositories().values();
 			for (Iterator<RepositoryInfo<T>> iterator = repos.iterator(); iterator.hasNext();) {
 				RepositoryInfo<T> repositoryInfo = iterator.next();
 				repositoryInfo.repository = null;
 			}
 		}
+		synchronized (recentlyUsed) {
+			recentlyUsed.clear();
+		}
 	}
 }
@@ -57,6 +57,22 @@ public interface IArtifactDescriptor {
 	 */
 	public static final String ARTIFACT_MD5 = "artifact.md5"; //$NON-NLS-1$
 
+	/**
+	 * The prefix (value "download.checksum") of the artifact descriptor properties holding
+	 * checksums of the artifact bytes that are transferred. The full property name is the prefix
+	 * followed by a dot and the lower case name of the algorithm, e.g. "download.checksum.sha-256".
+	 * @since 2.3
+	 */
+	public static final String DOWNLOAD_CHECKSUM = "download.checksum"; //$NON-NLS-1$
+
+	/**
+	 * The prefix (value "artifact.checksum") of the artifact descriptor properties holding
+	 * checksums of the artifact bytes in its native format (after processing steps have
+	 * been applied), e.g. "artifact.checksum.sha-256".
+	 * @since 2.3
+	 */
+	public static final String ARTIFACT_CHECKSUM = "artifact.checksum"; //$NON-NLS-1$
+
 	/**
 	 * An artifact descriptor property (value "format") indicating the storage format
 	 * of the artifact in the repository.
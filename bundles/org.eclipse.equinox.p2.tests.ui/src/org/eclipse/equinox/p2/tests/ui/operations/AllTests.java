@@ -20,10 +20,12 @@ public class AllTests extends TestCase {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		suite.addTestSuite(ColocatedRepositoryTrackerTest.class);
+		suite.addTestSuite(DownloadThrottleTest.class);
 		suite.addTestSuite(SizingTest.class);
 		suite.addTestSuite(InstallOperationTests.class);
 		suite.addTestSuite(UpdateOperationTests.class);
 		suite.addTestSuite(UninstallOperationTests.class);
+		suite.addTestSuite(RemediationOperationTests.class);
 		return suite;
 	}
 }
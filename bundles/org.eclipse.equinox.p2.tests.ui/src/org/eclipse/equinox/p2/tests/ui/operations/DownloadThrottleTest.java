@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.ui.operations;
+
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.operations.DownloadThrottle;
+
+/**
+ * Tests for the speed computation of {@link DownloadThrottle}.
+ */
+public class DownloadThrottleTest extends TestCase {
+
+	public void testDelay() {
+		long now = System.currentTimeMillis();
+		DownloadThrottle throttle = new DownloadThrottle(1000);
+		assertTrue("1.0", throttle.getDelay(System.currentTimeMillis()) <= 0);
+		throttle.received(1000);
+		throttle.received(2000);
+		// 3000 bytes at 1000 bytes per second are allowed after three seconds
+		long delay = throttle.getDelay(now);
+		assertTrue("1.1", delay >= 3000 && delay < 3500);
+		assertTrue("1.2", throttle.getDelay(now + 3500) <= 0);
+	}
+
+	public void testAwait() {
+		DownloadThrottle throttle = new DownloadThrottle(10000);
+		throttle.received(2000);
+		long start = System.currentTimeMillis();
+		assertTrue("1.0", throttle.await(new NullProgressMonitor()));
+		// 2000 bytes at 10000 bytes per second take at least 200 milliseconds
+		assertTrue("1.1", System.currentTimeMillis() - start >= 150);
+		assertTrue("1.2", throttle.getDelay(System.currentTimeMillis()) <= 0);
+	}
+
+	public void testAwaitCancelled() {
+		DownloadThrottle throttle = new DownloadThrottle(1);
+		throttle.received(1000000);
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		assertFalse("1.0", throttle.await(monitor));
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.ui.operations;
+
+import java.net.URI;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.operations.*;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.spi.RepositoryReference;
+import org.eclipse.equinox.p2.tests.ui.AbstractProvisioningUITest;
+
+/**
+ * Tests that the remedies computed concurrently, or only for the best solutions, are
+ * the ones computed one after the other.
+ */
+public class RemediationOperationTests extends AbstractProvisioningUITest {
+	private static final String PROP_THREADS = "org.eclipse.equinox.p2.operations.remediationThreads";
+	private static final String PROP_BEST_REMEDIES_ONLY = "org.eclipse.equinox.p2.operations.bestRemediesOnly";
+
+	IInstallableUnit a1;
+	IInstallableUnit a2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		a1 = createIU("A", Version.create("1.0.0"), true);
+		a2 = createIU("A", Version.create("2.0.0"), true);
+		createTestMetdataRepository(new IInstallableUnit[] {a1, a2});
+		assertOK("install A 1.0.0", install(a1, true, false));
+	}
+
+	private RemediationOperation remediate(String threads, boolean bestOnly) {
+		return remediate(new ProvisioningContext(getAgent()), a2, threads, bestOnly);
+	}
+
+	private RemediationOperation remediate(ProvisioningContext context, IInstallableUnit iu, String threads, boolean bestOnly) {
+		ProfileChangeRequest request = new ProfileChangeRequest(getProfile(TESTPROFILE));
+		request.add(iu);
+		request.setInstallableUnitProfileProperty(iu, IProfile.PROP_PROFILE_ROOT_IU, Boolean.TRUE.toString());
+		RemediationOperation operation = new RemediationOperation(getSession(), request);
+		operation.setProfileId(TESTPROFILE);
+		if (threads != null)
+			context.setProperty(PROP_THREADS, threads);
+		if (bestOnly)
+			context.setProperty(PROP_BEST_REMEDIES_ONLY, Boolean.TRUE.toString());
+		Map<String, String> properties = new HashMap<String, String>(context.getProperties());
+		operation.setProvisioningContext(context);
+		operation.resolveModal(getMonitor());
+		assertEquals("the context is left unchanged", properties, context.getProperties());
+		return operation;
+	}
+
+	private void assertSameRemedies(RemediationOperation expected, RemediationOperation actual) {
+		List<Remedy> remedies = expected.getRemedies();
+		List<Remedy> actualRemedies = actual.getRemedies();
+		assertFalse(remedies.isEmpty());
+		assertEquals(remedies.size(), actualRemedies.size());
+		for (int i = 0; i < remedies.size(); i++)
+			assertSameRemedy(remedies.get(i), actualRemedies.get(i));
+		assertSameRemedy(expected.bestSolutionChangingTheRequest(), actual.bestSolutionChangingTheRequest());
+		assertSameRemedy(expected.bestSolutionChangingWhatIsInstalled(), actual.bestSolutionChangingWhatIsInstalled());
+	}
+
+	private void assertSameRemedy(Remedy expected, Remedy actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertNotNull(actual);
+		RemedyConfig expectedConfig = expected.getConfig();
+		RemedyConfig actualConfig = actual.getConfig();
+		assertEquals(expectedConfig.allowPartialInstall, actualConfig.allowPartialInstall);
+		assertEquals(expectedConfig.allowDifferentVersion, actualConfig.allowDifferentVersion);
+		assertEquals(expectedConfig.allowInstalledUpdate, actualConfig.allowInstalledUpdate);
+		assertEquals(expectedConfig.allowInstalledRemoval, actualConfig.allowInstalledRemoval);
+		assertEquals(expected.getRequest().getAdditions(), actual.getRequest().getAdditions());
+		assertEquals(expected.getRequest().getRemovals(), actual.getRequest().getRemovals());
+	}
+
+	public void testConcurrentRemedies() {
+		RemediationOperation operation = remediate(null, false);
+		RemediationOperation concurrentOperation = remediate("4", false);
+		assertSameRemedies(operation, concurrentOperation);
+	}
+
+	public void testConcurrentRemediesFollowingReferences() throws Exception {
+		// the requested version is only found through a reference, and the repository
+		// also refers to an artifact repository
+		IInstallableUnit a3 = createIU("A", Version.create("3.0.0"), true);
+		IMetadataRepository referenced = createTestMetdataRepository(new IInstallableUnit[] {a3});
+		IMetadataRepository repository = createTestMetdataRepository(new IInstallableUnit[] {a1});
+		URI artifactLocation = getTempFolder().toURI();
+		repository.addReferences(Arrays.asList(new RepositoryReference(referenced.getLocation(), null, IRepository.TYPE_METADATA, IRepository.ENABLED), new RepositoryReference(artifactLocation, null, IRepository.TYPE_ARTIFACT, IRepository.ENABLED)));
+
+		RemediationOperation operation = remediate(createContext(repository), a3, null, false);
+		ProvisioningContext context = createContext(repository);
+		RemediationOperation concurrentOperation = remediate(context, a3, "4", false);
+		assertSameRemedies(operation, concurrentOperation);
+		assertNotNull(concurrentOperation.bestSolutionChangingWhatIsInstalled());
+		assertTrue(concurrentOperation.bestSolutionChangingWhatIsInstalled().getRequest().getAdditions().contains(a3));
+	}
+
+	private ProvisioningContext createContext(IMetadataRepository repository) {
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setMetadataRepositories(new URI[] {repository.getLocation()});
+		context.setProperty(ProvisioningContext.FOLLOW_REPOSITORY_REFERENCES, Boolean.TRUE.toString());
+		return context;
+	}
+
+	public void testBestRemediesOnly() {
+		RemediationOperation operation = remediate(null, false);
+		RemediationOperation bestOperation = remediate(null, true);
+		RemediationOperation concurrentBestOperation = remediate("4", true);
+
+		assertNotNull(operation.bestSolutionChangingWhatIsInstalled());
+		assertSameRemedy(operation.bestSolutionChangingTheRequest(), bestOperation.bestSolutionChangingTheRequest());
+		assertSameRemedy(operation.bestSolutionChangingWhatIsInstalled(), bestOperation.bestSolutionChangingWhatIsInstalled());
+		assertSameRemedy(operation.bestSolutionChangingTheRequest(), concurrentBestOperation.bestSolutionChangingTheRequest());
+		assertSameRemedy(operation.bestSolutionChangingWhatIsInstalled(), concurrentBestOperation.bestSolutionChangingWhatIsInstalled());
+		assertTrue(bestOperation.getRemedies().size() <= operation.getRemedies().size());
+	}
+}
@@ -10,12 +10,22 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.ui.operations;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.jobs.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.operations.ArtifactPrefetchJob;
 import org.eclipse.equinox.internal.p2.operations.SearchForUpdatesResolutionJob;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.operations.*;
 import org.eclipse.equinox.p2.planner.IProfileChangeRequest;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.tests.ui.AbstractProvisioningUITest;
 
 public class UpdateOperationTests extends AbstractProvisioningUITest {
@@ -197,4 +207,81 @@ public class UpdateOperationTests extends AbstractProvisioningUITest {
 		assertNotNull("1.2", ((SearchForUpdatesResolutionJob) job).getProfileChangeRequest());
 
 	}
+
+	public void testPrefetchArtifactsOfUpdate() throws Exception {
+		// the update has an artifact, to be prefetched into the bundle pool of the profile
+		File poolFolder = getTempFolder();
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(IProfile.PROP_CACHE, poolFolder.getAbsolutePath());
+		profile = createProfile(TESTPROFILE, properties);
+		IArtifactRepository bundlePool = createArtifactRepository(poolFolder.toURI(), null);
+		IArtifactRepository source = createArtifactRepository(getTempFolder().toURI(), null);
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "A", Version.createOSGi(1, 3, 0));
+		OutputStream output = source.getOutputStream(source.createArtifactDescriptor(key));
+		output.write(new byte[] {1, 2, 3, 4});
+		output.close();
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId("A");
+		description.setVersion(Version.createOSGi(1, 3, 0));
+		description.setCapabilities(new IProvidedCapability[] {MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, "A", Version.createOSGi(1, 3, 0))});
+		description.setTouchpointType(TOUCHPOINT_OSGI);
+		description.setUpdateDescriptor(MetadataFactory.createUpdateDescriptor("A", new VersionRange("[1.0.0, 1.0.0]"), 0, "update description"));
+		description.setArtifacts(new IArtifactKey[] {key});
+		IInstallableUnit a130WithArtifact = MetadataFactory.createInstallableUnit(description);
+
+		createTestMetdataRepository(new IInstallableUnit[] {a1, a130WithArtifact});
+		install(a1, true, false);
+		ArrayList<IInstallableUnit> iusInvolved = new ArrayList<IInstallableUnit>();
+		iusInvolved.add(a1);
+		UpdateOperation op = getProvisioningUI().getUpdateOperation(iusInvolved, null);
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setArtifactRepositories(new URI[] {source.getLocation()});
+		context.setProperty(ArtifactPrefetchJob.PROP_PREFETCH, "true");
+		op.setProvisioningContext(context);
+		final List<Job> prefetches = Collections.synchronizedList(new ArrayList<Job>());
+		IJobChangeListener listener = new JobChangeAdapter() {
+			public void scheduled(IJobChangeEvent event) {
+				if (event.getJob() instanceof ArtifactPrefetchJob)
+					prefetches.add(event.getJob());
+			}
+		};
+		Job.getJobManager().addJobChangeListener(listener);
+		try {
+			assertTrue("1.0", op.resolveModal(getMonitor()).isOK());
+		} finally {
+			Job.getJobManager().removeJobChangeListener(listener);
+		}
+		assertEquals("1.1", 1, prefetches.size());
+		Job.getJobManager().join(ArtifactPrefetchJob.FAMILY, getMonitor());
+		// prefetching must not change the profile
+		assertProfileContainsAll("1.2", getProfile(TESTPROFILE), new IInstallableUnit[] {a1});
+		assertNotIUs(new IInstallableUnit[] {a130WithArtifact}, getProfile(TESTPROFILE).query(QueryUtil.createIUAnyQuery(), null).iterator());
+		// but the artifact of the update is in the bundle pool
+		bundlePool = getArtifactRepositoryManager().loadRepository(bundlePool.getLocation(), getMonitor());
+		assertTrue("1.3", bundlePool.contains(key));
+		getArtifactRepositoryManager().removeRepository(bundlePool.getLocation());
+		getArtifactRepositoryManager().removeRepository(source.getLocation());
+	}
+
+	public void testNoPrefetchByDefault() {
+		createTestMetdataRepository(new IInstallableUnit[] {a1, a130});
+		install(a1, true, false);
+		ArrayList<IInstallableUnit> iusInvolved = new ArrayList<IInstallableUnit>();
+		iusInvolved.add(a1);
+		UpdateOperation op = getProvisioningUI().getUpdateOperation(iusInvolved, null);
+		final boolean[] scheduled = new boolean[1];
+		IJobChangeListener listener = new JobChangeAdapter() {
+			public void scheduled(IJobChangeEvent event) {
+				if (event.getJob() instanceof ArtifactPrefetchJob)
+					scheduled[0] = true;
+			}
+		};
+		Job.getJobManager().addJobChangeListener(listener);
+		try {
+			op.resolveModal(getMonitor());
+		} finally {
+			Job.getJobManager().removeJobChangeListener(listener);
+		}
+		assertFalse("1.0", scheduled[0]);
+	}
 }
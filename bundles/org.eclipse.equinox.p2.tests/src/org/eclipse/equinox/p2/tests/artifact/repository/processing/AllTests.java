@@ -19,6 +19,8 @@ public class AllTests extends TestCase {
 
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
+		suite.addTestSuite(BufferPoolTest.class);
+		suite.addTestSuite(ChecksumVerifierTest.class);
 		suite.addTestSuite(ProcessingStepHandlerTest.class);
 		suite.addTestSuite(ProcessingStepTest.class);
 		return suite;
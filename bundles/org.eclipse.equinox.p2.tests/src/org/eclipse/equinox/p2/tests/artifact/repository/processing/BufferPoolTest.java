@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.repository.processing;
+
+import java.io.*;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
+
+/**
+ * Tests for {@link BufferPool}.
+ */
+public class BufferPoolTest extends TestCase {
+
+	public void testReleasedArrayReused() {
+		BufferPool pool = new BufferPool(1024 * 1024, 1024 * 1024);
+		byte[] first = pool.acquire(1000);
+		assertEquals(BufferPool.MIN_SIZE, first.length);
+		assertEquals(0, pool.getHits());
+		assertEquals(1, pool.getMisses());
+		pool.release(first);
+		assertSame(first, pool.acquire(BufferPool.MIN_SIZE));
+		assertEquals(1, pool.getHits());
+		// a larger size class is not served from smaller arrays
+		pool.release(first);
+		assertEquals(2 * BufferPool.MIN_SIZE, pool.acquire(BufferPool.MIN_SIZE + 1).length);
+		assertEquals(2, pool.getMisses());
+	}
+
+	public void testRetainedBytesBounded() {
+		BufferPool pool = new BufferPool(BufferPool.MIN_SIZE, 1024 * 1024);
+		byte[] first = pool.acquire(BufferPool.MIN_SIZE);
+		byte[] second = pool.acquire(BufferPool.MIN_SIZE);
+		pool.release(first);
+		pool.release(second);
+		pool.acquire(BufferPool.MIN_SIZE);
+		pool.acquire(BufferPool.MIN_SIZE);
+		assertEquals(1, pool.getHits());
+		assertEquals(3, pool.getMisses());
+	}
+
+	public void testSmallBufferStaysInMemory() throws IOException {
+		BufferPool pool = new BufferPool(1024 * 1024, 100 * 1024);
+		byte[] content = createContent(50 * 1024);
+		BufferPool.Buffer buffer = pool.createBuffer(true);
+		buffer.write(content, 0, content.length);
+		buffer.close();
+		assertTrue(buffer.isInMemory());
+		assertEquals(content.length, buffer.size());
+		assertTrue(Arrays.equals(content, read(buffer)));
+		assertEquals(0, pool.getSpills());
+		buffer.release();
+	}
+
+	public void testLargeBufferSpills() throws IOException {
+		BufferPool pool = new BufferPool(1024 * 1024, 100 * 1024);
+		byte[] content = createContent(300 * 1024);
+		BufferPool.Buffer buffer = pool.createBuffer(true);
+		for (int i = 0; i < content.length; i += 1000)
+			buffer.write(content, i, Math.min(1000, content.length - i));
+		buffer.close();
+		assertFalse(buffer.isInMemory());
+		assertEquals(1, pool.getSpills());
+		assertTrue(Arrays.equals(content, read(buffer)));
+		ByteArrayOutputStream copy = new ByteArrayOutputStream();
+		buffer.writeTo(copy);
+		assertTrue(Arrays.equals(content, copy.toByteArray()));
+		buffer.release();
+
+		// a buffer that must stay in memory grows instead
+		BufferPool.Buffer memory = pool.createBuffer(false);
+		memory.write(content, 0, content.length);
+		assertTrue(memory.isInMemory());
+		assertEquals(1, pool.getSpills());
+		memory.release();
+	}
+
+	public void testBufferedStream() throws IOException {
+		BufferPool pool = new BufferPool(1024 * 1024, 1024 * 1024);
+		byte[] content = createContent(3 * BufferPool.MIN_SIZE + 17);
+		ByteArrayOutputStream destination = new ByteArrayOutputStream();
+		OutputStream stream = pool.createBufferedStream(destination);
+		stream.write(content[0]);
+		stream.write(content, 1, 100);
+		stream.write(content, 101, content.length - 101);
+		stream.close();
+		assertTrue(Arrays.equals(content, destination.toByteArray()));
+		// the buffer went back to the pool
+		pool.acquire(BufferPool.MIN_SIZE);
+		assertEquals(1, pool.getHits());
+	}
+
+	private static byte[] createContent(int size) {
+		byte[] content = new byte[size];
+		for (int i = 0; i < size; i++)
+			content[i] = (byte) (i * 31);
+		return content;
+	}
+
+	private static byte[] read(BufferPool.Buffer buffer) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		InputStream input = buffer.getInputStream();
+		try {
+			byte[] bytes = new byte[4096];
+			int read;
+			while ((read = input.read(bytes)) != -1)
+				result.write(bytes, 0, read);
+		} finally {
+			input.close();
+		}
+		return result.toByteArray();
+	}
+}
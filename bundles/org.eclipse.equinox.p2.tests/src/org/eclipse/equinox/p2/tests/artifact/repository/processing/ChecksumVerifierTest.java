@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.repository.processing;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumHelper;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumVerifier;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStepHandler;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.*;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class ChecksumVerifierTest extends AbstractProvisioningTest {
+	private static final byte[] CONTENT = {'a', 'b', 'c'};
+	private static final String MD5 = "900150983cd24fb0d6963f7d28e17f72";
+	private static final String SHA_256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	public void testAllChecksumsMatch() throws IOException {
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put(ChecksumHelper.MD5, MD5);
+		expected.put(ChecksumHelper.SHA_256, SHA_256);
+		ByteArrayOutputStream destination = new ByteArrayOutputStream();
+		ChecksumVerifier verifier = new ChecksumVerifier(expected);
+		new ProcessingStepHandler().link(new ChecksumVerifier[] {verifier}, destination, new NullProgressMonitor());
+		verifier.write(CONTENT, 0, CONTENT.length);
+		verifier.close();
+
+		assertTrue(ProcessingStepHandler.checkStatus(verifier).isOK());
+		assertEquals(3, destination.size());
+		assertEquals(MD5, verifier.getComputedChecksums().get(ChecksumHelper.MD5));
+		assertEquals(SHA_256, verifier.getComputedChecksums().get(ChecksumHelper.SHA_256));
+	}
+
+	public void testOneChecksumDiffers() throws IOException {
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put(ChecksumHelper.MD5, MD5);
+		expected.put(ChecksumHelper.SHA_256, SHA_256.replace('a', 'b'));
+		ChecksumVerifier verifier = new ChecksumVerifier(expected);
+		new ProcessingStepHandler().link(new ChecksumVerifier[] {verifier}, new ByteArrayOutputStream(), new NullProgressMonitor());
+		for (int i = 0; i < CONTENT.length; i++)
+			verifier.write(CONTENT[i]);
+		verifier.close();
+
+		IStatus status = verifier.getStatus();
+		assertEquals(IStatus.ERROR, status.getSeverity());
+		assertEquals(ProvisionException.ARTIFACT_CHECKSUM_NOT_MATCH, status.getCode());
+	}
+
+	public void testMD5Differs() throws IOException {
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put(ChecksumHelper.MD5, MD5.replace('0', '1'));
+		expected.put(ChecksumHelper.SHA_256, SHA_256);
+		ChecksumVerifier verifier = new ChecksumVerifier(expected);
+		new ProcessingStepHandler().link(new ChecksumVerifier[] {verifier}, new ByteArrayOutputStream(), new NullProgressMonitor());
+		verifier.write(CONTENT, 0, CONTENT.length);
+		verifier.close();
+
+		IStatus status = verifier.getStatus();
+		assertEquals(IStatus.ERROR, status.getSeverity());
+		assertEquals(ProvisionException.ARTIFACT_MD5_NOT_MATCH, status.getCode());
+	}
+
+	public void testComputeChecksums() throws IOException {
+		File file = new File(getTempFolder(), "content.txt");
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(CONTENT);
+		} finally {
+			output.close();
+		}
+		Map<String, String> checksums = ChecksumHelper.computeChecksums(file);
+		assertEquals(MD5, checksums.get(ChecksumHelper.MD5));
+		assertEquals(SHA_256, checksums.get(ChecksumHelper.SHA_256));
+		assertEquals(128, checksums.get(ChecksumHelper.SHA_512).length());
+		assertNull(ChecksumHelper.computeChecksums(getTempFolder()));
+	}
+
+	public void testMissingChecksumsRecordedWhileStoring() throws Exception {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(SimpleArtifactRepository.PROP_COMPUTE_CHECKSUMS, Boolean.TRUE.toString());
+		IArtifactRepository repo = createArtifactRepository(getTempFolder().toURI(), properties);
+		ArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "checksummed", Version.create("1.0.0")));
+		descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_MD5, MD5);
+		OutputStream output = repo.getOutputStream(descriptor);
+		output.write(CONTENT);
+		output.close();
+
+		IArtifactDescriptor[] stored = repo.getArtifactDescriptors(descriptor.getArtifactKey());
+		assertEquals(1, stored.length);
+		assertEquals(MD5, stored[0].getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
+		assertEquals(SHA_256, stored[0].getProperty(ChecksumHelper.getPropertyName(IArtifactDescriptor.DOWNLOAD_CHECKSUM, ChecksumHelper.SHA_256)));
+		assertNotNull(stored[0].getProperty("download.checksum.sha-512"));
+	}
+
+	public void testChecksumsNotAddedByDefault() throws Exception {
+		IArtifactRepository repo = createArtifactRepository(getTempFolder().toURI(), null);
+		ArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "checksummed", Version.create("1.0.0")));
+		descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_MD5, MD5);
+		OutputStream output = repo.getOutputStream(descriptor);
+		output.write(CONTENT);
+		output.close();
+
+		IArtifactDescriptor[] stored = repo.getArtifactDescriptors(descriptor.getArtifactKey());
+		assertEquals(1, stored.length);
+		assertEquals(MD5, stored[0].getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
+		assertNull(stored[0].getProperty("download.checksum.sha-256"));
+	}
+
+	public void testUnchecksummedArtifactStaysUnchecksummed() throws Exception {
+		IArtifactRepository repo = createArtifactRepository(getTempFolder().toURI(), null);
+		ArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "plain", Version.create("1.0.0")));
+		OutputStream output = repo.getOutputStream(descriptor);
+		output.write(CONTENT);
+		output.close();
+
+		IArtifactDescriptor[] stored = repo.getArtifactDescriptors(descriptor.getArtifactKey());
+		assertEquals(1, stored.length);
+		assertNull(stored[0].getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
+		assertNull(stored[0].getProperty("download.checksum.sha-256"));
+	}
+}
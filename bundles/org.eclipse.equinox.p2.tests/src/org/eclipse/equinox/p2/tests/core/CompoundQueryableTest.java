@@ -11,11 +11,12 @@ package org.eclipse.equinox.p2.tests.core;
 
 import org.eclipse.equinox.p2.query.MatchQuery;
 
-import java.util.Arrays;
-import java.util.Iterator;
+import java.util.*;
 import junit.framework.TestCase;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.tests.harness.TestProgressMonitor;
+import org.eclipse.equinox.internal.p2.metadata.index.ParallelQueryEvaluator;
+import org.eclipse.equinox.internal.p2.metadata.query.StreamingQuery;
 import org.eclipse.equinox.p2.query.*;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
 
@@ -286,4 +287,69 @@ public class CompoundQueryableTest extends TestCase {
 		assertTrue("1.0", monitor.isDone());
 		assertTrue("1.1", monitor.isWorkDone());
 	}
+
+	public void testStreamingQuery() {
+		IQueryable cQueryable = QueryUtil.compoundQueryable(queryable1, queryable2);
+		IQuery<Integer> query = new StreamingQuery<Integer>(new ExpressionMatchQuery<Integer>(Integer.class, "this >= $0", 4));
+		IQueryResult queryResult = cQueryable.query(query, new CompoundQueryTestProgressMonitor());
+		assertFalse("1.0", queryResult.isEmpty());
+		assertEquals("1.1", 6, AbstractProvisioningTest.queryResultSize(queryResult));
+		assertEquals("1.2", new HashSet(Arrays.asList(4, 5, 6, 8, 10, 12)), queryResult.toUnmodifiableSet());
+		// the result can be iterated again
+		assertEquals("1.3", 6, AbstractProvisioningTest.queryResultSize(queryResult));
+	}
+
+	public void testStreamingQueryStopsEarly() {
+		final int[] read = new int[1];
+		IQueryable<Integer> counting = new IQueryable<Integer>() {
+			public IQueryResult<Integer> query(IQuery<Integer> query, IProgressMonitor monitor) {
+				final Iterator<Integer> elements = Arrays.asList(1, 2, 3, 4, 5).iterator();
+				return query.perform(new Iterator<Integer>() {
+					public boolean hasNext() {
+						return elements.hasNext();
+					}
+
+					public Integer next() {
+						read[0]++;
+						return elements.next();
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				});
+			}
+		};
+		IQueryable<Integer> cQueryable = QueryUtil.compoundQueryable(counting, queryable2);
+		IQueryResult<Integer> queryResult = cQueryable.query(new StreamingQuery<Integer>(new ExpressionMatchQuery<Integer>(Integer.class, "this >= $0", 2)), null);
+		assertFalse("1.0", queryResult.isEmpty());
+		assertEquals("1.1", Integer.valueOf(2), queryResult.iterator().next());
+		assertEquals("1.2", 2, read[0]);
+		assertEquals("1.3", 8, AbstractProvisioningTest.queryResultSize(queryResult));
+		assertEquals("1.4", 5, read[0]);
+	}
+
+	public void testParallelMatchQuery() {
+		IQueryable cQueryable = QueryUtil.compoundQueryable(Arrays.asList(queryable1, queryable2, queryable3));
+		IQuery<Integer> query = new ExpressionMatchQuery<Integer>(Integer.class, "this >= $0", 4);
+		Set expected = cQueryable.query(query, null).toSet();
+		System.setProperty(ParallelQueryEvaluator.PROP_THREADS, "4");
+		try {
+			assertTrue("1.0", ParallelQueryEvaluator.isSeparable(query));
+			CompoundQueryTestProgressMonitor monitor = new CompoundQueryTestProgressMonitor();
+			IQueryResult queryResult = cQueryable.query(query, monitor);
+			assertEquals("1.1", expected, queryResult.toUnmodifiableSet());
+			assertTrue("1.2", monitor.isDone());
+			assertTrue("1.3", monitor.isWorkDone());
+			// queries needing all the elements at once are not split
+			assertFalse("2.0", ParallelQueryEvaluator.isSeparable(QueryUtil.createLimitQuery(query, 1)));
+			assertEquals("2.1", 1, AbstractProvisioningTest.queryResultSize(cQueryable.query(QueryUtil.createLimitQuery(query, 1), null)));
+			// the threads stopped with the bundle are started again by the next query
+			ParallelQueryEvaluator.shutdown();
+			assertEquals("3.0", expected, cQueryable.query(query, null).toUnmodifiableSet());
+		} finally {
+			System.getProperties().remove(ParallelQueryEvaluator.PROP_THREADS);
+			ParallelQueryEvaluator.shutdown();
+		}
+	}
 }
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.core;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.equinox.internal.p2.core.ProvisioningEventBus;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests for the asynchronous dispatching of {@link ProvisioningEventBus}.
+ */
+public class ProvisioningEventBusTest extends AbstractProvisioningTest {
+	private ProvisioningEventBus bus;
+
+	static class ProgressEvent extends EventObject implements ICoalescableEvent {
+		private static final long serialVersionUID = 1L;
+		final int value;
+
+		ProgressEvent(Object source, int value) {
+			super(source);
+			this.value = value;
+		}
+
+		public Object getCoalescingKey() {
+			return getSource();
+		}
+	}
+
+	static class RecordingListener implements ProvisioningListener {
+		final List<EventObject> events = Collections.synchronizedList(new ArrayList<EventObject>());
+		final CountDownLatch received;
+		final CountDownLatch release;
+
+		RecordingListener(int expected, CountDownLatch release) {
+			this.received = new CountDownLatch(expected);
+			this.release = release;
+		}
+
+		public void notify(EventObject o) {
+			try {
+				if (release != null)
+					release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// record anyway
+			}
+			events.add(o);
+			received.countDown();
+		}
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		bus = new ProvisioningEventBus();
+	}
+
+	protected void tearDown() throws Exception {
+		bus.close();
+		super.tearDown();
+	}
+
+	public void testEventsDeliveredInOrder() throws InterruptedException {
+		RecordingListener listener = new RecordingListener(200, null);
+		bus.addListener(listener);
+		for (int i = 0; i < 200; i++)
+			bus.publishEvent(new EventObject(Integer.valueOf(i)));
+		assertTrue(listener.received.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 200; i++)
+			assertEquals(Integer.valueOf(i), listener.events.get(i).getSource());
+		assertEquals(200, bus.getStatistics(listener).getDeliveredCount());
+	}
+
+	public void testSlowListenerDoesNotDelayOthers() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener slow = new RecordingListener(10, release);
+		RecordingListener fast = new RecordingListener(10, null);
+		bus.addListener(slow);
+		bus.addListener(fast);
+		try {
+			for (int i = 0; i < 10; i++)
+				bus.publishEvent(new EventObject(this));
+			assertTrue("fast listener was delayed", fast.received.await(10, TimeUnit.SECONDS));
+			assertTrue(slow.events.isEmpty());
+		} finally {
+			release.countDown();
+		}
+		assertTrue(slow.received.await(10, TimeUnit.SECONDS));
+	}
+
+	public void testSlowListenersDoNotDelayOthers() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener[] slow = new RecordingListener[4];
+		for (int i = 0; i < slow.length; i++) {
+			slow[i] = new RecordingListener(1, release);
+			bus.addListener(slow[i]);
+		}
+		RecordingListener fast = new RecordingListener(1, null);
+		bus.addListener(fast);
+		try {
+			bus.publishEvent(new EventObject(this));
+			assertTrue("fast listener was delayed", fast.received.await(10, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+		}
+		for (int i = 0; i < slow.length; i++)
+			assertTrue(slow[i].received.await(10, TimeUnit.SECONDS));
+	}
+
+	public void testPublisherWaitsForFullQueue() throws InterruptedException {
+		bus.close();
+		System.setProperty(ProvisioningEventBus.PROP_QUEUE_SIZE, "5");
+		try {
+			bus = new ProvisioningEventBus();
+		} finally {
+			System.getProperties().remove(ProvisioningEventBus.PROP_QUEUE_SIZE);
+		}
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener listener = new RecordingListener(50, release);
+		bus.addListener(listener);
+		final CountDownLatch published = new CountDownLatch(1);
+		Thread publisher = new Thread() {
+			public void run() {
+				for (int i = 0; i < 50; i++)
+					bus.publishEvent(new EventObject(Integer.valueOf(i)));
+				published.countDown();
+			}
+		};
+		publisher.start();
+		try {
+			assertFalse("publisher was not blocked", published.await(200, TimeUnit.MILLISECONDS));
+		} finally {
+			release.countDown();
+		}
+		assertTrue(published.await(10, TimeUnit.SECONDS));
+		assertTrue(listener.received.await(10, TimeUnit.SECONDS));
+		assertTrue(bus.getStatistics(listener).getBlockedCount() > 0);
+		// no event was dropped
+		for (int i = 0; i < 50; i++)
+			assertEquals(Integer.valueOf(i), listener.events.get(i).getSource());
+	}
+
+	public void testDispatchThreadsBounded() throws InterruptedException {
+		bus.close();
+		System.setProperty(ProvisioningEventBus.PROP_THREADS, "2");
+		try {
+			bus = new ProvisioningEventBus();
+		} finally {
+			System.getProperties().remove(ProvisioningEventBus.PROP_THREADS);
+		}
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener[] slow = new RecordingListener[2];
+		for (int i = 0; i < slow.length; i++) {
+			slow[i] = new RecordingListener(1, release);
+			bus.addListener(slow[i]);
+		}
+		RecordingListener waiting = new RecordingListener(1, null);
+		bus.addListener(waiting);
+		try {
+			bus.publishEvent(new EventObject(this));
+			// both dispatch threads are busy with the slow listeners
+			assertFalse(waiting.received.await(200, TimeUnit.MILLISECONDS));
+		} finally {
+			release.countDown();
+		}
+		assertTrue(waiting.received.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < slow.length; i++)
+			assertTrue(slow[i].received.await(10, TimeUnit.SECONDS));
+	}
+
+	public void testProgressEventsCoalesced() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener listener = new RecordingListener(3, release);
+		bus.addListener(listener);
+		Object download = new Object();
+		EventObject first = new EventObject(this);
+		bus.publishEvent(first);
+		for (int i = 0; i < 5; i++)
+			bus.publishEvent(new ProgressEvent(download, i));
+		EventObject last = new EventObject(this);
+		bus.publishEvent(last);
+		release.countDown();
+		assertTrue(listener.received.await(10, TimeUnit.SECONDS));
+		// give a wrongly delivered superseded event the chance to show up
+		Thread.sleep(100);
+
+		assertEquals(3, listener.events.size());
+		assertSame(first, listener.events.get(0));
+		assertEquals(4, ((ProgressEvent) listener.events.get(1)).value);
+		assertSame(last, listener.events.get(2));
+		assertTrue(bus.getStatistics(listener).getCoalescedCount() >= 4);
+	}
+
+	public void testOnlyEventsWithSameKeyCoalesced() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener listener = new RecordingListener(4, release);
+		bus.addListener(listener);
+		Object download = new Object();
+		Object otherDownload = new Object();
+		EventObject first = new EventObject(this);
+		bus.publishEvent(first);
+		bus.publishEvent(new ProgressEvent(download, 0));
+		EventObject plain = new EventObject(download);
+		bus.publishEvent(plain);
+		bus.publishEvent(new ProgressEvent(otherDownload, 0));
+		bus.publishEvent(new ProgressEvent(download, 1));
+		release.countDown();
+		assertTrue(listener.received.await(10, TimeUnit.SECONDS));
+		Thread.sleep(100);
+
+		assertEquals(4, listener.events.size());
+		assertSame(first, listener.events.get(0));
+		// the latest progress takes the place of the earlier one
+		assertSame(download, listener.events.get(1).getSource());
+		assertEquals(1, ((ProgressEvent) listener.events.get(1)).value);
+		assertSame(plain, listener.events.get(2));
+		assertSame(otherDownload, listener.events.get(3).getSource());
+		assertEquals(1, bus.getStatistics(listener).getCoalescedCount());
+	}
+
+	public void testSynchronousListenerNotifiedInline() {
+		final List<EventObject> events = new ArrayList<EventObject>();
+		SynchronousProvisioningListener listener = new SynchronousProvisioningListener() {
+			public void notify(EventObject o) {
+				events.add(o);
+			}
+		};
+		bus.addListener(listener);
+		EventObject event = new EventObject(this);
+		bus.publishEvent(event);
+		assertEquals(1, events.size());
+		assertSame(event, events.get(0));
+		assertEquals(1, bus.getStatistics(listener).getDeliveredCount());
+		bus.removeListener(listener);
+		assertNull(bus.getStatistics(listener));
+	}
+}
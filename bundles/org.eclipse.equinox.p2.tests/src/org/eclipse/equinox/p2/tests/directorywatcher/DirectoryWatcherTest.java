@@ -103,4 +103,63 @@ public class DirectoryWatcherTest extends AbstractProvisioningTest {
 		watcher.poll();
 		assertEquals(2, list.size());
 	}
+
+	public void testChangeDrivenWatcher() throws Exception {
+		File folder = getTempFolder();
+		File existing = new File(folder, "existing.txt");
+		writeBuffer(existing, new StringBuffer("existing"));
+		existing.setLastModified(System.currentTimeMillis() - 60000);
+
+		final List added = Collections.synchronizedList(new ArrayList());
+		final List changed = Collections.synchronizedList(new ArrayList());
+		final Map seen = Collections.synchronizedMap(new HashMap());
+		DirectoryChangeListener listener = new DirectoryChangeListener() {
+			public boolean added(File file) {
+				added.add(file);
+				seen.put(file, new Long(file.lastModified()));
+				return true;
+			}
+
+			public boolean changed(File file) {
+				changed.add(file);
+				seen.put(file, new Long(file.lastModified()));
+				return true;
+			}
+
+			public boolean isInterested(File file) {
+				return true;
+			}
+
+			public Long getSeenFile(File file) {
+				return (Long) seen.get(file);
+			}
+		};
+
+		DirectoryWatcher watcher = new DirectoryWatcher(folder);
+		watcher.addListener(listener);
+		watcher.start(50, 1500);
+		try {
+			waitFor(added, 1);
+			assertTrue(added.contains(existing));
+
+			// a new file changes the directory time stamp and is picked up quickly
+			File dropped = new File(folder, "dropped.txt");
+			writeBuffer(dropped, new StringBuffer("dropped"));
+			waitFor(added, 2);
+			assertTrue(added.contains(dropped));
+
+			// a file modified in place is picked up by the reconcile scan
+			existing.setLastModified(System.currentTimeMillis() - 30000);
+			waitFor(changed, 1);
+			assertTrue(changed.contains(existing));
+		} finally {
+			watcher.stop();
+		}
+	}
+
+	private void waitFor(List list, int size) throws InterruptedException {
+		for (int i = 0; i < 100 && list.size() < size; i++)
+			Thread.sleep(50);
+		assertTrue("Expected " + size + " notifications but got " + list, list.size() >= size);
+	}
 }
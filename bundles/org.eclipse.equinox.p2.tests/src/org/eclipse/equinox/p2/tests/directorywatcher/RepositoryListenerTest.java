@@ -10,11 +10,13 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.directorywatcher;
 
-import java.io.File;
+import java.io.*;
+import java.util.Arrays;
 import java.util.Collection;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactDescriptor;
+import org.eclipse.equinox.internal.provisional.p2.directorywatcher.RepositoryListener;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 
@@ -96,6 +98,100 @@ public class RepositoryListenerTest extends AbstractDirectoryWatcherTest {
 		assertEquals("6.1", 1, watcher.getArtifactKeys().length);
 	}
 
+	public void testTouchedFilesAreNotRepublished() {
+		File folder = getTempFolder();
+		toRemove.add(folder);
+		TestRepositoryWatcher watcher = TestRepositoryWatcher.createWatcher(folder);
+
+		// this folder contains a jared plugin and a directory plugin
+		File baseFolder = getTestData("1.0", "/testData/directorywatcher1");
+		copy("1.1", baseFolder, folder);
+		watcher.poll();
+		IInstallableUnit[] ius = watcher.getInstallableUnits();
+		assertEquals("2.0", 2, ius.length);
+		String[] published = new String[ius.length];
+		for (int i = 0; i < ius.length; i++)
+			published[i] = ius[i].getProperty(RepositoryListener.FILE_LAST_MODIFIED);
+
+		// only change the time stamps, as a copy would
+		for (int i = 0; i < ius.length; i++) {
+			File file = new File(ius[i].getProperty(RepositoryListener.FILE_NAME));
+			assertTrue("3.0", file.setLastModified(file.lastModified() + 60000));
+		}
+		watcher.poll();
+		ius = watcher.getInstallableUnits();
+		assertEquals("4.0", 2, ius.length);
+		for (int i = 0; i < ius.length; i++)
+			assertTrue("4.1", Arrays.asList(published).contains(ius[i].getProperty(RepositoryListener.FILE_LAST_MODIFIED)));
+		assertEquals("4.2", 2, watcher.getArtifactKeys().length);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(content.getBytes("UTF-8"));
+		} finally {
+			output.close();
+		}
+	}
+
+	public void testNestedChangesAreRepublished() throws IOException {
+		File folder = getTempFolder();
+		toRemove.add(folder);
+		TestRepositoryWatcher watcher = TestRepositoryWatcher.createWatcher(folder);
+
+		// the directory plugin takes its localization from a nested folder
+		File baseFolder = getTestData("1.0", "/testData/directorywatcher1");
+		copy("1.1", baseFolder, folder);
+		File plugin = new File(folder, "org.junit_3.8.2.v200706111738");
+		File manifest = new File(plugin, "META-INF/MANIFEST.MF");
+		String content = new String(getBytes(manifest), "UTF-8");
+		write(manifest, content.replaceFirst("Bundle-Localization: plugin", "Bundle-Localization: OSGI-INF/l10n/bundle"));
+		File localization = new File(plugin, "OSGI-INF/l10n/bundle_fr.properties");
+		write(localization, "pluginName=JUnit A");
+		watcher.poll();
+		assertEquals("2.0", 2, watcher.getInstallableUnits().length);
+		String published = getPublished(watcher, plugin);
+		assertNotNull("2.1", published);
+
+		// a change of the same size deep in the tree of the plugin
+		write(localization, "pluginName=JUnit B");
+		assertTrue("3.0", plugin.setLastModified(plugin.lastModified() + 60000));
+		watcher.poll();
+		assertFalse("3.1", published.equals(getPublished(watcher, plugin)));
+		published = getPublished(watcher, plugin);
+
+		// a nested file that is not metadata, changing its size
+		write(new File(plugin, "about_files/cpl-v10.html"), "changed");
+		assertTrue("4.0", plugin.setLastModified(plugin.lastModified() + 60000));
+		watcher.poll();
+		assertFalse("4.1", published.equals(getPublished(watcher, plugin)));
+	}
+
+	private static byte[] getBytes(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				output.write(buffer, 0, read);
+			return output.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+
+	private static String getPublished(TestRepositoryWatcher watcher, File file) {
+		IInstallableUnit[] ius = watcher.getInstallableUnits();
+		for (int i = 0; i < ius.length; i++) {
+			if (file.getAbsolutePath().equals(new File(ius[i].getProperty(RepositoryListener.FILE_NAME)).getAbsolutePath()))
+				return ius[i].getProperty(RepositoryListener.FILE_LAST_MODIFIED);
+		}
+		return null;
+	}
+
 	public void testBundleShape() {
 
 		// make sure we remove this file after we finish running the tests
@@ -10,15 +10,18 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.engine;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.security.GeneralSecurityException;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.equinox.internal.p2.core.ProvisioningAgent;
 import org.eclipse.equinox.internal.p2.engine.EngineActivator;
 import org.eclipse.equinox.internal.p2.engine.phases.CertificateChecker;
 import org.eclipse.equinox.p2.core.UIServices;
 import org.eclipse.equinox.p2.tests.*;
+import org.eclipse.osgi.service.security.TrustEngine;
+import org.osgi.framework.ServiceRegistration;
 
 /**
  * Tests for {@link CertificateChecker}.
@@ -27,6 +30,8 @@ public class CertificateCheckerTest extends AbstractProvisioningTest {
 	class CertificateTestService extends UIServices {
 		public boolean unsignedReturnValue = true;
 		public boolean wasPrompted = false;
+		public String[] unsignedDetail;
+		public Certificate[][] untrustedChain;
 
 		public AuthenticationInfo getUsernamePassword(String location) {
 			return null;
@@ -38,11 +43,59 @@ public class CertificateCheckerTest extends AbstractProvisioningTest {
 
 		public TrustInfo getTrustInfo(Certificate[][] untrustedChain, String[] unsignedDetail) {
 			wasPrompted = true;
+			this.unsignedDetail = unsignedDetail;
+			this.untrustedChain = untrustedChain;
 			return new TrustInfo(null, false, unsignedReturnValue);
 		}
 
 	}
 
+	/**
+	 * A trust engine that trusts the certificate it is given, and nothing else.
+	 */
+	static class TestTrustEngine extends TrustEngine {
+		private final Certificate anchor;
+
+		TestTrustEngine(Certificate anchor) {
+			this.anchor = anchor;
+		}
+
+		public Certificate findTrustAnchor(Certificate[] certChain) {
+			for (int i = 0; i < certChain.length; i++)
+				if (anchor.equals(certChain[i]))
+					return anchor;
+			return null;
+		}
+
+		protected String doAddTrustAnchor(Certificate cert, String alias) throws IOException {
+			throw new IOException("read only"); //$NON-NLS-1$
+		}
+
+		protected void doRemoveTrustAnchor(Certificate cert) throws IOException {
+			throw new IOException("read only"); //$NON-NLS-1$
+		}
+
+		protected void doRemoveTrustAnchor(String alias) throws IOException {
+			throw new IOException("read only"); //$NON-NLS-1$
+		}
+
+		public Certificate getTrustAnchor(String alias) {
+			return null;
+		}
+
+		public String[] getAliases() {
+			return new String[0];
+		}
+
+		public boolean isReadOnly() {
+			return true;
+		}
+
+		public String getName() {
+			return "CertificateCheckerTest"; //$NON-NLS-1$
+		}
+	}
+
 	CertificateChecker checker;
 	CertificateTestService serviceUI;
 	File unsigned;
@@ -156,4 +209,107 @@ public class CertificateCheckerTest extends AbstractProvisioningTest {
 			System.getProperties().remove(EngineActivator.PROP_UNSIGNED_POLICY);
 		}
 	}
+
+	/**
+	 * Tests that the signer of content signed with a certificate that no trust engine
+	 * knows is reported, and that the operation is cancelled when the user does not
+	 * trust it, also when the content was verified before.
+	 */
+	public void testUntrustedSigner() throws IOException {
+		File signed = TestData.getFile("CertificateChecker", "signed_untrusted.jar");
+		for (int run = 0; run < 2; run++) {
+			serviceUI.wasPrompted = false;
+			checker = new CertificateChecker(testAgent);
+			checker.add(signed);
+			IStatus result = checker.start();
+			assertEquals("1.0", IStatus.CANCEL, result.getSeverity());
+			assertTrue("1.1", serviceUI.wasPrompted);
+			assertNull("1.2", serviceUI.unsignedDetail);
+			assertEquals("1.3", 1, serviceUI.untrustedChain.length);
+			assertTrue("1.4", serviceUI.untrustedChain[0][0].toString().indexOf("p2 test untrusted signer") >= 0);
+		}
+	}
+
+	/**
+	 * Tests that content signed with a certificate that a trust engine trusts is installed
+	 * without prompting.
+	 */
+	public void testTrustedSigner() throws IOException, GeneralSecurityException {
+		Certificate anchor;
+		InputStream in = new FileInputStream(TestData.getFile("CertificateChecker", "trusted.cer"));
+		try {
+			anchor = CertificateFactory.getInstance("X.509").generateCertificate(in);
+		} finally {
+			in.close();
+		}
+		ServiceRegistration registration = TestActivator.getContext().registerService(TrustEngine.class.getName(), new TestTrustEngine(anchor), null);
+		try {
+			checker.add(TestData.getFile("CertificateChecker", "signed_trusted.jar"));
+			IStatus result = checker.start();
+			assertEquals("1.0", IStatus.OK, result.getSeverity());
+			assertFalse("1.1", serviceUI.wasPrompted);
+		} finally {
+			registration.unregister();
+		}
+	}
+
+	/**
+	 * Tests that content verified before is checked against the trust engines as they are
+	 * now, not as they were when it was verified.
+	 */
+	public void testTrustEngineChanged() throws IOException, GeneralSecurityException {
+		Certificate anchor;
+		InputStream in = new FileInputStream(TestData.getFile("CertificateChecker", "trusted.cer"));
+		try {
+			anchor = CertificateFactory.getInstance("X.509").generateCertificate(in);
+		} finally {
+			in.close();
+		}
+		File signed = TestData.getFile("CertificateChecker", "signed_trusted.jar");
+		checker.add(signed);
+		assertEquals("1.0", IStatus.CANCEL, checker.start().getSeverity());
+		assertTrue("1.1", serviceUI.wasPrompted);
+
+		ServiceRegistration registration = TestActivator.getContext().registerService(TrustEngine.class.getName(), new TestTrustEngine(anchor), null);
+		try {
+			serviceUI.wasPrompted = false;
+			checker = new CertificateChecker(testAgent);
+			checker.add(signed);
+			assertEquals("2.0", IStatus.OK, checker.start().getSeverity());
+			assertFalse("2.1", serviceUI.wasPrompted);
+		} finally {
+			registration.unregister();
+		}
+
+		checker = new CertificateChecker(testAgent);
+		checker.add(signed);
+		assertEquals("3.0", IStatus.CANCEL, checker.start().getSeverity());
+		assertTrue("3.1", serviceUI.wasPrompted);
+	}
+
+	/**
+	 * Tests that all the artifacts are reported when they are checked concurrently, and
+	 * again when they are checked a second time.
+	 */
+	public void testManyArtifacts() throws IOException {
+		File signed = TestData.getFile("CertificateChecker", "signed_untrusted.jar");
+		File folder = getTempFolder();
+		File[] copies = new File[20];
+		for (int i = 0; i < copies.length; i++) {
+			copies[i] = new File(folder, (i % 2 == 0 ? "unsigned" : "signed") + i + ".jar");
+			copy("0.1", i % 2 == 0 ? unsigned : signed, copies[i]);
+		}
+		for (int run = 0; run < 2; run++) {
+			serviceUI.unsignedDetail = null;
+			serviceUI.untrustedChain = null;
+			checker = new CertificateChecker(testAgent);
+			checker.add(copies);
+			IStatus result = checker.start();
+			assertEquals("1.0", IStatus.CANCEL, result.getSeverity());
+			assertEquals("1.1", copies.length / 2, serviceUI.unsignedDetail.length);
+			for (int i = 0; i < serviceUI.unsignedDetail.length; i++)
+				assertEquals("1.2", copies[2 * i].toString(), serviceUI.unsignedDetail[i]);
+			assertEquals("1.3", 1, serviceUI.untrustedChain.length);
+		}
+	}
 }
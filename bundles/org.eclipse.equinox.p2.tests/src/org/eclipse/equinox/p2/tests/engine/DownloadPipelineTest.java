@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.engine;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.engine.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.touchpoint.eclipse.Util;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ProvisioningListener;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests for {@link DownloadPipeline}.
+ */
+public class DownloadPipelineTest extends AbstractProvisioningTest {
+
+	static class TestRequest implements IArtifactRequest {
+		private volatile IStatus result;
+
+		public IArtifactKey getArtifactKey() {
+			return null;
+		}
+
+		public void perform(IArtifactRepository sourceRepository, IProgressMonitor monitor) {
+			//do nothing
+		}
+
+		public IStatus getResult() {
+			return result;
+		}
+
+		void setResult(IStatus result) {
+			this.result = result;
+		}
+	}
+
+	private IInstallableUnit first;
+	private IInstallableUnit second;
+	private TestRequest firstRequest;
+	private TestRequest secondRequest;
+	private Map<IInstallableUnit, IArtifactRequest[]> requests;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		first = createIU("first");
+		second = createIU("second");
+		firstRequest = new TestRequest();
+		secondRequest = new TestRequest();
+		requests = new HashMap<IInstallableUnit, IArtifactRequest[]>();
+		requests.put(first, new IArtifactRequest[] {firstRequest});
+		requests.put(second, new IArtifactRequest[] {secondRequest});
+	}
+
+	public void testIsEnabled() {
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		assertFalse(DownloadPipeline.isEnabled(context));
+		context.setProperty(DownloadPipeline.PROP_PIPELINED, "true");
+		assertTrue(DownloadPipeline.isEnabled(context));
+		assertFalse(DownloadPipeline.isEnabled(null));
+	}
+
+	public void testUnitAvailableBeforeOtherDownloads() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		DownloadManager manager = new DownloadManager(null, getAgent()) {
+			public IStatus start(IProgressMonitor monitor) {
+				monitor.beginTask("", 2);
+				firstRequest.setResult(Status.OK_STATUS);
+				monitor.worked(1);
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					return Status.CANCEL_STATUS;
+				}
+				secondRequest.setResult(Status.OK_STATUS);
+				monitor.worked(1);
+				return Status.OK_STATUS;
+			}
+		};
+		final IStatus[] completed = new IStatus[1];
+		DownloadPipeline pipeline = new DownloadPipeline();
+		pipeline.start(manager, requests, new NullProgressMonitor(), new DownloadPipeline.IDownloadListener() {
+			public void downloadsDone(IStatus status) {
+				completed[0] = status;
+			}
+		});
+		try {
+			assertOK("1.0", pipeline.waitFor(first, new NullProgressMonitor()));
+			assertNull("1.1", secondRequest.getResult());
+			assertTrue("1.2", pipeline.isDownloaded(first));
+			assertFalse("1.3", pipeline.isDownloaded(second));
+			assertTrue("1.4", pipeline.isDownloaded(null));
+		} finally {
+			release.countDown();
+		}
+		assertOK("2.0", pipeline.waitFor(second, new NullProgressMonitor()));
+		assertOK("2.1", pipeline.join());
+		assertOK("2.2", completed[0]);
+		// units without artifacts never wait
+		assertOK("3.0", pipeline.waitFor(createIU("third"), new NullProgressMonitor()));
+	}
+
+	public void testFailedDownloadReported() {
+		final IStatus failure = new Status(IStatus.ERROR, "test", "failed");
+		DownloadManager manager = new DownloadManager(null, getAgent()) {
+			public IStatus start(IProgressMonitor monitor) {
+				firstRequest.setResult(Status.OK_STATUS);
+				monitor.worked(1);
+				secondRequest.setResult(failure);
+				monitor.worked(1);
+				return failure;
+			}
+		};
+		DownloadPipeline pipeline = new DownloadPipeline();
+		pipeline.start(manager, requests, new NullProgressMonitor(), null);
+		assertEquals("1.0", IStatus.ERROR, pipeline.waitFor(second, new NullProgressMonitor()).getSeverity());
+		assertOK("1.1", pipeline.waitFor(first, new NullProgressMonitor()));
+		assertEquals("1.2", IStatus.ERROR, pipeline.join().getSeverity());
+	}
+
+	public void testCloseCancelsDownloads() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final boolean[] cancelled = new boolean[1];
+		DownloadManager manager = new DownloadManager(null, getAgent()) {
+			public IStatus start(IProgressMonitor monitor) {
+				started.countDown();
+				long end = System.currentTimeMillis() + 10000;
+				while (!monitor.isCanceled() && System.currentTimeMillis() < end) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+				cancelled[0] = monitor.isCanceled();
+				return Status.CANCEL_STATUS;
+			}
+		};
+		DownloadPipeline pipeline = new DownloadPipeline();
+		pipeline.start(manager, requests, new NullProgressMonitor(), null);
+		assertTrue("1.0", started.await(10, TimeUnit.SECONDS));
+		pipeline.close();
+		assertTrue("1.1", cancelled[0]);
+		// rolling back must not wait for or report the abandoned downloads
+		assertOK("1.2", pipeline.waitFor(first, new NullProgressMonitor()));
+	}
+
+	public void testWaitCancelled() {
+		final CountDownLatch release = new CountDownLatch(1);
+		DownloadManager manager = new DownloadManager(null, getAgent()) {
+			public IStatus start(IProgressMonitor monitor) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// fall through
+				}
+				return Status.CANCEL_STATUS;
+			}
+		};
+		DownloadPipeline pipeline = new DownloadPipeline();
+		pipeline.start(manager, requests, new NullProgressMonitor(), null);
+		try {
+			IProgressMonitor monitor = new NullProgressMonitor();
+			monitor.setCanceled(true);
+			assertEquals("1.0", IStatus.CANCEL, pipeline.waitFor(first, monitor).getSeverity());
+		} finally {
+			release.countDown();
+			pipeline.close();
+		}
+	}
+
+	public void testWaitWokenByProgress() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		DownloadManager manager = new DownloadManager(null, getAgent()) {
+			public IStatus start(IProgressMonitor monitor) {
+				monitor.beginTask("", 2);
+				firstRequest.setResult(Status.OK_STATUS);
+				monitor.worked(1);
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					return Status.CANCEL_STATUS;
+				}
+				secondRequest.setResult(Status.OK_STATUS);
+				monitor.worked(1);
+				return Status.OK_STATUS;
+			}
+		};
+		final int[] reported = new int[1];
+		DownloadPipeline pipeline = new DownloadPipeline();
+		pipeline.setProgressMonitor(new NullProgressMonitor() {
+			public void worked(int work) {
+				reported[0] += work;
+			}
+		});
+		pipeline.start(manager, requests, new NullProgressMonitor(), null);
+		try {
+			// the waiter is notified by the progress of the first request, not by the end of the downloads
+			assertOK("1.0", pipeline.waitFor(first, new NullProgressMonitor()));
+		} finally {
+			release.countDown();
+		}
+		assertOK("2.0", pipeline.join());
+		assertEquals("2.1", 1000, reported[0]);
+	}
+
+	/**
+	 * Records the phases as they start, and whether the session was committed or rolled back.
+	 */
+	static class PhaseListener implements ProvisioningListener {
+		final List<String> startedPhases = Collections.synchronizedList(new ArrayList<String>());
+		final List<PhaseEvent> startEvents = Collections.synchronizedList(new ArrayList<PhaseEvent>());
+		final CountDownLatch latch = new CountDownLatch(1);
+		boolean rolledBack = false;
+
+		public void notify(EventObject o) {
+			if (o instanceof PhaseEvent) {
+				if (((PhaseEvent) o).getType() == PhaseEvent.TYPE_START) {
+					startedPhases.add(((PhaseEvent) o).getPhaseId());
+					startEvents.add((PhaseEvent) o);
+				}
+			} else if (o instanceof CommitOperationEvent || o instanceof RollbackOperationEvent) {
+				rolledBack = o instanceof RollbackOperationEvent;
+				latch.countDown();
+			}
+		}
+	}
+
+	private IStatus performPipelined(IProfile profile, Collection<IInstallableUnit> units, PhaseListener listener) throws Exception {
+		URI repoLoc = getTestData("Load test data.", "/testData/testRepos/updateSite").toURI();
+		// clean possible cached artifacts so that they are downloaded again
+		Util.getBundlePoolRepository(getAgent(), profile).removeAll(new NullProgressMonitor());
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setArtifactRepositories(new URI[] {repoLoc});
+		context.setMetadataRepositories(new URI[] {repoLoc});
+		context.setProperty(DownloadPipeline.PROP_PIPELINED, Boolean.TRUE.toString());
+		IEngine engine = getEngine();
+		IProvisioningPlan plan = engine.createPlan(profile, context);
+		for (IInstallableUnit iu : getMetadataRepositoryManager().loadRepository(repoLoc, null).query(QueryUtil.ALL_UNITS, null).toSet())
+			plan.addInstallableUnit(iu);
+		for (IInstallableUnit iu : units)
+			plan.addInstallableUnit(iu);
+		getEventBus().addListener(listener);
+		try {
+			IStatus status = engine.perform(plan, new NullProgressMonitor());
+			// the events are dispatched asynchronously
+			assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+			return status;
+		} finally {
+			getEventBus().removeListener(listener);
+		}
+	}
+
+	public void testPipelinedInstall() throws Exception {
+		IProfile profile = createProfile("pipelinedInstall");
+		PhaseListener listener = new PhaseListener();
+		assertOK("1.0", performPipelined(profile, Collections.<IInstallableUnit> emptyList(), listener));
+		assertFalse("1.1", listener.rolledBack);
+		int install = listener.startedPhases.lastIndexOf(PhaseSetFactory.PHASE_INSTALL);
+		int checkTrust = listener.startedPhases.indexOf(PhaseSetFactory.PHASE_CHECK_TRUST);
+		assertTrue("1.2", install != -1 && checkTrust != -1);
+		assertTrue("1.3", checkTrust < install);
+		assertTrue("1.4", install < listener.startedPhases.indexOf(PhaseSetFactory.PHASE_CONFIGURE));
+		assertFalse("1.5", getProfile("pipelinedInstall").query(QueryUtil.ALL_UNITS, null).isEmpty());
+		// installing overlaps the downloads, but each unit has its trust checked before it is installed
+		Set<IInstallableUnit> checked = new HashSet<IInstallableUnit>();
+		for (PhaseEvent event : listener.startEvents) {
+			for (Operand operand : event.getOperands()) {
+				if (!(operand instanceof InstallableUnitOperand) || ((InstallableUnitOperand) operand).second() == null)
+					continue;
+				IInstallableUnit iu = ((InstallableUnitOperand) operand).second();
+				if (PhaseSetFactory.PHASE_CHECK_TRUST.equals(event.getPhaseId()))
+					checked.add(iu);
+				else if (PhaseSetFactory.PHASE_INSTALL.equals(event.getPhaseId()))
+					assertTrue("1.6 " + iu, checked.contains(iu));
+			}
+		}
+	}
+
+	public void testPipelinedDownloadFailureRollsBack() throws Exception {
+		IProfile profile = createProfile("pipelinedFailure");
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId("missing.artifact");
+		description.setVersion(Version.create("1.0.0"));
+		description.setTouchpointType(TOUCHPOINT_OSGI);
+		description.setArtifacts(new IArtifactKey[] {new ArtifactKey("osgi.bundle", "missing.artifact", Version.create("1.0.0"))});
+		IInstallableUnit missing = MetadataFactory.createInstallableUnit(description);
+
+		PhaseListener listener = new PhaseListener();
+		IStatus status = performPipelined(profile, Collections.singletonList(missing), listener);
+		assertEquals("1.0", IStatus.ERROR, status.getSeverity());
+		assertTrue("1.1", listener.rolledBack);
+		// the downloads failed while the trust of the units was being checked
+		assertTrue("1.2", listener.startedPhases.contains(PhaseSetFactory.PHASE_CHECK_TRUST));
+		assertFalse("1.3", listener.startedPhases.contains(PhaseSetFactory.PHASE_CONFIGURE));
+		assertEmptyProfile(getProfile("pipelinedFailure"));
+	}
+}
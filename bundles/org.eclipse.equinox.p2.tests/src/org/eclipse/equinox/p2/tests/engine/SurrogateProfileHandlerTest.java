@@ -14,10 +14,12 @@ import java.lang.reflect.Field;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.equinox.internal.p2.engine.*;
+import org.eclipse.equinox.internal.p2.metadata.query.StreamingQuery;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.engine.IProfileRegistry;
-import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.*;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
 
 public class SurrogateProfileHandlerTest extends AbstractProvisioningTest {
@@ -83,4 +85,19 @@ public class SurrogateProfileHandlerTest extends AbstractProvisioningTest {
 		assertEquals(1, queryResultSize(surrogateProfile.query(QueryUtil.createIUAnyQuery(), null)));
 		assertEquals(2, queryResultSize(surrogateProfile.available(QueryUtil.createIUAnyQuery(), null)));
 	}
+
+	public void testStreamingQueryOfSharedAndUserProfile() throws ProvisionException {
+		Profile profile = (Profile) registry.addProfile(PROFILE_NAME);
+		profile.addInstallableUnit(createIU("test"));
+		profile.addInstallableUnit(createIU("other"));
+		saveProfile(registry, profile);
+		IProfile surrogateProfile = handler.createProfile(PROFILE_NAME);
+
+		IQueryResult<IInstallableUnit> result = surrogateProfile.available(new StreamingQuery<IInstallableUnit>(QueryUtil.createIUQuery("test")), null);
+		assertFalse(result.isEmpty());
+		assertEquals(1, queryResultSize(result));
+		// the result can be read again
+		assertEquals(1, queryResultSize(result));
+		assertEquals(queryResultSize(surrogateProfile.available(QueryUtil.createIUAnyQuery(), null)), queryResultSize(surrogateProfile.available(new StreamingQuery<IInstallableUnit>(QueryUtil.createIUAnyQuery()), null)));
+	}
 }
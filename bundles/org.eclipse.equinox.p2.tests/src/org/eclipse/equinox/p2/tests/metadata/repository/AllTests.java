@@ -27,6 +27,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(StandaloneSerializationTest.class);
 		suite.addTestSuite(MetadataRepositoryManagerTest.class);
 		suite.addTestSuite(NoFailOver.class);
+		suite.addTestSuite(RepositorySnapshotsTest.class);
 		suite.addTestSuite(SiteIndexFileTest.class);
 		//		suite.addTestSuite(ResumeDownloadTest.class);
 		// DISABLING until we get a test build
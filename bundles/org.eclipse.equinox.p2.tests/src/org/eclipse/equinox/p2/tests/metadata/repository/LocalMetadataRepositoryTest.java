@@ -11,14 +11,17 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.metadata.repository;
 
-import java.io.File;
+import java.io.*;
 import java.net.URI;
 import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataIndex;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepository;
@@ -171,6 +174,76 @@ public class LocalMetadataRepositoryTest extends AbstractProvisioningTest {
 		}
 	}
 
+	public void testIndexedRepository() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		Map properties = new HashMap();
+		properties.put(IRepository.PROP_COMPRESSED, "true");
+		properties.put(LocalMetadataRepository.PROP_INDEX, "true");
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+		repo.addInstallableUnits(Arrays.asList(createIU("foo"), createIU("bar")));
+		File indexFile = new File(repoLocation, MetadataIndex.INDEX_FILENAME);
+		assertTrue("1.0", indexFile.isFile());
+		File savedIndex = new File(repoLocation, "saved.index");
+		copy("1.1", indexFile, savedIndex);
+
+		IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery("providedCapabilities.exists(p | p.name == $0)", "bar");
+		manager.removeRepository(repoLocation.toURI());
+		repo = manager.loadRepository(repoLocation.toURI(), null);
+		assertTrue("2.0", ((LocalMetadataRepository) repo).isCapabilityIndexRestored());
+		assertEquals("2.1", 1, queryResultSize(repo.query(query, getMonitor())));
+		assertEquals("2.2", 2, queryResultSize(repo.query(QueryUtil.createIUAnyQuery(), getMonitor())));
+
+		// an index that does not match the content must not be used
+		repo.addInstallableUnits(Arrays.asList(createIU("bar", Version.create("2.0.0"))));
+		copy("3.0", savedIndex, indexFile);
+		manager.removeRepository(repoLocation.toURI());
+		repo = manager.loadRepository(repoLocation.toURI(), null);
+		assertFalse("3.1", ((LocalMetadataRepository) repo).isCapabilityIndexRestored());
+		assertEquals("3.2", 2, queryResultSize(repo.query(query, getMonitor())));
+
+		// the index is removed once it is no longer wanted
+		repo.setProperty(LocalMetadataRepository.PROP_INDEX, null);
+		assertFalse("4.0", indexFile.exists());
+	}
+
+	public void testCorruptIndexIgnored() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		Map properties = new HashMap();
+		properties.put(LocalMetadataRepository.PROP_INDEX, "true");
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+		repo.addInstallableUnits(Arrays.asList(createIU("foo"), createIU("bar")));
+		File indexFile = new File(repoLocation, MetadataIndex.INDEX_FILENAME);
+		byte[] index = new byte[(int) indexFile.length()];
+		DataInputStream input = new DataInputStream(new FileInputStream(indexFile));
+		try {
+			input.readFully(index);
+		} finally {
+			input.close();
+		}
+		IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery("providedCapabilities.exists(p | p.name == $0)", "bar");
+
+		// the magic number, the format version, the checksum length, the checksum and the number of units come first
+		int namesOffset = 4 + 4 + 4 + 16 + 4;
+		int[][] corruptions = { {namesOffset, Integer.MAX_VALUE}, {namesOffset, -1}, {8, -1}, {8, Integer.MAX_VALUE}, {index.length - 4, 2}, {index.length - 4, -1}, {index.length - 8, 3}};
+		for (int i = 0; i < corruptions.length; i++) {
+			byte[] corrupt = index.clone();
+			int offset = corruptions[i][0];
+			int value = corruptions[i][1];
+			for (int j = 0; j < 4; j++)
+				corrupt[offset + j] = (byte) (value >>> (24 - 8 * j));
+			OutputStream output = new FileOutputStream(indexFile);
+			try {
+				output.write(corrupt);
+			} finally {
+				output.close();
+			}
+			manager.removeRepository(repoLocation.toURI());
+			repo = manager.loadRepository(repoLocation.toURI(), null);
+			assertFalse("1." + i, ((LocalMetadataRepository) repo).isCapabilityIndexRestored());
+			assertEquals("2." + i, 1, queryResultSize(repo.query(query, getMonitor())));
+		}
+	}
+
 	/**
 	 * Tests loading a repository that has a reference to itself as a disabled repository.
 	 * @throws MalformedURLException 
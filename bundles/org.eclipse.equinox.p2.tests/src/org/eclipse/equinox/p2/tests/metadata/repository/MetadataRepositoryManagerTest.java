@@ -15,11 +15,14 @@ import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryManager;
 import org.eclipse.equinox.internal.p2.metadata.repository.SimpleMetadataRepositoryFactory;
 import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
 import org.eclipse.equinox.internal.p2.updatesite.metadata.UpdateSiteMetadataRepositoryFactory;
@@ -28,6 +31,7 @@ import org.eclipse.equinox.internal.provisional.p2.core.eventbus.SynchronousProv
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.IAgentLocation;
 import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepository;
@@ -253,6 +257,76 @@ public class MetadataRepositoryManagerTest extends AbstractProvisioningTest {
 			fail("1.0", failures.iterator().next());
 	}
 
+	/**
+	 * Tests that threads loading the same repository concurrently share a single load.
+	 */
+	public void testConcurrentLoadsShareRepository() throws InterruptedException {
+		File site = getTestData("Repositoy", "/testData/metadataRepo/good/");
+		final URI location = site.toURI();
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		// a manager whose loads block until released, so that all the threads load at the same time
+		final IMetadataRepositoryManager blockingManager = new MetadataRepositoryManager(getAgent()) {
+			protected IRepository<IInstallableUnit> factoryLoad(URI repositoryLocation, IExtension extension, int flags, SubMonitor monitor) throws ProvisionException {
+				loading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new OperationCanceledException();
+				}
+				// the factories of the other suffixes fail to find the repository
+				IRepository<IInstallableUnit> repository = super.factoryLoad(repositoryLocation, extension, flags, monitor);
+				if (repository != null)
+					loads.incrementAndGet();
+				return repository;
+			}
+		};
+		blockingManager.removeRepository(location);
+		final IMetadataRepository[] loaded = new IMetadataRepository[8];
+		final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+		Thread[] threads = new Thread[loaded.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						loaded[index] = blockingManager.loadRepository(location, null);
+					} catch (Exception e) {
+						failures.add(e);
+					}
+				}
+			};
+		}
+		try {
+			threads[0].start();
+			assertTrue("1.0", loading.await(30, TimeUnit.SECONDS));
+			for (int i = 1; i < threads.length; i++)
+				threads[i].start();
+			// wait for the other threads to wait for the load in progress
+			for (int i = 1; i < threads.length; i++) {
+				long timeout = System.currentTimeMillis() + 30000;
+				while (threads[i].getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < timeout)
+					Thread.sleep(10);
+				assertEquals("1.1", Thread.State.TIMED_WAITING, threads[i].getState());
+			}
+		} finally {
+			release.countDown();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		try {
+			if (!failures.isEmpty())
+				fail("2.0", failures.get(0));
+			assertEquals("2.1", 1, loads.get());
+			for (int i = 1; i < loaded.length; i++)
+				assertSame("2.2", loaded[0], loaded[i]);
+			assertTrue("2.3", blockingManager.contains(location));
+		} finally {
+			blockingManager.removeRepository(location);
+		}
+	}
+
 	/**
 	 * Tests loading a repository that does not exist throws an appropriate exception.
 	 */
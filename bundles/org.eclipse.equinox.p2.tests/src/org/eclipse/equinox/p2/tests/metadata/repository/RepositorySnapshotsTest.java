@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.metadata.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryManager;
+import org.eclipse.equinox.internal.p2.metadata.repository.RepositorySnapshots;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.equinox.p2.repository.spi.RepositoryReference;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests for the snapshots of metadata repositories kept by the metadata repository manager.
+ */
+public class RepositorySnapshotsTest extends AbstractProvisioningTest {
+	private File repoLocation;
+	private File snapshotLocation;
+	private RepositorySnapshots snapshots;
+	private RepositorySnapshots oldSnapshots;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		repoLocation = getTempFolder();
+		snapshotLocation = getTempFolder();
+		MetadataRepositoryManager manager = (MetadataRepositoryManager) getMetadataRepositoryManager();
+		oldSnapshots = manager.getSnapshots();
+		snapshots = new RepositorySnapshots(getAgent(), snapshotLocation);
+		manager.setSnapshots(snapshots);
+	}
+
+	protected void tearDown() throws Exception {
+		MetadataRepositoryManager manager = (MetadataRepositoryManager) getMetadataRepositoryManager();
+		manager.setSnapshots(oldSnapshots);
+		manager.removeRepository(repoLocation.toURI());
+		delete(repoLocation);
+		delete(snapshotLocation);
+		super.tearDown();
+	}
+
+	public void testRestoreSnapshot() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		URI location = repoLocation.toURI();
+		IMetadataRepository repo = manager.createRepository(location, "SnapshotRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		repo.setProperty("snapshotKey", "snapshotValue");
+		repo.addReferences(Collections.singletonList(new RepositoryReference(new URI("http://example.com/repo"), "example", IRepository.TYPE_METADATA, IRepository.ENABLED)));
+		repo.addInstallableUnits(createUnits());
+		manager.removeRepository(location);
+
+		IMetadataRepository parsed = manager.loadRepository(location, null);
+		File contentFile = new File(repoLocation, "content.xml");
+		assertNull("1.0", snapshots.restore(location, contentFile));
+		snapshots.save();
+		assertEquals("1.1", 1, snapshotLocation.list().length);
+
+		IMetadataRepository restored = snapshots.restore(location, contentFile);
+		assertNotNull("2.0", restored);
+		assertEquals("2.1", parsed.getName(), restored.getName());
+		assertEquals("2.2", parsed.getProperties(), restored.getProperties());
+		assertEquals("2.3", new HashSet(parsed.getReferences()), new HashSet(restored.getReferences()));
+		assertContentEquals("2.4", parsed, restored);
+
+		// loading the repository again uses the snapshot
+		manager.removeRepository(location);
+		assertContentEquals("3.0", parsed, manager.loadRepository(location, null));
+	}
+
+	public void testModifiedRepositoryNotRestored() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		URI location = repoLocation.toURI();
+		IMetadataRepository repo = manager.createRepository(location, "SnapshotRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		repo.addInstallableUnits(Collections.singletonList(createIU("first")));
+		manager.removeRepository(location);
+		manager.loadRepository(location, null);
+		snapshots.save();
+		File contentFile = new File(repoLocation, "content.xml");
+		assertNotNull("1.0", snapshots.restore(location, contentFile));
+
+		repo = manager.loadRepository(location, null);
+		repo.addInstallableUnits(Collections.singletonList(createIU("second")));
+		assertNull("2.0", snapshots.restore(location, contentFile));
+		manager.removeRepository(location);
+		repo = manager.loadRepository(location, null);
+		assertEquals("2.1", 2, queryResultSize(repo.query(QueryUtil.createIUAnyQuery(), null)));
+	}
+
+	/**
+	 * Restores the repository with the units of {@link #createUnits()} from its snapshot.
+	 */
+	private IMetadataRepository restoreUnits() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		URI location = repoLocation.toURI();
+		IMetadataRepository repo = manager.createRepository(location, "SnapshotRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		repo.addInstallableUnits(createUnits());
+		manager.removeRepository(location);
+		manager.loadRepository(location, null);
+		snapshots.save();
+		IMetadataRepository restored = snapshots.restore(location, new File(repoLocation, "content.xml"));
+		assertNotNull(restored);
+		return restored;
+	}
+
+	private IInstallableUnit getFullUnit(IMetadataRepository repository) {
+		return repository.query(QueryUtil.createIUQuery("full"), null).iterator().next();
+	}
+
+	private void assertFullContent(IInstallableUnit unit) {
+		assertEquals(1, unit.getTouchpointData().size());
+		assertEquals("setStartLevel(startLevel:4);", unit.getTouchpointData().iterator().next().getInstruction("configure").getBody());
+		assertEquals("License text", unit.getLicenses().iterator().next().getBody());
+		assertEquals("Copyright text", unit.getCopyright().getBody());
+	}
+
+	public void testDeferredContent() throws Exception {
+		IMetadataRepository restored = restoreUnits();
+		File snapshot = snapshotLocation.listFiles()[0];
+		IInstallableUnit unit = getFullUnit(restored);
+		// the content is read from the snapshot when it is first accessed, the snapshot
+		// is not kept open meanwhile
+		File moved = new File(snapshotLocation, "moved");
+		assertTrue("1.0", snapshot.renameTo(moved));
+		assertTrue("1.1", moved.renameTo(snapshot));
+		assertFullContent(unit);
+		// once loaded, the content no longer depends on the snapshot
+		assertTrue("2.0", snapshot.delete());
+		assertFullContent(unit);
+	}
+
+	public void testDeletedSnapshot() throws Exception {
+		IMetadataRepository restored = restoreUnits();
+		IInstallableUnit unit = getFullUnit(restored);
+		assertTrue("1.0", snapshotLocation.listFiles()[0].delete());
+		// the content is parsed from the content file again
+		assertFullContent(unit);
+	}
+
+	public void testRewrittenSnapshot() throws Exception {
+		IMetadataRepository restored = restoreUnits();
+		IInstallableUnit unit = getFullUnit(restored);
+		File snapshot = snapshotLocation.listFiles()[0];
+		long length = snapshot.length();
+		OutputStream output = new FileOutputStream(snapshot);
+		try {
+			output.write(new byte[(int) length + 1]);
+		} finally {
+			output.close();
+		}
+		// a unit never reads its content from a snapshot other than the one it was restored from
+		assertFullContent(unit);
+	}
+
+	public void testDeletedSnapshotAndContentFile() throws Exception {
+		IMetadataRepository restored = restoreUnits();
+		IInstallableUnit unit = getFullUnit(restored);
+		assertTrue("1.0", snapshotLocation.listFiles()[0].delete());
+		assertTrue("1.1", new File(repoLocation, "content.xml").delete());
+		// the getters do not fail when the content is gone
+		assertTrue("2.0", unit.getTouchpointData().isEmpty());
+		assertTrue("2.1", unit.getLicenses().isEmpty());
+		assertNull("2.2", unit.getCopyright());
+	}
+
+	public void testSnapshotRefreshedWhileInUse() throws Exception {
+		IMetadataRepository restored = restoreUnits();
+		IInstallableUnit unit = getFullUnit(restored);
+
+		// the repository changes and a new snapshot replaces the one the unit was restored from
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		URI location = repoLocation.toURI();
+		IMetadataRepository repo = manager.loadRepository(location, null);
+		repo.removeInstallableUnits(Collections.singletonList(getFullUnit(repo)));
+		manager.removeRepository(location);
+		manager.loadRepository(location, null);
+		snapshots.save();
+		IMetadataRepository refreshed = snapshots.restore(location, new File(repoLocation, "content.xml"));
+		assertNotNull("1.0", refreshed);
+		assertTrue("1.1", refreshed.query(QueryUtil.createIUQuery("full"), null).isEmpty());
+
+		assertFullContent(unit);
+	}
+
+	private List<IInstallableUnit> createUnits() throws Exception {
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+		IInstallableUnit host = createIU("host", Version.create("1.0.0"));
+		units.add(host);
+		units.add(createIUFragment(host, "fragment", Version.create("1.0.0.v20140101")));
+
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId("full");
+		description.setVersion(Version.create("2.0.0.qualifier"));
+		description.setSingleton(true);
+		description.setProperty(IInstallableUnit.PROP_NAME, "Full unit");
+		description.setCapabilities(new IProvidedCapability[] {getSelfCapability("full", Version.create("2.0.0.qualifier")), MetadataFactory.createProvidedCapability("java.package", "org.example", Version.create("1.2.0"))});
+		IMatchExpression<IInstallableUnit> match = ExpressionUtil.getFactory().matchExpression(ExpressionUtil.parse("providedCapabilities.exists(x | x.name == $0)"), "org.example");
+		IRequirement expression = MetadataFactory.createRequirement(match, null, 0, 1, false, "an expression requirement");
+		IRequirement simple = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "host", new VersionRange("[1.0.0,2.0.0)"), "(osgi.os=linux)", false, true, true);
+		description.setRequirements(new IRequirement[] {expression, simple});
+		description.setFilter("(osgi.ws=gtk)");
+		description.setUpdateDescriptor(MetadataFactory.createUpdateDescriptor("full", new VersionRange("[0.0.0,2.0.0)"), IUpdateDescriptor.HIGH, "an update"));
+		description.setArtifacts(new IArtifactKey[] {new ArtifactKey("osgi.bundle", "full", Version.create("2.0.0.qualifier"))});
+		description.setTouchpointType(MetadataFactory.createTouchpointType("org.eclipse.equinox.p2.osgi", Version.create("1.0.0")));
+		Map<String, Object> instructions = new HashMap<String, Object>();
+		instructions.put("configure", "setStartLevel(startLevel:4);");
+		instructions.put("manifest", "Bundle-SymbolicName: full");
+		description.addTouchpointData(MetadataFactory.createTouchpointData(instructions));
+		description.setLicenses(new ILicense[] {MetadataFactory.createLicense(new URI("http://example.com/license"), "License text")});
+		description.setCopyright(MetadataFactory.createCopyright(new URI("http://example.com/copyright"), "Copyright text"));
+		units.add(MetadataFactory.createInstallableUnit(description));
+
+		IRequirement[][] scope = new IRequirement[][] {{MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "full", VersionRange.emptyRange, null, false, false)}};
+		IRequirementChange change = MetadataFactory.createRequirementChange(simple, MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "host", new VersionRange("[1.0.0,1.0.0]"), null, false, false));
+		IRequirement lifeCycle = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "full", VersionRange.emptyRange, null, false, false);
+		units.add(createIUPatch("patch", Version.create("1.0.0"), true, new IRequirementChange[] {change}, scope, lifeCycle));
+		return units;
+	}
+}
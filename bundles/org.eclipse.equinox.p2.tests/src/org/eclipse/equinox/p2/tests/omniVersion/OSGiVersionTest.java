@@ -206,6 +206,44 @@ public class OSGiVersionTest extends VersionTesting {
 
 	}
 
+	public void testLargeValueCompare() {
+		// values that do not fit in the packed representation are compared one by one
+		Version v1 = Version.parseVersion("2097151.2097151.2097151");
+		Version v2 = Version.parseVersion("2097152.0.0");
+		Version v3 = Version.parseVersion("2097152.0.0.a");
+		Version v4 = Version.parseVersion("2097152.1.0");
+		Version v5 = Version.parseVersion("1234567890.0.0");
+
+		assertOrder(v1, v2);
+		assertOrder(v2, v3);
+		assertOrder(v3, v4);
+		assertOrder(v4, v5);
+		assertOrder(v1, v5);
+		assertEquals(v2, Version.createOSGi(2097152, 0, 0));
+		assertEquals(v5, Version.createOSGi(1234567890, 0, 0));
+		assertSerialized(v2);
+		assertSerialized(v5);
+	}
+
+	public void testSameAsCreated() {
+		assertSameVersion(Version.createOSGi(1, 0, 0), "1");
+		assertSameVersion(Version.createOSGi(1, 2, 0), "1.2");
+		assertSameVersion(Version.createOSGi(1, 2, 3), "01.02.03");
+		assertSameVersion(Version.createOSGi(1, 2, 3, "abc"), "1.2.3.abc");
+		assertSameVersion(Version.createOSGi(1, 2, 3, "-_AZaz09"), "1.2.3.-_AZaz09");
+		assertSameVersion(Version.createOSGi(1, 2, 3, "zzz"), "1.2.3.zzz");
+		assertSameVersion(Version.createOSGi(1234567890, 1, 1), "1234567890.1.1");
+		assertSameVersion(Version.emptyVersion, "0.0.0");
+	}
+
+	private static void assertSameVersion(Version expected, String version) {
+		Version parsed = Version.parseVersion(version);
+		assertEquals(version, expected, parsed);
+		assertEquals(version, expected.hashCode(), parsed.hashCode());
+		assertEquals(version, 0, expected.compareTo(parsed));
+		assertEquals(version, 0, parsed.compareTo(expected));
+	}
+
 	public void testCompatability() {
 		Version v = Version.parseVersion("raw:1.2.3.'foo'");
 		assertNotNull(v);
@@ -73,6 +73,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(ExplanationForPartialInstallation.class);
 		suite.addTestSuite(ExplanationLargeConflict.class);
 		suite.addTestSuite(ExplanationSeveralConflictingRoots.class);
+		suite.addTestSuite(ExplanationTimeoutTest.class);
 		suite.addTestSuite(FindRootsAfterUpdate.class);
 		suite.addTestSuite(FromStrictToOptional.class);
 		suite.addTestSuite(GreedyRequirement.class);
@@ -134,8 +135,10 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(PatchTestUpdate4.class);
 		suite.addTestSuite(PatchTestUpdate5.class);
 		suite.addTestSuite(PatchTestUsingNegativeRequirement.class);
+		suite.addTestSuite(MatchCacheTest.class);
 		suite.addTestSuite(PermissiveSlicerTest.class);
 		suite.addTestSuite(PP2ShouldFailToInstall.class);
+		suite.addTestSuite(ReducedProblemTest.class);
 		suite.addTestSuite(ResolvedIUInPCR.class);
 		//		suite.addTestSuite(ProvisioningPlanQueryTest.class); disabled, see bug 313812 
 		suite.addTestSuite(SDKPatchingTest1.class);
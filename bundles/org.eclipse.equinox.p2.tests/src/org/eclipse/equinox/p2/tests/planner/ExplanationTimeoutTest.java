@@ -0,0 +1,126 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *      IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.internal.p2.director.*;
+import org.eclipse.equinox.internal.provisional.p2.director.PlannerStatus;
+import org.eclipse.equinox.internal.provisional.p2.director.RequestStatus;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.IProvisioningPlan;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.query.Collector;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests the cache of explanations and the explanations given up after some time.
+ */
+public class ExplanationTimeoutTest extends AbstractProvisioningTest {
+	private static final String PROP_EXPLANATION_TIMEOUT = "eclipse.p2.projector.explanation.timeout";
+
+	IInstallableUnit a1;
+	IInstallableUnit a2;
+	IInstallableUnit b1;
+	private IProfile profile;
+	private IPlanner planner;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		a1 = createIU("A", Version.create("1.0.0"), true);
+		a2 = createIU("A", Version.create("2.0.0"), true);
+		b1 = createIU("B", Version.create("1.0.0"), true);
+
+		createTestMetdataRepository(new IInstallableUnit[] {a1, a2, b1});
+
+		profile = createProfile("TestProfile." + getName());
+		planner = createPlanner();
+		ExplanationCache.clear();
+	}
+
+	protected void tearDown() throws Exception {
+		System.getProperties().remove(PROP_EXPLANATION_TIMEOUT);
+		ExplanationCache.clear();
+		super.tearDown();
+	}
+
+	private RequestStatus installConflictingIUs() {
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.addInstallableUnits(new IInstallableUnit[] {a1, a2, b1});
+		IProvisioningPlan plan = planner.getProvisioningPlan(req, null, null);
+		assertEquals(IStatus.ERROR, plan.getStatus().getSeverity());
+		return ((PlannerStatus) plan.getStatus()).getRequestStatus();
+	}
+
+	public void testCachedExplanation() {
+		RequestStatus status = installConflictingIUs();
+		assertTrue(status.isExplanationComplete());
+		assertEquals(Explanation.VIOLATED_SINGLETON_CONSTRAINT, status.getShortExplanation());
+
+		RequestStatus again = installConflictingIUs();
+		assertSame(status.getExplanations(), again.getExplanations());
+	}
+
+	private IRequirement createRequirement(String id, String version) {
+		return MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, id, new VersionRange("[" + version + "," + version + "]"), null, false, false, true);
+	}
+
+	/**
+	 * Encodes the installation of A 1.0.0, A 2.0.0, B 1.0.0 and of the unit C, which is not available.
+	 */
+	private Projector encodeConflictingRequests() {
+		IRequirement[] requirements = new IRequirement[] {createRequirement("A", "1.0.0"), createRequirement("A", "2.0.0"), createRequirement("B", "1.0.0"), createRequirement("C", "1.0.0")};
+		IInstallableUnit entryPoint = createIU("entryPoint", Version.create("1.0.0"), requirements);
+		Projector projector = new Projector(new QueryableArray(new IInstallableUnit[] {entryPoint, a1, a2, b1}), new HashMap<String, String>(), new HashSet<IInstallableUnit>(), false);
+		projector.encode(entryPoint, new IInstallableUnit[0], new Collector<IInstallableUnit>(), Arrays.asList(a1, a2, b1), new NullProgressMonitor());
+		assertEquals(IStatus.ERROR, projector.invokeSolver(new NullProgressMonitor()).getSeverity());
+		return projector;
+	}
+
+	public void testIncompleteExplanation() {
+		System.setProperty(PROP_EXPLANATION_TIMEOUT, "60000");
+		Projector projector = encodeConflictingRequests();
+		// the deadline has already passed, so none of the requests could be left out
+		Set<Explanation> explanation = projector.getExplanation(new NullProgressMonitor(), 1);
+		assertTrue(explanation.contains(Explanation.INCOMPLETE_EXPLANATION));
+		int toInstall = 0;
+		int missing = 0;
+		for (Explanation part : explanation) {
+			if (part instanceof Explanation.IUToInstall)
+				toInstall++;
+			else if (part instanceof Explanation.MissingIU)
+				missing++;
+			else
+				assertSame(part.toString(), Explanation.INCOMPLETE_EXPLANATION, part);
+		}
+		assertEquals(3, toInstall);
+		// the missing requirement is a request like the others
+		assertEquals(1, missing);
+
+		// incomplete explanations are not remembered
+		Set<Explanation> complete = projector.getExplanation(new NullProgressMonitor());
+		assertFalse(complete.contains(Explanation.INCOMPLETE_EXPLANATION));
+		assertFalse(complete.isEmpty());
+	}
+
+	public void testNoExplanationLeftRunning() {
+		System.setProperty(PROP_EXPLANATION_TIMEOUT, "60000");
+		Projector projector = encodeConflictingRequests();
+		Set<Explanation> explanation = projector.getExplanation(new NullProgressMonitor(), System.currentTimeMillis() + 5);
+		assertFalse(explanation.isEmpty());
+		// the explanation has ended by the time it is given up
+		for (Job job : Job.getJobManager().find(null))
+			assertFalse(job.getName(), Messages.Planner_NoSolution.equals(job.getName()));
+	}
+}
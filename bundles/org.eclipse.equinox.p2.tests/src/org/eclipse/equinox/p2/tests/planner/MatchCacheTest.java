@@ -0,0 +1,70 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *      IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.director.MatchCache;
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class MatchCacheTest extends AbstractProvisioningTest {
+	private IInstallableUnit a1;
+	private IInstallableUnit a2;
+	private IInstallableUnit a3;
+	private IInstallableUnit b1;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		a1 = createIU("A", Version.create("1.0.0"));
+		a2 = createIU("A", Version.create("2.0.0"));
+		a3 = createIU("A", Version.create("3.0.0"));
+		b1 = createIU("B", Version.create("1.0.0"));
+	}
+
+	public void testMatchesAreShared() {
+		MatchCache cache = new MatchCache(new QueryableArray(new IInstallableUnit[] {a1, a2, b1}));
+		IRequirement req = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "A", new VersionRange("[1.0.0,3.0.0)"), null, false, false);
+		Collection<IInstallableUnit> matches = cache.getMatches(req);
+		assertEquals(new HashSet<IInstallableUnit>(Arrays.asList(a1, a2)), new HashSet<IInstallableUnit>(matches));
+		// an equal requirement of another unit is answered from the cache
+		IRequirement same = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "A", new VersionRange("[1.0.0,3.0.0)"), null, false, false);
+		assertSame(matches, cache.getMatches(same));
+	}
+
+	public void testRestrict() {
+		MatchCache cache = new MatchCache(new QueryableArray(new IInstallableUnit[] {a1, a2, b1}));
+		QueryableArray subset = new QueryableArray(new IInstallableUnit[] {a2, a3, b1});
+		MatchCache restricted = cache.restrict(subset);
+		assertSame(subset, restricted.getQueryable());
+		assertSame(cache, cache.restrict(cache.getQueryable()));
+
+		IRequirement[] requirements = new IRequirement[] {MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "A", VersionRange.emptyRange, null, false, false), MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "A", new VersionRange("[1.0.0,2.0.0]"), null, false, false), MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "B", VersionRange.emptyRange, null, false, false), MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "C", VersionRange.emptyRange, null, false, false)};
+		for (int i = 0; i < requirements.length; i++) {
+			Set<IInstallableUnit> expected = subset.query(QueryUtil.createMatchQuery(requirements[i].getMatches()), null).toUnmodifiableSet();
+			assertEquals(Integer.toString(i), expected, new HashSet<IInstallableUnit>(restricted.getMatches(requirements[i])));
+		}
+	}
+
+	public void testRestrictToEqualUnits() {
+		MatchCache cache = new MatchCache(new QueryableArray(new IInstallableUnit[] {a1, a2, b1}));
+		// the subset holds the unit known to the cache and an equal copy of it
+		IInstallableUnit copy = createIU("A", Version.create("2.0.0"));
+		assertEquals(a2, copy);
+		assertNotSame(a2, copy);
+		MatchCache restricted = cache.restrict(new QueryableArray(new IInstallableUnit[] {a2, copy, b1}));
+		IRequirement req = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "A", VersionRange.emptyRange, null, false, false);
+		Collection<IInstallableUnit> matches = restricted.getMatches(req);
+		assertEquals(1, matches.size());
+		assertEquals(a2, matches.iterator().next());
+	}
+}
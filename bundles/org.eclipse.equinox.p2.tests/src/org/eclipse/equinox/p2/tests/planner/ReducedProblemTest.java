@@ -0,0 +1,95 @@
+/*******************************************************************************
+ *  Copyright (c) 2014 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *      IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.Set;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
+import org.eclipse.equinox.internal.provisional.p2.director.PlannerStatus;
+import org.eclipse.equinox.internal.provisional.p2.director.RequestStatus;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.IProvisioningPlan;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests that leaving the IUs that cannot be installed out of the problem given to the
+ * solver does not change the plans computed by the planner.
+ */
+public class ReducedProblemTest extends AbstractProvisioningTest {
+	private static final String PROP_REDUCE = "eclipse.p2.projector.reduce";
+
+	IInstallableUnit a1;
+	IInstallableUnit b1;
+	IInstallableUnit b2;
+	IInstallableUnit d1;
+	IInstallableUnit e1;
+	private IProfile profile;
+	private IPlanner planner;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		IRequirement[] reqB = new IRequirement[] {MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "B", new VersionRange("[1.0.0,3.0.0)"), null, false, false, true)};
+		a1 = createIU("A", Version.create("1.0.0"), reqB);
+		IRequirement[] reqD = new IRequirement[] {MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "D", VersionRange.emptyRange, null, false, false, true)};
+		b1 = createIU("B", Version.create("1.0.0"), reqD);
+		// the highest version of B can never be installed
+		IRequirement[] reqC = new IRequirement[] {MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "C", VersionRange.emptyRange, null, false, false, true)};
+		b2 = createIU("B", Version.create("2.0.0"), reqC);
+		d1 = createIU("D", Version.create("1.0.0"), true);
+		IRequirement[] reqB2 = new IRequirement[] {MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "B", new VersionRange("[2.0.0,2.0.0]"), null, false, false, true)};
+		e1 = createIU("E", Version.create("1.0.0"), reqB2);
+
+		createTestMetdataRepository(new IInstallableUnit[] {a1, b1, b2, d1, e1});
+
+		profile = createProfile("TestProfile." + getName());
+		planner = createPlanner();
+	}
+
+	protected void tearDown() throws Exception {
+		System.getProperties().remove(PROP_REDUCE);
+		super.tearDown();
+	}
+
+	private IProvisioningPlan install(IInstallableUnit iu, boolean reduce) {
+		System.setProperty(PROP_REDUCE, Boolean.toString(reduce));
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.addInstallableUnits(new IInstallableUnit[] {iu});
+		return planner.getProvisioningPlan(req, null, null);
+	}
+
+	public void testSolution() {
+		IProvisioningPlan plan = install(a1, true);
+		assertEquals(IStatus.OK, plan.getStatus().getSeverity());
+		assertInstallOperand(plan, a1);
+		assertInstallOperand(plan, b1);
+		assertInstallOperand(plan, d1);
+		assertNoOperand(plan, b2);
+		assertNoOperand(plan, e1);
+	}
+
+	public void testExplanation() {
+		IProvisioningPlan reducedPlan = install(e1, true);
+		IProvisioningPlan plan = install(e1, false);
+		assertEquals(IStatus.ERROR, reducedPlan.getStatus().getSeverity());
+		assertEquals(IStatus.ERROR, plan.getStatus().getSeverity());
+
+		// the failure is explained as if all IUs had been considered
+		RequestStatus reducedStatus = ((PlannerStatus) reducedPlan.getStatus()).getRequestStatus();
+		RequestStatus status = ((PlannerStatus) plan.getStatus()).getRequestStatus();
+		assertEquals(status.getShortExplanation(), reducedStatus.getShortExplanation());
+		Set explanation = status.getExplanations();
+		Set reducedExplanation = reducedStatus.getExplanations();
+		assertEquals(explanation.size(), reducedExplanation.size());
+		assertEquals(explanation.toString(), reducedExplanation.toString());
+	}
+}
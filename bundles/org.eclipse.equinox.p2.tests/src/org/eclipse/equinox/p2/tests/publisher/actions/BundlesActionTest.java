@@ -24,6 +24,8 @@ import org.easymock.EasyMock;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.director.QueryableArray;
 import org.eclipse.equinox.internal.p2.metadata.*;
+import org.eclipse.equinox.internal.p2.publisher.PublisherExecutor;
+import org.eclipse.equinox.internal.p2.publisher.eclipse.PublisherCache;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.publisher.*;
@@ -464,4 +466,101 @@ public class BundlesActionTest extends ActionTest {
 		Collection<IInstallableUnit> ius = publisherResult.getIUs("org.eclipse.p2.test.validManifest", IPublisherResult.ROOT);
 		assertThat(ius.size(), is(1));
 	}
+
+	public void testParallelPublishing() throws Exception {
+		File[] bundleLocations = new File[] {new File(TestActivator.getTestDataFolder(), "FragmentPublisherTest/foo"), new File(TestActivator.getTestDataFolder(), "FragmentPublisherTest/foo.fragment"), new File(TestActivator.getTestDataFolder(), "directorywatcher1")};
+
+		Thread caller = Thread.currentThread();
+		List<IArtifactKey> sequentialKeys = new ArrayList<IArtifactKey>();
+		PublisherResult sequentialResult = new PublisherResult();
+		IStatus status = new BundlesAction(bundleLocations).perform(createPublishingInfo(sequentialKeys, caller, 0), sequentialResult, new NullProgressMonitor());
+		assertTrue("1.0", status.isOK());
+
+		List<IArtifactKey> parallelKeys = new ArrayList<IArtifactKey>();
+		IPublisherInfo info = createPublishingInfo(parallelKeys, caller, IPublisherInfo.A_PARALLEL);
+		PublisherResult parallelResult = new PublisherResult();
+		String oldThreads = System.getProperty(PublisherExecutor.PROP_MAX_THREADS);
+		System.setProperty(PublisherExecutor.PROP_MAX_THREADS, "4");
+		try {
+			status = new BundlesAction(bundleLocations).perform(info, parallelResult, new NullProgressMonitor());
+		} finally {
+			if (oldThreads == null)
+				System.getProperties().remove(PublisherExecutor.PROP_MAX_THREADS);
+			else
+				System.setProperty(PublisherExecutor.PROP_MAX_THREADS, oldThreads);
+		}
+		assertTrue("2.0", status.isOK());
+
+		Collection<IInstallableUnit> expected = sequentialResult.getIUs(null, null);
+		Collection<IInstallableUnit> actual = parallelResult.getIUs(null, null);
+		assertEquals("3.0", expected.size(), actual.size());
+		assertEquals("3.1", new HashSet<IInstallableUnit>(expected), new HashSet<IInstallableUnit>(actual));
+		// the host localization fragment requires the host to be published first
+		assertEquals("3.2", 1, parallelResult.getIUs("foo.fragment.translated_host_properties", IPublisherResult.NON_ROOT).size());
+		// the artifacts are written by the calling thread, in the same order
+		assertFalse("4.0", sequentialKeys.isEmpty());
+		assertEquals("4.1", sequentialKeys, parallelKeys);
+	}
+
+	/**
+	 * Returns an info publishing to a repository which records the keys of the artifacts written
+	 * to it, and fails if they are written by another thread than the given one.
+	 */
+	private IPublisherInfo createPublishingInfo(final List<IArtifactKey> keys, final Thread writer, int options) {
+		PublisherInfo info = new PublisherInfo();
+		info.setArtifactOptions(IPublisherInfo.A_INDEX | IPublisherInfo.A_PUBLISH | options);
+		info.setArtifactRepository(new TestArtifactRepository(getAgent()) {
+			public void addDescriptor(IArtifactDescriptor descriptor, byte[] bytes) {
+				assertSame(writer, Thread.currentThread());
+				keys.add(descriptor.getArtifactKey());
+				super.addDescriptor(descriptor, bytes);
+			}
+		});
+		return info;
+	}
+
+	public void testParallelPublishBundlesWhereOneBundleIsInvalid() throws Exception {
+		File[] bundleLocations = new File(TestActivator.getTestDataFolder(), "bug331683").listFiles();
+		testAction = new BundlesAction(bundleLocations);
+		setupPublisherResult();
+		PublisherInfo info = new PublisherInfo();
+		info.setArtifactOptions(IPublisherInfo.A_PARALLEL);
+		IStatus status = testAction.perform(info, publisherResult, new NullProgressMonitor());
+
+		assertThat(status, errorStatus());
+		assertThat(status.getChildren().length, is(1));
+		Collection<IInstallableUnit> ius = publisherResult.getIUs("org.eclipse.p2.test.validManifest", IPublisherResult.ROOT);
+		assertThat(ius.size(), is(1));
+	}
+
+	public void testPublishWithCache() throws Exception {
+		File jar = new File(getTempFolder(), "org.eclipse.osgi.services_3.1.200.v20070605.jar");
+		copy("0.1", new File(TestActivator.getTestDataFolder(), "directorywatcher1/org.eclipse.osgi.services_3.1.200.v20070605.jar"), jar);
+		File cacheFile = new File(getTempFolder(), "publisher.cache");
+
+		BundlesAction action = new BundlesAction(new File[] {jar});
+		action.setCache(new PublisherCache(cacheFile));
+		PublisherResult first = new PublisherResult();
+		assertTrue("1.0", action.perform(new PublisherInfo(), first, new NullProgressMonitor()).isOK());
+		assertTrue("1.1", cacheFile.isFile());
+
+		PublisherCache cache = new PublisherCache(cacheFile);
+		assertNotNull("2.0", cache.getManifest(jar));
+		assertEquals("2.1", PublisherHelper.computeChecksums(jar), cache.getChecksums(jar));
+		IArtifactDescriptor descriptor = PublisherHelper.createArtifactDescriptor(new PublisherInfo(), ArtifactKey.parse("osgi.bundle,org.eclipse.osgi.services,3.1.200.v20070605"), jar, cache.getChecksums(jar));
+		assertEquals("2.2", PublisherHelper.computeMD5(jar), descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
+		assertNotNull("2.3", descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_CHECKSUM + ".sha-256"));
+
+		// a touched jar is validated against its content
+		assertTrue("2.4", jar.setLastModified(jar.lastModified() + 2000));
+		assertNotNull("2.5", cache.getManifest(jar));
+
+		action = new BundlesAction(new File[] {jar});
+		action.setCache(cache);
+		PublisherResult second = new PublisherResult();
+		assertTrue("3.0", action.perform(new PublisherInfo(), second, new NullProgressMonitor()).isOK());
+		assertEquals("3.1", new HashSet<IInstallableUnit>(first.getIUs(null, null)), new HashSet<IInstallableUnit>(second.getIUs(null, null)));
+		IInstallableUnit iu = second.getIU("org.eclipse.osgi.services", null);
+		assertEquals("3.2", first.getIU("org.eclipse.osgi.services", null).getProperties(), iu.getProperties());
+	}
 }
@@ -22,6 +22,7 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.IRequiredCapability;
+import org.eclipse.equinox.internal.p2.publisher.PublisherExecutor;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
@@ -65,6 +66,51 @@ public class FeaturesActionTest extends ActionTest {
 		debug("Completed FeaturesAction."); //$NON-NLS-1$
 	}
 
+	public void testParallelPublishing() throws Exception {
+		Thread caller = Thread.currentThread();
+		List<IArtifactKey> sequentialKeys = new ArrayList<IArtifactKey>();
+		PublisherResult sequentialResult = new PublisherResult();
+		new FeaturesAction(new File[] {root}).perform(createPublishingInfo(sequentialKeys, caller, 0), sequentialResult, new NullProgressMonitor());
+
+		List<IArtifactKey> parallelKeys = new ArrayList<IArtifactKey>();
+		PublisherResult parallelResult = new PublisherResult();
+		String oldThreads = System.getProperty(PublisherExecutor.PROP_MAX_THREADS);
+		System.setProperty(PublisherExecutor.PROP_MAX_THREADS, "4");
+		try {
+			new FeaturesAction(new File[] {root}).perform(createPublishingInfo(parallelKeys, caller, IPublisherInfo.A_PARALLEL), parallelResult, new NullProgressMonitor());
+		} finally {
+			if (oldThreads == null)
+				System.getProperties().remove(PublisherExecutor.PROP_MAX_THREADS);
+			else
+				System.setProperty(PublisherExecutor.PROP_MAX_THREADS, oldThreads);
+		}
+
+		Collection<IInstallableUnit> expected = sequentialResult.getIUs(null, null);
+		Collection<IInstallableUnit> actual = parallelResult.getIUs(null, null);
+		assertEquals("1.0", expected.size(), actual.size());
+		assertEquals("1.1", new HashSet<IInstallableUnit>(expected), new HashSet<IInstallableUnit>(actual));
+		// the artifacts are written by the calling thread, in the same order
+		assertEquals("2.0", new HashSet<IArtifactKey>(Arrays.asList(BAR_KEY, FOO_KEY)), new HashSet<IArtifactKey>(sequentialKeys));
+		assertEquals("2.1", sequentialKeys, parallelKeys);
+	}
+
+	/**
+	 * Returns an info publishing to a repository which records the keys of the artifacts written
+	 * to it, and fails if they are written by another thread than the given one.
+	 */
+	private IPublisherInfo createPublishingInfo(final List<IArtifactKey> keys, final Thread writer, int options) {
+		PublisherInfo info = new PublisherInfo();
+		info.setArtifactOptions(IPublisherInfo.A_INDEX | IPublisherInfo.A_PUBLISH | options);
+		info.setArtifactRepository(new TestArtifactRepository(getAgent()) {
+			public void addDescriptor(IArtifactDescriptor descriptor, byte[] bytes) {
+				assertSame(writer, Thread.currentThread());
+				keys.add(descriptor.getArtifactKey());
+				super.addDescriptor(descriptor, bytes);
+			}
+		});
+		return info;
+	}
+
 	public void testFeaturePatch() throws Exception {
 		File testFolder = getTestFolder("FeaturesAction.testFilters");
 		StringBuffer buffer = new StringBuffer();
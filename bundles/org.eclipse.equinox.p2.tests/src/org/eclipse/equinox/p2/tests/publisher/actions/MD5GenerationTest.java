@@ -22,6 +22,18 @@ public class MD5GenerationTest extends AbstractProvisioningTest {
 		assertEquals("50d4ea58b02706ab373a908338877e02", ad.getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
 	}
 
+	public void testGenerationFileAllChecksums() {
+		IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(new ArtifactKey("classifierTest", "idTest", Version.createOSGi(1, 0, 0)), getTestData("Artifact to generate from", "testData/artifactRepo/simpleWithMD5/plugins/aaPlugin_1.0.0.jar"));
+		assertEquals("50d4ea58b02706ab373a908338877e02", ad.getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
+		assertEquals(64, ad.getProperty(IArtifactDescriptor.DOWNLOAD_CHECKSUM + ".sha-256").length());
+		assertEquals(128, ad.getProperty(IArtifactDescriptor.DOWNLOAD_CHECKSUM + ".sha-512").length());
+	}
+
+	public void testGenerationFolderNoChecksums() {
+		IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(new ArtifactKey("classifierTest", "idTest", Version.createOSGi(1, 0, 0)), getTestData("Artifact to generate from", "testData/artifactRepo/simpleWithMD5/plugins/"));
+		assertNull(ad.getProperty(IArtifactDescriptor.DOWNLOAD_CHECKSUM + ".sha-256"));
+	}
+
 	public void testGenerationFile2() {
 		IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(new ArtifactKey("classifierTest", "idTest", Version.createOSGi(1, 0, 0)), getTestData("Artifact to generate from", "testData/artifactRepo/simpleWithMD5/plugins/aaPlugin_1.0.0.jar"));
 		assertEquals("50d4ea58b02706ab373a908338877e02", ad.getProperty(IArtifactDescriptor.DOWNLOAD_MD5));
@@ -354,6 +354,35 @@ public class EvaluatorTest extends AbstractProvisioningTest {
 		return metadataManager.loadRepository(metadataRepo, new NullProgressMonitor());
 	}
 
+	public void testRequirementRanges() throws Exception {
+		IInstallableUnit[] ius = new IInstallableUnit[40];
+		for (int i = 0; i < ius.length; i++) {
+			Version version = Version.createOSGi(i / 10, i % 10, 0, i % 2 == 0 ? "" : "v" + i);
+			IProvidedCapability[] provides = new IProvidedCapability[] {MetadataFactory.createProvidedCapability("test.ns", "cap", Version.createOSGi(i % 4, 0, 0))};
+			ius[i] = createIU("unit" + (i % 3), version, provides);
+		}
+		QueryableArray queryableArray = new QueryableArray(ius);
+		String[] ranges = {"0.0.0", "[1.0.0,2.0.0)", "(1.0.0,2.0.0]", "[1.3.0.v13,1.3.0.v13]", "[1.0.0,1.0.0]", "(1.9.0,4.0.0)", "[5.0.0,6.0.0)"};
+		for (int i = 0; i < ranges.length; i++) {
+			VersionRange range = new VersionRange(ranges[i]);
+			for (int j = 0; j < 3; j++) {
+				IRequirement requirement = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "unit" + j, range, null, false, false);
+				assertRequirementMatches(ranges[i], requirement, ius, queryableArray);
+			}
+			assertRequirementMatches(ranges[i], MetadataFactory.createRequirement("test.ns", "cap", range, null, false, false), ius, queryableArray);
+		}
+		assertRequirementMatches("missing", MetadataFactory.createRequirement("test.ns", "missing", VersionRange.emptyRange, null, false, false), ius, queryableArray);
+	}
+
+	private void assertRequirementMatches(String message, IRequirement requirement, IInstallableUnit[] ius, QueryableArray queryableArray) {
+		Set<IInstallableUnit> expected = new HashSet<IInstallableUnit>();
+		for (int i = 0; i < ius.length; i++)
+			if (ius[i].satisfies(requirement))
+				expected.add(ius[i]);
+		assertEquals(message, expected, queryableArray.query(QueryUtil.createMatchQuery(requirement.getMatches()), null).toUnmodifiableSet());
+		assertEquals(message, expected, queryableArray.query(QueryUtil.createQuery("select(x | x ~= $0)", requirement), null).toUnmodifiableSet());
+	}
+
 	public void testConsistency() throws Exception {
 		IMetadataRepository repo = getMDR("/testData/metadataRepo/qltest");
 
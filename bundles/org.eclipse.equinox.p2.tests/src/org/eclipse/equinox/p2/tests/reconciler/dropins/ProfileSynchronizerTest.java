@@ -13,14 +13,15 @@ package org.eclipse.equinox.p2.tests.reconciler.dropins;
 
 import java.io.File;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.Set;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
 import org.eclipse.equinox.internal.p2.reconciler.dropins.ProfileSynchronizer;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.engine.*;
 import org.eclipse.equinox.p2.engine.query.IUProfilePropertyQuery;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
 import org.eclipse.equinox.p2.tests.TestActivator;
@@ -66,6 +67,40 @@ public class ProfileSynchronizerTest extends AbstractProvisioningTest {
 		assertEquals(originalSize - 1, registry.getProfile("SDKProfile").query(QueryUtil.ALL_UNITS, null).toUnmodifiableSet().size());
 	}
 
+	public void testIncrementalRequestOnlyContainsChanges() {
+		IInstallableUnit added = createIU("incremental.added");
+		IMetadataRepository repository = createTestMetdataRepository(new IInstallableUnit[] {added});
+		String location = repository.getLocation().toString();
+		IInstallableUnit headless = sdkProfile.query(QueryUtil.createIUQuery("aniefer.junit.headless"), null).iterator().next();
+
+		// the repository used to contain the headless bundle and has changed since
+		Map<String, String> lastTimestamps = new HashMap<String, String>();
+		lastTimestamps.put(location, "0");
+		Map<String, Set<String>> lastFingerprints = new HashMap<String, Set<String>>();
+		lastFingerprints.put(location, Collections.singleton(ProfileSynchronizer.getKey(headless)));
+
+		ProfileSynchronizer sync = new ProfileSynchronizer(agent, sdkProfile, Collections.singletonList(repository));
+		ProfileChangeRequest request = sync.createIncrementalProfileChangeRequest(lastTimestamps, lastFingerprints);
+		assertNotNull(request);
+		assertEquals(Collections.singletonList(added), new ArrayList<IInstallableUnit>(request.getAdditions()));
+		assertEquals(Collections.singletonList(headless), new ArrayList<IInstallableUnit>(request.getRemovals()));
+	}
+
+	public void testIncrementalRequestUnchangedRepository() {
+		IInstallableUnit headless = sdkProfile.query(QueryUtil.createIUQuery("aniefer.junit.headless"), null).iterator().next();
+		IMetadataRepository repository = createTestMetdataRepository(new IInstallableUnit[] {headless});
+		String location = repository.getLocation().toString();
+		String timestamp = repository.getProperties().get(IRepository.PROP_TIMESTAMP);
+
+		Map<String, String> lastTimestamps = new HashMap<String, String>();
+		lastTimestamps.put(location, timestamp == null ? "-1" : timestamp);
+		Map<String, Set<String>> lastFingerprints = new HashMap<String, Set<String>>();
+		lastFingerprints.put(location, Collections.singleton(ProfileSynchronizer.getKey(headless)));
+
+		ProfileSynchronizer sync = new ProfileSynchronizer(agent, sdkProfile, Collections.singletonList(repository));
+		assertNull(sync.createIncrementalProfileChangeRequest(lastTimestamps, lastFingerprints));
+	}
+
 	private void initializeReconciler() throws IllegalAccessException {
 		Field[] fields = org.eclipse.equinox.internal.p2.reconciler.dropins.Activator.class.getDeclaredFields();
 		for (int i = 0; i < fields.length; i++) {
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.simpleconfigurator;
+
+import java.io.*;
+import java.net.URI;
+import java.util.List;
+import org.eclipse.equinox.internal.simpleconfigurator.utils.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class BundleInfoCacheTest extends AbstractProvisioningTest {
+	private static final String BUNDLES_INFO = "#version=1\njavax.servlet,2.4.0.v200806031604,plugins/javax.servlet_2.4.0.v200806031604.jar,4,false\norg.eclipse.osgi,3.10.0,file:/opt/eclipse/plugins/org.eclipse.osgi_3.10.0.jar,-1,true\n";
+
+	private File writeBundlesInfo(File folder, String content) throws IOException {
+		File bundlesInfo = new File(folder, "bundles.info");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(bundlesInfo), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return bundlesInfo;
+	}
+
+	public void testRoundTrip() throws IOException {
+		File folder = getTempFolder();
+		URI base = folder.toURI();
+		File bundlesInfo = writeBundlesInfo(folder, BUNDLES_INFO);
+		List<BundleInfo> infos = SimpleConfiguratorUtils.readConfiguration(bundlesInfo.toURL(), base);
+		String key = BundleInfoCache.computeKey(bundlesInfo.toURL(), base);
+		assertNotNull(key);
+
+		File cacheFile = new File(folder, "bundles.cache");
+		BundleInfoCache.create(key, infos).write(cacheFile);
+		BundleInfoCache cache = BundleInfoCache.read(cacheFile, key);
+		assertNotNull(cache);
+
+		BundleInfo[] bundles = cache.getBundles();
+		assertEquals(infos.size(), bundles.length);
+		for (int i = 0; i < bundles.length; i++) {
+			BundleInfo expected = infos.get(i);
+			assertEquals(expected.getSymbolicName(), bundles[i].getSymbolicName());
+			assertEquals(expected.getVersion(), bundles[i].getVersion());
+			assertEquals(expected.getStartLevel(), bundles[i].getStartLevel());
+			assertEquals(expected.isMarkedAsStarted(), bundles[i].isMarkedAsStarted());
+			assertEquals(SimpleConfiguratorUtils.getBundleLocation(expected, true), cache.getBundleLocation(i, true));
+			assertEquals(SimpleConfiguratorUtils.getBundleLocation(expected, false), cache.getBundleLocation(i, false));
+		}
+	}
+
+	public void testChangedConfigurationMisses() throws IOException {
+		File folder = getTempFolder();
+		URI base = folder.toURI();
+		File bundlesInfo = writeBundlesInfo(folder, BUNDLES_INFO);
+		String key = BundleInfoCache.computeKey(bundlesInfo.toURL(), base);
+		File cacheFile = new File(folder, "bundles.cache");
+		BundleInfoCache.create(key, SimpleConfiguratorUtils.readConfiguration(bundlesInfo.toURL(), base)).write(cacheFile);
+
+		assertFalse(key.equals(BundleInfoCache.computeKey(bundlesInfo.toURL(), new File(folder, "other").toURI())));
+		writeBundlesInfo(folder, BUNDLES_INFO.replace("-1,true", "4,true"));
+		String changedKey = BundleInfoCache.computeKey(bundlesInfo.toURL(), base);
+		assertFalse(key.equals(changedKey));
+		assertNull(BundleInfoCache.read(cacheFile, changedKey));
+	}
+
+	public void testKeyIdentifiesModeAndLastState() throws IOException {
+		File folder = getTempFolder();
+		URI base = folder.toURI();
+		File bundlesInfo = writeBundlesInfo(folder, BUNDLES_INFO);
+		File lastState = new File(folder, "last.bundles.info");
+		String exclusiveKey = BundleInfoCache.computeKey(bundlesInfo.toURL(), base, true, lastState);
+		assertNotNull(exclusiveKey);
+		// without a last state there is no key outside of exclusive mode
+		assertNull(BundleInfoCache.computeKey(bundlesInfo.toURL(), base, false, lastState));
+
+		copy("0.1", bundlesInfo, lastState);
+		String key = BundleInfoCache.computeKey(bundlesInfo.toURL(), base, false, lastState);
+		assertNotNull(key);
+		assertFalse(key.equals(exclusiveKey));
+		assertEquals(exclusiveKey, BundleInfoCache.computeKey(bundlesInfo.toURL(), base, true, lastState));
+
+		File otherInfo = writeBundlesInfo(getTempFolder(), "#version=1\norg.eclipse.osgi,3.10.0,file:/opt/eclipse/plugins/org.eclipse.osgi_3.10.0.jar,-1,true\n");
+		copy("0.2", otherInfo, lastState);
+		assertFalse(key.equals(BundleInfoCache.computeKey(bundlesInfo.toURL(), base, false, lastState)));
+	}
+
+	public void testLongValues() throws IOException {
+		File folder = getTempFolder();
+		StringBuffer name = new StringBuffer();
+		while (name.length() < 70000)
+			name.append("bundle.");
+		File bundlesInfo = writeBundlesInfo(folder, "#version=1\n" + name + ",1.0.0,plugins/" + name + ".jar,4,false\n");
+		List<BundleInfo> infos = SimpleConfiguratorUtils.readConfiguration(bundlesInfo.toURL(), folder.toURI());
+		String key = name.toString();
+		File cacheFile = new File(folder, "bundles.cache");
+		BundleInfoCache.create(key, infos).write(cacheFile);
+		BundleInfoCache cache = BundleInfoCache.read(cacheFile, key);
+		assertNotNull(cache);
+		assertEquals(name.toString(), cache.getBundles()[0].getSymbolicName());
+		assertEquals(SimpleConfiguratorUtils.getBundleLocation(infos.get(0), false), cache.getBundleLocation(0, false));
+	}
+
+	public void testMissingOrCorruptCache() throws IOException {
+		File folder = getTempFolder();
+		File cacheFile = new File(folder, "bundles.cache");
+		assertNull(BundleInfoCache.read(cacheFile, "key"));
+		OutputStream output = new FileOutputStream(cacheFile);
+		try {
+			output.write(new byte[] {0, 0, 0, 1, 0});
+		} finally {
+			output.close();
+		}
+		assertNull(BundleInfoCache.read(cacheFile, "key"));
+		assertNull(BundleInfoCache.computeKey(new File(folder, "missing.info").toURL(), null));
+	}
+}
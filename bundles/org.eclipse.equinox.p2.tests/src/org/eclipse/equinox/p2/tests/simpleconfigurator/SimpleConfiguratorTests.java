@@ -30,6 +30,7 @@ public class SimpleConfiguratorTests {
 		if (!AbstractSharedInstallTest.WINDOWS) {
 			suite.addTestSuite(SimpleConfiguratorUtilsExtendedConfiguredTest.class);
 		}
+		suite.addTestSuite(BundleInfoCacheTest.class);
 
 		suite.addTestSuite(BundlesTxtTest.class);
 		suite.addTestSuite(BundlesTxtTestExtended.class);
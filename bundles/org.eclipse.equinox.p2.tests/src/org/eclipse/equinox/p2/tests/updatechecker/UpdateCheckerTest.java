@@ -12,7 +12,9 @@ package org.eclipse.equinox.p2.tests.updatechecker;
 
 import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
 
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.equinox.internal.provisional.p2.director.IDirector;
 import org.eclipse.equinox.internal.provisional.p2.updatechecker.IUpdateChecker;
@@ -20,6 +22,9 @@ import org.eclipse.equinox.internal.provisional.p2.updatechecker.UpdateEvent;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.ICompositeRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
 import org.eclipse.equinox.p2.tests.TestActivator;
 
@@ -80,4 +85,106 @@ public class UpdateCheckerTest extends AbstractProvisioningTest {
 		listener.waitForEvent();
 		listener.verify(1);
 	}
-}
\ No newline at end of file
+
+	public void testPeriodicChecks() throws InterruptedException {
+		IUpdateChecker checker = getChecker();
+		ArrayList<IInstallableUnit> toUpdate = new ArrayList<IInstallableUnit>();
+		toUpdate.add(toInstallIU);
+		TestUpdateListener first = new TestUpdateListener(new UpdateEvent(profile.getProfileId(), toUpdate));
+		TestUpdateListener second = new TestUpdateListener(new UpdateEvent(profile.getProfileId(), toUpdate));
+		checker.addUpdateCheck(profile.getProfileId(), QueryUtil.createIUAnyQuery(), 10, 100, first);
+		checker.addUpdateCheck(profile.getProfileId(), QueryUtil.createIUAnyQuery(), 10, 100, second);
+		try {
+			// both checks are run repeatedly by the shared scheduler
+			long waitStart = System.currentTimeMillis();
+			while ((first.expectedCount < 2 || second.expectedCount < 2) && System.currentTimeMillis() - waitStart < 10000)
+				Thread.sleep(50);
+			assertTrue("1.0", first.expectedCount >= 2);
+			assertTrue("1.1", second.expectedCount >= 2);
+			assertEquals("1.2", 0, first.unexpectedCount + second.unexpectedCount);
+		} finally {
+			checker.removeUpdateCheck(first);
+		}
+
+		// a removed check is not run anymore while the other one continues
+		Thread.sleep(200);
+		int count = first.expectedCount;
+		int otherCount = second.expectedCount;
+		Thread.sleep(500);
+		checker.removeUpdateCheck(second);
+		assertEquals("2.0", count, first.expectedCount);
+		assertTrue("2.1", second.expectedCount > otherCount);
+	}
+
+	/**
+	 * Tests that a listener failing to handle the updates does not make its check run again
+	 * at once, nor stop the other checks.
+	 */
+	public void testFailingListener() throws InterruptedException {
+		IUpdateChecker checker = getChecker();
+		ArrayList<IInstallableUnit> toUpdate = new ArrayList<IInstallableUnit>();
+		toUpdate.add(toInstallIU);
+		TestUpdateListener failing = new TestUpdateListener(new UpdateEvent(profile.getProfileId(), toUpdate)) {
+			public void updatesAvailable(UpdateEvent event) {
+				super.updatesAvailable(event);
+				throw new IllegalStateException("expected failure");
+			}
+		};
+		TestUpdateListener other = new TestUpdateListener(new UpdateEvent(profile.getProfileId(), toUpdate));
+		checker.addUpdateCheck(profile.getProfileId(), QueryUtil.createIUAnyQuery(), 10, 200, failing);
+		checker.addUpdateCheck(profile.getProfileId(), QueryUtil.createIUAnyQuery(), 10, 200, other);
+		try {
+			Thread.sleep(1000);
+		} finally {
+			checker.removeUpdateCheck(failing);
+			checker.removeUpdateCheck(other);
+		}
+		// the failing check is run again when it is next due
+		assertTrue("1.0", failing.expectedCount >= 2);
+		assertTrue("1.1", failing.expectedCount <= 1000 / 200 + 2);
+		assertTrue("1.2", other.expectedCount >= 2);
+		assertEquals("1.3", 0, failing.unexpectedCount + other.unexpectedCount);
+	}
+
+	/**
+	 * Tests that an update added to a child of a composite repository is found, although the
+	 * index of the composite repository itself does not change.
+	 */
+	public void testUpdateInCompositeChild() throws Exception {
+		String id = "composite." + getName();
+		IInstallableUnit installed = createIU(id, Version.createOSGi(1, 0, 0));
+		IInstallableUnit childUpdate = createIU(id, Version.createOSGi(2, 0, 0), null, NO_REQUIRES, NO_PROVIDES, NO_PROPERTIES, ITouchpointType.NONE, NO_TP_DATA, true, createUpdateDescriptor(id, Version.createOSGi(2, 0, 0)), null);
+		createTestMetdataRepository(new IInstallableUnit[] {installed});
+		IProfile compositeProfile = createProfile("CompositeProfile." + getName());
+		ProfileChangeRequest request = new ProfileChangeRequest(compositeProfile);
+		request.addInstallableUnits(new IInstallableUnit[] {installed});
+		assertTrue("setup.1", createDirector().provision(request, null, null).isOK());
+
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		URI childLocation = getTempFolder().toURI();
+		URI compositeLocation = getTempFolder().toURI();
+		IMetadataRepository child = manager.createRepository(childLocation, "child", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		ICompositeRepository<?> composite = (ICompositeRepository<?>) manager.createRepository(compositeLocation, "composite", IMetadataRepositoryManager.TYPE_COMPOSITE_REPOSITORY, null);
+		composite.addChild(childLocation);
+
+		IUpdateChecker checker = getChecker();
+		ArrayList<IInstallableUnit> toUpdate = new ArrayList<IInstallableUnit>();
+		toUpdate.add(installed);
+		TestUpdateListener listener = new TestUpdateListener(new UpdateEvent(compositeProfile.getProfileId(), toUpdate));
+		checker.addUpdateCheck(compositeProfile.getProfileId(), QueryUtil.createIUAnyQuery(), 10, 100, listener);
+		try {
+			// let a few checks without updates run
+			Thread.sleep(500);
+			listener.verify(0);
+
+			child.addInstallableUnits(Collections.singletonList(childUpdate));
+			listener.waitForEvent();
+			assertTrue("1.0", listener.expectedCount > 0);
+			assertEquals("1.1", 0, listener.unexpectedCount);
+		} finally {
+			checker.removeUpdateCheck(listener);
+			manager.removeRepository(compositeLocation);
+			manager.removeRepository(childLocation);
+		}
+	}
+}
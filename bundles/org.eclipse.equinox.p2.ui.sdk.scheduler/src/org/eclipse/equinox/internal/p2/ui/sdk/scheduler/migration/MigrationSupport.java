@@ -17,6 +17,7 @@ import java.util.*;
 import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
 import org.eclipse.equinox.internal.p2.engine.EngineActivator;
+import org.eclipse.equinox.internal.p2.metadata.query.StreamingQuery;
 import org.eclipse.equinox.internal.p2.metadata.query.UpdateQuery;
 import org.eclipse.equinox.internal.p2.ui.sdk.scheduler.*;
 import org.eclipse.equinox.p2.core.IAgentLocation;
@@ -163,7 +164,7 @@ public class MigrationSupport {
 		//For the IUs left in the previous profile, look for those that could be available in the root but as higher versions (they could be root or not)
 		previousProfileIterator = previousProfileUnits.iterator();
 		while (previousProfileIterator.hasNext()) {
-			if (!currentProfile.available(new UpdateQuery(previousProfileIterator.next()), null).isEmpty())
+			if (!currentProfile.available(new StreamingQuery<IInstallableUnit>(new UpdateQuery(previousProfileIterator.next())), null).isEmpty())
 				previousProfileIterator.remove();
 		}
 
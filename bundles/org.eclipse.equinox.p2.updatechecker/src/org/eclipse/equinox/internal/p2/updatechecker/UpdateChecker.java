@@ -11,13 +11,16 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.updatechecker;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.net.URI;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.repository.AuthenticationFailedException;
+import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.internal.provisional.p2.updatechecker.*;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
@@ -25,70 +28,97 @@ import org.eclipse.equinox.p2.engine.*;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.planner.IPlanner;
 import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.ICompositeRepository;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 
 /**
  * Default implementation of {@link IUpdateChecker}.
  * <p>
- * This implementation is not optimized.  It doesn't optimize for multiple
- * polls on the same profile, nor does it cache any info about a profile from
- * poll to poll.
+ * All the registered checks are run by a single scheduler thread. When several checks are
+ * due at the same time, the metadata repositories are refreshed once for all of them. A
+ * simple repository is only refreshed when the time stamp of its index changed, and the
+ * update query of a check is only evaluated again when a repository or the profile changed
+ * since the previous evaluation. Otherwise the listener is notified of the updates found then.
+ * The index of a composite repository does not change when its children do, so composite
+ * repositories count as changed on every check.
+ * </p>
  */
 public class UpdateChecker implements IUpdateChecker {
 	public static boolean DEBUG = false;
 	public static boolean TRACE = false;
+	// the index files of the simple repositories whose time stamp tells whether a repository changed
+	private static final String[] INDEX_FILES = {"content.jar", "content.xml"}; //$NON-NLS-1$ //$NON-NLS-2$
+	// the index of repositories that have no index whose time stamp can be used
+	private static final String NO_INDEX = ""; //$NON-NLS-1$
+	private static final long UNKNOWN = -1L;
+
 	/**
-	 * Map of IUpdateListener->UpdateCheckThread.
+	 * Map of IUpdateListener->UpdateCheck.
 	 */
-	private HashMap<IUpdateListener, UpdateCheckThread> checkers = new HashMap<IUpdateListener, UpdateCheckThread>();
+	private final Map<IUpdateListener, UpdateCheck> checkers = new HashMap<IUpdateListener, UpdateCheck>();
+	private SchedulerThread scheduler;
 
 	private final IProvisioningAgent agent;
 	IProfileRegistry profileRegistry;
 	IPlanner planner;
 
-	private class UpdateCheckThread extends Thread {
+	// the time stamps of the repository indexes at the last refresh
+	private final Map<URI, Long> repositoryTimestamps = new HashMap<URI, Long>();
+	// the index file of each repository, once known
+	private final Map<URI, String> repositoryIndexes = new HashMap<URI, String>();
+	// incremented whenever the content of the known repositories may have changed
+	private long repositoryGeneration = 0;
+	private URI[] availableRepositories = new URI[0];
+
+	private static class UpdateCheck {
+		final String profileId;
+		final IQuery<IInstallableUnit> query;
+		final IUpdateListener listener;
+		final long poll;
+		long nextCheck;
 		boolean done = false;
-		long poll, delay;
-		IUpdateListener listener;
-		String profileId;
-		IQuery<IInstallableUnit> query;
-
-		UpdateCheckThread(String profileId, IQuery<IInstallableUnit> query, long delay, long poll, IUpdateListener listener) {
-			this.poll = poll;
-			this.delay = delay;
+		// the state the last result was computed for
+		long generation = -1;
+		long profileTimestamp = -1;
+		Collection<IInstallableUnit> lastResult;
+
+		UpdateCheck(String profileId, IQuery<IInstallableUnit> query, long delay, long poll, IUpdateListener listener) {
 			this.profileId = profileId;
 			this.query = query;
 			this.listener = listener;
+			this.poll = (delay == ONE_TIME_CHECK || delay <= 0) ? ONE_TIME_CHECK : poll;
+			this.nextCheck = System.currentTimeMillis() + (delay > 0 ? delay : 0);
+		}
+	}
+
+	private class SchedulerThread extends Thread {
+		SchedulerThread() {
+			super("Update Checker"); //$NON-NLS-1$
+			setDaemon(true);
 		}
 
 		public void run() {
 			try {
-				if (delay != ONE_TIME_CHECK && delay > 0) {
-					Thread.sleep(delay);
-				}
-				while (!done) {
-
-					trace("Checking for updates for " + profileId + " at " + getTimeStamp()); //$NON-NLS-1$ //$NON-NLS-2$
-					Collection<IInstallableUnit> iusWithUpdates = checkForUpdates(profileId, query);
-					if (iusWithUpdates.size() > 0) {
-						trace("Notifying listener of available updates"); //$NON-NLS-1$
-						UpdateEvent event = new UpdateEvent(profileId, iusWithUpdates);
-						if (!done)
-							listener.updatesAvailable(event);
-					} else {
-						trace("No updates were available"); //$NON-NLS-1$
-					}
-					if (delay == ONE_TIME_CHECK || delay <= 0) {
-						done = true;
-					} else {
-						Thread.sleep(poll);
+				List<UpdateCheck> due;
+				while ((due = waitForDueChecks()) != null) {
+					trace("Checking for updates for " + due.size() + " profile(s) at " + getTimeStamp()); //$NON-NLS-1$ //$NON-NLS-2$
+					try {
+						refreshRepositories();
+					} catch (RuntimeException e) {
+						// check against the repositories known from the previous refresh
+						LogHelper.log(new Status(IStatus.ERROR, UpdateCheckerComponent.BUNDLE_ID, "Exception refreshing the repositories in update check thread", e)); //$NON-NLS-1$
 					}
+					for (UpdateCheck check : due)
+						runCheck(check);
 				}
 			} catch (InterruptedException e) {
 				// nothing
 			} catch (Exception e) {
 				LogHelper.log(new Status(IStatus.ERROR, UpdateCheckerComponent.BUNDLE_ID, "Exception in update check thread", e)); //$NON-NLS-1$
+			} finally {
+				schedulerDone(this);
 			}
 		}
 	}
@@ -100,20 +130,117 @@ public class UpdateChecker implements IUpdateChecker {
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.internal.provisional.p2.updatechecker.IUpdateChecker#addUpdateCheck(java.lang.String, long, long, org.eclipse.equinox.internal.provisional.p2.updatechecker.IUpdateListener)
 	 */
-	public void addUpdateCheck(String profileId, IQuery<IInstallableUnit> query, long delay, long poll, IUpdateListener listener) {
+	public synchronized void addUpdateCheck(String profileId, IQuery<IInstallableUnit> query, long delay, long poll, IUpdateListener listener) {
 		if (checkers.containsKey(listener))
 			return;
 		trace("Adding update checker for " + profileId + " at " + getTimeStamp()); //$NON-NLS-1$ //$NON-NLS-2$
-		UpdateCheckThread thread = new UpdateCheckThread(profileId, query, delay, poll, listener);
-		checkers.put(listener, thread);
-		thread.start();
+		checkers.put(listener, new UpdateCheck(profileId, query, delay, poll, listener));
+		if (scheduler == null) {
+			scheduler = new SchedulerThread();
+			scheduler.start();
+		} else {
+			notifyAll();
+		}
 	}
 
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.internal.provisional.p2.updatechecker.IUpdateChecker#removeUpdateCheck(org.eclipse.equinox.internal.provisional.p2.updatechecker.IUpdateListener)
 	 */
-	public void removeUpdateCheck(IUpdateListener listener) {
-		checkers.remove(listener);
+	public synchronized void removeUpdateCheck(IUpdateListener listener) {
+		UpdateCheck check = checkers.remove(listener);
+		if (check != null) {
+			check.done = true;
+			notifyAll();
+		}
+	}
+
+	/*
+	 * Waits until at least one check is due and returns the due checks, or returns null
+	 * when no check is left to run.
+	 */
+	synchronized List<UpdateCheck> waitForDueChecks() throws InterruptedException {
+		while (true) {
+			long now = System.currentTimeMillis();
+			long next = Long.MAX_VALUE;
+			List<UpdateCheck> due = new ArrayList<UpdateCheck>();
+			for (UpdateCheck check : checkers.values()) {
+				if (check.done)
+					continue;
+				if (check.nextCheck <= now)
+					due.add(check);
+				else
+					next = Math.min(next, check.nextCheck);
+			}
+			if (!due.isEmpty())
+				return due;
+			if (next == Long.MAX_VALUE)
+				return null;
+			wait(next - now);
+		}
+	}
+
+	synchronized void schedulerDone(SchedulerThread thread) {
+		if (scheduler != thread)
+			return;
+		scheduler = null;
+		// a check may have been added while the thread was exiting
+		for (UpdateCheck check : checkers.values()) {
+			if (!check.done) {
+				scheduler = new SchedulerThread();
+				scheduler.start();
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Runs the given check and schedules its next run. A failing check is logged and run
+	 * again when it is next due, without affecting the other checks.
+	 */
+	void runCheck(UpdateCheck check) {
+		synchronized (this) {
+			if (check.done)
+				return;
+		}
+		try {
+			Collection<IInstallableUnit> iusWithUpdates = checkForUpdates(check);
+			if (iusWithUpdates.size() > 0) {
+				trace("Notifying listener of available updates"); //$NON-NLS-1$
+				UpdateEvent event = new UpdateEvent(check.profileId, iusWithUpdates);
+				synchronized (this) {
+					if (check.done)
+						return;
+				}
+				check.listener.updatesAvailable(event);
+			} else {
+				trace("No updates were available"); //$NON-NLS-1$
+			}
+		} catch (Exception e) {
+			LogHelper.log(new Status(IStatus.ERROR, UpdateCheckerComponent.BUNDLE_ID, "Exception in update check for " + check.profileId, e)); //$NON-NLS-1$
+		} finally {
+			synchronized (this) {
+				// one time checks stay registered so that adding them again has no effect
+				if (check.poll == ONE_TIME_CHECK)
+					check.done = true;
+				else
+					check.nextCheck = System.currentTimeMillis() + check.poll;
+			}
+		}
+	}
+
+	Collection<IInstallableUnit> checkForUpdates(UpdateCheck check) {
+		IProfile profile = getProfileRegistry().getProfile(check.profileId);
+		if (profile == null)
+			return Collections.<IInstallableUnit> emptyList();
+		if (check.lastResult != null && check.generation == repositoryGeneration && check.profileTimestamp == profile.getTimestamp()) {
+			trace("Neither the repositories nor the profile changed since the last check"); //$NON-NLS-1$
+			return check.lastResult;
+		}
+		Collection<IInstallableUnit> result = checkForUpdates(check.profileId, check.query);
+		check.lastResult = result;
+		check.generation = repositoryGeneration;
+		check.profileTimestamp = profile.getTimestamp();
+		return result;
 	}
 
 	/*
@@ -126,7 +253,7 @@ public class UpdateChecker implements IUpdateChecker {
 		if (profile == null)
 			return Collections.<IInstallableUnit> emptyList();
 		ProvisioningContext context = new ProvisioningContext(agent);
-		context.setMetadataRepositories(getAvailableRepositories());
+		context.setMetadataRepositories(availableRepositories);
 		if (query == null)
 			query = QueryUtil.createIUAnyQuery();
 		Iterator<IInstallableUnit> iter = profile.query(query, null).iterator();
@@ -140,21 +267,94 @@ public class UpdateChecker implements IUpdateChecker {
 	}
 
 	/**
-	 * Returns the list of metadata repositories that are currently available.
+	 * Loads the known metadata repositories, refreshing the ones whose index changed since
+	 * the previous call. Repositories for which no time stamp is available, composite ones
+	 * among them, are loaded on every call and always considered changed.
 	 */
-	private URI[] getAvailableRepositories() {
+	void refreshRepositories() {
 		IMetadataRepositoryManager repoMgr = (IMetadataRepositoryManager) agent.getService(IMetadataRepositoryManager.SERVICE_NAME);
 		URI[] repositories = repoMgr.getKnownRepositories(IRepositoryManager.REPOSITORIES_ALL);
 		ArrayList<URI> available = new ArrayList<URI>();
+		boolean changed = repositoryTimestamps.keySet().retainAll(Arrays.asList(repositories));
+		repositoryIndexes.keySet().retainAll(Arrays.asList(repositories));
 		for (int i = 0; i < repositories.length; i++) {
+			long timestamp = getIndexTimestamp(repositories[i]);
+			Long previous = repositoryTimestamps.get(repositories[i]);
 			try {
-				repoMgr.loadRepository(repositories[i], null);
+				IMetadataRepository repository;
+				if (previous != null && timestamp != UNKNOWN && previous.longValue() != timestamp) {
+					trace("Refreshing changed repository " + repositories[i]); //$NON-NLS-1$
+					repository = repoMgr.refreshRepository(repositories[i], null);
+				} else {
+					repository = repoMgr.loadRepository(repositories[i], null);
+				}
+				if (repository instanceof ICompositeRepository<?>) {
+					repositoryIndexes.put(repositories[i], NO_INDEX);
+					timestamp = UNKNOWN;
+				}
 				available.add(repositories[i]);
+				if (previous == null || timestamp == UNKNOWN || previous.longValue() != timestamp)
+					changed = true;
+				repositoryTimestamps.put(repositories[i], Long.valueOf(timestamp));
 			} catch (ProvisionException e) {
 				LogHelper.log(e.getStatus());
+				changed |= repositoryTimestamps.remove(repositories[i]) != null;
+				repositoryIndexes.remove(repositories[i]);
+			}
+		}
+		availableRepositories = available.toArray(new URI[available.size()]);
+		if (changed)
+			repositoryGeneration++;
+	}
+
+	/**
+	 * Returns the time stamp of the index of the given repository, or {@link #UNKNOWN}. Once
+	 * the index of a repository is known only that index is looked at.
+	 */
+	private long getIndexTimestamp(URI location) {
+		String index = repositoryIndexes.get(location);
+		if (index == NO_INDEX)
+			return UNKNOWN;
+		String[] candidates = index == null ? INDEX_FILES : new String[] {index};
+		for (int i = 0; i < candidates.length; i++) {
+			try {
+				long timestamp = getTimestamp(URIUtil.append(location, candidates[i]));
+				if (timestamp != UNKNOWN)
+					repositoryIndexes.put(location, candidates[i]);
+				return timestamp;
+			} catch (FileNotFoundException e) {
+				// try the next index
+			}
+		}
+		// the index may have been replaced by another one, or the repository is composite
+		if (index == null)
+			repositoryIndexes.put(location, NO_INDEX);
+		else
+			repositoryIndexes.remove(location);
+		return UNKNOWN;
+	}
+
+	private long getTimestamp(URI index) throws FileNotFoundException {
+		try {
+			if ("file".equals(index.getScheme())) { //$NON-NLS-1$
+				File file = URIUtil.toFile(index);
+				if (file == null || !file.isFile())
+					throw new FileNotFoundException(index.toString());
+				return file.lastModified();
 			}
+			Transport transport = (Transport) agent.getService(Transport.SERVICE_NAME);
+			if (transport == null)
+				return UNKNOWN;
+			long lastModified = transport.getLastModified(index, null);
+			// some servers do not report a time stamp
+			return lastModified > 0 ? lastModified : UNKNOWN;
+		} catch (AuthenticationFailedException e) {
+			return UNKNOWN;
+		} catch (CoreException e) {
+			return UNKNOWN;
+		} catch (OperationCanceledException e) {
+			return UNKNOWN;
 		}
-		return available.toArray(new URI[available.size()]);
 	}
 
 	void trace(String message) {
@@ -25,6 +25,7 @@ import org.osgi.service.startlevel.StartLevel;
 
 class ConfigApplier {
 	private static final String LAST_BUNDLES_INFO = "last.bundles.info"; //$NON-NLS-1$
+	private static final String BUNDLES_CACHE = "bundles.cache"; //$NON-NLS-1$
 	private static final String PROP_DEVMODE = "osgi.dev"; //$NON-NLS-1$
 
 	private final BundleContext manipulatingContext;
@@ -58,14 +59,26 @@ class ConfigApplier {
 	}
 
 	void install(URL url, boolean exclusiveMode) throws IOException {
-		List<BundleInfo> bundleInfoList = SimpleConfiguratorUtils.readConfiguration(url, baseLocation);
+		File cacheFile = manipulatingContext.getDataFile(BUNDLES_CACHE);
+		// outside of exclusive mode the key identifies the last state too, and the cache is only
+		// written after the configuration was saved as the last state, so a hit means that the
+		// last state is the expected state and there is nothing to uninstall
+		String cacheKey = cacheFile == null ? null : BundleInfoCache.computeKey(url, baseLocation, exclusiveMode, getLastBundleInfo());
+		BundleInfoCache cache = BundleInfoCache.read(cacheFile, cacheKey);
+
+		BundleInfo[] expectedState;
+		List<BundleInfo> bundleInfoList = null;
+		if (cache != null) {
+			expectedState = cache.getBundles();
+		} else {
+			bundleInfoList = SimpleConfiguratorUtils.readConfiguration(url, baseLocation);
+			expectedState = Utils.getBundleInfosFromList(bundleInfoList);
+		}
 		if (Activator.DEBUG)
-			System.out.println("applyConfiguration() bundleInfoList.size()=" + bundleInfoList.size());
-		if (bundleInfoList.size() == 0)
+			System.out.println("applyConfiguration() bundleInfoList.size()=" + expectedState.length + (cache != null ? " (cached)" : "")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		if (expectedState.length == 0)
 			return;
 
-		BundleInfo[] expectedState = Utils.getBundleInfosFromList(bundleInfoList);
-
 		// check for an update to the system bundle
 		String systemBundleSymbolicName = manipulatingContext.getBundle(0).getSymbolicName();
 		Version systemBundleVersion = manipulatingContext.getBundle(0).getVersion();
@@ -82,7 +95,7 @@ class ConfigApplier {
 		}
 
 		HashSet<BundleInfo> toUninstall = null;
-		if (!exclusiveMode) {
+		if (!exclusiveMode && cache == null) {
 			BundleInfo[] lastInstalledBundles = getLastState();
 			if (lastInstalledBundles != null) {
 				toUninstall = new HashSet<BundleInfo>(Arrays.asList(lastInstalledBundles));
@@ -90,15 +103,23 @@ class ConfigApplier {
 			}
 			saveStateAsLast(url);
 		}
+		if (cache == null && cacheFile != null) {
+			cacheKey = BundleInfoCache.computeKey(url, baseLocation, exclusiveMode, getLastBundleInfo());
+			if (cacheKey != null) {
+				cache = BundleInfoCache.create(cacheKey, bundleInfoList);
+				cache.write(cacheFile);
+				expectedState = cache.getBundles();
+			}
+		}
 
 		Set<Bundle> prevouslyResolved = getResolvedBundles();
 		Collection<Bundle> toRefresh = new ArrayList<Bundle>();
 		Collection<Bundle> toStart = new ArrayList<Bundle>();
 		if (exclusiveMode) {
-			toRefresh.addAll(installBundles(expectedState, toStart));
+			toRefresh.addAll(installBundles(expectedState, cache, toStart));
 			toRefresh.addAll(uninstallBundles(expectedState, packageAdminService));
 		} else {
-			toRefresh.addAll(installBundles(expectedState, toStart));
+			toRefresh.addAll(installBundles(expectedState, cache, toStart));
 			if (toUninstall != null)
 				toRefresh.addAll(uninstallBundles(toUninstall));
 		}
@@ -283,7 +304,15 @@ class ConfigApplier {
 		}
 	}
 
-	private ArrayList<Bundle> installBundles(BundleInfo[] finalList, Collection<Bundle> toStart) {
+	/**
+	 * Installs the bundles on finalList.
+	 * 
+	 * @param finalList bundles to install.
+	 * @param cache the cache the bundles were read from, or <code>null</code> to compute the install locations of the bundles.
+	 * @param toStart collection receiving the bundles to start.
+	 * @return the bundles that need to be refreshed.
+	 */
+	private ArrayList<Bundle> installBundles(BundleInfo[] finalList, BundleInfoCache cache, Collection<Bundle> toStart) {
 		ArrayList<Bundle> toRefresh = new ArrayList<Bundle>();
 
 		String useReferenceProperty = manipulatingContext.getProperty(SimpleConfiguratorConstants.PROP_KEY_USE_REFERENCE);
@@ -302,7 +331,7 @@ class ConfigApplier {
 			if (symbolicName != null && version != null)
 				matches = packageAdminService.getBundles(symbolicName, getVersionRange(version));
 
-			String bundleLocation = SimpleConfiguratorUtils.getBundleLocation(finalList[i], useReference);
+			String bundleLocation = cache != null ? cache.getBundleLocation(i, useReference) : SimpleConfiguratorUtils.getBundleLocation(finalList[i], useReference);
 
 			Bundle current = matches == null ? null : (matches.length == 0 ? null : matches[0]);
 			if (current == null) {
@@ -329,7 +358,7 @@ class ConfigApplier {
 					toRefresh.add(current);
 				} catch (BundleException e) {
 					if (Activator.DEBUG) {
-						System.err.println("Can't install " + symbolicName + '/' + version + " from location " + finalList[i].getLocation()); //$NON-NLS-1$ //$NON-NLS-2$
+						System.err.println("Can't install " + symbolicName + '/' + version + " from location " + bundleLocation); //$NON-NLS-1$ //$NON-NLS-2$
 						e.printStackTrace();
 					}
 					continue;
@@ -354,7 +383,7 @@ class ConfigApplier {
 					toRefresh.add(current);
 				} catch (BundleException e) {
 					if (Activator.DEBUG) {
-						System.err.println("Can't install " + symbolicName + '/' + version + " from location " + finalList[i].getLocation()); //$NON-NLS-1$ //$NON-NLS-2$
+						System.err.println("Can't install " + symbolicName + '/' + version + " from location " + bundleLocation); //$NON-NLS-1$ //$NON-NLS-2$
 						e.printStackTrace();
 					}
 					continue;
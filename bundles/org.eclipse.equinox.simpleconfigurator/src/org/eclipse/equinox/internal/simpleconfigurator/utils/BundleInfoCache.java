@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others. All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * 		IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.internal.simpleconfigurator.utils;
+
+import java.io.*;
+import java.net.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.equinox.internal.simpleconfigurator.Activator;
+
+/**
+ * A compact binary snapshot of a parsed configuration. The snapshot holds the bundles
+ * listed in a bundles.info file and its extensions together with their already resolved
+ * install locations, so that an unchanged configuration can be applied without parsing
+ * the configuration files or any location URI.
+ * <p>
+ * A snapshot is only valid for the key it was created with, see {@link #computeKey(URL, URI)}.
+ * </p>
+ */
+public class BundleInfoCache {
+	private static final int CACHE_VERSION = 2;
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+	private static final String FILE_PREFIX = "file:"; //$NON-NLS-1$
+	private static final String REFERENCE_PREFIX = "reference:"; //$NON-NLS-1$
+
+	private final String key;
+	private final BundleInfo[] bundles;
+	private final String[] locations;
+
+	private BundleInfoCache(String key, BundleInfo[] bundles, String[] locations) {
+		this.key = key;
+		this.bundles = bundles;
+		this.locations = locations;
+	}
+
+	/**
+	 * Creates a snapshot of the given configuration.
+	 *
+	 * @param key the key of the configuration as returned by {@link #computeKey(URL, URI)}
+	 * @param bundleInfos the bundles of the configuration
+	 * @return the snapshot
+	 */
+	public static BundleInfoCache create(String key, List<BundleInfo> bundleInfos) {
+		List<BundleInfo> result = new ArrayList<BundleInfo>(bundleInfos.size());
+		List<String> resultLocations = new ArrayList<String>(bundleInfos.size());
+		for (BundleInfo info : bundleInfos) {
+			if (info == null || info.getLocation() == null)
+				continue;
+			result.add(new BundleInfo(info.getSymbolicName(), info.getVersion(), null, info.getStartLevel(), info.isMarkedAsStarted()));
+			resultLocations.add(SimpleConfiguratorUtils.getBundleLocation(info, false));
+		}
+		return new BundleInfoCache(key, Utils.getBundleInfosFromList(result), resultLocations.toArray(new String[resultLocations.size()]));
+	}
+
+	/**
+	 * Computes the key identifying the configuration read from the given bundles.info. The key
+	 * is made of a digest of the file content, the base location and the location and time stamp
+	 * of each extension .info file.
+	 *
+	 * @param url the location of the bundles.info file
+	 * @param base the location relative bundle locations are resolved against
+	 * @return the key, or <code>null</code> if no key could be computed
+	 */
+	public static String computeKey(URL url, URI base) {
+		String digest;
+		try {
+			digest = computeDigest(url.openStream());
+		} catch (IOException e) {
+			return null;
+		}
+		if (digest == null)
+			return null;
+
+		StringBuffer result = new StringBuffer(digest);
+		result.append(',').append(base);
+		if (Activator.EXTENDED) {
+			try {
+				List<File> infoFiles = SimpleConfiguratorUtils.getInfoFiles();
+				for (File infoFile : infoFiles)
+					result.append(',').append(infoFile.getAbsolutePath()).append('@').append(infoFile.lastModified());
+			} catch (IOException e) {
+				return null;
+			} catch (URISyntaxException e) {
+				return null;
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Computes the key identifying the configuration read from the given bundles.info when it
+	 * is applied in the given mode. A configuration that is not applied exclusively is applied
+	 * relative to the last applied state, so the key also identifies the content of that state.
+	 *
+	 * @param url the location of the bundles.info file
+	 * @param base the location relative bundle locations are resolved against
+	 * @param exclusiveMode whether the configuration is applied exclusively
+	 * @param lastState the file holding the last applied state
+	 * @return the key, or <code>null</code> if no key could be computed
+	 */
+	public static String computeKey(URL url, URI base, boolean exclusiveMode, File lastState) {
+		String key = computeKey(url, base);
+		if (key == null)
+			return null;
+		if (exclusiveMode)
+			return key + ",exclusive"; //$NON-NLS-1$
+		if (!lastState.isFile())
+			return null;
+		String lastDigest;
+		try {
+			lastDigest = computeDigest(new FileInputStream(lastState));
+		} catch (IOException e) {
+			return null;
+		}
+		return lastDigest == null ? null : key + ",last=" + lastDigest; //$NON-NLS-1$
+	}
+
+	/*
+	 * Returns the MD5 digest of the given stream in hexadecimal, and closes the stream.
+	 */
+	private static String computeDigest(InputStream stream) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			stream.close();
+			return null;
+		}
+		try {
+			byte[] buffer = new byte[8192];
+			int bytesRead;
+			while ((bytesRead = stream.read(buffer)) != -1)
+				digest.update(buffer, 0, bytesRead);
+		} finally {
+			stream.close();
+		}
+
+		StringBuffer result = new StringBuffer();
+		byte[] bytes = digest.digest();
+		for (int i = 0; i < bytes.length; i++) {
+			result.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+			result.append(Character.forDigit(bytes[i] & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Reads a snapshot from the given file.
+	 *
+	 * @param file the file written by {@link #write(File)}
+	 * @param expectedKey the key of the current configuration
+	 * @return the snapshot, or <code>null</code> if the file does not exist, cannot be read or
+	 * was created for a different key
+	 */
+	public static BundleInfoCache read(File file, String expectedKey) {
+		if (expectedKey == null || !file.isFile())
+			return null;
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (input.readInt() != CACHE_VERSION)
+				return null;
+			if (!expectedKey.equals(readString(input)))
+				return null;
+			int size = input.readInt();
+			if (size < 0)
+				return null;
+			BundleInfo[] bundles = new BundleInfo[size];
+			String[] locations = new String[size];
+			for (int i = 0; i < size; i++) {
+				String symbolicName = readString(input);
+				String version = readString(input);
+				locations[i] = readString(input);
+				int startLevel = input.readInt();
+				boolean started = input.readBoolean();
+				bundles[i] = new BundleInfo(symbolicName, version, null, startLevel, started);
+			}
+			return new BundleInfoCache(expectedKey, bundles, locations);
+		} catch (IOException e) {
+			if (Activator.DEBUG)
+				e.printStackTrace();
+			return null;
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes this snapshot to the given file. Any failure deletes the file.
+	 *
+	 * @param file the file to write
+	 */
+	public void write(File file) {
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			output.writeInt(CACHE_VERSION);
+			writeString(output, key);
+			output.writeInt(bundles.length);
+			for (int i = 0; i < bundles.length; i++) {
+				writeString(output, bundles[i].getSymbolicName());
+				writeString(output, bundles[i].getVersion());
+				writeString(output, locations[i]);
+				output.writeInt(bundles[i].getStartLevel());
+				output.writeBoolean(bundles[i].isMarkedAsStarted());
+			}
+			output.close();
+			output = null;
+		} catch (IOException e) {
+			if (Activator.DEBUG)
+				e.printStackTrace();
+			if (output != null) {
+				try {
+					output.close();
+				} catch (IOException e1) {
+					// ignore
+				}
+			}
+			file.delete();
+		}
+	}
+
+	/*
+	 * Strings are written as their length followed by their UTF-8 bytes, since writeUTF
+	 * is limited to 64K and keys and locations are not.
+	 */
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0 || length > input.available())
+			throw new IOException("Corrupt bundle cache"); //$NON-NLS-1$
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the bundles of the configuration. The returned bundle infos have no location,
+	 * use {@link #getBundleLocation(int, boolean)} instead.
+	 */
+	public BundleInfo[] getBundles() {
+		return bundles;
+	}
+
+	/**
+	 * Returns the install location of the bundle at the given index, in the form
+	 * returned by {@link SimpleConfiguratorUtils#getBundleLocation(BundleInfo, boolean)}.
+	 */
+	public String getBundleLocation(int index, boolean useReference) {
+		String location = locations[index];
+		if (useReference && location.startsWith(FILE_PREFIX))
+			return REFERENCE_PREFIX + location;
+		return location;
+	}
+}